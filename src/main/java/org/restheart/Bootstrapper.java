@@ -76,6 +76,7 @@ import org.restheart.handlers.injectors.BodyInjectorHandler;
 import org.restheart.handlers.injectors.CollectionPropsInjectorHandler;
 import org.restheart.handlers.injectors.DbPropsInjectorHandler;
 import org.restheart.handlers.injectors.LocalCachesSingleton;
+import org.restheart.handlers.injectors.ResponseCacheSingleton;
 import org.restheart.handlers.injectors.RequestContextInjectorHandler;
 import org.restheart.security.AccessManager;
 import org.restheart.security.AuthenticationMechanismFactory;
@@ -579,10 +580,27 @@ public class Bootstrapper {
             LOGGER.info("Local cache for db and collection properties enabled with TTL {} msecs",
                     configuration.getLocalCacheTtl() < 0 ? "∞"
                     : configuration.getLocalCacheTtl());
+
+            if (configuration.isLocalCacheInvalidationEnabled()) {
+                // starts listening to the invalidations of the other nodes
+                LocalCachesSingleton.getInstance();
+
+                LOGGER.info("Local cache invalidation channel enabled on db {}",
+                        configuration.getLocalCacheInvalidationDb());
+            }
         } else {
             LOGGER.info("Local cache for db and collection properties not enabled");
         }
 
+        ResponseCacheSingleton.init(configuration);
+
+        if (configuration.isResponseCacheEnabled()) {
+            LOGGER.info("Response cache enabled with size {} and TTL {} msecs",
+                    configuration.getResponseCacheSize(),
+                    configuration.getResponseCacheTtl() < 0 ? "∞"
+                    : configuration.getResponseCacheTtl());
+        }
+
         if (configuration.isSchemaCacheEnabled()) {
             LOGGER.info("Local cache for schema stores enabled  with TTL {} msecs",
                     configuration.getSchemaCacheTtl() < 0 ? "∞"
@@ -975,7 +993,9 @@ public class Bootstrapper {
                                 = new RequestContextInjectorHandler(
                                         "/_logic",
                                         "*",
-                                        new BodyInjectorHandler(alHandler));
+                                        alHandler.isRequestBodyStreamed()
+                                        ? alHandler
+                                        : new BodyInjectorHandler(alHandler));
 
                         if (alSecured) {
                             paths.addPrefixPath("/_logic" + alWhere, new RequestLoggerHandler(
@@ -28,6 +28,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import org.restheart.cache.Cache;
+import org.restheart.db.CursorPool.EAGER_CURSOR_ALLOCATION_POLICY;
 import org.restheart.handlers.RequestContext;
 import org.restheart.handlers.RequestContext.ETAG_CHECK_POLICY;
 import org.restheart.handlers.RequestContext.REPRESENTATION_FORMAT;
@@ -110,14 +112,35 @@ public class Configuration {
 
     private final boolean localCacheEnabled;
     private final long localCacheTtl;
+    private final boolean localCacheInvalidationEnabled;
+    private final String localCacheInvalidationDb;
+
+    private final boolean responseCacheEnabled;
+    private final long responseCacheSize;
+    private final long responseCacheTtl;
+    private final Cache.EXPIRE_POLICY responseCacheExpirePolicy;
+    private final int responseCacheMaxEntrySize;
 
     private final boolean schemaCacheEnabled;
     private final long schemaCacheTtl;
+    private final boolean schemaCompiledValidation;
 
     private final int requestsLimit;
+    private final long maxRequestBodySize;
+
+    private final boolean bulkPostStreaming;
+    private final int bulkWriteBatchSize;
+    private final boolean bulkWriteOrdered;
+    private final boolean bulkWritePipelined;
+    private final int bulkWriteThreads;
+    private final boolean fileUploadStreaming;
+    private final boolean atomicDocumentWrites;
 
     private final int ioThreads;
     private final int workerThreads;
+    private final int asyncHooksThreads;
+    private final int asyncHooksQueueSize;
+    private final ASYNC_HOOKS_QUEUE_POLICY asyncHooksQueuePolicy;
     private final int bufferSize;
     private final int buffersPerRegion;
     private final boolean directBuffers;
@@ -130,9 +153,15 @@ public class Configuration {
     private final int[] eagerLinearSliceHeights;
     private final int eagerRndSliceMinWidht;
     private final int eagerRndMaxCursors;
+    private final EAGER_CURSOR_ALLOCATION_POLICY eagerDefaultPolicy;
+    private final int eagerAdaptiveHotPages;
 
     private final boolean authTokenEnabled;
     private final int authTokenTtl;
+    private final long authTokenMaxTokens;
+    private final int authTokenMaxTokensPerUser;
+    private final AUTH_TOKEN_STORE authTokenStore;
+    private final String authTokenStoreDb;
 
     private final ETAG_CHECK_POLICY dbEtagCheckPolicy;
     private final ETAG_CHECK_POLICY collEtagCheckPolicy;
@@ -144,6 +173,7 @@ public class Configuration {
     
         private final long queryTimeLimit;
     private final long aggregationTimeLimit;
+    private final int aggregationCacheSize;
 
     /**
      * default mongo uri mongodb://127.0.0.1
@@ -192,6 +222,18 @@ public class Configuration {
     public static final REPRESENTATION_FORMAT DEFAULT_REPRESENTATION_FORMAT
             = REPRESENTATION_FORMAT.PLAIN_JSON;
 
+    /**
+     * default policy of the async hooks queue
+     */
+    public static final ASYNC_HOOKS_QUEUE_POLICY DEFAULT_ASYNC_HOOKS_QUEUE_POLICY
+            = ASYNC_HOOKS_QUEUE_POLICY.DROP;
+
+    /**
+     * default eager cursor allocation policy
+     */
+    public static final EAGER_CURSOR_ALLOCATION_POLICY DEFAULT_EAGER_POLICY
+            = EAGER_CURSOR_ALLOCATION_POLICY.LINEAR;
+
     /**
      * default am implementation class.
      */
@@ -235,6 +277,52 @@ public class Configuration {
      */
     public static final String LOCAL_CACHE_TTL_KEY = "local-cache-ttl";
 
+    /**
+     * the key for the local-cache-invalidation-enabled property.
+     */
+    public static final String LOCAL_CACHE_INVALIDATION_ENABLED_KEY = "local-cache-invalidation-enabled";
+
+    /**
+     * the key for the local-cache-invalidation-db property.
+     */
+    public static final String LOCAL_CACHE_INVALIDATION_DB_KEY = "local-cache-invalidation-db";
+
+    /**
+     * default db of the local cache invalidation channel
+     */
+    public static final String DEFAULT_LOCAL_CACHE_INVALIDATION_DB = "restheart";
+
+    /**
+     * the key for the response-cache-enabled property.
+     */
+    public static final String RESPONSE_CACHE_ENABLED_KEY = "response-cache-enabled";
+
+    /**
+     * the key for the response-cache-size property.
+     */
+    public static final String RESPONSE_CACHE_SIZE_KEY = "response-cache-size";
+
+    /**
+     * the key for the response-cache-ttl property.
+     */
+    public static final String RESPONSE_CACHE_TTL_KEY = "response-cache-ttl";
+
+    /**
+     * the key for the response-cache-expire-policy property.
+     */
+    public static final String RESPONSE_CACHE_EXPIRE_POLICY_KEY = "response-cache-expire-policy";
+
+    /**
+     * the key for the response-cache-max-entry-size property.
+     */
+    public static final String RESPONSE_CACHE_MAX_ENTRY_SIZE_KEY = "response-cache-max-entry-size";
+
+    /**
+     * default expire policy of the response cache
+     */
+    public static final Cache.EXPIRE_POLICY DEFAULT_RESPONSE_CACHE_EXPIRE_POLICY
+            = Cache.EXPIRE_POLICY.AFTER_WRITE;
+
     /**
      * the key for the schema-cache-enabled property.
      */
@@ -245,6 +333,11 @@ public class Configuration {
      */
     public static final String SCHEMA_CACHE_TTL_KEY = "schema-cache-ttl";
 
+    /**
+     * the key for the schema-compiled-validation property.
+     */
+    public static final String SCHEMA_COMPILED_VALIDATION_KEY = "schema-compiled-validation";
+
     /**
      * the key for the force-gzip-encoding property.
      */
@@ -270,6 +363,21 @@ public class Configuration {
      */
     public static final String WORKER_THREADS_KEY = "worker-threads";
 
+    /**
+     * the key for the async-hooks-threads property.
+     */
+    public static final String ASYNC_HOOKS_THREADS_KEY = "async-hooks-threads";
+
+    /**
+     * the key for the async-hooks-queue-size property.
+     */
+    public static final String ASYNC_HOOKS_QUEUE_SIZE_KEY = "async-hooks-queue-size";
+
+    /**
+     * the key for the async-hooks-queue-policy property.
+     */
+    public static final String ASYNC_HOOKS_QUEUE_POLICY_KEY = "async-hooks-queue-policy";
+
     /**
      * the key for the io-threads property.
      */
@@ -280,6 +388,46 @@ public class Configuration {
      */
     public static final String REQUESTS_LIMIT_KEY = "requests-limit";
 
+    /**
+     * the key for the max-request-body-size property.
+     */
+    public static final String MAX_REQUEST_BODY_SIZE_KEY = "max-request-body-size";
+
+    /**
+     * the key for the bulk-post-streaming property.
+     */
+    public static final String BULK_POST_STREAMING_KEY = "bulk-post-streaming";
+
+    /**
+     * the key for the bulk-write-batch-size property.
+     */
+    public static final String BULK_WRITE_BATCH_SIZE_KEY = "bulk-write-batch-size";
+
+    /**
+     * the key for the bulk-write-ordered property.
+     */
+    public static final String BULK_WRITE_ORDERED_KEY = "bulk-write-ordered";
+
+    /**
+     * the key for the bulk-write-pipelined property.
+     */
+    public static final String BULK_WRITE_PIPELINED_KEY = "bulk-write-pipelined";
+
+    /**
+     * the key for the bulk-write-threads property.
+     */
+    public static final String BULK_WRITE_THREADS_KEY = "bulk-write-threads";
+
+    /**
+     * the key for the file-upload-streaming property.
+     */
+    public static final String FILE_UPLOAD_STREAMING_KEY = "file-upload-streaming";
+
+    /**
+     * the key for the atomic-document-writes property.
+     */
+    public static final String ATOMIC_DOCUMENT_WRITES_KEY = "atomic-document-writes";
+
     /**
      * the key for the query-time-limit property.
      */
@@ -290,6 +438,11 @@ public class Configuration {
      */
     private static final String AGGREGATION_TIME_LIMIT_KEY = "aggregation-time-limit";
 
+    /**
+     * the key for the aggregation-cache-size property.
+     */
+    public static final String AGGREGATION_CACHE_SIZE_KEY = "aggregation-cache-size";
+
     /**
      * the key for the enable-log-file property.
      */
@@ -531,6 +684,16 @@ public class Configuration {
      */
     public static final String EAGER_RND_MAX_CURSORS = "eager-cursor-allocation-random-max-cursors";
 
+    /**
+     * the key for the eager-cursor-allocation-default-policy property.
+     */
+    public static final String EAGER_DEFAULT_POLICY_KEY = "eager-cursor-allocation-default-policy";
+
+    /**
+     * the key for the eager-cursor-allocation-adaptive-hot-pages property.
+     */
+    public static final String EAGER_ADAPTIVE_HOT_PAGES_KEY = "eager-cursor-allocation-adaptive-hot-pages";
+
     /**
      * the key for the auth-token-enabled property.
      */
@@ -541,6 +704,37 @@ public class Configuration {
      */
     public static final String AUTH_TOKEN_TTL = "auth-token-ttl";
 
+    /**
+     * the key for the auth-token-max-tokens property.
+     */
+    public static final String AUTH_TOKEN_MAX_TOKENS = "auth-token-max-tokens";
+
+    /**
+     * the key for the auth-token-max-tokens-per-user property.
+     */
+    public static final String AUTH_TOKEN_MAX_TOKENS_PER_USER = "auth-token-max-tokens-per-user";
+
+    /**
+     * the key for the auth-token-store property.
+     */
+    public static final String AUTH_TOKEN_STORE_KEY = "auth-token-store";
+
+    /**
+     * the key for the auth-token-store-db property.
+     */
+    public static final String AUTH_TOKEN_STORE_DB_KEY = "auth-token-store-db";
+
+    /**
+     * default auth token store
+     */
+    public static final AUTH_TOKEN_STORE DEFAULT_AUTH_TOKEN_STORE
+            = AUTH_TOKEN_STORE.LOCAL;
+
+    /**
+     * default db of the MONGO auth token store
+     */
+    public static final String DEFAULT_AUTH_TOKEN_STORE_DB = "restheart";
+
     /**
      * the key for the etag-check-policy property.
      */
@@ -689,17 +883,39 @@ public class Configuration {
 
         localCacheEnabled = true;
         localCacheTtl = 1000;
+        localCacheInvalidationEnabled = false;
+        localCacheInvalidationDb = DEFAULT_LOCAL_CACHE_INVALIDATION_DB;
+
+        responseCacheEnabled = false;
+        responseCacheSize = 1000;
+        responseCacheTtl = 1000;
+        responseCacheExpirePolicy = DEFAULT_RESPONSE_CACHE_EXPIRE_POLICY;
+        responseCacheMaxEntrySize = 1024 * 1024;
 
         schemaCacheEnabled = false;
         schemaCacheTtl = 1000;
+        schemaCompiledValidation = true;
 
         requestsLimit = 100;
+        maxRequestBodySize = 0;
+
+        bulkPostStreaming = false;
+        bulkWriteBatchSize = 1000;
+        bulkWriteOrdered = true;
+        bulkWritePipelined = true;
+        bulkWriteThreads = 8;
+        fileUploadStreaming = false;
+        atomicDocumentWrites = false;
         
         queryTimeLimit = 0;
         aggregationTimeLimit = 0;
+        aggregationCacheSize = 100;
 
         ioThreads = 2;
         workerThreads = 32;
+        asyncHooksThreads = 4;
+        asyncHooksQueueSize = 1000;
+        asyncHooksQueuePolicy = DEFAULT_ASYNC_HOOKS_QUEUE_POLICY;
         bufferSize = 16384;
         buffersPerRegion = 20;
         directBuffers = true;
@@ -712,9 +928,15 @@ public class Configuration {
         eagerLinearSliceHeights = new int[]{4, 2, 1};
         eagerRndSliceMinWidht = 1000;
         eagerRndMaxCursors = 50;
+        eagerDefaultPolicy = DEFAULT_EAGER_POLICY;
+        eagerAdaptiveHotPages = 4;
 
         authTokenEnabled = true;
         authTokenTtl = 15; // minutes
+        authTokenMaxTokens = 100_000;
+        authTokenMaxTokensPerUser = 1;
+        authTokenStore = DEFAULT_AUTH_TOKEN_STORE;
+        authTokenStoreDb = DEFAULT_AUTH_TOKEN_STORE_DB;
 
         dbEtagCheckPolicy = DEFAULT_DB_ETAG_CHECK_POLICY;
         collEtagCheckPolicy = DEFAULT_COLL_ETAG_CHECK_POLICY;
@@ -849,18 +1071,77 @@ public class Configuration {
         logLevel = level;
 
         requestsLimit = getAsIntegerOrDefault(conf, REQUESTS_LIMIT_KEY, 100);
+        maxRequestBodySize = getAsLongOrDefault(conf, MAX_REQUEST_BODY_SIZE_KEY, (long) 0);
+
+        bulkPostStreaming = getAsBooleanOrDefault(conf, BULK_POST_STREAMING_KEY, false);
+        bulkWriteBatchSize = getAsIntegerOrDefault(conf, BULK_WRITE_BATCH_SIZE_KEY, 1000);
+        bulkWriteOrdered = getAsBooleanOrDefault(conf, BULK_WRITE_ORDERED_KEY, true);
+        bulkWritePipelined = getAsBooleanOrDefault(conf, BULK_WRITE_PIPELINED_KEY, true);
+        bulkWriteThreads = getAsIntegerOrDefault(conf, BULK_WRITE_THREADS_KEY, 8);
+        fileUploadStreaming = getAsBooleanOrDefault(conf, FILE_UPLOAD_STREAMING_KEY, false);
+        atomicDocumentWrites = getAsBooleanOrDefault(conf, ATOMIC_DOCUMENT_WRITES_KEY, false);
         
         queryTimeLimit = getAsLongOrDefault(conf, QUERY_TIME_LIMIT_KEY, (long) 0);
         aggregationTimeLimit = getAsLongOrDefault(conf, AGGREGATION_TIME_LIMIT_KEY, (long) 0);
+        aggregationCacheSize = getAsIntegerOrDefault(conf, AGGREGATION_CACHE_SIZE_KEY, 100);
 
         localCacheEnabled = getAsBooleanOrDefault(conf, LOCAL_CACHE_ENABLED_KEY, true);
         localCacheTtl = getAsLongOrDefault(conf, LOCAL_CACHE_TTL_KEY, (long) 1000);
+        localCacheInvalidationEnabled = getAsBooleanOrDefault(conf, LOCAL_CACHE_INVALIDATION_ENABLED_KEY, false);
+        localCacheInvalidationDb = getAsStringOrDefault(conf, LOCAL_CACHE_INVALIDATION_DB_KEY, DEFAULT_LOCAL_CACHE_INVALIDATION_DB);
+
+        responseCacheEnabled = getAsBooleanOrDefault(conf, RESPONSE_CACHE_ENABLED_KEY, false);
+        responseCacheSize = getAsLongOrDefault(conf, RESPONSE_CACHE_SIZE_KEY, (long) 1000);
+        responseCacheTtl = getAsLongOrDefault(conf, RESPONSE_CACHE_TTL_KEY, (long) 1000);
+
+        String _responseCacheExpirePolicy = getAsStringOrDefault(conf,
+                RESPONSE_CACHE_EXPIRE_POLICY_KEY,
+                DEFAULT_RESPONSE_CACHE_EXPIRE_POLICY.name());
+
+        Cache.EXPIRE_POLICY rcep = DEFAULT_RESPONSE_CACHE_EXPIRE_POLICY;
+
+        try {
+            rcep = Cache.EXPIRE_POLICY.valueOf(_responseCacheExpirePolicy);
+        } catch (IllegalArgumentException iar) {
+            LOGGER.warn("wrong value for {}. allowed values are {}; "
+                    + "setting it to {}",
+                    RESPONSE_CACHE_EXPIRE_POLICY_KEY,
+                    Cache.EXPIRE_POLICY.values(),
+                    DEFAULT_RESPONSE_CACHE_EXPIRE_POLICY);
+        } finally {
+            responseCacheExpirePolicy = rcep;
+        }
+
+        responseCacheMaxEntrySize = getAsIntegerOrDefault(conf, RESPONSE_CACHE_MAX_ENTRY_SIZE_KEY, 1024 * 1024);
 
         schemaCacheEnabled = getAsBooleanOrDefault(conf, SCHEMA_CACHE_ENABLED_KEY, true);
         schemaCacheTtl = getAsLongOrDefault(conf, SCHEMA_CACHE_TTL_KEY, (long) 1000);
+        schemaCompiledValidation = getAsBooleanOrDefault(conf, SCHEMA_COMPILED_VALIDATION_KEY, true);
 
         ioThreads = getAsIntegerOrDefault(conf, IO_THREADS_KEY, 2);
         workerThreads = getAsIntegerOrDefault(conf, WORKER_THREADS_KEY, 32);
+
+        asyncHooksThreads = getAsIntegerOrDefault(conf, ASYNC_HOOKS_THREADS_KEY, 4);
+        asyncHooksQueueSize = getAsIntegerOrDefault(conf, ASYNC_HOOKS_QUEUE_SIZE_KEY, 1000);
+
+        String _asyncHooksQueuePolicy = getAsStringOrDefault(conf,
+                ASYNC_HOOKS_QUEUE_POLICY_KEY,
+                DEFAULT_ASYNC_HOOKS_QUEUE_POLICY.name());
+
+        ASYNC_HOOKS_QUEUE_POLICY ahqp = DEFAULT_ASYNC_HOOKS_QUEUE_POLICY;
+
+        try {
+            ahqp = ASYNC_HOOKS_QUEUE_POLICY.valueOf(_asyncHooksQueuePolicy);
+        } catch (IllegalArgumentException iar) {
+            LOGGER.warn("wrong value for {}. allowed values are {}; "
+                    + "setting it to {}",
+                    ASYNC_HOOKS_QUEUE_POLICY_KEY,
+                    ASYNC_HOOKS_QUEUE_POLICY.values(),
+                    DEFAULT_ASYNC_HOOKS_QUEUE_POLICY);
+        } finally {
+            asyncHooksQueuePolicy = ahqp;
+        }
+
         bufferSize = getAsIntegerOrDefault(conf, BUFFER_SIZE_KEY, 16384);
         buffersPerRegion = getAsIntegerOrDefault(conf, BUFFERS_PER_REGION_KEY, 20);
         directBuffers = getAsBooleanOrDefault(conf, DIRECT_BUFFERS_KEY, true);
@@ -874,8 +1155,49 @@ public class Configuration {
         eagerRndSliceMinWidht = getAsIntegerOrDefault(conf, EAGER_RND_SLICE_MIN_WIDHT, 1000);
         eagerRndMaxCursors = getAsIntegerOrDefault(conf, EAGER_RND_MAX_CURSORS, 50);
 
+        String _eagerDefaultPolicy = getAsStringOrDefault(conf,
+                EAGER_DEFAULT_POLICY_KEY,
+                DEFAULT_EAGER_POLICY.name());
+
+        EAGER_CURSOR_ALLOCATION_POLICY edp = DEFAULT_EAGER_POLICY;
+
+        try {
+            edp = EAGER_CURSOR_ALLOCATION_POLICY.valueOf(_eagerDefaultPolicy);
+        } catch (IllegalArgumentException iar) {
+            LOGGER.warn("wrong value for {}. allowed values are {}; "
+                    + "setting it to {}",
+                    EAGER_DEFAULT_POLICY_KEY,
+                    EAGER_CURSOR_ALLOCATION_POLICY.values(),
+                    DEFAULT_EAGER_POLICY);
+        } finally {
+            eagerDefaultPolicy = edp;
+        }
+
+        eagerAdaptiveHotPages = getAsIntegerOrDefault(conf, EAGER_ADAPTIVE_HOT_PAGES_KEY, 4);
+
         authTokenEnabled = getAsBooleanOrDefault(conf, AUTH_TOKEN_ENABLED, true);
         authTokenTtl = getAsIntegerOrDefault(conf, AUTH_TOKEN_TTL, 15);
+        authTokenMaxTokens = getAsLongOrDefault(conf, AUTH_TOKEN_MAX_TOKENS, (long) 100_000);
+        authTokenMaxTokensPerUser = getAsIntegerOrDefault(conf, AUTH_TOKEN_MAX_TOKENS_PER_USER, 1);
+
+        String _authTokenStore = getAsStringOrDefault(conf,
+                AUTH_TOKEN_STORE_KEY, DEFAULT_AUTH_TOKEN_STORE.name());
+
+        AUTH_TOKEN_STORE ats = DEFAULT_AUTH_TOKEN_STORE;
+
+        try {
+            ats = AUTH_TOKEN_STORE.valueOf(_authTokenStore);
+        } catch (IllegalArgumentException iar) {
+            LOGGER.warn("wrong value for {}. allowed values are {}; "
+                    + "setting it to {}",
+                    AUTH_TOKEN_STORE_KEY,
+                    AUTH_TOKEN_STORE.values(),
+                    DEFAULT_AUTH_TOKEN_STORE);
+        } finally {
+            authTokenStore = ats;
+        }
+
+        authTokenStoreDb = getAsStringOrDefault(conf, AUTH_TOKEN_STORE_DB_KEY, DEFAULT_AUTH_TOKEN_STORE_DB);
 
         Map<String, Object> etagCheckPolicies = getAsMap(conf, ETAG_CHECK_POLICY_KEY);
 
@@ -1304,6 +1626,27 @@ public class Configuration {
         return workerThreads;
     }
 
+    /**
+     * @return the asyncHooksThreads
+     */
+    public int getAsyncHooksThreads() {
+        return asyncHooksThreads;
+    }
+
+    /**
+     * @return the asyncHooksQueueSize
+     */
+    public int getAsyncHooksQueueSize() {
+        return asyncHooksQueueSize;
+    }
+
+    /**
+     * @return the asyncHooksQueuePolicy
+     */
+    public ASYNC_HOOKS_QUEUE_POLICY getAsyncHooksQueuePolicy() {
+        return asyncHooksQueuePolicy;
+    }
+
     /**
      * @return the bufferSize
      */
@@ -1404,6 +1747,55 @@ public class Configuration {
         return localCacheTtl;
     }
 
+    /**
+     * @return the localCacheInvalidationEnabled
+     */
+    public boolean isLocalCacheInvalidationEnabled() {
+        return localCacheInvalidationEnabled;
+    }
+
+    /**
+     * @return the localCacheInvalidationDb
+     */
+    public String getLocalCacheInvalidationDb() {
+        return localCacheInvalidationDb;
+    }
+
+    /**
+     * @return the responseCacheEnabled
+     */
+    public boolean isResponseCacheEnabled() {
+        return responseCacheEnabled;
+    }
+
+    /**
+     * @return the responseCacheSize
+     */
+    public long getResponseCacheSize() {
+        return responseCacheSize;
+    }
+
+    /**
+     * @return the responseCacheTtl
+     */
+    public long getResponseCacheTtl() {
+        return responseCacheTtl;
+    }
+
+    /**
+     * @return the responseCacheExpirePolicy
+     */
+    public Cache.EXPIRE_POLICY getResponseCacheExpirePolicy() {
+        return responseCacheExpirePolicy;
+    }
+
+    /**
+     * @return the responseCacheMaxEntrySize
+     */
+    public int getResponseCacheMaxEntrySize() {
+        return responseCacheMaxEntrySize;
+    }
+
     /**
      * @return the requestsLimit
      */
@@ -1411,6 +1803,62 @@ public class Configuration {
         return requestsLimit;
     }
 
+    /**
+     * @return the maxRequestBodySize in bytes; a value &lt;= 0 means no limit
+     */
+    public long getMaxRequestBodySize() {
+        return maxRequestBodySize;
+    }
+
+    /**
+     * @return the bulkPostStreaming
+     */
+    public boolean isBulkPostStreaming() {
+        return bulkPostStreaming;
+    }
+
+    /**
+     * @return the bulkWriteBatchSize; a value &lt;= 0 means a single batch
+     */
+    public int getBulkWriteBatchSize() {
+        return bulkWriteBatchSize;
+    }
+
+    /**
+     * @return the bulkWriteOrdered
+     */
+    public boolean isBulkWriteOrdered() {
+        return bulkWriteOrdered;
+    }
+
+    /**
+     * @return the bulkWritePipelined
+     */
+    public boolean isBulkWritePipelined() {
+        return bulkWritePipelined;
+    }
+
+    /**
+     * @return the bulkWriteThreads
+     */
+    public int getBulkWriteThreads() {
+        return bulkWriteThreads;
+    }
+
+    /**
+     * @return the fileUploadStreaming
+     */
+    public boolean isFileUploadStreaming() {
+        return fileUploadStreaming;
+    }
+
+    /**
+     * @return the atomicDocumentWrites
+     */
+    public boolean isAtomicDocumentWrites() {
+        return atomicDocumentWrites;
+    }
+
     /**
      * @return the queryTimeLimit
      */
@@ -1425,6 +1873,13 @@ public class Configuration {
         return aggregationTimeLimit;
     }
 
+    /**
+     * @return the aggregationCacheSize
+     */
+    public int getAggregationCacheSize() {
+        return aggregationCacheSize;
+    }
+
     /**
      * @return the applicationLogicMounts
      */
@@ -1488,6 +1943,20 @@ public class Configuration {
         return eagerPoolSize;
     }
 
+    /**
+     * @return the eagerDefaultPolicy
+     */
+    public EAGER_CURSOR_ALLOCATION_POLICY getEagerDefaultPolicy() {
+        return eagerDefaultPolicy;
+    }
+
+    /**
+     * @return the eagerAdaptiveHotPages
+     */
+    public int getEagerAdaptiveHotPages() {
+        return eagerAdaptiveHotPages;
+    }
+
     /**
      * @return the authTokenEnabled
      */
@@ -1502,6 +1971,34 @@ public class Configuration {
         return authTokenTtl;
     }
 
+    /**
+     * @return the authTokenMaxTokens
+     */
+    public long getAuthTokenMaxTokens() {
+        return authTokenMaxTokens;
+    }
+
+    /**
+     * @return the authTokenMaxTokensPerUser
+     */
+    public int getAuthTokenMaxTokensPerUser() {
+        return authTokenMaxTokensPerUser;
+    }
+
+    /**
+     * @return the authTokenStore
+     */
+    public AUTH_TOKEN_STORE getAuthTokenStore() {
+        return authTokenStore;
+    }
+
+    /**
+     * @return the authTokenStoreDb
+     */
+    public String getAuthTokenStoreDb() {
+        return authTokenStoreDb;
+    }
+
     /**
      * @return the mongoUri
      */
@@ -1523,6 +2020,13 @@ public class Configuration {
         return schemaCacheTtl;
     }
 
+    /**
+     * @return the schemaCompiledValidation
+     */
+    public boolean isSchemaCompiledValidation() {
+        return schemaCompiledValidation;
+    }
+
     /**
      * @return the dbEtagCheckPolicy
      */
@@ -1572,4 +2076,20 @@ public class Configuration {
     public REPRESENTATION_FORMAT getDefaultRepresentationFormat() {
         return defaultRepresentationFromat;
     }
+
+    /**
+     * what happens to an async hook when the queue is full
+     */
+    public enum ASYNC_HOOKS_QUEUE_POLICY {
+        DROP, // the hook is not executed
+        BLOCK // the request waits for room in the queue
+    }
+
+    /**
+     * where the auth tokens are stored
+     */
+    public enum AUTH_TOKEN_STORE {
+        LOCAL, // in a bounded in-memory cache
+        MONGO // in a collection, shared between nodes and surviving restarts
+    }
 }
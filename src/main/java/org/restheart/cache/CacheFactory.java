@@ -43,6 +43,21 @@ public class CacheFactory {
         return new GuavaLoadingCache<>(size, expirePolicy, ttl, loader);
     }
     
+    /**
+     * 
+     * @param <K> the type of the cache keys
+     * @param <V> the type of the cached values
+     * @param size the size of the cache
+     * @param expirePolicy specifies how and when each entry should be automatically removed from the cache
+     * @param ttl Time To Live in milliseconds
+     * @param loader the cache loader used to obtain new values
+     * @param remover the cache remover to invoke each time a value is removed from the cache
+     * @return the cache
+    */
+    public static <K,V> LoadingCache<K,V> createLocalLoadingCache(long size, Cache.EXPIRE_POLICY expirePolicy, long ttl, Function<K,V> loader, Consumer<Map.Entry<K, Optional<V>>> remover) {
+        return new GuavaLoadingCache<>(size, expirePolicy, ttl, loader, remover);
+    }
+    
     /**
      * 
      * @param <K> the type of the cache keys
@@ -20,9 +20,11 @@ package org.restheart.cache.impl;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalNotification;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import org.restheart.cache.Cache.EXPIRE_POLICY;
 
@@ -55,6 +57,29 @@ public class GuavaLoadingCache<K, V> implements org.restheart.cache.LoadingCache
         });
     }
 
+    public GuavaLoadingCache(long size, EXPIRE_POLICY expirePolicy, long ttl, Function<K, V> loader, Consumer<Map.Entry<K, Optional<V>>> remover) {
+        CacheBuilder builder = CacheBuilder.newBuilder();
+
+        builder.maximumSize(size);
+
+        if (ttl > 0 && expirePolicy == EXPIRE_POLICY.AFTER_WRITE) {
+            builder.expireAfterWrite(ttl, TimeUnit.MILLISECONDS);
+        } else if (ttl > 0 && expirePolicy == EXPIRE_POLICY.AFTER_READ) {
+            builder.expireAfterAccess(ttl, TimeUnit.MILLISECONDS);
+        }
+
+        wrapped = builder
+                .removalListener((RemovalNotification notification) -> {
+                    remover.accept(notification);
+                })
+                .build(new CacheLoader<K, Optional<V>>() {
+                    @Override
+                    public Optional<V> load(K key) throws Exception {
+                        return Optional.ofNullable(loader.apply(key));
+                    }
+                });
+    }
+
     @Override
     public Optional<V> get(K key) {
         return wrapped.getIfPresent(key);
@@ -17,7 +17,10 @@
  */
 package org.restheart.db;
 
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.bulk.BulkWriteResult;
+import java.util.Collections;
+import java.util.List;
 
 /**
  *
@@ -25,11 +28,27 @@ import com.mongodb.bulk.BulkWriteResult;
  */
 public class BulkOperationResult extends OperationResult {
     private final BulkWriteResult bulkResult;
+    private final int batches;
+    private final List<BatchError> batchErrors;
     
     public BulkOperationResult(int httpCode, Object etag, BulkWriteResult bulkResult) {
+        this(httpCode, etag, bulkResult, 1, Collections.emptyList());
+    }
+
+    /**
+     *
+     * @param httpCode
+     * @param etag
+     * @param bulkResult the result aggregated from all the batches
+     * @param batches the number of bulkWrite batches
+     * @param batchErrors the errors of the failed batches
+     */
+    public BulkOperationResult(int httpCode, Object etag, BulkWriteResult bulkResult, int batches, List<BatchError> batchErrors) {
         super(httpCode, etag);
         
         this.bulkResult = bulkResult;
+        this.batches = batches;
+        this.batchErrors = batchErrors;
     }
 
     /**
@@ -38,4 +57,84 @@ public class BulkOperationResult extends OperationResult {
     public BulkWriteResult getBulkResult() {
         return bulkResult;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the number of bulkWrite batches
+     */
+    public int getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return the errors of the failed batches
+     */
+    public List<BatchError> getBatchErrors() {
+        return batchErrors;
+    }
+
+    /**
+     * the error of a bulkWrite batch; either the write errors of its
+     * documents or the error that failed the whole batch
+     */
+    public static class BatchError {
+        private final int batch;
+        private final List<BulkWriteError> writeErrors;
+        private final int code;
+        private final int httpStatus;
+        private final String message;
+
+        /**
+         *
+         * @param batch the index of the batch
+         * @param writeErrors the write errors, with the index of the document
+         * in the whole request
+         * @param code the error code if the whole batch failed, otherwise 0
+         * @param httpStatus the http status if the whole batch failed,
+         * otherwise 0
+         * @param message the error message if the whole batch failed,
+         * otherwise null
+         */
+        public BatchError(int batch, List<BulkWriteError> writeErrors, int code, int httpStatus, String message) {
+            this.batch = batch;
+            this.writeErrors = writeErrors;
+            this.code = code;
+            this.httpStatus = httpStatus;
+            this.message = message;
+        }
+
+        /**
+         * @return the index of the batch
+         */
+        public int getBatch() {
+            return batch;
+        }
+
+        /**
+         * @return the write errors
+         */
+        public List<BulkWriteError> getWriteErrors() {
+            return writeErrors;
+        }
+
+        /**
+         * @return the error code if the whole batch failed
+         */
+        public int getCode() {
+            return code;
+        }
+
+        /**
+         * @return the http status if the whole batch failed
+         */
+        public int getHttpStatus() {
+            return httpStatus;
+        }
+
+        /**
+         * @return the error message if the whole batch failed
+         */
+        public String getMessage() {
+            return message;
+        }
+    }
+}
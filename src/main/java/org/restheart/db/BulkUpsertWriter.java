@@ -0,0 +1,285 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.db;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.WriteModel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import org.bson.BsonDocument;
+import org.bson.types.ObjectId;
+import org.restheart.utils.HttpStatus;
+import org.restheart.utils.ResponseHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Upserts documents with bulkWrite commands of at most batchSize documents,
+ * so that only the current batch of write models is held in memory.
+ *
+ * The results of the batches are aggregated; a failed batch does not throw
+ * but is reported in the BulkOperationResult. With ordered writes, the
+ * batches after a failed one are not written.
+ *
+ * If an executor is given, the batches are written asynchronously (one at a
+ * time, to preserve the order) while the next one is filled. The calling
+ * thread waits for them, so the executor must not be the one running the
+ * calling thread (see BulkWriteExecutorSingleton).
+ *
+ * Not thread safe: add() and finish() must be called by the same thread.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class BulkUpsertWriter {
+
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(BulkUpsertWriter.class);
+
+    private final MongoCollection<BsonDocument> coll;
+    private final BsonDocument filter;
+    private final BsonDocument shardKeys;
+    private final int batchSize;
+    private final boolean ordered;
+    private final Executor executor;
+
+    private final ObjectId etag = new ObjectId();
+
+    private List<WriteModel<BsonDocument>> batch = new ArrayList<>();
+    private CompletableFuture<Void> pending = null;
+
+    // the number of documents passed to the batches sent so far
+    private int sent = 0;
+    private int batches = 0;
+
+    // written by the batch being written, read after waiting for it
+    private int inserted = 0;
+    private int matched = 0;
+    private int removed = 0;
+    private Integer modified = 0;
+    private final List<BulkWriteUpsert> upserts = new ArrayList<>();
+    private final List<BulkOperationResult.BatchError> errors
+            = new ArrayList<>();
+
+    /**
+     *
+     * @param coll
+     * @param filter the filter to add to the upsert filters
+     * @param shardKeys
+     * @param batchSize the max number of documents per bulkWrite, &lt;= 0
+     * means a single bulkWrite
+     * @param ordered
+     * @param executor if not null, the batches are written with it
+     */
+    public BulkUpsertWriter(
+            MongoCollection<BsonDocument> coll,
+            BsonDocument filter,
+            BsonDocument shardKeys,
+            int batchSize,
+            boolean ordered,
+            Executor executor) {
+        this.coll = coll;
+        this.filter = filter;
+        this.shardKeys = shardKeys;
+        this.batchSize = batchSize;
+        this.ordered = ordered;
+        this.executor = executor;
+    }
+
+    /**
+     * adds the document to the current batch, writing the batch if full
+     *
+     * @param document
+     */
+    public void add(BsonDocument document) {
+        batch.add(DAOUtils.getUpsertModel(document, filter, shardKeys, etag));
+
+        if (batchSize > 0 && batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * @return the number of documents added so far
+     */
+    public int getCount() {
+        return sent + batch.size();
+    }
+
+    /**
+     * @return the number of batches sent so far
+     */
+    public int getBatches() {
+        return batches;
+    }
+
+    /**
+     * writes the documents of the current batch and waits for all the batches
+     * to complete
+     *
+     * @return the result aggregated from all the batches
+     */
+    public BulkOperationResult finish() {
+        if (!batch.isEmpty()) {
+            flush();
+        }
+
+        await();
+
+        return getResult();
+    }
+
+    /**
+     * drops the documents of the current batch and waits for the batches
+     * already sent to complete; the error is reported in the result.
+     *
+     * @param httpStatus the http status of the error
+     * @param message the reason of the abort
+     * @return the result aggregated from the batches already sent
+     */
+    public BulkOperationResult abort(int httpStatus, String message) {
+        int dropped = batch.size();
+        batch = new ArrayList<>();
+
+        await();
+
+        errors.add(new BulkOperationResult.BatchError(
+                batches,
+                new ArrayList<>(),
+                0,
+                httpStatus,
+                message
+                + ", the documents from index " + sent
+                + " were not written"
+                + (dropped > 0 ? " (" + dropped + " already read)" : "")));
+
+        return getResult();
+    }
+
+    private BulkOperationResult getResult() {
+        return new BulkOperationResult(
+                errors.isEmpty()
+                ? HttpStatus.SC_OK
+                : HttpStatus.SC_MULTI_STATUS,
+                etag,
+                BulkWriteResult.acknowledged(
+                        inserted,
+                        matched,
+                        removed,
+                        modified,
+                        upserts),
+                batches,
+                errors);
+    }
+
+    private void flush() {
+        // at most one batch is written at a time, to preserve the order
+        await();
+
+        final List<WriteModel<BsonDocument>> toWrite = batch;
+        final int offset = sent;
+        final int index = batches;
+
+        batch = new ArrayList<>();
+        sent += toWrite.size();
+        batches++;
+
+        if (ordered && !errors.isEmpty()) {
+            LOGGER.debug("skipping batch {}, a previous ordered batch failed",
+                    index);
+            return;
+        }
+
+        if (executor == null) {
+            write(toWrite, offset, index);
+        } else {
+            pending = CompletableFuture.runAsync(
+                    () -> write(toWrite, offset, index),
+                    executor);
+        }
+    }
+
+    private void await() {
+        if (pending != null) {
+            CompletableFuture<Void> _pending = pending;
+            pending = null;
+            _pending.join();
+        }
+    }
+
+    private void write(
+            List<WriteModel<BsonDocument>> toWrite,
+            int offset,
+            int index) {
+        try {
+            aggregate(coll.bulkWrite(toWrite,
+                    new BulkWriteOptions().ordered(ordered)), offset);
+        } catch (MongoBulkWriteException mbwe) {
+            aggregate(mbwe.getWriteResult(), offset);
+
+            errors.add(new BulkOperationResult.BatchError(
+                    index,
+                    mbwe.getWriteErrors().stream()
+                            .map(e -> new BulkWriteError(
+                                    e.getCode(),
+                                    e.getMessage(),
+                                    e.getDetails(),
+                                    e.getIndex() + offset))
+                            .collect(Collectors.toList()),
+                    0,
+                    0,
+                    null));
+        } catch (MongoException me) {
+            LOGGER.warn("error writing batch {} of bulk upsert", index, me);
+
+            errors.add(new BulkOperationResult.BatchError(
+                    index,
+                    new ArrayList<>(),
+                    me.getCode(),
+                    ResponseHelper.getHttpStatusFromErrorCode(me.getCode()),
+                    me.getMessage()));
+        }
+    }
+
+    private void aggregate(BulkWriteResult result, int offset) {
+        if (!result.wasAcknowledged()) {
+            return;
+        }
+
+        inserted += result.getInsertedCount();
+        matched += result.getMatchedCount();
+        removed += result.getDeletedCount();
+
+        if (modified != null && result.isModifiedCountAvailable()) {
+            modified += result.getModifiedCount();
+        } else {
+            modified = null;
+        }
+
+        result.getUpserts().forEach(u -> upserts.add(
+                new BulkWriteUpsert(u.getIndex() + offset, u.getId())));
+    }
+}
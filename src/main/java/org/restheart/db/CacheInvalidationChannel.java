@@ -0,0 +1,231 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.db;
+
+import com.mongodb.CursorType;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.CreateCollectionOptions;
+import java.util.function.Consumer;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Broadcasts the invalidations of the db and collection properties caches to
+ * all the RESTHeart nodes sharing the same MongoDB.
+ *
+ * Messages are inserted in a capped collection that every node tails with a
+ * tailable await cursor. Change streams would be the natural choice, but
+ * they require MongoDB 3.6 and a newer driver; capped collections work with
+ * any server version.
+ *
+ * Messages published by a node are ignored by the node itself. A lost
+ * message (i.e. while a node is reconnecting and the capped collection rolls
+ * over) is recovered by the cache TTL.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class CacheInvalidationChannel {
+
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(CacheInvalidationChannel.class);
+
+    /**
+     * the name of the capped collection
+     */
+    public static final String COLLECTION_NAME = "_cache_invalidations";
+
+    /**
+     * the key of the db name in the messages
+     */
+    public static final String DB_KEY = "db";
+
+    /**
+     * the key of the collection name in the messages, missing for db
+     * invalidations
+     */
+    public static final String COLL_KEY = "coll";
+
+    private static final String _ID = "_id";
+    private static final String NODE_KEY = "node";
+
+    private static final long CAPPED_SIZE_BYTES = 1024 * 1024;
+    private static final long CAPPED_MAX_DOCUMENTS = 1000;
+    private static final long RETRY_DELAY_MSECS = 1000;
+
+    private final MongoCollection<BsonDocument> coll;
+    private final Consumer<BsonDocument> listener;
+
+    private final BsonString nodeId = new BsonString(new ObjectId().toHexString());
+
+    private volatile boolean running = false;
+    private BsonValue lastSeen = null;
+
+    /**
+     *
+     * @param client
+     * @param dbName the db of the capped collection
+     * @param listener receives the messages published by the other nodes
+     */
+    public CacheInvalidationChannel(
+            MongoClient client,
+            String dbName,
+            Consumer<BsonDocument> listener) {
+        MongoDatabase db = client.getDatabase(dbName);
+
+        createCappedCollection(db);
+
+        this.coll = db.getCollection(COLLECTION_NAME, BsonDocument.class);
+        this.listener = listener;
+    }
+
+    /**
+     * starts tailing the channel
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        running = true;
+
+        // messages already in the channel are not delivered
+        BsonDocument last = coll.find()
+                .sort(new BsonDocument("$natural", new BsonInt32(-1)))
+                .limit(1)
+                .first();
+
+        lastSeen = last == null ? null : last.get(_ID);
+
+        Thread tailer = new Thread(this::tail, "cache-invalidation-tailer");
+        tailer.setDaemon(true);
+        tailer.start();
+    }
+
+    /**
+     * stops tailing the channel
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * publishes the invalidation of the db properties
+     *
+     * @param dbName
+     */
+    public void publish(String dbName) {
+        publish(new BsonDocument(DB_KEY, new BsonString(dbName)));
+    }
+
+    /**
+     * publishes the invalidation of the collection properties
+     *
+     * @param dbName
+     * @param collName
+     */
+    public void publish(String dbName, String collName) {
+        publish(new BsonDocument(DB_KEY, new BsonString(dbName))
+                .append(COLL_KEY, new BsonString(collName)));
+    }
+
+    private void publish(BsonDocument message) {
+        message.put(_ID, new BsonObjectId());
+        message.put(NODE_KEY, nodeId);
+
+        try {
+            coll.insertOne(message);
+        } catch (MongoException me) {
+            // other nodes will get the update when their cache entry expires
+            LOGGER.warn("error publishing cache invalidation {}",
+                    message.toJson(), me);
+        }
+    }
+
+    private void tail() {
+        while (running) {
+            // after a reconnection, skip the messages already seen
+            boolean skipping = lastSeen != null
+                    && coll.count(new BsonDocument(_ID, lastSeen)) > 0;
+
+            try (MongoCursor<BsonDocument> cursor = coll.find()
+                    .cursorType(CursorType.TailableAwait)
+                    .noCursorTimeout(true)
+                    .iterator()) {
+                while (running && cursor.hasNext()) {
+                    BsonDocument message = cursor.next();
+                    BsonValue id = message.get(_ID);
+
+                    if (skipping) {
+                        skipping = !id.equals(lastSeen);
+                        continue;
+                    }
+
+                    lastSeen = id;
+
+                    if (!nodeId.equals(message.get(NODE_KEY))) {
+                        LOGGER.trace("got cache invalidation {}",
+                                message.toJson());
+
+                        listener.accept(message);
+                    }
+                }
+            } catch (Throwable t) {
+                LOGGER.warn("error tailing the cache invalidation channel, "
+                        + "retrying in {} msecs", RETRY_DELAY_MSECS, t);
+            }
+
+            // the cursor dies immediately if the collection is empty
+            try {
+                Thread.sleep(RETRY_DELAY_MSECS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static void createCappedCollection(MongoDatabase db) {
+        for (String name : db.listCollectionNames()) {
+            if (COLLECTION_NAME.equals(name)) {
+                return;
+            }
+        }
+
+        try {
+            db.createCollection(COLLECTION_NAME, new CreateCollectionOptions()
+                    .capped(true)
+                    .sizeInBytes(CAPPED_SIZE_BYTES)
+                    .maxDocuments(CAPPED_MAX_DOCUMENTS));
+        } catch (MongoCommandException mce) {
+            // created meanwhile by another node
+            LOGGER.debug("capped collection {} not created",
+                    COLLECTION_NAME, mce);
+        }
+    }
+}
@@ -26,8 +26,13 @@ import com.mongodb.client.MongoDatabase;
 import static com.mongodb.client.model.Filters.eq;
 import com.mongodb.util.JSONParseException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import org.bson.BsonArray;
 import org.bson.BsonDocument;
 import org.bson.BsonInt32;
 import org.bson.BsonObjectId;
@@ -37,6 +42,8 @@ import org.bson.Document;
 import org.bson.json.JsonParseException;
 import org.bson.types.ObjectId;
 import org.restheart.Bootstrapper;
+import org.restheart.handlers.RequestContext;
+import org.restheart.handlers.injectors.LocalCachesSingleton;
 import org.restheart.utils.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -162,6 +169,49 @@ class CollectionDAO {
 
         ArrayList<BsonDocument> ret = new ArrayList<>();
 
+        try (MongoCursor<BsonDocument> mc = getCollectionDataCursor(
+                coll,
+                page,
+                pagesize,
+                sortBy,
+                filters,
+                keys,
+                eager)) {
+            int _pagesize = pagesize;
+
+            while (_pagesize > 0 && mc.hasNext()) {
+                ret.add(mc.next());
+                _pagesize--;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns a cursor positioned at the first document of the requested page.
+     * The caller is in charge of reading at most pagesize documents and of
+     * closing the cursor.
+     *
+     * @param coll
+     * @param page
+     * @param pagesize
+     * @param sortBy
+     * @param filters
+     * @param keys
+     * @param eager
+     * @return the cursor positioned at the first document of the page
+     * @throws JSONParseException
+     */
+    MongoCursor<BsonDocument> getCollectionDataCursor(
+            final MongoCollection<BsonDocument> coll,
+            final int page,
+            final int pagesize,
+            final BsonDocument sortBy,
+            final BsonDocument filters,
+            final BsonDocument keys,
+            CursorPool.EAGER_CURSOR_ALLOCATION_POLICY eager)
+            throws JSONParseException {
         int toskip = pagesize * (page - 1);
 
         SkippedFindIterable _cursor = null;
@@ -179,25 +229,19 @@ class CollectionDAO {
                     eager);
         }
 
-        int _pagesize = pagesize;
+        MongoCursor<BsonDocument> mc;
 
         // in case there is not cursor in the pool to reuse
-        FindIterable<BsonDocument> cursor;
-
         if (_cursor == null) {
-            cursor = getFindIterable(coll, sortBy, filters, keys);
+            FindIterable<BsonDocument> cursor
+                    = getFindIterable(coll, sortBy, filters, keys);
             cursor.skip(toskip);
 
-            MongoCursor<BsonDocument> mc = cursor.iterator();
-
-            while (_pagesize > 0 && mc.hasNext()) {
-                ret.add(mc.next());
-                _pagesize--;
-            }
+            mc = cursor.iterator();
         } else {
             int alreadySkipped;
 
-            cursor = _cursor.getFindIterable();
+            FindIterable<BsonDocument> cursor = _cursor.getFindIterable();
             alreadySkipped = _cursor.getAlreadySkipped();
 
             long startSkipping = 0;
@@ -212,7 +256,7 @@ class CollectionDAO {
                     alreadySkipped,
                     toskip);
 
-            MongoCursor<BsonDocument> mc = cursor.iterator();
+            mc = cursor.iterator();
 
             while (toskip > alreadySkipped && mc.hasNext()) {
                 mc.next();
@@ -224,11 +268,6 @@ class CollectionDAO {
                         toskip - cursorSkips,
                         System.currentTimeMillis() - startSkipping);
             }
-
-            while (_pagesize > 0 && mc.hasNext()) {
-                ret.add(mc.next());
-                _pagesize--;
-            }
         }
 
         // the pool is populated here because, skipping with cursor.next() is heavy operation
@@ -237,7 +276,7 @@ class CollectionDAO {
                 new CursorPoolEntryKey(coll, sortBy, filters, keys, toskip, 0),
                 eager);
 
-        return ret;
+        return mc;
     }
 
     /**
@@ -268,6 +307,54 @@ class CollectionDAO {
         return props;
     }
 
+    /**
+     * Returns the properties documents of the given collections with a single
+     * query. The collections must exist, i.e. their names come from the db
+     * collections list.
+     *
+     * @param dbName the database name of the collections
+     * @param collNames the collection names
+     * @return the collection properties documents by collection name
+     */
+    Map<String, BsonDocument> getCollectionsProps(
+            final String dbName,
+            final List<String> collNames) {
+        Map<String, BsonDocument> ret = new HashMap<>();
+
+        if (collNames.isEmpty()) {
+            return ret;
+        }
+
+        BsonArray ids = new BsonArray();
+
+        collNames.forEach(collName -> ids.add(
+                new BsonString("_properties.".concat(collName))));
+
+        MongoCollection<BsonDocument> propsColl
+                = getCollection(dbName, "_properties");
+
+        List<BsonDocument> propsList = propsColl
+                .find(new BsonDocument("_id", new BsonDocument("$in", ids)))
+                .into(new ArrayList<>());
+
+        propsList.forEach(props -> {
+            String collName = props.getString("_id").getValue()
+                    .substring("_properties.".length());
+
+            props.append("_id", new BsonString(collName));
+
+            ret.put(collName, props);
+        });
+
+        // collections without properties document
+        collNames.stream()
+                .filter(collName -> !ret.containsKey(collName))
+                .forEach(collName -> ret.put(collName,
+                new BsonDocument("_id", new BsonString(collName))));
+
+        return ret;
+    }
+
     /**
      * Returns true if the collection exists
      *
@@ -276,6 +363,30 @@ class CollectionDAO {
      * @return true if the collection exists
      */
     public boolean doesCollectionExist(String dbName, String collName) {
+        // the cached list does not include the reserved collections
+        if (LocalCachesSingleton.isEnabled()
+                && !RequestContext.isReservedResourceCollection(collName)) {
+            if (Collections.binarySearch(LocalCachesSingleton.getInstance()
+                    .getCollectionNames(dbName), collName) >= 0) {
+                return true;
+            }
+
+            // the collection could have been created bypassing the DAOs
+            // (e.g. implicitly by a write) or on another node
+            if (isCollectionListed(dbName, collName)) {
+                LocalCachesSingleton.getInstance()
+                        .invalidateCollectionNames(dbName);
+
+                return true;
+            }
+
+            return false;
+        }
+
+        return isCollectionListed(dbName, collName);
+    }
+
+    private boolean isCollectionListed(String dbName, String collName) {
         MongoCursor<String> dbCollections = client
                 .getDatabase(dbName)
                 .listCollectionNames()
@@ -20,16 +20,18 @@ package org.restheart.db;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.mongodb.client.FindIterable;
 import static java.lang.Thread.MIN_PRIORITY;
-import java.util.Comparator;
-import java.util.Objects;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.TreeMap;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Predicate;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 import org.bson.BsonDocument;
 import static org.fusesource.jansi.Ansi.Color.GREEN;
@@ -44,6 +46,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Pool of cursors already skipped to far pages, so that requests to such
+ * pages do not pay for the skips.
+ *
+ * With the LINEAR and RANDOM policies the cursors are created in slices
+ * around the requested page or across the whole collection; with the ADAPTIVE
+ * policy the pool learns which pages are actually requested (see
+ * CursorPoolDemand) and pre-creates cursors only for them, without exceeding
+ * the pool size.
+ *
+ * Hits, misses, populator rejections and saved skips are counted per
+ * namespace, see getStats(); they are returned by the CursorPoolStatsHandler
+ * (/_logic/cpstats by default).
  *
  * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
  */
@@ -98,16 +112,29 @@ public class CursorPool {
     private final int SKIP_SLICE_RND_MAX_CURSORS
             = Bootstrapper.getConfiguration().getEagerRndMaxCursors();
 
+    private final int ADAPTIVE_HOT_PAGES
+            = Bootstrapper.getConfiguration().getEagerAdaptiveHotPages();
+
     private final Cache<CursorPoolEntryKey, FindIterable<BsonDocument>> cache;
+    private final CursorPoolIndex index = new CursorPoolIndex();
     private final LoadingCache<CursorPoolEntryKey, Long> collSizes;
 
+    private final Cache<CursorPoolIndex.GroupKey, CursorPoolDemand> demands
+            = CacheFactory.createLocalCache(
+                    1000,
+                    Cache.EXPIRE_POLICY.AFTER_READ,
+                    TTL);
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
     private CursorPool(DbsDAO dbsDAO) {
         this.dbsDAO = dbsDAO;
 
         cache = CacheFactory.createLocalCache(
                 POOL_SIZE,
                 Cache.EXPIRE_POLICY.AFTER_READ,
-                TTL);
+                TTL,
+                entry -> index.remove(entry.getKey()));
 
         collSizes = CacheFactory.createLocalLoadingCache(100,
                 org.restheart.cache.Cache.EXPIRE_POLICY.AFTER_WRITE,
@@ -127,6 +154,10 @@ public class CursorPool {
                             LOGGER.debug("db cursor pool size: {}\t{}", s, c);
                         });
 
+                        getStats().forEach((ns, s) -> {
+                            LOGGER.debug("db cursor pool stats: {}\t{}", ns, s);
+                        });
+
                         LOGGER.trace(""
                                 + "db cursor pool entries: {}",
                                 cache.asMap().keySet());
@@ -134,7 +165,7 @@ public class CursorPool {
         }
     }
 
-    public synchronized SkippedFindIterable get(
+    public SkippedFindIterable get(
             CursorPoolEntryKey key,
             EAGER_CURSOR_ALLOCATION_POLICY allocationPolicy) {
         if (key.getSkipped() < SKIP_SLICE_LINEAR_WIDTH) {
@@ -145,38 +176,33 @@ public class CursorPool {
             return null;
         }
 
-        // return the dbcursor with the closest skips to the request
-        Optional<CursorPoolEntryKey> _bestKey = cache.asMap().keySet().stream()
-                .filter(cursorsPoolFilterGte(key))
-                .sorted(Comparator.comparingInt(CursorPoolEntryKey::getSkipped).reversed())
-                .findFirst();
+        // claim the dbcursor with the closest skips to the request
+        int minSkipped = key.getSkipped()
+                - (int) (MIN_SKIP_DISTANCE_PERCENTAGE * key.getSkipped());
+
+        Map.Entry<CursorPoolEntryKey, FindIterable<BsonDocument>> _best
+                = index.claimFloor(key, minSkipped);
 
         SkippedFindIterable ret;
 
-        if (_bestKey.isPresent()) {
-            Optional<FindIterable<BsonDocument>> _dbcur
-                    = cache.get(_bestKey.get());
-
-            if (_dbcur != null && _dbcur.isPresent()) {
-                ret = new SkippedFindIterable(
-                        _dbcur.get(),
-                        _bestKey.get().getSkipped());
-                cache.invalidate(_bestKey.get());
-
-                LOGGER.debug("{} cursor in pool. id {}, saving {} skips",
-                        ansi().fg(GREEN).bold().a("found").reset().toString(),
-                        _bestKey.get().getCursorId(),
-                        key.getSkipped(),
-                        _bestKey.get().getSkipped());
-            } else {
-                ret = null;
-
-                LOGGER.debug("{} cursor in pool.",
-                        ansi().fg(RED).bold().a("no").reset().toString());
-            }
+        if (_best != null) {
+            cache.invalidate(_best.getKey());
+
+            stats(key).hit(_best.getKey().getSkipped());
+
+            ret = new SkippedFindIterable(
+                    _best.getValue(),
+                    _best.getKey().getSkipped());
+
+            LOGGER.debug("{} cursor in pool. id {}, saving {} skips",
+                    ansi().fg(GREEN).bold().a("found").reset().toString(),
+                    _best.getKey().getCursorId(),
+                    _best.getKey().getSkipped());
         } else {
             ret = null;
 
+            stats(key).miss();
+
             LOGGER.debug(ansi().fg(RED).bold().a("no").reset().toString()
                     + " cursor in pool.");
         }
@@ -191,6 +217,117 @@ public class CursorPool {
             populateCacheLinear(key);
         } else if (allocationPolicy == EAGER_CURSOR_ALLOCATION_POLICY.RANDOM) {
             populateCacheRandom(key);
+        } else if (allocationPolicy == EAGER_CURSOR_ALLOCATION_POLICY.ADAPTIVE) {
+            populateCacheAdaptive(key);
+        }
+    }
+
+    /**
+     * @return the statistics of the pool by namespace
+     */
+    public Map<String, Stats> getStats() {
+        return Collections.unmodifiableMap(new TreeMap<>(stats));
+    }
+
+    /**
+     * @return the number of cursors in the pool
+     */
+    public long getSize() {
+        return cache.asMap().size();
+    }
+
+    /**
+     * @return the max number of cursors in the pool
+     */
+    public long getMaxSize() {
+        return POOL_SIZE;
+    }
+
+    private Stats stats(CursorPoolEntryKey key) {
+        return stats.computeIfAbsent(
+                key.getCollection().getNamespace().getFullName(),
+                ns -> new Stats());
+    }
+
+    private void populateCacheAdaptive(CursorPoolEntryKey key) {
+        CursorPoolIndex.GroupKey groupKey = new CursorPoolIndex.GroupKey(key);
+
+        CursorPoolDemand demand;
+
+        Optional<CursorPoolDemand> _demand = demands.get(groupKey);
+
+        if (_demand == null || !_demand.isPresent()) {
+            // a concurrent request can replace it, losing one record
+            demand = new CursorPoolDemand();
+            demands.put(groupKey, demand);
+        } else {
+            demand = _demand.get();
+        }
+
+        demand.record(key.getSkipped());
+
+        // cursors with less skips are not used, see get()
+        List<Integer> hotSkips = demand.getHotSkips(ADAPTIVE_HOT_PAGES);
+
+        hotSkips.removeIf(skips -> skips < SKIP_SLICE_LINEAR_WIDTH);
+
+        if (hotSkips.isEmpty()) {
+            return;
+        }
+
+        try {
+            POOL_POPULATOR.submit(() -> {
+                for (int skips : hotSkips) {
+                    // bounded, not to evict the cursors of other groups
+                    if (index.size() >= POOL_SIZE) {
+                        return;
+                    }
+
+                    CursorPoolEntryKey sliceKey = new CursorPoolEntryKey(
+                            key.getCollection(),
+                            key.getSort(),
+                            key.getFilter(),
+                            key.getKeys(),
+                            skips,
+                            -1);
+
+                    if (getSliceHeight(sliceKey) > 0) {
+                        continue;
+                    }
+
+                    FindIterable<BsonDocument> cursor = dbsDAO
+                            .getFindIterable(
+                                    key.getCollection(),
+                                    key.getSort(),
+                                    key.getFilter(),
+                                    key.getKeys())
+                            .skip(skips);
+
+                    cursor.iterator(); // this forces the actual skipping
+
+                    CursorPoolEntryKey newkey = new CursorPoolEntryKey(
+                            key.getCollection(),
+                            key.getSort(),
+                            key.getFilter(),
+                            key.getKeys(),
+                            skips,
+                            System.nanoTime());
+
+                    put(newkey, cursor);
+
+                    stats(key).prewarmed();
+
+                    LOGGER.debug("{} cursor in pool (prewarmed): {}",
+                            ansi().fg(YELLOW).bold().a("new").reset()
+                                    .toString(),
+                            newkey);
+                }
+            });
+        } catch (RejectedExecutionException rej) {
+            stats(key).rejected();
+
+            LOGGER.trace("prewarm cursor pool {}",
+                    ansi().fg(RED).bold().a("rejected").reset().toString());
         }
     }
 
@@ -215,7 +352,7 @@ public class CursorPool {
                                     key.getCollection(),
                                     key.getSort(),
                                     key.getFilter(),
-                                    key.getFilter(),
+                                    key.getKeys(),
                                     sliceSkips,
                                     -1);
 
@@ -246,7 +383,7 @@ public class CursorPool {
                                 sliceSkips,
                                 System.nanoTime());
 
-                        cache.put(newkey, cursor);
+                        put(newkey, cursor);
 
                         LOGGER.debug("{} cursor in pool: {}",
                                 ansi().fg(YELLOW).bold().a("new").reset()
@@ -258,6 +395,8 @@ public class CursorPool {
                 }
             });
         } catch (RejectedExecutionException rej) {
+            stats(key).rejected();
+
             // this happens if the thread executor (whose pool size is 1)
             // is already creating a cursor
             LOGGER.trace("creation of new cursor pool {}",
@@ -319,7 +458,7 @@ public class CursorPool {
                                 key.getKeys(),
                                 sliceSkips,
                                 System.nanoTime());
-                        cache.put(newkey, cursor);
+                        put(newkey, cursor);
 
                         LOGGER.debug("{} cursor in pool (copied): {}",
                                 ansi().fg(YELLOW).bold().a("new").reset()
@@ -329,6 +468,8 @@ public class CursorPool {
                 }
             });
         } catch (RejectedExecutionException rej) {
+            stats(key).rejected();
+
             LOGGER.debug("populate cursor pool {}",
                     ansi().fg(RED).bold().a("rejected").reset().toString());
         }
@@ -336,9 +477,7 @@ public class CursorPool {
     }
 
     private long getSliceHeight(CursorPoolEntryKey key) {
-        long ret = cache.asMap().keySet().stream()
-                .filter(cursorsPoolFilterEq(key))
-                .count();
+        long ret = index.count(key);
 
         LOGGER.trace(
                 "cursor in pool with skips {} are {}",
@@ -348,36 +487,12 @@ public class CursorPool {
         return ret;
     }
 
-    private Predicate<? super CursorPoolEntryKey> cursorsPoolFilterEq(
-            CursorPoolEntryKey requestCursor) {
-        return poolCursor
-                -> Objects.equals(poolCursor.getCollection()
-                        .getNamespace(),
-                        requestCursor.getCollection().getNamespace())
-                && Objects.equals(poolCursor.getFilter(),
-                        requestCursor.getFilter())
-                && Objects.equals(poolCursor.getSort(),
-                        requestCursor.getSort())
-                && Objects.equals(poolCursor.getKeys(),
-                        requestCursor.getKeys())
-                && poolCursor.getSkipped() == requestCursor.getSkipped();
-    }
-
-    private Predicate<? super CursorPoolEntryKey> cursorsPoolFilterGte(
-            CursorPoolEntryKey requestCursor) {
-        return poolCursor
-                -> Objects.equals(poolCursor.getCollection().getNamespace(),
-                        requestCursor.getCollection().getNamespace())
-                && Objects.equals(poolCursor.getFilter(),
-                        requestCursor.getFilter())
-                && Objects.equals(poolCursor.getSort(),
-                        requestCursor.getSort())
-                && Objects.equals(poolCursor.getKeys(),
-                        requestCursor.getKeys())
-                && poolCursor.getSkipped() <= requestCursor.getSkipped()
-                && requestCursor.getSkipped() - poolCursor.getSkipped()
-                <= MIN_SKIP_DISTANCE_PERCENTAGE
-                * requestCursor.getSkipped();
+    private void put(
+            CursorPoolEntryKey key,
+            FindIterable<BsonDocument> cursor) {
+        // index first, the cache removal listener keeps it in sync afterwards
+        index.put(key, cursor);
+        cache.put(key, cursor);
     }
 
     private TreeMap<String, Long> getCacheSizes() {
@@ -401,6 +516,92 @@ public class CursorPool {
     public enum EAGER_CURSOR_ALLOCATION_POLICY {
         LINEAR,
         RANDOM,
+        ADAPTIVE,
         NONE
     }
+
+    /**
+     * the counters of the pool for a namespace
+     */
+    public static class Stats {
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder rejections = new LongAdder();
+        private final LongAdder prewarmed = new LongAdder();
+        private final LongAdder savedSkips = new LongAdder();
+
+        void hit(int skips) {
+            hits.increment();
+            savedSkips.add(skips);
+        }
+
+        void miss() {
+            misses.increment();
+        }
+
+        void rejected() {
+            rejections.increment();
+        }
+
+        void prewarmed() {
+            prewarmed.increment();
+        }
+
+        /**
+         * @return the number of requests that reused a pooled cursor
+         */
+        public long getHits() {
+            return hits.sum();
+        }
+
+        /**
+         * @return the number of requests that found no cursor to reuse
+         */
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        /**
+         * @return the number of populations rejected because the populator
+         * was busy
+         */
+        public long getRejections() {
+            return rejections.sum();
+        }
+
+        /**
+         * @return the number of cursors created by the ADAPTIVE policy
+         */
+        public long getPrewarmed() {
+            return prewarmed.sum();
+        }
+
+        /**
+         * @return the skips saved reusing the pooled cursors
+         */
+        public long getSavedSkips() {
+            return savedSkips.sum();
+        }
+
+        /**
+         * @return the ratio of the hits on the pool lookups
+         */
+        public double getHitRate() {
+            long _hits = getHits();
+            long lookups = _hits + getMisses();
+
+            return lookups == 0 ? 0 : (double) _hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return "hits: " + getHits()
+                    + ", misses: " + getMisses()
+                    + ", hit rate: " + String.format("%.2f", getHitRate())
+                    + ", rejections: " + getRejections()
+                    + ", prewarmed: " + getPrewarmed()
+                    + ", saved skips: " + getSavedSkips();
+        }
+    }
 }
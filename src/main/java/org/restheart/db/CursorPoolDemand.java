@@ -0,0 +1,92 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.db;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Learns which pages of a group of cursors (same namespace, filter, sort and
+ * keys) are actually requested, so that the ADAPTIVE allocation policy
+ * pre-creates cursors only where they are going to be used.
+ *
+ * Two signals are tracked: how many times each skips value has been
+ * requested, halved when too many values are tracked so that the old pages
+ * fade out, and the stride between consecutive requests, that predicts the
+ * next page of clients iterating the collection.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+class CursorPoolDemand {
+
+    static final int MAX_TRACKED_SKIPS = 64;
+
+    private final Map<Integer, Long> requests = new HashMap<>();
+
+    private int lastSkipped = -1;
+    private int stride = 0;
+
+    /**
+     * records a request
+     *
+     * @param skipped the skips of the requested page
+     */
+    synchronized void record(int skipped) {
+        requests.merge(skipped, 1l, Long::sum);
+
+        stride = lastSkipped >= 0 && skipped > lastSkipped
+                ? skipped - lastSkipped
+                : 0;
+
+        lastSkipped = skipped;
+
+        if (requests.size() > MAX_TRACKED_SKIPS) {
+            requests.replaceAll((skips, count) -> count / 2);
+            requests.values().removeIf(count -> count == 0);
+        }
+    }
+
+    /**
+     * @param max
+     * @return at most max skips values worth a cursor: the predicted next
+     * page first, then the pages requested more than once, most requested
+     * first
+     */
+    synchronized List<Integer> getHotSkips(int max) {
+        Set<Integer> ret = new LinkedHashSet<>();
+
+        if (stride > 0) {
+            ret.add(lastSkipped + stride);
+        }
+
+        requests.entrySet().stream()
+                .filter(e -> e.getValue() > 1)
+                .sorted(Map.Entry.<Integer, Long>comparingByValue().reversed())
+                .map(Map.Entry::getKey)
+                .limit(max)
+                .forEach(ret::add);
+
+        List<Integer> _ret = new ArrayList<>(ret);
+
+        return _ret.size() > max ? _ret.subList(0, max) : _ret;
+    }
+}
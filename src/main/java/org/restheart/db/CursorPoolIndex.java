@@ -0,0 +1,199 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.db;
+
+import com.mongodb.client.FindIterable;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.bson.BsonDocument;
+
+/**
+ * Index of the pooled cursors.
+ *
+ * Cursors are grouped by (namespace, filter, sort, keys); each group is a
+ * navigable map ordered by skips so that the best cursor for a request is
+ * found with a floor query and claimed atomically with a remove, without any
+ * global lock.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class CursorPoolIndex {
+
+    private static final Comparator<CursorPoolEntryKey> SKIPS_COMPARATOR
+            = Comparator.comparingInt(CursorPoolEntryKey::getSkipped)
+                    .thenComparingLong(CursorPoolEntryKey::getCursorId);
+
+    private final ConcurrentHashMap<GroupKey, ConcurrentSkipListMap<CursorPoolEntryKey, FindIterable<BsonDocument>>> groups
+            = new ConcurrentHashMap<>();
+
+    /**
+     * adds a cursor to the index
+     *
+     * @param key
+     * @param cursor
+     */
+    public void put(CursorPoolEntryKey key, FindIterable<BsonDocument> cursor) {
+        groups.compute(new GroupKey(key), (gk, group) -> {
+            if (group == null) {
+                group = new ConcurrentSkipListMap<>(SKIPS_COMPARATOR);
+            }
+
+            group.put(key, cursor);
+            return group;
+        });
+    }
+
+    /**
+     * removes a cursor from the index, dropping its group if it gets empty
+     *
+     * @param key
+     */
+    public void remove(CursorPoolEntryKey key) {
+        groups.computeIfPresent(new GroupKey(key), (gk, group) -> {
+            group.remove(key);
+            return group.isEmpty() ? null : group;
+        });
+    }
+
+    /**
+     * finds the cursor of the same group with the greatest skips not greater
+     * than the requested ones and removes it from the index. If two threads
+     * race for the same cursor, only one gets it; the other one moves on to
+     * the next candidate.
+     *
+     * @param key the requested key
+     * @param minSkipped the minimum skips a cursor must have to be claimed
+     * @return the claimed entry or null if no cursor is available
+     */
+    public Map.Entry<CursorPoolEntryKey, FindIterable<BsonDocument>> claimFloor(
+            CursorPoolEntryKey key,
+            int minSkipped) {
+        ConcurrentSkipListMap<CursorPoolEntryKey, FindIterable<BsonDocument>> group
+                = groups.get(new GroupKey(key));
+
+        if (group == null) {
+            return null;
+        }
+
+        CursorPoolEntryKey probe = probe(key, key.getSkipped(), Long.MAX_VALUE);
+
+        Map.Entry<CursorPoolEntryKey, FindIterable<BsonDocument>> candidate
+                = group.floorEntry(probe);
+
+        while (candidate != null
+                && candidate.getKey().getSkipped() >= minSkipped) {
+            if (group.remove(candidate.getKey(), candidate.getValue())) {
+                if (group.isEmpty()) {
+                    groups.computeIfPresent(new GroupKey(key),
+                            (gk, g) -> g.isEmpty() ? null : g);
+                }
+
+                return candidate;
+            }
+
+            candidate = group.lowerEntry(candidate.getKey());
+        }
+
+        return null;
+    }
+
+    /**
+     * @param key
+     * @return the number of cursors of the same group with the same skips
+     */
+    public int count(CursorPoolEntryKey key) {
+        ConcurrentSkipListMap<CursorPoolEntryKey, FindIterable<BsonDocument>> group
+                = groups.get(new GroupKey(key));
+
+        if (group == null) {
+            return 0;
+        }
+
+        ConcurrentNavigableMap<CursorPoolEntryKey, FindIterable<BsonDocument>> slice
+                = group.subMap(
+                        probe(key, key.getSkipped(), Long.MIN_VALUE), true,
+                        probe(key, key.getSkipped(), Long.MAX_VALUE), true);
+
+        return slice.size();
+    }
+
+    /**
+     * @return the total number of indexed cursors
+     */
+    public int size() {
+        return groups.values().stream().mapToInt(Map::size).sum();
+    }
+
+    private static CursorPoolEntryKey probe(
+            CursorPoolEntryKey key,
+            int skipped,
+            long cursorId) {
+        return new CursorPoolEntryKey(
+                key.getCollection(),
+                key.getSort(),
+                key.getFilter(),
+                key.getKeys(),
+                skipped,
+                cursorId);
+    }
+
+    /**
+     * the key of a group of cursors: same namespace, filter, sort and keys
+     */
+    static class GroupKey {
+
+        private final String namespace;
+        private final BsonDocument filter;
+        private final BsonDocument sort;
+        private final BsonDocument keys;
+        private final int hash;
+
+        GroupKey(CursorPoolEntryKey key) {
+            this.namespace = key.getCollection().getNamespace().getFullName();
+            this.filter = key.getFilter();
+            this.sort = key.getSort();
+            this.keys = key.getKeys();
+            this.hash = Objects.hash(namespace, filter, sort, keys);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final GroupKey other = (GroupKey) obj;
+            return hash == other.hash
+                    && Objects.equals(namespace, other.namespace)
+                    && Objects.equals(filter, other.filter)
+                    && Objects.equals(sort, other.sort)
+                    && Objects.equals(keys, other.keys);
+        }
+    }
+}
@@ -18,26 +18,23 @@
 package org.restheart.db;
 
 import com.mongodb.MongoCommandException;
-import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.MongoCollection;
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
+import com.mongodb.client.model.FindOneAndReplaceOptions;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
 import com.mongodb.client.model.ReturnDocument;
 import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.UpdateResult;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import org.bson.BsonArray;
 import org.bson.BsonDocument;
 import org.bson.BsonObjectId;
-import org.bson.BsonValue;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.restheart.utils.HttpStatus;
@@ -61,6 +58,10 @@ public class DAOUtils {
             = new FindOneAndUpdateOptions()
                     .upsert(true).returnDocument(ReturnDocument.AFTER);
 
+    public final static FindOneAndReplaceOptions FOR_UPSERT_OPS
+            = new FindOneAndReplaceOptions()
+                    .upsert(true);
+
     public final static UpdateOptions U_UPSERT_OPS
             = new UpdateOptions()
                     .upsert(true);
@@ -225,6 +226,67 @@ public class DAOUtils {
         }
     }
 
+    /**
+     * writes the document with a single findOneAndReplace (or
+     * findOneAndUpdate if not replacing) that only matches the existing
+     * document if it satisfies the etag condition as well
+     *
+     * @param coll
+     * @param documentId
+     * @param filter
+     * @param shardKeys
+     * @param etagCondition the condition on the _etag or null for no condition
+     * @param data when replacing, it must be a replacement document (see
+     * isReplacement())
+     * @param replace
+     * @return the document before the write or null if it was inserted
+     * @throws MongoCommandException with error code 11000 (DuplicateKey) if
+     * the document exists but does not match the filter or the etag condition
+     */
+    public static BsonDocument writeDocument(
+            MongoCollection<BsonDocument> coll,
+            Object documentId,
+            BsonDocument filter,
+            BsonDocument shardKeys,
+            Bson etagCondition,
+            BsonDocument data,
+            boolean replace) {
+        Objects.requireNonNull(coll);
+        Objects.requireNonNull(data);
+
+        Bson query = eq("_id", documentId);
+
+        if (shardKeys != null) {
+            query = and(query, shardKeys);
+        }
+
+        if (filter != null && !filter.isEmpty()) {
+            query = and(query, filter);
+        }
+
+        if (etagCondition != null) {
+            query = and(query, etagCondition);
+        }
+
+        if (replace) {
+            return coll.findOneAndReplace(query, data, FOR_UPSERT_OPS);
+        } else {
+            return coll.findOneAndUpdate(query,
+                    getUpdateDocument(data),
+                    FAU_UPSERT_OPS);
+        }
+    }
+
+    /**
+     * @param data
+     * @return true if data can be written with a replace, i.e. it does not
+     * contain update operators or dot notation keys
+     */
+    public static boolean isReplacement(BsonDocument data) {
+        return data.keySet().stream().noneMatch(key
+                -> UPDATE_OPERATORS.contains(key) || key.contains("."));
+    }
+
     public static boolean restoreDocument(
             MongoCollection<BsonDocument> coll,
             Object documentId,
@@ -261,68 +323,87 @@ public class DAOUtils {
             final BsonArray documents,
             final BsonDocument filter,
             final BsonDocument shardKeys) {
-        Objects.requireNonNull(coll);
-        Objects.requireNonNull(documents);
-
-        ObjectId newEtag = new ObjectId();
-
-        List<WriteModel<BsonDocument>> wm = getBulkWriteModel(
-                coll,
+        return bulkUpsertDocuments(coll,
                 documents,
                 filter,
                 shardKeys,
-                newEtag);
-
-        BulkWriteResult result = coll.bulkWrite(wm);
-
-        return new BulkOperationResult(HttpStatus.SC_OK, newEtag, result);
+                0,
+                true);
     }
 
-    private static List<WriteModel<BsonDocument>> getBulkWriteModel(
-            final MongoCollection<BsonDocument> mcoll,
+    /**
+     * upserts the documents with bulkWrite commands of at most batchSize
+     * documents each
+     *
+     * @param coll
+     * @param documents
+     * @param filter
+     * @param shardKeys
+     * @param batchSize the max number of documents per bulkWrite, &lt;= 0
+     * means a single bulkWrite
+     * @param ordered
+     * @return the result aggregated from all the batches
+     */
+    public static BulkOperationResult bulkUpsertDocuments(
+            final MongoCollection<BsonDocument> coll,
             final BsonArray documents,
             final BsonDocument filter,
             final BsonDocument shardKeys,
-            final ObjectId etag) {
-        Objects.requireNonNull(mcoll);
+            final int batchSize,
+            final boolean ordered) {
+        Objects.requireNonNull(coll);
         Objects.requireNonNull(documents);
 
-        List<WriteModel<BsonDocument>> updates = new ArrayList<>();
+        BulkUpsertWriter writer = new BulkUpsertWriter(
+                coll,
+                filter,
+                shardKeys,
+                batchSize,
+                ordered,
+                null);
 
-        documents.stream().filter(_document -> _document.isDocument())
-                .forEach(new Consumer<BsonValue>() {
-                    @Override
-                    public void accept(BsonValue _document) {
-                        BsonDocument document = _document.asDocument();
+        documents.stream()
+                .filter(_document -> _document.isDocument())
+                .forEachOrdered(_document -> writer.add(_document.asDocument()));
 
-                        // generate new id if missing, will be an insert
-                        if (!document.containsKey("_id")) {
-                            document
-                                    .put("_id", new BsonObjectId(new ObjectId()));
-                        }
+        return writer.finish();
+    }
 
-                        // add the _etag
-                        document.put("_etag", new BsonObjectId(etag));
+    /**
+     * @param document the document, the _id is generated if missing
+     * @param filter
+     * @param shardKeys
+     * @param etag
+     * @return the upsert write model of the document
+     */
+    static WriteModel<BsonDocument> getUpsertModel(
+            final BsonDocument document,
+            final BsonDocument filter,
+            final BsonDocument shardKeys,
+            final ObjectId etag) {
+        // generate new id if missing, will be an insert
+        if (!document.containsKey("_id")) {
+            document
+                    .put("_id", new BsonObjectId(new ObjectId()));
+        }
 
-                        Bson _filter = eq("_id", document.get("_id"));
+        // add the _etag
+        document.put("_etag", new BsonObjectId(etag));
 
-                        if (shardKeys != null) {
-                            _filter = and(_filter, shardKeys);
-                        }
+        Bson _filter = eq("_id", document.get("_id"));
 
-                        if (filter != null && !filter.isEmpty()) {
-                            _filter = and(_filter, filter);
-                        }
+        if (shardKeys != null) {
+            _filter = and(_filter, shardKeys);
+        }
 
-                        updates.add(new UpdateOneModel<>(
-                                _filter,
-                                getUpdateDocument(document),
-                                new UpdateOptions().upsert(true)
-                        ));
-                    }
-                });
+        if (filter != null && !filter.isEmpty()) {
+            _filter = and(_filter, filter);
+        }
 
-        return updates;
+        return new UpdateOneModel<>(
+                _filter,
+                getUpdateDocument(document),
+                new UpdateOptions().upsert(true));
     }
 
     /**
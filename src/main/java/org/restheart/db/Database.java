@@ -21,10 +21,12 @@ import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.util.JSONParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import org.bson.BsonDocument;
 import org.restheart.handlers.IllegalQueryParamenterException;
 
@@ -117,6 +119,27 @@ public interface Database {
             BsonDocument keys,
             CursorPool.EAGER_CURSOR_ALLOCATION_POLICY cursorAllocationPolicy);
 
+    /**
+     *
+     * @param collection
+     * @param page
+     * @param pagesize
+     * @param sortBy
+     * @param filter
+     * @param keys
+     * @param cursorAllocationPolicy
+     * @return the cursor positioned at the first document of the page; the
+     * caller must read at most pagesize documents and close it
+     */
+    MongoCursor<BsonDocument> getCollectionDataCursor(
+            MongoCollection<BsonDocument> collection,
+            int page,
+            int pagesize,
+            BsonDocument sortBy,
+            BsonDocument filter,
+            BsonDocument keys,
+            CursorPool.EAGER_CURSOR_ALLOCATION_POLICY cursorAllocationPolicy);
+
     /**
      *
      * @param dbName
@@ -127,6 +150,17 @@ public interface Database {
             String dbName,
             String collectionName);
 
+    /**
+     *
+     * @param dbName
+     * @param collectionNames the names of existing collections
+     * @return the properties of the collections by collection name, read
+     * with a single query
+     */
+    Map<String, BsonDocument> getCollectionsProperties(
+            String dbName,
+            List<String> collectionNames);
+
     /**
      *
      * @param collection
@@ -22,10 +22,12 @@ import com.mongodb.DBCollection;
 import com.mongodb.MongoClient;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import static com.mongodb.client.model.Filters.eq;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
 import org.bson.BsonDocument;
@@ -37,7 +39,9 @@ import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.restheart.handlers.IllegalQueryParamenterException;
 import org.restheart.handlers.RequestContext;
+import org.restheart.handlers.aggregation.AggregationResultCacheSingleton;
 import org.restheart.handlers.injectors.LocalCachesSingleton;
+import org.restheart.handlers.injectors.ResponseCacheSingleton;
 import org.restheart.utils.HttpStatus;
 
 /**
@@ -222,32 +226,31 @@ public class DbsDAO implements Database {
                         ? _colls.size()
                         : (page - 1) * pagesize + pagesize);
 
+        // the properties of the whole page with a single query
+        final Map<String, BsonDocument> collsProperties;
+
+        if (LocalCachesSingleton.isEnabled()) {
+            collsProperties = LocalCachesSingleton.getInstance()
+                    .getCollectionsProperties(dbName, _colls);
+        } else {
+            collsProperties = collectionDAO.getCollectionsProps(
+                    dbName,
+                    _colls);
+        }
+
         List<BsonDocument> data = new ArrayList<>();
 
-        _colls.stream().map(
-                (collName) -> {
-                    BsonDocument properties
+        _colls.forEach(collName -> {
+            BsonDocument properties
                     = new BsonDocument("_id", new BsonString(collName));
 
-                    BsonDocument collProperties;
-
-                    if (LocalCachesSingleton.isEnabled()) {
-                        collProperties = LocalCachesSingleton.getInstance()
-                                .getCollectionProperties(dbName, collName);
-                    } else {
-                        collProperties = collectionDAO.getCollectionProps(
-                                dbName,
-                                collName);
-                    }
+            BsonDocument collProperties = collsProperties.get(collName);
 
-                    if (collProperties != null) {
-                        properties.putAll(collProperties);
-                    }
+            if (collProperties != null) {
+                properties.putAll(collProperties);
+            }
 
-                    return properties;
-                }
-        ).forEach((item) -> {
-            data.add(item);
+            data.add(properties);
         });
 
         return data;
@@ -353,6 +356,7 @@ public class DbsDAO implements Database {
                     null,
                     dcontent,
                     false);
+            invalidateResponseCache(mcoll.getNamespace().getDatabaseName());
             return new OperationResult(ret.getHttpCode() > 0
                     ? ret.getHttpCode()
                     : HttpStatus.SC_OK, newEtag);
@@ -364,6 +368,7 @@ public class DbsDAO implements Database {
                     null,
                     dcontent,
                     true);
+            invalidateResponseCache(mcoll.getNamespace().getDatabaseName());
             return new OperationResult(ret.getHttpCode() > 0
                     ? ret.getHttpCode()
                     : HttpStatus.SC_OK, newEtag);
@@ -375,6 +380,7 @@ public class DbsDAO implements Database {
                     null,
                     dcontent,
                     false);
+            invalidateResponseCache(mcoll.getNamespace().getDatabaseName());
             return new OperationResult(ret.getHttpCode() > 0
                     ? ret.getHttpCode()
                     : HttpStatus.SC_CREATED, newEtag);
@@ -418,6 +424,9 @@ public class DbsDAO implements Database {
         }
 
         mdb.drop();
+
+        invalidateResponseCache(dbName);
+
         return new OperationResult(HttpStatus.SC_NO_CONTENT);
     }
 
@@ -430,6 +439,15 @@ public class DbsDAO implements Database {
                 collName);
     }
 
+    @Override
+    public Map<String, BsonDocument> getCollectionsProperties(
+            String dbName,
+            List<String> collNames) {
+        return collectionDAO.getCollectionsProps(
+                dbName,
+                collNames);
+    }
+
     @Override
     public DBCollection getCollectionLegacy(
             String dbName,
@@ -457,7 +475,7 @@ public class DbsDAO implements Database {
             boolean updating,
             boolean patching,
             final boolean checkEtag) {
-        return collectionDAO.upsertCollection(
+        OperationResult result = collectionDAO.upsertCollection(
                 dbName,
                 collName,
                 content,
@@ -465,6 +483,10 @@ public class DbsDAO implements Database {
                 updating,
                 patching,
                 checkEtag);
+
+        invalidateResponseCache(dbName, collName);
+
+        return result;
     }
 
     @Override
@@ -473,11 +495,15 @@ public class DbsDAO implements Database {
             String collectionName,
             String requestEtag,
             final boolean checkEtag) {
-        return collectionDAO.deleteCollection(
+        OperationResult result = collectionDAO.deleteCollection(
                 dbName,
                 collectionName,
                 requestEtag,
                 checkEtag);
+
+        invalidateResponseCache(dbName, collectionName);
+
+        return result;
     }
 
     @Override
@@ -506,6 +532,25 @@ public class DbsDAO implements Database {
                 cursorAllocationPolicy);
     }
 
+    @Override
+    public MongoCursor<BsonDocument> getCollectionDataCursor(
+            MongoCollection<BsonDocument> coll,
+            int page,
+            int pagesize,
+            BsonDocument sortBy,
+            BsonDocument filter,
+            BsonDocument keys,
+            CursorPool.EAGER_CURSOR_ALLOCATION_POLICY cursorAllocationPolicy) {
+        return collectionDAO.getCollectionDataCursor(
+                coll,
+                page,
+                pagesize,
+                sortBy,
+                filter,
+                keys,
+                cursorAllocationPolicy);
+    }
+
     @Override
     public List<String> getDatabaseNames() {
         ArrayList<String> dbNames = new ArrayList<>();
@@ -548,4 +593,26 @@ public class DbsDAO implements Database {
             BsonDocument options) {
         indexDAO.createIndex(dbName, collection, keys, options);
     }
+
+    /**
+     * must be invoked after the write, otherwise a concurrent request could
+     * cache the response computed before it
+     */
+    private void invalidateResponseCache(String dbName) {
+        if (ResponseCacheSingleton.isEnabled()) {
+            ResponseCacheSingleton.getInstance().invalidateDb(dbName);
+        }
+
+        AggregationResultCacheSingleton.getInstance().invalidateDb(dbName);
+    }
+
+    private void invalidateResponseCache(String dbName, String collName) {
+        if (ResponseCacheSingleton.isEnabled()) {
+            ResponseCacheSingleton.getInstance()
+                    .invalidateCollection(dbName, collName);
+        }
+
+        AggregationResultCacheSingleton.getInstance()
+                .invalidateCollection(dbName, collName);
+    }
 }
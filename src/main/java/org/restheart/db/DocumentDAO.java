@@ -18,6 +18,7 @@
 package org.restheart.db;
 
 import com.mongodb.MongoClient;
+import com.mongodb.MongoCommandException;
 import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
@@ -25,20 +26,27 @@ import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.DeleteManyModel;
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.exists;
 import com.mongodb.client.model.UpdateManyModel;
 import com.mongodb.client.model.WriteModel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
 import org.bson.BsonArray;
 import org.bson.BsonDocument;
+import org.bson.BsonInt32;
 import org.bson.BsonObjectId;
 import org.bson.BsonString;
 import org.bson.BsonValue;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
+import org.restheart.Bootstrapper;
+import org.restheart.handlers.aggregation.AggregationResultCacheSingleton;
+import org.restheart.handlers.injectors.ResponseCacheSingleton;
+import org.restheart.utils.BulkWriteExecutorSingleton;
 import org.restheart.utils.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -107,6 +115,20 @@ public class DocumentDAO implements Repository {
 
         content.put("_etag", new BsonObjectId(newEtag));
 
+        if (isAtomicDocumentWrites()
+                && (patching || DAOUtils.isReplacement(content))) {
+            return atomicUpsertDocument(
+                    mcoll,
+                    documentId,
+                    filter,
+                    shardKeys,
+                    content,
+                    newEtag,
+                    requestEtag,
+                    !patching,
+                    checkEtag);
+        }
+
         OperationResult updateResult = DAOUtils.updateDocument(
                 mcoll,
                 documentId,
@@ -115,6 +137,8 @@ public class DocumentDAO implements Repository {
                 content,
                 !patching);
 
+        invalidateResponseCache(mcoll);
+
         BsonDocument oldDocument = updateResult.getOldData();
 
         if (patching) {
@@ -207,6 +231,22 @@ public class DocumentDAO implements Repository {
             documentId = Optional.empty(); // key _id is not present
         }
 
+        // without _id, the document is inserted with a single command anyway
+        if (isAtomicDocumentWrites()
+                && !(documentId instanceof Optional)
+                && DAOUtils.isReplacement(content)) {
+            return atomicUpsertDocument(
+                    mcoll,
+                    documentId,
+                    filter,
+                    shardKeys,
+                    content,
+                    newEtag,
+                    requestEtag,
+                    true,
+                    checkEtag);
+        }
+
         // new document since the id is missing ()
         OperationResult updateResult = DAOUtils.updateDocument(
                 mcoll,
@@ -216,6 +256,8 @@ public class DocumentDAO implements Repository {
                 content,
                 true);
 
+        invalidateResponseCache(mcoll);
+
         BsonDocument oldDocument = updateResult.getOldData();
         BsonDocument newDocument = updateResult.getNewData();
 
@@ -266,22 +308,87 @@ public class DocumentDAO implements Repository {
         MongoCollection<BsonDocument> mcoll
                 = mdb.getCollection(collName, BsonDocument.class);
 
-        BsonObjectId newEtag = new BsonObjectId(new ObjectId());
-
-        documents
-                .stream()
-                .filter(d -> d != null && d.isDocument())
-                .forEachOrdered(document -> {
-                    document.
-                            asDocument()
-                            .put("_etag", newEtag);
-                });
-
-        return DAOUtils.bulkUpsertDocuments(
+        BulkOperationResult result = DAOUtils.bulkUpsertDocuments(
                 mcoll,
                 documents,
                 filter,
-                shardKeys);
+                shardKeys,
+                getBulkWriteBatchSize(),
+                isBulkWriteOrdered());
+
+        invalidateResponseCache(mcoll);
+
+        return result;
+    }
+
+    /**
+     * creates a writer to upsert the documents of a bulk POST while they are
+     * read from the request; the result is returned by
+     * finishBulkUpsertDocumentsPost()
+     *
+     * @param dbName
+     * @param collName
+     * @param filter
+     * @param shardKeys
+     * @return the writer
+     */
+    public BulkUpsertWriter newBulkUpsertDocumentsPostWriter(
+            final String dbName,
+            final String collName,
+            final BsonDocument filter,
+            final BsonDocument shardKeys) {
+        MongoDatabase mdb = client.getDatabase(dbName);
+        MongoCollection<BsonDocument> mcoll
+                = mdb.getCollection(collName, BsonDocument.class);
+
+        boolean pipelined = Bootstrapper.getConfiguration() == null
+                || Bootstrapper.getConfiguration().isBulkWritePipelined();
+
+        return new BulkUpsertWriter(mcoll,
+                filter,
+                shardKeys,
+                getBulkWriteBatchSize(),
+                isBulkWriteOrdered(),
+                pipelined
+                        ? BulkWriteExecutorSingleton.getInstance()
+                                .getExecutorService()
+                        : null);
+    }
+
+    /**
+     * @param dbName
+     * @param collName
+     * @param writer
+     * @param errorStatus the http status of the error
+     * @param error if not null, the reason to abort the writer
+     * @return the result of the bulk upsert
+     */
+    public BulkOperationResult finishBulkUpsertDocumentsPost(
+            final String dbName,
+            final String collName,
+            final BulkUpsertWriter writer,
+            final int errorStatus,
+            final String error) {
+        try {
+            return error == null
+                    ? writer.finish()
+                    : writer.abort(errorStatus, error);
+        } finally {
+            invalidateResponseCache(client
+                    .getDatabase(dbName)
+                    .getCollection(collName, BsonDocument.class));
+        }
+    }
+
+    private static int getBulkWriteBatchSize() {
+        return Bootstrapper.getConfiguration() == null
+                ? 0
+                : Bootstrapper.getConfiguration().getBulkWriteBatchSize();
+    }
+
+    private static boolean isBulkWriteOrdered() {
+        return Bootstrapper.getConfiguration() == null
+                || Bootstrapper.getConfiguration().isBulkWriteOrdered();
     }
 
     /**
@@ -307,9 +414,20 @@ public class DocumentDAO implements Repository {
         MongoCollection<BsonDocument> mcoll
                 = mdb.getCollection(collName, BsonDocument.class);
 
+        if (isAtomicDocumentWrites() && checkEtag) {
+            return atomicDeleteDocument(
+                    mcoll,
+                    documentId,
+                    filter,
+                    shardedKeys,
+                    requestEtag);
+        }
+
         BsonDocument oldDocument = mcoll.findOneAndDelete(
                 getIdFilter(documentId, filter, shardedKeys));
 
+        invalidateResponseCache(mcoll);
+
         if (oldDocument == null) {
             return new OperationResult(HttpStatus.SC_NOT_FOUND);
         } else if (checkEtag) {
@@ -326,6 +444,186 @@ public class DocumentDAO implements Repository {
         }
     }
 
+    /**
+     * writes the document with a single command, whose filter includes the
+     * etag check; if the write fails, the document is read to tell why
+     */
+    private OperationResult atomicUpsertDocument(
+            final MongoCollection<BsonDocument> mcoll,
+            final Object documentId,
+            final BsonDocument filter,
+            final BsonDocument shardKeys,
+            final BsonDocument content,
+            final ObjectId newEtag,
+            final String requestEtag,
+            final boolean replace,
+            final boolean checkEtag) {
+        BsonDocument oldDocument;
+
+        try {
+            oldDocument = DAOUtils.writeDocument(
+                    mcoll,
+                    documentId,
+                    filter,
+                    shardKeys,
+                    checkEtag ? getEtagCondition(requestEtag) : null,
+                    content,
+                    replace);
+        } catch (MongoCommandException mce) {
+            if (mce.getErrorCode() != 11000) {
+                throw mce;
+            }
+
+            // DuplicateKey error: the upsert tried to insert the document
+            // because the existing one did not match the query
+            OperationResult failed = checkEtag
+                    ? checkEtag(getCurrentEtag(mcoll,
+                            getIdFilter(documentId, null, shardKeys)),
+                            requestEtag)
+                    : null;
+
+            if (failed != null) {
+                return failed;
+            } else if (filter != null && !filter.isEmpty()) {
+                return new OperationResult(HttpStatus.SC_EXPECTATION_FAILED);
+            } else {
+                // violation of another unique index
+                throw mce;
+            }
+        }
+
+        invalidateResponseCache(mcoll);
+
+        int httpCode = oldDocument == null
+                ? HttpStatus.SC_CREATED
+                : HttpStatus.SC_OK;
+
+        if (replace) {
+            // the new document is the replacement
+            BsonDocument newDocument = new BsonDocument("_id",
+                    content.containsKey("_id")
+                    ? content.get("_id")
+                    : (BsonValue) documentId);
+
+            newDocument.putAll(content);
+
+            return new OperationResult(
+                    httpCode,
+                    newEtag,
+                    oldDocument,
+                    newDocument);
+        } else {
+            return new LazyNewDataOperationResult(
+                    httpCode,
+                    newEtag,
+                    oldDocument,
+                    () -> mcoll.find(eq("_id", documentId)).first());
+        }
+    }
+
+    /**
+     * deletes the document with a single command, whose filter includes the
+     * etag check; if the document is not deleted, it is read to tell why
+     */
+    private OperationResult atomicDeleteDocument(
+            final MongoCollection<BsonDocument> mcoll,
+            final Object documentId,
+            final BsonDocument filter,
+            final BsonDocument shardedKeys,
+            final String requestEtag) {
+        Bson idFilter = getIdFilter(documentId, filter, shardedKeys);
+
+        BsonDocument oldDocument = mcoll.findOneAndDelete(
+                and(idFilter, getEtagCondition(requestEtag)));
+
+        if (oldDocument != null) {
+            invalidateResponseCache(mcoll);
+
+            return new OperationResult(HttpStatus.SC_NO_CONTENT);
+        }
+
+        BsonDocument current = getCurrentEtag(mcoll, idFilter);
+
+        if (current == null) {
+            return new OperationResult(HttpStatus.SC_NOT_FOUND);
+        }
+
+        OperationResult failed = checkEtag(current, requestEtag);
+
+        if (failed != null) {
+            return failed;
+        } else {
+            // the document has been updated meanwhile
+            return new OperationResult(HttpStatus.SC_PRECONDITION_FAILED);
+        }
+    }
+
+    /**
+     * @return the _id and _etag of the document or null if it does not exist
+     */
+    private BsonDocument getCurrentEtag(
+            final MongoCollection<BsonDocument> mcoll,
+            final Bson idFilter) {
+        return mcoll.find(idFilter)
+                .projection(new BsonDocument("_etag", new BsonInt32(1)))
+                .first();
+    }
+
+    /**
+     * @param current the _etag projection of the current document, can be
+     * null
+     * @param requestEtag
+     * @return the result of the failed etag check or null if the current
+     * version of the document (if any) passes it
+     */
+    private OperationResult checkEtag(
+            final BsonDocument current,
+            final String requestEtag) {
+        if (current == null) {
+            return null;
+        }
+
+        BsonValue currentEtag = current.get("_etag");
+
+        if (requestEtag == null) {
+            return currentEtag == null
+                    ? null
+                    : new OperationResult(HttpStatus.SC_CONFLICT, currentEtag);
+        } else if (!Objects.equals(getEtagValue(requestEtag), currentEtag)) {
+            return new OperationResult(
+                    HttpStatus.SC_PRECONDITION_FAILED,
+                    currentEtag);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * @param requestEtag
+     * @return the condition on the _etag for the given request etag; without
+     * request etag the document must not have the _etag field
+     */
+    private static Bson getEtagCondition(String requestEtag) {
+        return requestEtag == null
+                ? exists("_etag", false)
+                : eq("_etag", getEtagValue(requestEtag));
+    }
+
+    private static BsonValue getEtagValue(String requestEtag) {
+        if (ObjectId.isValid(requestEtag)) {
+            return new BsonObjectId(new ObjectId(requestEtag));
+        } else {
+            // restheart generates ObjectId etags, but here we support
+            // strings as well
+            return new BsonString(requestEtag);
+        }
+    }
+
+    private static boolean isAtomicDocumentWrites() {
+        return Bootstrapper.getConfiguration() != null
+                && Bootstrapper.getConfiguration().isAtomicDocumentWrites();
+    }
+
     private Bson getIdFilter(Object documentId, BsonDocument filter, BsonDocument shardedKeys) {
         Bson q = eq("_id", documentId);
 
@@ -364,6 +662,8 @@ public class DocumentDAO implements Repository {
 
         BulkWriteResult result = mcoll.bulkWrite(deletes);
 
+        invalidateResponseCache(mcoll);
+
         return new BulkOperationResult(HttpStatus.SC_OK, null, result);
     }
 
@@ -395,6 +695,8 @@ public class DocumentDAO implements Repository {
 
         BulkWriteResult result = mcoll.bulkWrite(patches);
 
+        invalidateResponseCache(mcoll);
+
         return new BulkOperationResult(HttpStatus.SC_OK, null, result);
     }
 
@@ -430,19 +732,13 @@ public class DocumentDAO implements Repository {
                         newEtag);
             }
 
+            invalidateResponseCache(coll);
+
             return new OperationResult(
                     HttpStatus.SC_CONFLICT, oldEtag, oldDocument, null);
         }
 
-        BsonValue _requestEtag;
-
-        if (ObjectId.isValid(requestEtag)) {
-            _requestEtag = new BsonObjectId(new ObjectId(requestEtag));
-        } else {
-            // restheart generates ObjectId etags, but here we support
-            // strings as well
-            _requestEtag = new BsonString(requestEtag);
-        }
+        BsonValue _requestEtag = getEtagValue(requestEtag);
 
         if (Objects.equals(_requestEtag, oldEtag)) {
             BsonDocument newDocument = coll.find(
@@ -470,6 +766,8 @@ public class DocumentDAO implements Repository {
                         newEtag);
             }
 
+            invalidateResponseCache(coll);
+
             return new OperationResult(
                     HttpStatus.SC_PRECONDITION_FAILED,
                     oldEtag,
@@ -477,4 +775,50 @@ public class DocumentDAO implements Repository {
                     null);
         }
     }
+
+    /**
+     * must be invoked after the write, otherwise a concurrent request could
+     * cache the response computed before it
+     */
+    private void invalidateResponseCache(MongoCollection<?> coll) {
+        if (ResponseCacheSingleton.isEnabled()) {
+            ResponseCacheSingleton.getInstance().invalidateCollection(
+                    coll.getNamespace().getDatabaseName(),
+                    coll.getNamespace().getCollectionName());
+        }
+
+        AggregationResultCacheSingleton.getInstance().invalidateCollection(
+                coll.getNamespace().getDatabaseName(),
+                coll.getNamespace().getCollectionName());
+    }
+
+    /**
+     * the new document is read from the db the first time it is requested,
+     * i.e. only if a hook, checker or transformer needs it
+     */
+    private static class LazyNewDataOperationResult extends OperationResult {
+
+        private final Supplier<BsonDocument> newDataLoader;
+        private BsonDocument newData = null;
+        private boolean loaded = false;
+
+        LazyNewDataOperationResult(
+                int httpCode,
+                Object etag,
+                BsonDocument oldData,
+                Supplier<BsonDocument> newDataLoader) {
+            super(httpCode, etag, oldData, null);
+            this.newDataLoader = newDataLoader;
+        }
+
+        @Override
+        public synchronized BsonDocument getNewData() {
+            if (!loaded) {
+                newData = newDataLoader.get();
+                loaded = true;
+            }
+
+            return newData;
+        }
+    }
 }
@@ -21,6 +21,7 @@ import com.mongodb.DuplicateKeyException;
 import com.mongodb.MongoClient;
 import com.mongodb.client.gridfs.GridFSBucket;
 import com.mongodb.client.gridfs.GridFSBuckets;
+import com.mongodb.client.gridfs.GridFSUploadStream;
 import com.mongodb.client.gridfs.model.GridFSFile;
 import com.mongodb.client.gridfs.model.GridFSUploadOptions;
 import static com.mongodb.client.model.Filters.eq;
@@ -44,6 +45,9 @@ public class GridFsDAO implements GridFsRepository {
 
     private static final String FILENAME = "filename";
 
+    // the default chunk size of the driver
+    private static final int DEFAULT_CHUNK_SIZE_BYTES = 255 * 1024;
+
     private static String extractBucketName(final String collectionName) {
         return collectionName.split("\\.")[0];
     }
@@ -55,7 +59,6 @@ public class GridFsDAO implements GridFsRepository {
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public OperationResult createFile(
             final Database db,
             final String dbName,
@@ -63,6 +66,35 @@ public class GridFsDAO implements GridFsRepository {
             final BsonDocument metadata,
             final Path filePath)
             throws IOException, DuplicateKeyException {
+        try (InputStream sourceStream
+                = new FileInputStream(filePath.toFile())) {
+            return createFile(db, dbName, bucketName, metadata, sourceStream);
+        }
+    }
+
+    /**
+     * uploads the file reading it from the source stream, that is not closed;
+     * the bytes are written to GridFS as they are read, so that the memory
+     * used does not depend on the file size
+     *
+     * @param db
+     * @param dbName
+     * @param bucketName
+     * @param metadata
+     * @param sourceStream
+     * @return the OperationResult
+     * @throws IOException if reading the source stream fails; the chunks
+     * already written are deleted
+     * @throws DuplicateKeyException
+     */
+    @Override
+    public OperationResult createFile(
+            final Database db,
+            final String dbName,
+            final String bucketName,
+            final BsonDocument metadata,
+            final InputStream sourceStream)
+            throws IOException, DuplicateKeyException {
 
         final String bucket = extractBucketName(bucketName);
 
@@ -76,36 +108,44 @@ public class GridFsDAO implements GridFsRepository {
         ObjectId etag = new ObjectId();
         metadata.put("_etag", new BsonObjectId(etag));
 
-        InputStream sourceStream = new FileInputStream(filePath.toFile());
+        BsonValue _id = metadata.remove("_id");
 
-        if (metadata.get("_id") == null) {
-            GridFSUploadOptions options = new GridFSUploadOptions()
-                    .metadata(Document.parse(metadata.toJson()));
+        if (_id == null) {
+            _id = new BsonObjectId(new ObjectId());
+        }
 
-            ObjectId _id = gridFSBucket.uploadFromStream(
-                    filename,
-                    sourceStream,
-                    options);
+        GridFSUploadOptions options = new GridFSUploadOptions()
+                .metadata(Document.parse(metadata.toJson()));
 
-            return new OperationResult(HttpStatus.SC_CREATED,
-                    new BsonObjectId(etag),
-                    new BsonObjectId(_id));
-        } else {
-            BsonValue _id = metadata.remove("_id");
+        GridFSUploadStream uploadStream = gridFSBucket.openUploadStream(
+                _id,
+                filename,
+                options);
 
-            GridFSUploadOptions options = new GridFSUploadOptions()
-                    .metadata(Document.parse(metadata.toJson()));
+        byte[] buffer = new byte[getBufferSize(options)];
 
-            gridFSBucket.uploadFromStream(
-                    _id,
-                    filename,
-                    sourceStream,
-                    options);
+        try {
+            int read;
 
-            return new OperationResult(HttpStatus.SC_CREATED,
-                    new BsonObjectId(etag),
-                    _id);
+            while ((read = sourceStream.read(buffer)) >= 0) {
+                uploadStream.write(buffer, 0, read);
+            }
+        } catch (IOException | RuntimeException ex) {
+            uploadStream.abort();
+            throw ex;
         }
+
+        uploadStream.close();
+
+        return new OperationResult(HttpStatus.SC_CREATED,
+                new BsonObjectId(etag),
+                _id);
+    }
+
+    private static int getBufferSize(GridFSUploadOptions options) {
+        return options.getChunkSizeBytes() == null
+                ? DEFAULT_CHUNK_SIZE_BYTES
+                : options.getChunkSizeBytes();
     }
 
     private String extractFilenameFromProperties(
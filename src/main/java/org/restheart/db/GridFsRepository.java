@@ -19,6 +19,7 @@ package org.restheart.db;
 
 import com.mongodb.DuplicateKeyException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
 import org.bson.BsonDocument;
 import org.bson.BsonValue;
@@ -37,6 +38,14 @@ public interface GridFsRepository {
             Path filePath) 
             throws IOException, DuplicateKeyException;
 
+    OperationResult createFile(
+            Database db, 
+            String dbName, 
+            String bucketName, 
+            BsonDocument metadata, 
+            InputStream sourceStream) 
+            throws IOException, DuplicateKeyException;
+
     OperationResult deleteFile(
             Database db, 
             String dbName, 
@@ -18,7 +18,9 @@
 package org.restheart.hal;
 
 import io.undertow.server.HttpServerExchange;
+import java.util.Arrays;
 import java.util.TreeMap;
+import java.util.stream.Collectors;
 import org.restheart.handlers.IllegalQueryParamenterException;
 import org.restheart.handlers.RequestContext;
 import org.restheart.utils.URLUtils;
@@ -105,6 +107,58 @@ public class HALUtils {
         return links;
     }
 
+    /**
+     * pagination links for the keyset pagination mode; only first and next
+     * are available, since the position of the page is not known
+     *
+     * @param exchange
+     * @param context
+     * @param nextPageToken the token of the next page, null if this is the
+     * last page
+     * @return
+     */
+    public static TreeMap<String, String> getKeysetPaginationLinks(
+            HttpServerExchange exchange,
+            RequestContext context,
+            String nextPageToken) {
+        String requestPath = URLUtils.removeTrailingSlashes(exchange.getRequestPath());
+        int pagesize = context.getPagesize();
+
+        String queryString = exchange.getQueryString() == null
+                ? ""
+                : Arrays.stream(exchange.getQueryString().split("&"))
+                        .filter(p -> {
+                            String name = p.split("=", 2)[0];
+
+                            return !name.isEmpty()
+                                    && !name.equals(RequestContext.PAGE_QPARAM_KEY)
+                                    && !name.equals(RequestContext.PAGESIZE_QPARAM_KEY)
+                                    && !name.equals(RequestContext.PAGE_TOKEN_QPARAM_KEY);
+                        })
+                        .collect(Collectors.joining("&"));
+
+        String others = queryString.isEmpty()
+                ? ""
+                : "&" + URLUtils.decodeQueryString(queryString);
+
+        TreeMap<String, String> links = new TreeMap<>();
+
+        links.put("first", requestPath
+                + "?" + RequestContext.PAGE_TOKEN_QPARAM_KEY
+                + "&pagesize=" + pagesize
+                + others);
+
+        if (nextPageToken != null) {
+            links.put("next", requestPath
+                    + "?" + RequestContext.PAGE_TOKEN_QPARAM_KEY
+                    + "=" + nextPageToken
+                    + "&pagesize=" + pagesize
+                    + others);
+        }
+
+        return links;
+    }
+
     private HALUtils() {
     }
 }
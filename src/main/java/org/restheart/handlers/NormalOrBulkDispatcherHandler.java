@@ -18,11 +18,23 @@
 package org.restheart.handlers;
 
 import io.undertow.server.HttpServerExchange;
+import java.io.IOException;
+import org.bson.BsonArray;
 import org.bson.BsonValue;
+import org.bson.json.JsonParseException;
+import org.restheart.handlers.bulk.BulkPostCollectionHandler;
+import org.restheart.handlers.injectors.BodyInjectorHandler;
+import org.restheart.utils.HttpStatus;
+import org.restheart.utils.RequestBodyTooLargeException;
+import org.restheart.utils.ResponseHelper;
 
 /**
  * this handler dispatches request to normal or bulk post collection handlers
  * depending on the content to be an object or an array
+ *
+ * a bulk POST body left unread by the BodyInjectorHandler (bulk-post-streaming)
+ * is read here if the collection has transformers, checkers or hooks that
+ * need the whole content
  * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
  */
 public class NormalOrBulkDispatcherHandler extends PipedHttpHandler {
@@ -57,9 +69,62 @@ public class NormalOrBulkDispatcherHandler extends PipedHttpHandler {
 
         if (content != null 
                 && content.isArray()) {
+            if (context.getContentDecoder() != null
+                    && !BulkPostCollectionHandler.isStreamable(context)) {
+                readContent(exchange, context);
+            }
+
             nextBulk.handleRequest(exchange, context);
         } else {
             nextNormal.handleRequest(exchange, context);
         }
     }
-}
\ No newline at end of file
+
+    private void readContent(
+            HttpServerExchange exchange,
+            RequestContext context) throws IOException {
+        BsonArray content = new BsonArray();
+
+        try {
+            context.getContentDecoder().resume(element -> {
+                String errMsg = BodyInjectorHandler
+                        .checkBulkElement(element, context);
+
+                if (errMsg != null) {
+                    throw new IllegalArgumentException(errMsg);
+                }
+
+                content.add(element);
+            });
+        } catch (RequestBodyTooLargeException rbtle) {
+            content.clear();
+
+            ResponseHelper.endExchangeWithMessage(
+                    exchange,
+                    context,
+                    HttpStatus.SC_REQUEST_TOO_LONG,
+                    rbtle.getMessage());
+        } catch (JsonParseException jpe) {
+            content.clear();
+
+            ResponseHelper.endExchangeWithMessage(
+                    exchange,
+                    context,
+                    HttpStatus.SC_NOT_ACCEPTABLE,
+                    "Invalid JSON",
+                    jpe);
+        } catch (IllegalArgumentException iae) {
+            content.clear();
+
+            ResponseHelper.endExchangeWithMessage(
+                    exchange,
+                    context,
+                    HttpStatus.SC_NOT_ACCEPTABLE,
+                    iae.getMessage());
+        } finally {
+            context.setContentDecoder(null);
+        }
+
+        context.setContent(content);
+    }
+}
@@ -23,6 +23,7 @@ import io.undertow.util.HeaderValues;
 import io.undertow.util.Headers;
 import io.undertow.util.HttpString;
 import io.undertow.util.Methods;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Path;
@@ -30,7 +31,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.bson.BsonArray;
 import org.bson.BsonDocument;
 import org.bson.BsonInt32;
@@ -39,6 +43,9 @@ import org.bson.json.JsonParseException;
 import org.restheart.Bootstrapper;
 import org.restheart.db.CursorPool.EAGER_CURSOR_ALLOCATION_POLICY;
 import org.restheart.db.OperationResult;
+import org.restheart.metadata.CompiledMetadata;
+import org.restheart.utils.JsonStreamDecoder;
+import org.restheart.utils.PageTokenUtils;
 import org.restheart.utils.URLUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,12 +62,14 @@ public final class RequestContext {
     // query parameters
     public static final String PAGE_QPARAM_KEY = "page";
     public static final String PAGESIZE_QPARAM_KEY = "pagesize";
+    public static final String PAGE_TOKEN_QPARAM_KEY = "page_token";
     public static final String COUNT_QPARAM_KEY = "count";
     public static final String SORT_BY_QPARAM_KEY = "sort_by";
     public static final String SORT_QPARAM_KEY = "sort";
     public static final String FILTER_QPARAM_KEY = "filter";
     public static final String AGGREGATION_VARIABLES_QPARAM_KEY = "avars";
     public static final String KEYS_QPARAM_KEY = "keys";
+    public static final String EXPAND_QPARAM_KEY = "expand";
     public static final String EAGER_CURSOR_ALLOCATION_POLICY_QPARAM_KEY = "eager";
     public static final String HAL_QPARAM_KEY = "hal";
     public static final String DOC_ID_TYPE_QPARAM_KEY = "id_type";
@@ -246,12 +255,17 @@ public final class RequestContext {
 
     private BsonDocument dbProps;
     private BsonDocument collectionProps;
+    private CompiledMetadata dbMetadata;
+    private CompiledMetadata collectionMetadata;
 
     private BsonValue content;
 
+    private JsonStreamDecoder contentDecoder;
+
     private String rawContent;
 
     private Path filePath;
+    private InputStream fileInputStream;
 
     private BsonValue responseContent;
 
@@ -263,11 +277,14 @@ public final class RequestContext {
 
     private int page = 1;
     private int pagesize = 100;
+    private String pageToken = null;
     private boolean count = false;
     private EAGER_CURSOR_ALLOCATION_POLICY cursorAllocationPolicy;
     private Deque<String> filter = null;
     private BsonDocument aggregationVars = null; // aggregation vars
     private Deque<String> keys = null;
+    private Set<String> expand = null;
+    private Map<BsonDocument, BsonDocument> expandedRelationships = null;
     private Deque<String> sortBy = null;
     private DOC_ID_TYPE docIdType = DOC_ID_TYPE.STRING_OID;
 
@@ -292,6 +309,10 @@ public final class RequestContext {
 
     private Account authenticatedAccount = null;
 
+    private String responseCacheKey = null;
+
+    private long responseCacheWrites = 0;
+
     /**
      * the HAL mode
      */
@@ -573,6 +594,42 @@ public final class RequestContext {
         this.representationFormat = representationFormat;
     }
 
+    /**
+     * @return the page token of the keyset pagination, empty for the first
+     * page, null if the keyset pagination is not used
+     */
+    public String getPageToken() {
+        return pageToken;
+    }
+
+    /**
+     * @param pageToken the page token to set
+     */
+    public void setPageToken(String pageToken) {
+        this.pageToken = pageToken;
+    }
+
+    /**
+     * @return true if the keyset pagination is used, i.e. the page_token query
+     * parameter is specified
+     */
+    public boolean isKeysetPagination() {
+        return pageToken != null;
+    }
+
+    /**
+     *
+     * @return the sort key values of the page token, null for the first page
+     * @throws IllegalArgumentException if the page token is invalid
+     */
+    public BsonDocument getPageTokenDocument() throws IllegalArgumentException {
+        if (pageToken == null || pageToken.isEmpty()) {
+            return null;
+        }
+
+        return PageTokenUtils.decode(pageToken, getSortByDocument());
+    }
+
     /**
      * @return the count
      */
@@ -655,6 +712,10 @@ public final class RequestContext {
             });
         }
 
+        if (isKeysetPagination()) {
+            return PageTokenUtils.getKeysetSort(sort);
+        }
+
         return sort;
     }
 
@@ -728,6 +789,45 @@ public final class RequestContext {
         this.dbProps = dbProps;
     }
 
+    /**
+     * @return the metadata compiled from the dbProps, compiled on first use if
+     * not set from the local cache
+     */
+    public CompiledMetadata getDbMetadata() {
+        if (dbMetadata == null || dbMetadata.getProps() != dbProps) {
+            dbMetadata = CompiledMetadata.compile(dbProps);
+        }
+
+        return dbMetadata;
+    }
+
+    /**
+     * @param dbMetadata the dbMetadata to set
+     */
+    public void setDbMetadata(CompiledMetadata dbMetadata) {
+        this.dbMetadata = dbMetadata;
+    }
+
+    /**
+     * @return the metadata compiled from the collectionProps, compiled on
+     * first use if not set from the local cache
+     */
+    public CompiledMetadata getCollectionMetadata() {
+        if (collectionMetadata == null
+                || collectionMetadata.getProps() != collectionProps) {
+            collectionMetadata = CompiledMetadata.compile(collectionProps);
+        }
+
+        return collectionMetadata;
+    }
+
+    /**
+     * @param collectionMetadata the collectionMetadata to set
+     */
+    public void setCollectionMetadata(CompiledMetadata collectionMetadata) {
+        this.collectionMetadata = collectionMetadata;
+    }
+
     /**
      * @return the content
      */
@@ -749,7 +849,23 @@ public final class RequestContext {
     }
 
     /**
-     * @return the rawContent
+     * @return the decoder of the request body array not read yet (bulk POST
+     * streaming); null if the body has been read in the content
+     */
+    public JsonStreamDecoder getContentDecoder() {
+        return contentDecoder;
+    }
+
+    /**
+     * @param contentDecoder the contentDecoder to set
+     */
+    public void setContentDecoder(JsonStreamDecoder contentDecoder) {
+        this.contentDecoder = contentDecoder;
+    }
+
+    /**
+     * @return the request body as a string; null for the json arrays of bulk
+     * POSTs streamed with bulk-post-streaming, whose elements are not buffered
      */
     public String getRawContent() {
         return rawContent;
@@ -913,6 +1029,22 @@ public final class RequestContext {
         this.filePath = filePath;
     }
 
+    /**
+     * @return the stream of the file part of a multipart request, set when
+     * the file is uploaded while the request is read instead of being spooled
+     * to a temporary file
+     */
+    public InputStream getFileInputStream() {
+        return fileInputStream;
+    }
+
+    /**
+     * @param fileInputStream the fileInputStream to set
+     */
+    public void setFileInputStream(InputStream fileInputStream) {
+        this.fileInputStream = fileInputStream;
+    }
+
     /**
      * @return keys
      */
@@ -927,6 +1059,51 @@ public final class RequestContext {
         this.keys = keys;
     }
 
+    /**
+     * @return the names of the relationships to expand, * for all of them,
+     * or null if the expand query parameter is not specified
+     */
+    public Set<String> getExpand() {
+        return expand;
+    }
+
+    /**
+     * @param expand the names of the relationships to expand
+     */
+    public void setExpand(Set<String> expand) {
+        this.expand = expand;
+    }
+
+    /**
+     * @param data a document of the response
+     * @return the documents of the expanded relationships of data, keyed by
+     * the relationship name, or null if none has been expanded
+     */
+    public BsonDocument getExpandedRelationships(BsonDocument data) {
+        return expandedRelationships == null
+                ? null
+                : expandedRelationships.get(data);
+    }
+
+    /**
+     * @param data a document of the response
+     * @param rel the relationship name
+     * @param expanded the documents referenced by data via rel
+     */
+    public void addExpandedRelationship(
+            BsonDocument data,
+            String rel,
+            BsonArray expanded) {
+        if (expandedRelationships == null) {
+            // the documents are keyed by identity, as they can be equal
+            expandedRelationships = new IdentityHashMap<>();
+        }
+
+        expandedRelationships
+                .computeIfAbsent(data, d -> new BsonDocument())
+                .put(rel, expanded);
+    }
+
     /**
      * @return the halMode
      */
@@ -1248,6 +1425,36 @@ public final class RequestContext {
         this.authenticatedAccount = authenticatedAccount;
     }
 
+    /**
+     * @return the key of the response in the ResponseCacheSingleton, null if
+     * the response is not to be cached
+     */
+    public String getResponseCacheKey() {
+        return responseCacheKey;
+    }
+
+    /**
+     * @param responseCacheKey the responseCacheKey to set
+     */
+    public void setResponseCacheKey(String responseCacheKey) {
+        this.responseCacheKey = responseCacheKey;
+    }
+
+    /**
+     * @return the number of writes of the ResponseCacheSingleton when the
+     * request started
+     */
+    public long getResponseCacheWrites() {
+        return responseCacheWrites;
+    }
+
+    /**
+     * @param responseCacheWrites the responseCacheWrites to set
+     */
+    public void setResponseCacheWrites(long responseCacheWrites) {
+        this.responseCacheWrites = responseCacheWrites;
+    }
+
     /**
      * helper method to check request resource type
      *
@@ -17,7 +17,10 @@
  */
 package org.restheart.handlers;
 
+import io.undertow.io.IoCallback;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 import org.restheart.handlers.RequestContext.METHOD;
@@ -50,6 +53,8 @@ import org.restheart.handlers.files.PutFileHandler;
 import org.restheart.handlers.indexes.DeleteIndexHandler;
 import org.restheart.handlers.indexes.GetIndexesHandler;
 import org.restheart.handlers.indexes.PutIndexHandler;
+import org.restheart.handlers.injectors.CachedResponse;
+import org.restheart.handlers.injectors.ResponseCacheSingleton;
 import org.restheart.handlers.metadata.AfterWriteCheckMetadataHandler;
 import org.restheart.handlers.metadata.BeforeWriteCheckMetadataHandler;
 import org.restheart.handlers.metadata.CheckHandler;
@@ -59,6 +64,7 @@ import org.restheart.handlers.metadata.ResponseTransformerMetadataHandler;
 import org.restheart.handlers.metadata.TransformerHandler;
 import org.restheart.handlers.root.GetRootHandler;
 import org.restheart.handlers.schema.JsonMetaSchemaChecker;
+import org.restheart.handlers.schema.JsonSchemaCacheInvalidatorHandler;
 import org.restheart.handlers.schema.JsonSchemaTransformer;
 import org.restheart.metadata.transformers.PlainJsonTransformer;
 import org.restheart.metadata.transformers.RepresentationTransformer.PHASE;
@@ -303,14 +309,16 @@ public final class RequestDispacherHandler extends PipedHttpHandler {
         putPipedHttpHandler(TYPE.SCHEMA_STORE, METHOD.PUT,
                 new RequestTransformerMetadataHandler(
                         new PutCollectionHandler(
-                                respTransformers())));
+                                new JsonSchemaCacheInvalidatorHandler(
+                                        respTransformers()))));
 
         putPipedHttpHandler(TYPE.SCHEMA_STORE, METHOD.POST,
                 new RequestTransformerMetadataHandler(
                         new CheckHandler(
                                 new TransformerHandler(
                                         new PostCollectionHandler(
-                                                respTransformers()),
+                                                new JsonSchemaCacheInvalidatorHandler(
+                                                        respTransformers())),
                                         PHASE.REQUEST,
                                         new JsonSchemaTransformer()),
                                 new JsonMetaSchemaChecker())));
@@ -318,7 +326,8 @@ public final class RequestDispacherHandler extends PipedHttpHandler {
         putPipedHttpHandler(TYPE.SCHEMA_STORE, METHOD.DELETE,
                 new RequestTransformerMetadataHandler(
                         new DeleteCollectionHandler(
-                                respTransformers())));
+                                new JsonSchemaCacheInvalidatorHandler(
+                                        respTransformers()))));
 
         putPipedHttpHandler(TYPE.SCHEMA, METHOD.GET,
                 new RequestTransformerMetadataHandler(
@@ -333,7 +342,8 @@ public final class RequestDispacherHandler extends PipedHttpHandler {
                         new CheckHandler(
                                 new TransformerHandler(
                                         new PutDocumentHandler(
-                                                respTransformers()),
+                                                new JsonSchemaCacheInvalidatorHandler(
+                                                        respTransformers())),
                                         PHASE.REQUEST,
                                         new JsonSchemaTransformer()),
                                 new JsonMetaSchemaChecker())));
@@ -341,7 +351,8 @@ public final class RequestDispacherHandler extends PipedHttpHandler {
         putPipedHttpHandler(TYPE.SCHEMA, METHOD.DELETE,
                 new RequestTransformerMetadataHandler(
                         new DeleteDocumentHandler(
-                                respTransformers())));
+                                new JsonSchemaCacheInvalidatorHandler(
+                                        respTransformers()))));
     }
 
     private PipedHttpHandler respTransformers() {
@@ -460,6 +471,25 @@ public final class RequestDispacherHandler extends PipedHttpHandler {
             return;
         }
 
+        if (ResponseCacheSingleton.isCacheable(context)) {
+            final String key = ResponseCacheSingleton.getKey(exchange, context);
+
+            // read before the request hits the db, see ResponseCacheSingleton
+            final long writes = ResponseCacheSingleton.getInstance()
+                    .getWrites();
+
+            final CachedResponse cached = ResponseCacheSingleton.getInstance()
+                    .get(key);
+
+            if (cached != null) {
+                sendCachedResponse(exchange, context, cached);
+                return;
+            }
+
+            context.setResponseCacheKey(key);
+            context.setResponseCacheWrites(writes);
+        }
+
         final PipedHttpHandler httpHandler
                 = getPipedHttpHandler(context.getType(), context.getMethod());
 
@@ -479,4 +509,35 @@ public final class RequestDispacherHandler extends PipedHttpHandler {
             responseSenderHandler.handleRequest(exchange, context);
         }
     }
+
+    private void sendCachedResponse(
+            HttpServerExchange exchange,
+            RequestContext context,
+            CachedResponse cached) {
+        // only the etag of documents changes with their content
+        if (context.isDocument()
+                && cached.getEtag() != null
+                && cached.getEtag().equals(exchange.getRequestHeaders()
+                        .getFirst(Headers.IF_NONE_MATCH))) {
+            context.setResponseStatusCode(HttpStatus.SC_NOT_MODIFIED);
+            exchange.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
+            exchange.endExchange();
+            return;
+        }
+
+        if (cached.getEtag() != null) {
+            exchange.getResponseHeaders().put(Headers.ETAG, cached.getEtag());
+        }
+
+        exchange.getResponseHeaders().put(
+                Headers.CONTENT_TYPE, cached.getContentType());
+
+        context.setResponseStatusCode(HttpStatus.SC_OK);
+        exchange.setStatusCode(HttpStatus.SC_OK);
+        exchange.setResponseContentLength(cached.getContent().length);
+
+        exchange.getResponseSender().send(
+                ByteBuffer.wrap(cached.getContent()),
+                IoCallback.END_EXCHANGE);
+    }
 }
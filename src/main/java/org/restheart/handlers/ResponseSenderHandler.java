@@ -17,20 +17,29 @@
  */
 package org.restheart.handlers;
 
+import io.undertow.io.IoCallback;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
+import java.nio.ByteBuffer;
+import java.util.List;
 import org.bson.BsonArray;
 import org.bson.BsonDocument;
 import org.bson.BsonString;
 import org.bson.BsonValue;
 import org.restheart.hal.Representation;
-import org.restheart.utils.JsonUtils;
+import org.restheart.handlers.injectors.CachedResponse;
+import org.restheart.handlers.injectors.ResponseCacheSingleton;
+import org.restheart.utils.HttpStatus;
+import org.restheart.utils.JsonStreamSerializer;
 
 /**
  *
  * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
  */
 public class ResponseSenderHandler extends PipedHttpHandler {
+
+    private static final int CACHE_BUFFER_SIZE = 16384;
+
     /**
      * @param next
      */
@@ -112,9 +121,17 @@ public class ResponseSenderHandler extends PipedHttpHandler {
 
         exchange.setStatusCode(context.getResponseStatusCode());
 
-        if (responseContent != null) {
-            exchange.getResponseSender().send(
-                    JsonUtils.toJson(responseContent));
+        if (responseContent != null
+                && context.getResponseCacheKey() != null
+                && context.getResponseStatusCode() == HttpStatus.SC_OK
+                && (responseContent.isDocument() || responseContent.isArray())) {
+            sendAndCache(exchange, context, responseContent);
+        } else if (responseContent != null) {
+            // writes the compact json directly into pooled buffers
+            JsonStreamSerializer.send(
+                    exchange,
+                    responseContent,
+                    IoCallback.END_EXCHANGE);
         }
 
         exchange.endExchange();
@@ -122,6 +139,47 @@ public class ResponseSenderHandler extends PipedHttpHandler {
         next(exchange, context);
     }
 
+    /**
+     * serializes the response content on the heap, so that the bytes can be
+     * both sent and put in the ResponseCacheSingleton
+     */
+    private void sendAndCache(
+            HttpServerExchange exchange,
+            RequestContext context,
+            BsonValue responseContent) {
+        List<ByteBuffer> buffers = JsonStreamSerializer.write(
+                responseContent,
+                () -> ByteBuffer.allocate(CACHE_BUFFER_SIZE));
+
+        byte[] content = new byte[buffers.stream()
+                .mapToInt(ByteBuffer::remaining)
+                .sum()];
+
+        int pos = 0;
+
+        for (ByteBuffer buffer : buffers) {
+            int len = buffer.remaining();
+            buffer.get(content, pos, len);
+            pos += len;
+        }
+
+        ResponseCacheSingleton.getInstance().put(
+                context.getResponseCacheKey(),
+                context.getResponseCacheWrites(),
+                new CachedResponse(
+                        exchange.getResponseHeaders()
+                                .getFirst(Headers.CONTENT_TYPE),
+                        exchange.getResponseHeaders()
+                                .getFirst(Headers.ETAG),
+                        content));
+
+        exchange.setResponseContentLength(content.length);
+
+        exchange.getResponseSender().send(
+                ByteBuffer.wrap(content),
+                IoCallback.END_EXCHANGE);
+    }
+
     private BsonDocument getWarningDoc(String warning) {
         Representation nrep = new Representation("#warnings");
         nrep.addProperty("message", new BsonString(warning));
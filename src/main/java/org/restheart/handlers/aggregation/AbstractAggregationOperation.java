@@ -28,6 +28,9 @@ public abstract class AbstractAggregationOperation {
 
     public static final String URI_ELEMENT_NAME = "uri";
     public static final String TYPE_ELEMENT_NAME = "type";
+    public static final String CACHE_ELEMENT_NAME = "cache";
+    public static final String CACHE_TTL_ELEMENT_NAME = "ttl";
+    public static final String CACHE_PERSIST_ELEMENT_NAME = "persist";
 
     /**
      *
@@ -137,6 +140,10 @@ public abstract class AbstractAggregationOperation {
     private final TYPE type;
     private final String uri;
 
+    // the ttl in seconds of the cached results, 0 if not cached
+    private final long cacheTtl;
+    private final boolean cachePersisted;
+
     /**
      *
      * @param properties
@@ -183,6 +190,37 @@ public abstract class AbstractAggregationOperation {
         }
 
         this.uri = _uri.asString().getValue();
+
+        BsonValue _cache = properties.get(CACHE_ELEMENT_NAME);
+
+        if (_cache == null) {
+            this.cacheTtl = 0;
+            this.cachePersisted = false;
+        } else {
+            BsonValue _ttl = _cache.isDocument()
+                    ? _cache.asDocument().get(CACHE_TTL_ELEMENT_NAME)
+                    : null;
+
+            BsonValue _persist = _cache.isDocument()
+                    ? _cache.asDocument().get(CACHE_PERSIST_ELEMENT_NAME)
+                    : null;
+
+            if (_ttl == null
+                    || !_ttl.isNumber()
+                    || _ttl.asNumber().longValue() <= 0
+                    || (_persist != null && !_persist.isBoolean())) {
+                throw new InvalidMetadataException("query /" + uri
+                        + " has invalid '" + CACHE_ELEMENT_NAME
+                        + "': " + _cache
+                        + "; must be an object with the ttl in seconds "
+                        + "(a positive number) and the optional persist "
+                        + "boolean");
+            }
+
+            this.cacheTtl = _ttl.asNumber().longValue();
+            this.cachePersisted = _persist != null
+                    && _persist.asBoolean().getValue();
+        }
     }
 
     /**
@@ -199,6 +237,27 @@ public abstract class AbstractAggregationOperation {
         return uri;
     }
 
+    /**
+     * @return true if the results are cached
+     */
+    public boolean isCached() {
+        return cacheTtl > 0;
+    }
+
+    /**
+     * @return the ttl in seconds of the cached results
+     */
+    public long getCacheTtl() {
+        return cacheTtl;
+    }
+
+    /**
+     * @return true if the cached results are also stored in the db
+     */
+    public boolean isCachePersisted() {
+        return cachePersisted;
+    }
+
     /**
      * @param obj
      * @param aVars RequestContext.getAggregationVars()
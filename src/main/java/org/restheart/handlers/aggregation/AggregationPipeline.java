@@ -21,9 +21,10 @@ import java.util.ArrayList;
 import java.util.List;
 import org.bson.BsonArray;
 import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
 import org.bson.BsonValue;
 import org.restheart.handlers.metadata.InvalidMetadataException;
-import org.restheart.utils.JsonUtils;
 
 /**
  * represents a map reduce.
@@ -33,7 +34,18 @@ import org.restheart.utils.JsonUtils;
 public class AggregationPipeline extends AbstractAggregationOperation {
 
     public static final String STAGES_ELEMENT_NAME = "stages";
+    public static final String ALLOW_DISK_USE_ELEMENT_NAME = "allowDiskUse";
+
+    /**
+     * the field of the result of the stages returned by count()
+     */
+    public static final String COUNT_FIELD = "count";
+
+    private static final String OUT_STAGE = "$out";
+
     private final BsonArray stages;
+    private final AggregationTemplate stagesTemplate;
+    private final boolean allowDiskUse;
 
     /**
      * @param properties the json properties object. It must include the
@@ -41,6 +53,8 @@ public class AggregationPipeline extends AbstractAggregationOperation {
      * <ul>
      * <li><code>stages</code></li>
      * </ul>
+     * and optionally <code>allowDiskUse</code> (boolean, default false) to let
+     * the stages write temporary files for large pipelines.
      * <strong>Note</strong> that the dollar prefixed operators in the stages
      * must be underscore escaped, e.g. "_$exits"
      * <p>
@@ -82,6 +96,81 @@ public class AggregationPipeline extends AbstractAggregationOperation {
         }
 
         this.stages = _stages.asArray();
+        this.stagesTemplate = new AggregationTemplate(this.stages);
+
+        BsonValue _allowDiskUse = properties.get(ALLOW_DISK_USE_ELEMENT_NAME);
+
+        if (_allowDiskUse != null && !_allowDiskUse.isBoolean()) {
+            throw new InvalidMetadataException("query /" + getUri()
+                    + "has invalid '" + ALLOW_DISK_USE_ELEMENT_NAME
+                    + "': " + _allowDiskUse
+                    + "; must be a boolean");
+        }
+
+        this.allowDiskUse = _allowDiskUse != null
+                && _allowDiskUse.asBoolean().getValue();
+    }
+
+    /**
+     * @return true if the stages can write temporary files
+     */
+    public boolean isAllowDiskUse() {
+        return allowDiskUse;
+    }
+
+    /**
+     * @param stages the resolved stages
+     * @return true if the pipeline writes its result to a collection, so
+     * that no stages can be appended to it
+     */
+    public static boolean hasOutStage(List<BsonDocument> stages) {
+        return !stages.isEmpty()
+                && stages.get(stages.size() - 1).containsKey(OUT_STAGE);
+    }
+
+    /**
+     * appends to the stages the ones that select the requested page, so that
+     * only the documents of the page are returned by the server.
+     *
+     * @param stages the resolved stages
+     * @param skip the documents to skip
+     * @param limit the page size, at least 1 document is returned
+     * @return the paginated stages
+     */
+    public static List<BsonDocument> paginate(
+            List<BsonDocument> stages,
+            int skip,
+            int limit) {
+        List<BsonDocument> ret = new ArrayList<>(stages);
+
+        if (skip > 0) {
+            ret.add(new BsonDocument("$skip", new BsonInt32(skip)));
+        }
+
+        // $limit must be positive
+        ret.add(new BsonDocument("$limit", new BsonInt32(Math.max(1, limit))));
+
+        return ret;
+    }
+
+    /**
+     * appends to the stages a $count stage, whose single result document
+     * holds the total number of results in COUNT_FIELD (no document is
+     * returned if there are no results).
+     *
+     * The count is a separate pipeline rather than a $facet stage along with
+     * the page, since the single $facet result document holding the page
+     * would be limited to 16MB.
+     *
+     * @param stages the resolved stages
+     * @return the counting stages
+     */
+    public static List<BsonDocument> count(List<BsonDocument> stages) {
+        List<BsonDocument> ret = new ArrayList<>(stages);
+
+        ret.add(new BsonDocument("$count", new BsonString(COUNT_FIELD)));
+
+        return ret;
     }
 
     /**
@@ -93,23 +182,23 @@ public class AggregationPipeline extends AbstractAggregationOperation {
 
     /**
      * @param vars RequestContext.getAggregationVars()
-     * @return the stages, with unescaped operators and bound variables
+     * @return the stages, with unescaped operators and bound variables; the
+     * stages without variables are shared between requests and must not be
+     * modified
      * @throws org.restheart.handlers.metadata.InvalidMetadataException
      * @throws org.restheart.handlers.aggregation.QueryVariableNotBoundException
      */
     public List<BsonDocument> getResolvedStagesAsList(BsonDocument vars)
             throws InvalidMetadataException, QueryVariableNotBoundException {
-        BsonArray replacedStages = bindAggregationVariables(
-                JsonUtils.unescapeKeys(stages), vars)
-                .asArray();
+        BsonArray replacedStages = stagesTemplate.bind(vars).asArray();
 
-        List<BsonDocument> ret = new ArrayList<>();
+        List<BsonDocument> ret = new ArrayList<>(replacedStages.size());
 
         replacedStages.stream().filter((stage) -> (stage.isDocument()))
                 .forEach((stage) -> {
                     ret.add(stage.asDocument());
                 });
-        
+
         return ret;
     }
 }
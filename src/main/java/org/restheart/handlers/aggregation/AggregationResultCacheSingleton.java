@@ -0,0 +1,472 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.aggregation;
+
+import com.google.common.hash.Hashing;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.UpdateOptions;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.bson.BsonArray;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.restheart.Bootstrapper;
+import org.restheart.cache.Cache;
+import org.restheart.cache.CacheFactory;
+import org.restheart.db.MongoDBClientSingleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the results of the aggregations whose definition has the cache
+ * property.
+ *
+ * The entries are keyed by the aggregation, the resolved stages (or map,
+ * reduce and query) with the bound variables and the requested page. They
+ * expire after the ttl of the aggregation and are invalidated by the writes
+ * on their collection (or db) performed via the DAOs; as in the
+ * ResponseCacheSingleton, a result can be put only if no write occurred
+ * since the request started.
+ *
+ * If the aggregation has persist: true, the results are also stored in the
+ * _aggrs_cache collection of the db (removed by a ttl index when they
+ * expire), so that they survive restarts and are shared by the nodes.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class AggregationResultCacheSingleton {
+
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(AggregationResultCacheSingleton.class);
+
+    /**
+     * the name of the collection of the persisted results
+     */
+    public static final String PERSISTED_COLLECTION = "_aggrs_cache";
+
+    private static final String SEPARATOR = "_@_@_";
+
+    private static final String _ID = "_id";
+    private static final String COLL = "coll";
+    private static final String URI = "uri";
+    private static final String DATA = "data";
+    private static final String SIZE = "size";
+    private static final String EXPIRES = "expires";
+    private static final String CREATED = "created";
+
+    /**
+     *
+     * @return
+     */
+    public static AggregationResultCacheSingleton getInstance() {
+        return AggregationResultCacheSingletonHolder.INSTANCE;
+    }
+
+    private final Cache<String, CachedResult> cache;
+
+    // the keys of the cache grouped by db and collection name
+    private final Map<String, Set<String>> keysByCollection
+            = new ConcurrentHashMap<>();
+
+    // the collections with persisted results, by db name
+    private final Map<String, Set<String>> persisted
+            = new ConcurrentHashMap<>();
+
+    // the time of the last write by db and collection name (or db name),
+    // to discard the results persisted before it, i.e. before a restart
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    // incremented by every write, see put()
+    private final AtomicLong writes = new AtomicLong();
+
+    private AggregationResultCacheSingleton() {
+        int size = Bootstrapper.getConfiguration() == null
+                ? 100
+                : Bootstrapper.getConfiguration().getAggregationCacheSize();
+
+        // entries expire after the ttl of their aggregation, see get()
+        this.cache = CacheFactory.createLocalCache(
+                size,
+                Cache.EXPIRE_POLICY.NEVER,
+                -1,
+                entry -> unindexKey(entry.getKey()));
+    }
+
+    /**
+     * @param dbName
+     * @param collName
+     * @param operation
+     * @param resolved the resolved stages (or map, reduce and query) and the
+     * requested page
+     * @return the cache key
+     */
+    public static String getKey(
+            String dbName,
+            String collName,
+            AbstractAggregationOperation operation,
+            BsonValue resolved) {
+        return dbName
+                + SEPARATOR
+                + collName
+                + SEPARATOR
+                + operation.getUri()
+                + SEPARATOR
+                + resolved.toString();
+    }
+
+    /**
+     * @return the number of writes so far, to be passed to put()
+     */
+    public long getWrites() {
+        return writes.get();
+    }
+
+    /**
+     * @param operation
+     * @param key
+     * @return the cached result or null
+     */
+    public CachedResult get(AbstractAggregationOperation operation, String key) {
+        Optional<CachedResult> _cached = cache.get(key);
+
+        CachedResult cached = _cached != null && _cached.isPresent()
+                ? _cached.get()
+                : null;
+
+        if (cached == null && operation.isCachePersisted()) {
+            cached = load(key);
+
+            if (cached != null) {
+                index(key, cached);
+            }
+        }
+
+        if (cached != null && cached.isExpired()) {
+            cache.invalidate(key);
+            return null;
+        }
+
+        return cached;
+    }
+
+    /**
+     * caches the result, unless some write occurred after the request started
+     *
+     * @param operation
+     * @param key
+     * @param writesAtStart the value of getWrites() when the request started
+     * @param data the documents of the requested page
+     * @param size the total number of documents, -1 if not counted
+     */
+    public void put(
+            AbstractAggregationOperation operation,
+            String key,
+            long writesAtStart,
+            List<BsonDocument> data,
+            long size) {
+        if (writes.get() != writesAtStart) {
+            return;
+        }
+
+        // the response transformers can modify the documents
+        CachedResult result = new CachedResult(copy(data),
+                size,
+                System.currentTimeMillis()
+                + TimeUnit.SECONDS.toMillis(operation.getCacheTtl()));
+
+        index(key, result);
+
+        if (operation.isCachePersisted()) {
+            persist(operation, key, result);
+        }
+
+        // a write occurred meanwhile, the result can be stale
+        if (writes.get() != writesAtStart) {
+            invalidateCollection(getDbName(key), getCollName(key));
+        }
+    }
+
+    /**
+     * invalidates the results of the aggregations of all the collections of
+     * the db
+     *
+     * @param dbName
+     */
+    public void invalidateDb(String dbName) {
+        writes.incrementAndGet();
+        lastWrites.put(dbName, System.currentTimeMillis());
+
+        String prefix = dbName + SEPARATOR;
+
+        keysByCollection.keySet().stream()
+                .filter(k -> k.startsWith(prefix))
+                .forEach(this::invalidateKeys);
+
+        Set<String> colls = persisted.remove(dbName);
+
+        if (colls != null) {
+            deletePersisted(dbName, new BsonDocument());
+        }
+    }
+
+    /**
+     * invalidates the results of the aggregations of the collection
+     *
+     * @param dbName
+     * @param collName
+     */
+    public void invalidateCollection(String dbName, String collName) {
+        writes.incrementAndGet();
+        lastWrites.put(dbName + SEPARATOR + collName,
+                System.currentTimeMillis());
+
+        invalidateKeys(dbName + SEPARATOR + collName);
+
+        Set<String> colls = persisted.get(dbName);
+
+        if (colls != null && colls.remove(collName)) {
+            deletePersisted(dbName,
+                    new BsonDocument(COLL, new BsonString(collName)));
+        }
+    }
+
+    private void index(String key, CachedResult result) {
+        keysByCollection.computeIfAbsent(
+                getDbName(key) + SEPARATOR + getCollName(key),
+                k -> ConcurrentHashMap.newKeySet())
+                .add(key);
+
+        cache.put(key, result);
+    }
+
+    private void invalidateKeys(String collectionKey) {
+        Set<String> keys = keysByCollection.remove(collectionKey);
+
+        if (keys != null) {
+            keys.forEach(cache::invalidate);
+        }
+    }
+
+    private void unindexKey(String key) {
+        // the entry can have been replaced meanwhile
+        if (cache.asMap().containsKey(key)) {
+            return;
+        }
+
+        String collectionKey = getDbName(key) + SEPARATOR + getCollName(key);
+
+        Set<String> keys = keysByCollection.get(collectionKey);
+
+        if (keys != null && keys.remove(key)) {
+            keysByCollection.computeIfPresent(collectionKey,
+                    (k, v) -> v.isEmpty() ? null : v);
+        }
+    }
+
+    private CachedResult load(String key) {
+        BsonDocument doc;
+
+        try {
+            doc = getPersistedCollection(getDbName(key))
+                    .find(new BsonDocument(_ID, new BsonString(hash(key))))
+                    .first();
+        } catch (MongoException me) {
+            LOGGER.warn("error reading the persisted aggregation result", me);
+            return null;
+        }
+
+        if (doc == null
+                || !doc.isArray(DATA)
+                || !doc.isNumber(SIZE)
+                || !doc.isDateTime(EXPIRES)
+                || !doc.isDateTime(CREATED)
+                || isStale(key, doc.getDateTime(CREATED).getValue())) {
+            return null;
+        }
+
+        // writes on the collection must delete it from now on
+        persisted.computeIfAbsent(getDbName(key),
+                k -> ConcurrentHashMap.newKeySet())
+                .add(getCollName(key));
+
+        List<BsonDocument> data = new ArrayList<>();
+
+        doc.getArray(DATA).stream()
+                .filter(BsonValue::isDocument)
+                .forEach(d -> data.add(d.asDocument()));
+
+        return new CachedResult(data,
+                doc.getNumber(SIZE).longValue(),
+                doc.getDateTime(EXPIRES).getValue());
+    }
+
+    private boolean isStale(String key, long created) {
+        Long dbWrite = lastWrites.get(getDbName(key));
+        Long collWrite = lastWrites.get(
+                getDbName(key) + SEPARATOR + getCollName(key));
+
+        return (dbWrite != null && dbWrite >= created)
+                || (collWrite != null && collWrite >= created);
+    }
+
+    private void persist(
+            AbstractAggregationOperation operation,
+            String key,
+            CachedResult result) {
+        String dbName = getDbName(key);
+        String collName = getCollName(key);
+
+        persisted.computeIfAbsent(dbName, k -> {
+            createTtlIndex(dbName);
+            return ConcurrentHashMap.newKeySet();
+        }).add(collName);
+
+        BsonArray data = new BsonArray();
+        result.data.forEach(data::add);
+
+        BsonDocument doc = new BsonDocument(_ID, new BsonString(hash(key)))
+                .append(COLL, new BsonString(collName))
+                .append(URI, new BsonString(operation.getUri()))
+                .append(SIZE, new BsonInt64(result.size))
+                .append(CREATED, new BsonDateTime(System.currentTimeMillis()))
+                .append(EXPIRES, new BsonDateTime(result.expires))
+                .append(DATA, data);
+
+        try {
+            getPersistedCollection(dbName).replaceOne(
+                    new BsonDocument(_ID, doc.get(_ID)),
+                    doc,
+                    new UpdateOptions().upsert(true));
+        } catch (MongoException me) {
+            // i.e. the result exceeds the max document size
+            LOGGER.debug("aggregation result of /{}/{}/_aggrs/{} "
+                    + "not persisted", dbName, collName,
+                    operation.getUri(), me);
+        }
+    }
+
+    private void deletePersisted(String dbName, BsonDocument filter) {
+        try {
+            getPersistedCollection(dbName).deleteMany(filter);
+        } catch (MongoException me) {
+            // the results will expire
+            LOGGER.warn("error deleting the persisted aggregation results "
+                    + "of db {}", dbName, me);
+        }
+    }
+
+    private void createTtlIndex(String dbName) {
+        try {
+            getPersistedCollection(dbName).createIndex(
+                    new BsonDocument(EXPIRES, new BsonInt32(1)),
+                    new IndexOptions().expireAfter(0l, TimeUnit.SECONDS));
+        } catch (MongoException me) {
+            // expired results are not returned anyway, see get()
+            LOGGER.warn("error creating the ttl index of {}.{}",
+                    dbName, PERSISTED_COLLECTION, me);
+        }
+    }
+
+    private MongoCollection<BsonDocument> getPersistedCollection(
+            String dbName) {
+        return MongoDBClientSingleton.getInstance().getClient()
+                .getDatabase(dbName)
+                .getCollection(PERSISTED_COLLECTION, BsonDocument.class);
+    }
+
+    private static List<BsonDocument> copy(List<BsonDocument> data) {
+        List<BsonDocument> ret = new ArrayList<>(data.size());
+
+        data.forEach(d -> ret.add(d.clone()));
+
+        return ret;
+    }
+
+    private static String hash(String key) {
+        return Hashing.sha256()
+                .hashString(key, StandardCharsets.UTF_8)
+                .toString();
+    }
+
+    private static String getDbName(String key) {
+        return key.substring(0, key.indexOf(SEPARATOR));
+    }
+
+    private static String getCollName(String key) {
+        int idx = key.indexOf(SEPARATOR) + SEPARATOR.length();
+
+        return key.substring(idx, key.indexOf(SEPARATOR, idx));
+    }
+
+    /**
+     * a cached aggregation result
+     */
+    public static class CachedResult {
+
+        private final List<BsonDocument> data;
+        private final long size;
+        private final long expires;
+
+        CachedResult(List<BsonDocument> data, long size, long expires) {
+            this.data = data;
+            this.size = size;
+            this.expires = expires;
+        }
+
+        /**
+         * @return a copy of the documents of the page, so that the response
+         * transformers cannot modify the cached ones
+         */
+        public List<BsonDocument> getData() {
+            return copy(data);
+        }
+
+        /**
+         * @return the total number of documents, -1 if not counted
+         */
+        public long getSize() {
+            return size;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > expires;
+        }
+    }
+
+    private static class AggregationResultCacheSingletonHolder {
+
+        private static final AggregationResultCacheSingleton INSTANCE
+                = new AggregationResultCacheSingleton();
+
+        private AggregationResultCacheSingletonHolder() {
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.aggregation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.restheart.handlers.metadata.InvalidMetadataException;
+import org.restheart.utils.JsonUtils;
+
+/**
+ * The stages (or the query) of an aggregation compiled when the metadata is
+ * loaded: the keys are unescaped once and the positions of the variables
+ * ({"_$var": "name"}) are recorded, so that binding only copies the paths
+ * leading to a variable and shares the rest of the tree.
+ *
+ * The result of bind() gives the same json of
+ * bindAggregationVariables(JsonUtils.unescapeKeys(json), aVars), but the
+ * values without variables are the ones of the template: they must not be
+ * modified.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+class AggregationTemplate {
+
+    private static final String VAR = "$var";
+
+    private final Node root;
+
+    /**
+     * @param json the escaped json, as stored in the metadata
+     */
+    AggregationTemplate(BsonValue json) {
+        this.root = compile(JsonUtils.unescapeKeys(json));
+    }
+
+    /**
+     * @return true if the json has no variables
+     */
+    boolean isConstant() {
+        return root instanceof Constant;
+    }
+
+    /**
+     * @param aVars RequestContext.getAggregationVars()
+     * @return the unescaped json with bound variables
+     * @throws InvalidMetadataException if a variable name is not a string
+     * @throws QueryVariableNotBoundException if a variable is not bound
+     */
+    BsonValue bind(BsonDocument aVars)
+            throws InvalidMetadataException, QueryVariableNotBoundException {
+        return root.bind(aVars);
+    }
+
+    private static Node compile(BsonValue json) {
+        if (json == null) {
+            return new Constant(null);
+        }
+
+        if (json.isDocument()) {
+            BsonDocument doc = json.asDocument();
+
+            if (doc.size() == 1 && doc.get(VAR) != null) {
+                return new Variable(doc.get(VAR));
+            }
+
+            List<String> keys = new ArrayList<>(doc.size());
+            List<Node> values = new ArrayList<>(doc.size());
+            boolean constant = true;
+
+            for (Map.Entry<String, BsonValue> entry : doc.entrySet()) {
+                Node value = compile(entry.getValue());
+
+                keys.add(entry.getKey());
+                values.add(value);
+                constant &= value instanceof Constant;
+            }
+
+            return constant ? new Constant(doc) : new Document(keys, values);
+        } else if (json.isArray()) {
+            List<Node> values = new ArrayList<>(json.asArray().size());
+            boolean constant = true;
+
+            for (BsonValue el : json.asArray()) {
+                Node value = compile(el);
+
+                values.add(value);
+                constant &= value instanceof Constant;
+            }
+
+            return constant ? new Constant(json) : new Array(values);
+        } else {
+            return new Constant(json);
+        }
+    }
+
+    private interface Node {
+
+        BsonValue bind(BsonDocument aVars)
+                throws InvalidMetadataException, QueryVariableNotBoundException;
+    }
+
+    private static class Constant implements Node {
+
+        private final BsonValue value;
+
+        Constant(BsonValue value) {
+            this.value = value;
+        }
+
+        @Override
+        public BsonValue bind(BsonDocument aVars) {
+            return value;
+        }
+    }
+
+    private static class Variable implements Node {
+
+        private final BsonValue name;
+
+        Variable(BsonValue name) {
+            this.name = name;
+        }
+
+        @Override
+        public BsonValue bind(BsonDocument aVars)
+                throws InvalidMetadataException, QueryVariableNotBoundException {
+            // checked here, as bindAggregationVariables() does
+            if (!name.isString()) {
+                throw new InvalidMetadataException("wrong variable name "
+                        + name.toString());
+            }
+
+            BsonValue value = aVars == null
+                    ? null
+                    : aVars.get(name.asString().getValue());
+
+            if (value == null) {
+                throw new QueryVariableNotBoundException("variable "
+                        + name.asString().getValue() + " not bound");
+            }
+
+            return value;
+        }
+    }
+
+    private static class Document implements Node {
+
+        private final List<String> keys;
+        private final List<Node> values;
+
+        Document(List<String> keys, List<Node> values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        public BsonValue bind(BsonDocument aVars)
+                throws InvalidMetadataException, QueryVariableNotBoundException {
+            BsonDocument ret = new BsonDocument();
+
+            for (int i = 0; i < keys.size(); i++) {
+                ret.put(keys.get(i), values.get(i).bind(aVars));
+            }
+
+            return ret;
+        }
+    }
+
+    private static class Array implements Node {
+
+        private final List<Node> values;
+
+        Array(List<Node> values) {
+            this.values = values;
+        }
+
+        @Override
+        public BsonValue bind(BsonDocument aVars)
+                throws InvalidMetadataException, QueryVariableNotBoundException {
+            BsonArray ret = new BsonArray();
+
+            for (Node value : values) {
+                ret.add(value.bind(aVars));
+            }
+
+            return ret;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import org.bson.BsonDocument;
 import org.bson.BsonValue;
 import org.restheart.handlers.RequestContext;
 import org.restheart.metadata.transformers.Transformer;
+import org.restheart.utils.CompiledJsonPath;
 import org.restheart.utils.JsonUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +40,9 @@ public class AggregationTransformer implements Transformer {
     static final Logger LOGGER = LoggerFactory
             .getLogger(AggregationTransformer.class);
 
+    private static final CompiledJsonPath AGGREGATIONS_PATH = CompiledJsonPath
+            .compile("$." + AbstractAggregationOperation.AGGREGATIONS_ELEMENT_NAME);
+
     @Override
     public void transform(
             HttpServerExchange exchange,
@@ -112,9 +116,8 @@ public class AggregationTransformer implements Transformer {
     }
 
     private BsonArray getAggregationMetadata(BsonDocument contentToTransform) {
-        List<Optional<BsonValue>> ___aggrs = JsonUtils
-                .getPropsFromPath(contentToTransform,
-                        "$." + AbstractAggregationOperation.AGGREGATIONS_ELEMENT_NAME);
+        List<Optional<BsonValue>> ___aggrs = AGGREGATIONS_PATH
+                .getProps(contentToTransform);
 
         if (___aggrs == null || ___aggrs.isEmpty()) {
             return null;
@@ -20,13 +20,19 @@ package org.restheart.handlers.aggregation;
 import com.mongodb.MongoCommandException;
 import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.MapReduceIterable;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoIterable;
 import io.undertow.server.HttpServerExchange;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import org.bson.BsonArray;
+import org.bson.BsonBoolean;
 import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.BsonValue;
 import org.restheart.Bootstrapper;
 import org.restheart.hal.Representation;
 import org.restheart.handlers.IllegalQueryParamenterException;
@@ -75,8 +81,7 @@ public class GetAggregationHandler extends PipedHttpHandler {
         String queryUri = context.getAggregationOperation();
 
         List<AbstractAggregationOperation> aggregations
-                = AbstractAggregationOperation
-                        .getFromJson(context.getCollectionProps());
+                = context.getCollectionMetadata().getAggregations();
 
         Optional<AbstractAggregationOperation> _query
                 = aggregations.stream().filter(q
@@ -91,11 +96,21 @@ public class GetAggregationHandler extends PipedHttpHandler {
             return;
         }
 
-        ArrayList<BsonDocument> data = new ArrayList<>();
-        int size;
+        List<BsonDocument> data;
+        long size;
+
+        final int skip = context.getPagesize() * (context.getPage() - 1);
 
         AbstractAggregationOperation query = _query.get();
 
+        final AggregationResultCacheSingleton cache
+                = AggregationResultCacheSingleton.getInstance();
+
+        // set if the result of the aggregation is cacheable
+        String cacheKey = null;
+        long writesAtStart = 0;
+        AggregationResultCacheSingleton.CachedResult cached = null;
+
         if (null == query.getType()) {
             ResponseHelper.endExchangeWithMessage(
                     exchange,
@@ -109,14 +124,40 @@ public class GetAggregationHandler extends PipedHttpHandler {
                     MapReduceIterable<BsonDocument> mrOutput;
                     MapReduce mapReduce = (MapReduce) query;
                     try {
+                        String map = mapReduce.getResolvedMap(
+                                context.getAggreationVars());
+                        String reduce = mapReduce.getResolvedReduce(
+                                context.getAggreationVars());
+                        BsonDocument filter = mapReduce.getResolvedQuery(
+                                context.getAggreationVars());
+
+                        if (query.isCached()) {
+                            cacheKey = AggregationResultCacheSingleton.getKey(
+                                    context.getDBName(),
+                                    context.getCollectionName(),
+                                    query,
+                                    new BsonDocument("map", new BsonString(map))
+                                            .append("reduce", new BsonString(reduce))
+                                            .append("query", filter)
+                                            .append("skip", new BsonInt32(skip))
+                                            .append("pagesize", new BsonInt32(context.getPagesize()))
+                                            .append("count", BsonBoolean.valueOf(context.isCount())));
+
+                            writesAtStart = cache.getWrites();
+                            cached = cache.get(query, cacheKey);
+                        }
+
+                        if (cached != null) {
+                            data = cached.getData();
+                            size = cached.getSize();
+                            break;
+                        }
+
                         mrOutput = getDatabase()
                                 .getCollection(context.getDBName(),
                                         context.getCollectionName())
-                                .mapReduce(
-                                        mapReduce.getResolvedMap(context.getAggreationVars()),
-                                        mapReduce.getResolvedReduce(context.getAggreationVars()))
-                                .filter(
-                                        mapReduce.getResolvedQuery(context.getAggreationVars()))
+                                .mapReduce(map, reduce)
+                                .filter(filter)
                                 .maxTime(Bootstrapper.getConfiguration().getAggregationTimeLimit(), TimeUnit.MILLISECONDS);
                     } catch (MongoCommandException | InvalidMetadataException ex) {
                         ResponseHelper.endExchangeWithMessage(
@@ -140,24 +181,84 @@ public class GetAggregationHandler extends PipedHttpHandler {
                         next(exchange, context);
                         return;
                     }   // ***** get data
-                    for (BsonDocument obj : mrOutput) {
-                        data.add(obj);
-                    }
-                    size = data.size();
+                    // the inline output cannot be paginated by the server
+                    data = new ArrayList<>();
+                    size = readPage(mrOutput, skip, context.getPagesize(),
+                            data, context.isCount());
                     break;
                 case AGGREGATION_PIPELINE:
                     AggregateIterable<BsonDocument> agrOutput;
+                    AggregateIterable<BsonDocument> countOutput = null;
                     AggregationPipeline pipeline = (AggregationPipeline) query;
+                    boolean paginated;
                     try {
+                        List<BsonDocument> stages = pipeline
+                                .getResolvedStagesAsList(
+                                        context.getAggreationVars());
+
+                        // no stages can follow $out
+                        paginated = !AggregationPipeline.hasOutStage(stages);
+
+                        if (paginated && context.getPagesize() == 0
+                                && !context.isCount()) {
+                            // nothing to read
+                            data = new ArrayList<>();
+                            size = -1;
+                            break;
+                        }
+
+                        List<BsonDocument> countStages = null;
+
+                        if (paginated) {
+                            // the count is a separate pipeline, a $facet
+                            // stage returning both would be limited to 16MB
+                            if (context.isCount()) {
+                                countStages = AggregationPipeline
+                                        .count(stages);
+                            }
+
+                            stages = AggregationPipeline.paginate(
+                                    stages,
+                                    skip,
+                                    context.getPagesize());
+                        }
+
+                        // the $out stage must be executed at every request
+                        if (paginated && query.isCached()) {
+                            cacheKey = AggregationResultCacheSingleton.getKey(
+                                    context.getDBName(),
+                                    context.getCollectionName(),
+                                    query,
+                                    new BsonDocument("stages", new BsonArray(stages))
+                                            .append("count", BsonBoolean.valueOf(context.isCount())));
+
+                            writesAtStart = cache.getWrites();
+                            cached = cache.get(query, cacheKey);
+                        }
+
+                        if (cached != null) {
+                            data = cached.getData();
+                            size = cached.getSize();
+                            break;
+                        }
+
                         agrOutput = getDatabase()
                                 .getCollection(
                                         context.getDBName(),
                                         context.getCollectionName())
-                                .aggregate(
-                                        pipeline
-                                                .getResolvedStagesAsList(
-                                                        context.getAggreationVars()))
+                                .aggregate(stages)
+                                .allowDiskUse(pipeline.isAllowDiskUse())
                                 .maxTime(Bootstrapper.getConfiguration().getAggregationTimeLimit(), TimeUnit.MILLISECONDS);
+
+                        if (countStages != null) {
+                            countOutput = getDatabase()
+                                    .getCollection(
+                                            context.getDBName(),
+                                            context.getCollectionName())
+                                    .aggregate(countStages)
+                                    .allowDiskUse(pipeline.isAllowDiskUse())
+                                    .maxTime(Bootstrapper.getConfiguration().getAggregationTimeLimit(), TimeUnit.MILLISECONDS);
+                        }
                     } catch (MongoCommandException | InvalidMetadataException ex) {
                         ResponseHelper.endExchangeWithMessage(
                                 exchange,
@@ -180,10 +281,20 @@ public class GetAggregationHandler extends PipedHttpHandler {
                         next(exchange, context);
                         return;
                     }   // ***** get data
-                    for (BsonDocument obj : agrOutput) {
-                        data.add(obj);
+                    data = new ArrayList<>();
+                    if (!paginated) {
+                        size = readPage(agrOutput, skip, context.getPagesize(),
+                                data, context.isCount());
+                    } else {
+                        if (context.getPagesize() > 0) {
+                            readPage(agrOutput.batchSize(context.getPagesize()),
+                                    0, context.getPagesize(), data, false);
+                        }
+
+                        size = countOutput == null
+                                ? -1
+                                : readCount(countOutput.first());
                     }
-                    size = data.size();
                     break;
                 default:
                     ResponseHelper.endExchangeWithMessage(
@@ -200,12 +311,16 @@ public class GetAggregationHandler extends PipedHttpHandler {
             return;
         }
 
+        if (cacheKey != null && cached == null) {
+            cache.put(query, cacheKey, writesAtStart, data, size);
+        }
+
         try {
             context.setResponseContent(new AggregationResultRepresentationFactory()
                     .getRepresentation(
                             exchange,
                             context,
-                            applyPagination(data, context),
+                            data,
                             size)
                     .asBsonDocument());
 
@@ -223,20 +338,61 @@ public class GetAggregationHandler extends PipedHttpHandler {
         }
     }
 
-    private List<BsonDocument> applyPagination(
-            List<BsonDocument> data,
-            RequestContext context) {
-        if (data == null) {
-            return data;
+    /**
+     * reads the documents of the page from the iterable, keeping in memory
+     * only them
+     *
+     * @param iterable
+     * @param skip
+     * @param pagesize
+     * @param page the list the documents of the page are added to
+     * @param count true to read all the documents to count them, otherwise
+     * the reading stops after the page
+     * @return the total number of documents, -1 if count is false
+     */
+    private long readPage(
+            MongoIterable<BsonDocument> iterable,
+            int skip,
+            int pagesize,
+            List<BsonDocument> page,
+            boolean count) {
+        long read = 0;
+
+        try (MongoCursor<BsonDocument> cursor = iterable.iterator()) {
+            while (cursor.hasNext()) {
+                if (!count && read >= (long) skip + pagesize) {
+                    break;
+                }
+
+                BsonDocument doc = cursor.next();
+
+                if (read >= skip && read < (long) skip + pagesize) {
+                    page.add(doc);
+                }
+
+                read++;
+            }
         }
 
-        int start = context.getPagesize() * (context.getPage() - 1);
-        int end = start + context.getPagesize();
+        return count ? read : -1;
+    }
 
-        if (data.size() < start) {
-            return Collections.emptyList();
-        } else {
-            return data.subList(start, end > data.size() ? data.size() : end);
+    /**
+     * reads the result of the stages appended by AggregationPipeline.count()
+     *
+     * @param result
+     * @return the total number of documents
+     */
+    private long readCount(BsonDocument result) {
+        if (result == null) {
+            // $count returns no document if there are no results
+            return 0;
         }
+
+        BsonValue count = result.get(AggregationPipeline.COUNT_FIELD);
+
+        return count != null && count.isNumber()
+                ? count.asNumber().longValue()
+                : 0;
     }
 }
@@ -18,10 +18,10 @@
 package org.restheart.handlers.aggregation;
 
 import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.bson.BsonDocument;
 import org.bson.BsonValue;
 import org.restheart.handlers.metadata.InvalidMetadataException;
-import org.restheart.utils.JsonUtils;
 
 /**
  * represents a map reduce.
@@ -33,9 +33,16 @@ public class MapReduce extends AbstractAggregationOperation {
     public static final String MAP_ELEMENT_NAME = "map";
     public static final String REDUCE_ELEMENT_NAME = "reduce";
     public static final String QUERY_ELEMENT_NAME = "query";
+
+    private static final Pattern VARS_PATTERN
+            = Pattern.compile(Matcher.quoteReplacement("$") + "vars");
+
+    private static final Pattern QUOTE_PATTERN = Pattern.compile("\"");
+
     private final String map;
     private final String reduce;
     private final BsonValue query;
+    private final AggregationTemplate queryTemplate;
 
     /**
      * @param properties the json properties object. It must include the
@@ -97,6 +104,7 @@ public class MapReduce extends AbstractAggregationOperation {
         this.map = _map.asString().getValue();
         this.reduce = _reduce.asString().getValue();
         this.query = _query;
+        this.queryTemplate = new AggregationTemplate(_query);
     }
 
     /**
@@ -122,15 +130,15 @@ public class MapReduce extends AbstractAggregationOperation {
 
     /**
      * @param aVars RequestContext.getAggregationVars()
-     * @return the query with unescaped operators and bound variables
+     * @return the query with unescaped operators and bound variables; if
+     * the query has no variables, it is shared between requests and must not
+     * be modified
      * @throws org.restheart.handlers.metadata.InvalidMetadataException
      * @throws org.restheart.handlers.aggregation.QueryVariableNotBoundException
      */
     public BsonDocument getResolvedQuery(BsonDocument aVars)
             throws InvalidMetadataException, QueryVariableNotBoundException {
-        return bindAggregationVariables(
-                JsonUtils.unescapeKeys(query), aVars)
-                .asDocument();
+        return queryTemplate.bind(aVars).asDocument();
     }
 
     /**
@@ -141,14 +149,9 @@ public class MapReduce extends AbstractAggregationOperation {
         if (aVars == null || aVars.isEmpty()) {
             return map;
         } else {
-            String escapedAVars = "\""
-                    + aVars.toString().replaceAll("\"", "\\\\\\\\\"")
-                    + "\"";
-
             String ret = map == null ? null
-                    : map.replaceAll(
-                            Matcher.quoteReplacement("$") + "vars",
-                            escapedAVars);
+                    : VARS_PATTERN.matcher(map)
+                            .replaceAll(escapeAVars(aVars));
 
             return ret;
         }
@@ -162,17 +165,21 @@ public class MapReduce extends AbstractAggregationOperation {
         if (aVars == null || aVars.isEmpty()) {
             return reduce;
         } else {
-            String escapedAVars = "\""
-                    + aVars.toString().replaceAll("\"", "\\\\\\\\\"")
-                    + "\"";
-
             String ret = reduce == null ? null
-                    : reduce.replaceAll(
-                            Matcher.quoteReplacement("$") + "vars",
-                            escapedAVars
-                    );
+                    : VARS_PATTERN.matcher(reduce)
+                            .replaceAll(escapeAVars(aVars));
 
             return ret;
         }
     }
+
+    /**
+     * @return the replacement of $vars in the map and reduce functions
+     */
+    private static String escapeAVars(BsonDocument aVars) {
+        return "\""
+                + QUOTE_PATTERN.matcher(aVars.toString())
+                        .replaceAll("\\\\\\\\\"")
+                + "\"";
+    }
 }
@@ -41,4 +41,12 @@ public abstract class ApplicationLogicHandler extends PipedHttpHandler {
         super(next);
         this.args = args;
     }
+
+    /**
+     * @return true if the handler reads the request body itself, so that it
+     * is not read in advance by the BodyInjectorHandler
+     */
+    public boolean isRequestBodyStreamed() {
+        return false;
+    }
 }
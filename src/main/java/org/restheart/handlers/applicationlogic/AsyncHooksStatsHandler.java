@@ -0,0 +1,95 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.applicationlogic;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.restheart.hal.Representation;
+import org.restheart.handlers.PipedHttpHandler;
+import org.restheart.handlers.RequestContext;
+import org.restheart.handlers.RequestContext.METHOD;
+import org.restheart.metadata.hooks.AsyncHookExecutor;
+import org.restheart.utils.HttpStatus;
+import org.restheart.utils.JsonUtils;
+
+/**
+ * Returns the queue depth and the metrics of each async hook
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class AsyncHooksStatsHandler extends ApplicationLogicHandler {
+
+    /**
+     *
+     * @param next
+     * @param args
+     */
+    public AsyncHooksStatsHandler(PipedHttpHandler next, Map<String, Object> args) {
+        super(next, args);
+    }
+
+    /**
+     *
+     * @param exchange
+     * @param context
+     * @throws Exception
+     */
+    @Override
+    public void handleRequest(HttpServerExchange exchange, RequestContext context) throws Exception {
+        if (context.getMethod() == METHOD.GET) {
+            AsyncHookExecutor executor = AsyncHookExecutor.getInstance();
+
+            BsonDocument stats = new BsonDocument();
+
+            stats.put("queue-depth", new BsonInt32(executor.getQueueDepth()));
+            stats.put("queue-policy", new BsonString(executor.getPolicy().name()));
+
+            BsonDocument hooks = new BsonDocument();
+
+            executor.getMetrics().forEach((name, m) -> {
+                BsonDocument hook = new BsonDocument();
+
+                hook.put("queued", new BsonInt32(m.getQueued()));
+                hook.put("executed", new BsonInt64(m.getExecuted()));
+                hook.put("failed", new BsonInt64(m.getFailed()));
+                hook.put("dropped", new BsonInt64(m.getDropped()));
+                hook.put("avg-latency-us", new BsonInt64(TimeUnit.NANOSECONDS.toMicros(m.getAvgLatencyNanos())));
+                hook.put("max-latency-us", new BsonInt64(TimeUnit.NANOSECONDS.toMicros(m.getMaxLatencyNanos())));
+                hook.put("avg-queue-wait-us", new BsonInt64(TimeUnit.NANOSECONDS.toMicros(m.getAvgQueueWaitNanos())));
+
+                hooks.put(name, hook);
+            });
+
+            stats.put("hooks", hooks);
+
+            exchange.setStatusCode(HttpStatus.SC_OK);
+            exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, Representation.JSON_MEDIA_TYPE);
+            exchange.getResponseSender().send(JsonUtils.toJson(stats));
+            exchange.endExchange();
+        } else {
+            exchange.setStatusCode(HttpStatus.SC_METHOD_NOT_ALLOWED);
+            exchange.endExchange();
+        }
+    }
+}
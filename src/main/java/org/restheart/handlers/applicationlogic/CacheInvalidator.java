@@ -25,6 +25,7 @@ import org.restheart.handlers.PipedHttpHandler;
 import org.restheart.handlers.RequestContext;
 import org.restheart.handlers.RequestContext.METHOD;
 import org.restheart.handlers.injectors.LocalCachesSingleton;
+import org.restheart.handlers.injectors.ResponseCacheSingleton;
 import org.restheart.utils.HttpStatus;
 import org.restheart.utils.ResponseHelper;
 
@@ -80,11 +81,20 @@ public class CacheInvalidator extends ApplicationLogicHandler {
 
                 if (_coll == null || _coll.getFirst() == null) {
                     LocalCachesSingleton.getInstance().invalidateDb(db);
+
+                    if (ResponseCacheSingleton.isEnabled()) {
+                        ResponseCacheSingleton.getInstance().invalidateDb(db);
+                    }
                 } else {
                     String coll = _coll.getFirst();
 
                     LocalCachesSingleton.getInstance()
                             .invalidateCollection(db, coll);
+
+                    if (ResponseCacheSingleton.isEnabled()) {
+                        ResponseCacheSingleton.getInstance()
+                                .invalidateCollection(db, coll);
+                    }
                 }
 
                 exchange.setStatusCode(HttpStatus.SC_OK);
@@ -0,0 +1,275 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.applicationlogic;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inserts the documents imported by the CsvLoaderHandler with unordered
+ * insertMany commands of at most batchSize documents, writing up to
+ * maxInFlight batches in parallel while the next one is filled; so that at
+ * most (maxInFlight + 1) * batchSize documents are held in memory.
+ *
+ * A failed batch does not stop the import, its errors are reported by
+ * getErrors() with the CSV line numbers of the failed documents. Every
+ * document added is eventually counted either as inserted or as failed.
+ *
+ * add() and finish() must be called by the same thread.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+class CsvBatchInserter {
+
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(CsvBatchInserter.class);
+
+    // the errors reported in the response, the others are only counted
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    private static final InsertManyOptions UNORDERED
+            = new InsertManyOptions().ordered(false);
+
+    private final MongoCollection<BsonDocument> coll;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final Executor executor;
+
+    private List<BsonDocument> batch;
+    private long[] lines;
+
+    private long rows = 0;
+    private int batches = 0;
+
+    private final AtomicLong inserted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicInteger reportedErrors = new AtomicInteger();
+    private final Queue<BsonDocument> errors = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param coll
+     * @param batchSize the max number of documents per insertMany
+     * @param maxInFlight the max number of batches written in parallel
+     * @param executor if null, the batches are written synchronously; the
+     * calling thread waits for the batches, so it must not be the executor
+     * running it
+     */
+    CsvBatchInserter(
+            MongoCollection<BsonDocument> coll,
+            int batchSize,
+            int maxInFlight,
+            Executor executor) {
+        this.coll = coll;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.inFlight = new Semaphore(this.maxInFlight);
+        this.executor = executor;
+
+        newBatch();
+    }
+
+    /**
+     * adds the document to the current batch, writing the batch if full;
+     * blocks if maxInFlight batches are being written
+     *
+     * @param document
+     * @param line the CSV line of the document
+     */
+    void add(BsonDocument document, long line) {
+        lines[batch.size()] = line;
+        batch.add(document);
+        rows++;
+
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * writes the current batch and waits for all the batches to complete
+     */
+    void finish() {
+        if (!batch.isEmpty()) {
+            flush();
+        }
+
+        inFlight.acquireUninterruptibly(maxInFlight);
+        inFlight.release(maxInFlight);
+    }
+
+    /**
+     * @return the number of documents added
+     */
+    long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of documents inserted so far
+     */
+    long getInserted() {
+        return inserted.get();
+    }
+
+    /**
+     * @return the number of documents that failed to be inserted so far
+     */
+    long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return the number of batches sent so far
+     */
+    int getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return the errors of the failed batches
+     */
+    BsonArray getErrors() {
+        return new BsonArray(new ArrayList<>(errors));
+    }
+
+    private void newBatch() {
+        batch = new ArrayList<>(batchSize);
+        lines = new long[batchSize];
+    }
+
+    private void flush() {
+        final List<BsonDocument> toWrite = batch;
+        final long[] toWriteLines = lines;
+        final int index = batches;
+
+        newBatch();
+        batches++;
+
+        inFlight.acquireUninterruptibly();
+
+        if (executor == null) {
+            try {
+                write(toWrite, toWriteLines, index);
+            } finally {
+                inFlight.release();
+            }
+        } else {
+            try {
+                CompletableFuture.runAsync(() -> {
+                    try {
+                        write(toWrite, toWriteLines, index);
+                    } finally {
+                        inFlight.release();
+                    }
+                }, executor);
+            } catch (RejectedExecutionException ree) {
+                try {
+                    write(toWrite, toWriteLines, index);
+                } finally {
+                    inFlight.release();
+                }
+            }
+        }
+    }
+
+    private void write(List<BsonDocument> toWrite, long[] lines, int index) {
+        try {
+            coll.insertMany(toWrite, UNORDERED);
+            inserted.addAndGet(toWrite.size());
+        } catch (MongoBulkWriteException mbwe) {
+            List<BulkWriteError> writeErrors = mbwe.getWriteErrors();
+
+            inserted.addAndGet(toWrite.size() - writeErrors.size());
+            failed.addAndGet(writeErrors.size());
+
+            BsonArray _errors = new BsonArray();
+
+            for (BulkWriteError e : writeErrors) {
+                if (reportedErrors.incrementAndGet() > MAX_REPORTED_ERRORS) {
+                    break;
+                }
+
+                _errors.add(new BsonDocument("line",
+                        new BsonInt64(lines[e.getIndex()]))
+                        .append("code", new BsonInt32(e.getCode()))
+                        .append("message", new BsonString(e.getMessage())));
+            }
+
+            addError(index, toWrite.size(), lines, writeErrors.size(),
+                    "write errors", _errors);
+        } catch (RuntimeException re) {
+            // any other error (e.g. a MongoException or a document that
+            // cannot be encoded) fails the whole batch
+            LOGGER.warn("error writing batch {} of csv import", index, re);
+
+            failed.addAndGet(toWrite.size());
+
+            reportedErrors.incrementAndGet();
+
+            addError(index, toWrite.size(), lines, toWrite.size(),
+                    re.getMessage(), null);
+        }
+    }
+
+    private void addError(
+            int index,
+            int size,
+            long[] lines,
+            int failedCount,
+            String message,
+            BsonArray writeErrors) {
+        if (writeErrors == null
+                && reportedErrors.get() > MAX_REPORTED_ERRORS) {
+            return;
+        }
+
+        BsonDocument error = new BsonDocument("batch", new BsonInt32(index))
+                .append("fromLine", new BsonInt64(lines[0]))
+                .append("toLine", new BsonInt64(lines[size - 1]))
+                .append("failed", new BsonInt32(failedCount))
+                .append("message", new BsonString(message == null
+                        ? "error writing batch"
+                        : message));
+
+        if (writeErrors != null && !writeErrors.isEmpty()) {
+            error.append("errors", writeErrors);
+        }
+
+        errors.add(error);
+    }
+}
@@ -23,28 +23,39 @@ import io.undertow.util.HeaderValues;
 import io.undertow.util.Headers;
 import io.undertow.util.HttpString;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Deque;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import org.bson.BSONException;
+import org.bson.BsonBoolean;
 import org.bson.BsonDocument;
+import org.bson.BsonDouble;
 import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonNull;
 import org.bson.BsonObjectId;
 import org.bson.BsonString;
 import org.bson.BsonValue;
 import org.bson.json.JsonParseException;
+import org.restheart.Bootstrapper;
 import org.restheart.db.MongoDBClientSingleton;
 import org.restheart.hal.Representation;
 import org.restheart.handlers.PipedHttpHandler;
 import org.restheart.handlers.RequestContext;
+import org.restheart.handlers.aggregation.AggregationResultCacheSingleton;
+import org.restheart.handlers.injectors.LocalCachesSingleton;
+import org.restheart.handlers.injectors.ResponseCacheSingleton;
 import org.restheart.metadata.NamedSingletonsFactory;
 import org.restheart.metadata.transformers.Transformer;
 import static org.restheart.security.handlers.IAuthToken.AUTH_TOKEN_HEADER;
 import static org.restheart.security.handlers.IAuthToken.AUTH_TOKEN_LOCATION_HEADER;
 import static org.restheart.security.handlers.IAuthToken.AUTH_TOKEN_VALID_HEADER;
+import org.restheart.utils.BulkWriteExecutorSingleton;
+import org.restheart.utils.CsvStreamParser;
 import org.restheart.utils.HttpStatus;
 import org.restheart.utils.JsonUtils;
 import org.slf4j.Logger;
@@ -64,6 +75,15 @@ import org.slf4j.LoggerFactory;
  * props to add to each row<br>
  * - transformer=&lt;tname&gt; optional (default: no transformer). name (as
  * defined in conf file) of a tranformer to apply to imported data
+ * <p>
+ * The CSV (RFC 4180, UTF-8) is parsed while the request body is read and the
+ * documents are inserted with batched unordered insertMany commands, so that
+ * files of any size are imported with constant memory. The args
+ * batch-size (default 1000) and in-flight-batches (default 4) set the number
+ * of documents per batch and the max number of batches written in parallel.
+ * <p>
+ * The response reports the imported rows, the rows per second and the errors
+ * of the failed batches (with status 207 if some documents failed).
  *
  * @author Andrea Di Cesare <andrea@softinstigate.com>
  */
@@ -71,6 +91,26 @@ public class CsvLoaderHandler extends ApplicationLogicHandler {
 
     public static final String CVS_CONTENT_TYPE = "text/csv";
 
+    /**
+     * the key of the batch size in the args
+     */
+    public static final String BATCH_SIZE_ARG = "batch-size";
+
+    /**
+     * the key of the max number of batches written in parallel in the args
+     */
+    public static final String IN_FLIGHT_BATCHES_ARG = "in-flight-batches";
+
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int DEFAULT_IN_FLIGHT_BATCHES = 4;
+    private static final int DEFAULT_BUFFER_SIZE = 16384;
+
+    // as a document, a field cannot exceed the max BSON document size
+    private static final int MAX_FIELD_LENGTH = 16 * 1024 * 1024;
+
+    // longer integers might not fit a long and are imported as strings
+    private static final int MAX_LONG_DIGITS = 18;
+
     private static final Logger LOGGER
             = LoggerFactory.getLogger(CsvLoaderHandler.class);
 
@@ -93,6 +133,9 @@ public class CsvLoaderHandler extends ApplicationLogicHandler {
     private static final BsonString ERROR_PARSING_DATA = new BsonString(
             "Error parsing CSV, see logs for more information");
 
+    private final int batchSize;
+    private final int inFlightBatches;
+
     /**
      * Creates a new instance of CsvLoaderHandler
      *
@@ -101,6 +144,21 @@ public class CsvLoaderHandler extends ApplicationLogicHandler {
      */
     public CsvLoaderHandler(PipedHttpHandler next, Map<String, Object> args) {
         super(next, args);
+
+        this.batchSize = getIntArg(args, BATCH_SIZE_ARG, DEFAULT_BATCH_SIZE);
+        this.inFlightBatches = getIntArg(args,
+                IN_FLIGHT_BATCHES_ARG,
+                DEFAULT_IN_FLIGHT_BATCHES);
+    }
+
+    /**
+     * the CSV is read while it is imported
+     *
+     * @return true
+     */
+    @Override
+    public boolean isRequestBodyStreamed() {
+        return true;
     }
 
     @Override
@@ -132,32 +190,7 @@ public class CsvLoaderHandler extends ApplicationLogicHandler {
                     try {
                         CsvRequestParams params = new CsvRequestParams(exchange);
 
-                        try {
-                            List<BsonDocument> documents = parseCsv(exchange,
-                                    params,
-                                    context,
-                                    context.getRawContent());
-
-                            if (documents != null && documents.size() > 0) {
-                                MongoCollection<BsonDocument> mcoll = MongoDBClientSingleton
-                                        .getInstance()
-                                        .getClient()
-                                        .getDatabase(params.db)
-                                        .getCollection(params.coll, BsonDocument.class);
-
-                                mcoll.insertMany(documents);
-                                exchange.setStatusCode(HttpStatus.SC_OK);
-                            } else {
-                                exchange.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
-                            }
-                        } catch (IOException ex) {
-                            LOGGER.error("error parsing CSV data", ex);
-                            exchange.setStatusCode(HttpStatus.SC_INTERNAL_SERVER_ERROR);
-                            exchange.getResponseSender()
-                                    .send(getError(
-                                            HttpStatus.SC_INTERNAL_SERVER_ERROR,
-                                            ERROR_PARSING_DATA));
-                        }
+                        importCsv(exchange, context, params);
                     } catch (IllegalArgumentException iae) {
                         exchange.setStatusCode(HttpStatus.SC_BAD_REQUEST);
                         exchange.getResponseSender()
@@ -186,6 +219,94 @@ public class CsvLoaderHandler extends ApplicationLogicHandler {
         }
     }
 
+    private void importCsv(
+            HttpServerExchange exchange,
+            RequestContext context,
+            CsvRequestParams params) {
+        MongoCollection<BsonDocument> mcoll = MongoDBClientSingleton
+                .getInstance()
+                .getClient()
+                .getDatabase(params.db)
+                .getCollection(params.coll, BsonDocument.class);
+
+        CsvBatchInserter inserter = new CsvBatchInserter(mcoll,
+                batchSize,
+                inFlightBatches,
+                BulkWriteExecutorSingleton.getInstance().getExecutorService());
+
+        final long start = System.nanoTime();
+
+        int errorStatus = HttpStatus.SC_OK;
+        BsonString errorMessage = null;
+
+        try {
+            parseCsv(exchange, params, context, inserter);
+        } catch (CsvStreamParser.CsvParseException cpe) {
+            errorStatus = HttpStatus.SC_BAD_REQUEST;
+            errorMessage = new BsonString("Error parsing CSV: "
+                    + cpe.getMessage());
+        } catch (IOException ex) {
+            LOGGER.error("error parsing CSV data", ex);
+            errorStatus = HttpStatus.SC_INTERNAL_SERVER_ERROR;
+            errorMessage = ERROR_PARSING_DATA;
+        } finally {
+            inserter.finish();
+        }
+
+        if (inserter.getBatches() > 0) {
+            invalidateCaches(params);
+        }
+
+        final long msecs = TimeUnit.NANOSECONDS
+                .toMillis(System.nanoTime() - start);
+
+        final double rowsPerSec = inserter.getRows() * 1000d
+                / Math.max(1, msecs);
+
+        LOGGER.info("imported {} rows in /{}/{} in {} msecs ({} rows/sec), "
+                + "{} failed",
+                inserter.getRows(),
+                params.db,
+                params.coll,
+                msecs,
+                Math.round(rowsPerSec),
+                inserter.getFailed());
+
+        if (errorMessage == null && inserter.getRows() == 0) {
+            exchange.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
+            return;
+        }
+
+        int status = errorMessage != null
+                ? errorStatus
+                : inserter.getFailed() > 0
+                ? HttpStatus.SC_MULTI_STATUS
+                : HttpStatus.SC_OK;
+
+        BsonDocument report = new BsonDocument();
+        report.put("http status code", new BsonInt32(status));
+        report.put("http status description",
+                new BsonString(HttpStatus.getStatusText(status)));
+
+        if (errorMessage != null) {
+            report.put("message", errorMessage);
+        }
+
+        report.put("rows", new BsonInt64(inserter.getRows()));
+        report.put("inserted", new BsonInt64(inserter.getInserted()));
+        report.put("failed", new BsonInt64(inserter.getFailed()));
+        report.put("batches", new BsonInt32(inserter.getBatches()));
+        report.put("msecs", new BsonInt64(msecs));
+        report.put("rows/sec", new BsonInt64(Math.round(rowsPerSec)));
+
+        if (inserter.getFailed() > 0) {
+            report.put("errors", inserter.getErrors());
+        }
+
+        exchange.setStatusCode(status);
+        exchange.getResponseSender().send(JsonUtils.toJson(report));
+    }
+
     private String getError(int code, BsonString message) {
         BsonDocument error = new BsonDocument();
         error.put("http status code",
@@ -202,65 +323,64 @@ public class CsvLoaderHandler extends ApplicationLogicHandler {
         return JsonUtils.toJson(error);
     }
 
-    private List<BsonDocument> parseCsv(HttpServerExchange exchange,
+    private void parseCsv(HttpServerExchange exchange,
             CsvRequestParams params,
-            RequestContext context, String rawContent)
+            RequestContext context,
+            CsvBatchInserter inserter)
             throws IOException {
-        List<BsonDocument> ret = new ArrayList<>();
+        if (!exchange.isBlocking()) {
+            exchange.startBlocking();
+        }
 
-        Scanner scanner = new Scanner(rawContent);
+        CsvStreamParser parser = new CsvStreamParser(
+                new InputStreamReader(exchange.getInputStream(),
+                        StandardCharsets.UTF_8),
+                params.sep,
+                getBufferSize(),
+                MAX_FIELD_LENGTH);
 
-        boolean isHeader = true;
+        if (!parser.next()) {
+            return;
+        }
 
-        List<String> cols = null;
+        // the first record is the header
+        List<String> cols = parser.getFields();
 
-        while (scanner.hasNext()) {
-            String line = scanner.nextLine();
+        while (parser.next()) {
+            BsonDocument doc = new BsonDocument("_etag", new BsonObjectId());
 
-            // split on the separator only if that comma has zero, 
-            // or an even number of quotes ahead of it.
-            List<String> vals = Arrays.asList(line.
-                    split(params.sep + "(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1));
+            int unnamedProps = 0;
 
-            if (isHeader) {
-                cols = vals;
-            } else {
-                BsonDocument doc = new BsonDocument("_etag", new BsonObjectId());
+            for (int idx = 0; idx < parser.size(); idx++) {
+                BsonValue value = getBsonValue(parser.get(idx),
+                        parser.isQuoted(idx));
 
-                int unnamedProps = 0;
+                if (idx == params.idIdx) {
+                    doc.append("_id", value);
+                } else {
+                    String propname;
 
-                for (int idx = 0; idx < vals.size(); idx++) {
-                    if (idx == params.idIdx) {
-                        doc.append("_id", getBsonValue(vals.get(params.idIdx)));
+                    if (cols.size() <= idx) {
+                        propname = "unnamed_" + unnamedProps;
+                        unnamedProps++;
                     } else {
-                        String propname;
-
-                        if (cols.size() <= idx) {
-                            propname = "unnamed_" + unnamedProps;
-                            unnamedProps++;
-                        } else {
-                            propname = cols.get(idx);
-                        }
-
-                        doc.append(propname, getBsonValue(vals.get(idx)));
+                        propname = cols.get(idx);
                     }
-                }
-
-                // add props specified via keys and values qparams
-                addProps(params, doc);
 
-                // apply transformer if defined
-                if (params.transformer != null) {
-                    params.transformer.transform(exchange, context, doc, null);
+                    doc.append(propname, value);
                 }
+            }
+
+            // add props specified via keys and values qparams
+            addProps(params, doc);
 
-                ret.add(doc);
+            // apply transformer if defined
+            if (params.transformer != null) {
+                params.transformer.transform(exchange, context, doc, null);
             }
 
-            isHeader = false;
+            inserter.add(doc, parser.getLine());
         }
-
-        return ret;
     }
 
     private void addProps(CsvRequestParams params, BsonDocument doc) {
@@ -269,17 +389,147 @@ public class CsvLoaderHandler extends ApplicationLogicHandler {
             Deque<String> _values = new ArrayDeque(params.values);
 
             while (!_props.isEmpty() && !_values.isEmpty()) {
-                doc.append(_props.pop(), getBsonValue(_values.poll()));
+                doc.append(_props.pop(), getBsonValue(_values.poll(), false));
             }
         }
     }
 
-    private BsonValue getBsonValue(String raw) {
-        try {
-            return JsonUtils.parse(raw);
-        } catch (JsonParseException jpe) {
+    /**
+     * infers the type of the value: quoted values are strings, otherwise
+     * null, booleans, numbers (but the ones with leading zeros, e.g. zip
+     * codes), json objects and arrays are recognized; everything else is a
+     * string. Only objects and arrays are parsed as json.
+     *
+     * @param raw
+     * @param quoted
+     * @return the BsonValue
+     */
+    static BsonValue getBsonValue(String raw, boolean quoted) {
+        if (quoted || raw.isEmpty()) {
             return new BsonString(raw);
         }
+
+        switch (raw) {
+            case "null":
+                return BsonNull.VALUE;
+            case "true":
+                return BsonBoolean.TRUE;
+            case "false":
+                return BsonBoolean.FALSE;
+        }
+
+        char first = raw.charAt(0);
+
+        if (first == '{' || first == '[') {
+            try {
+                return JsonUtils.parse(raw);
+            } catch (JsonParseException jpe) {
+                return new BsonString(raw);
+            } catch (BSONException be) {
+                return new BsonString(raw);
+            }
+        }
+
+        if (first == '-' || (first >= '0' && first <= '9')) {
+            BsonValue number = parseNumber(raw);
+
+            if (number != null) {
+                return number;
+            }
+        }
+
+        return new BsonString(raw);
+    }
+
+    /**
+     * @return the number or null if raw is not a number
+     */
+    private static BsonValue parseNumber(String raw) {
+        int idx = raw.charAt(0) == '-' ? 1 : 0;
+        int intStart = idx;
+
+        while (idx < raw.length() && isDigit(raw.charAt(idx))) {
+            idx++;
+        }
+
+        int intDigits = idx - intStart;
+
+        if (intDigits == 0
+                || (intDigits > 1 && raw.charAt(intStart) == '0')) {
+            return null;
+        }
+
+        if (idx == raw.length()) {
+            if (intDigits > MAX_LONG_DIGITS) {
+                return null;
+            }
+
+            long value = Long.parseLong(raw);
+
+            return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE
+                    ? new BsonInt32((int) value)
+                    : new BsonInt64(value);
+        }
+
+        if (raw.charAt(idx) == '.') {
+            idx++;
+
+            int fractionStart = idx;
+
+            while (idx < raw.length() && isDigit(raw.charAt(idx))) {
+                idx++;
+            }
+
+            if (idx == fractionStart) {
+                return null;
+            }
+        }
+
+        if (idx < raw.length()
+                && (raw.charAt(idx) == 'e' || raw.charAt(idx) == 'E')) {
+            idx++;
+
+            if (idx < raw.length()
+                    && (raw.charAt(idx) == '+' || raw.charAt(idx) == '-')) {
+                idx++;
+            }
+
+            int expStart = idx;
+
+            while (idx < raw.length() && isDigit(raw.charAt(idx))) {
+                idx++;
+            }
+
+            if (idx == expStart) {
+                return null;
+            }
+        }
+
+        return idx == raw.length()
+                ? new BsonDouble(Double.parseDouble(raw))
+                : null;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private void invalidateCaches(CsvRequestParams params) {
+        // the documents are not written via the DAOs
+        if (ResponseCacheSingleton.isEnabled()) {
+            ResponseCacheSingleton.getInstance()
+                    .invalidateCollection(params.db, params.coll);
+        }
+
+        AggregationResultCacheSingleton.getInstance()
+                .invalidateCollection(params.db, params.coll);
+
+        // the import can create the collection, this also invalidates the
+        // collection names of the db
+        if (LocalCachesSingleton.isEnabled()) {
+            LocalCachesSingleton.getInstance()
+                    .invalidateCollection(params.db, params.coll);
+        }
     }
 
     private boolean doesApply(RequestContext context) {
@@ -293,6 +543,30 @@ public class CsvLoaderHandler extends ApplicationLogicHandler {
 
         return contentType != null && contentType.contains(CVS_CONTENT_TYPE);
     }
+
+    private static int getIntArg(
+            Map<String, Object> args,
+            String key,
+            int defaultValue) {
+        Object value = args == null ? null : args.get(key);
+
+        if (value == null) {
+            return defaultValue;
+        } else if (value instanceof Number) {
+            return ((Number) value).intValue();
+        } else {
+            LOGGER.warn("wrong value for arg {} of CsvLoaderHandler: {}, "
+                    + "using its default value {}",
+                    key, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static int getBufferSize() {
+        return Bootstrapper.getConfiguration() == null
+                ? DEFAULT_BUFFER_SIZE
+                : Bootstrapper.getConfiguration().getBufferSize();
+    }
 }
 
 class CsvRequestParams {
@@ -308,7 +582,7 @@ class CsvRequestParams {
     public final int idIdx;
     public final String db;
     public final String coll;
-    public final String sep;
+    public final char sep;
     public final Transformer transformer;
 
     public final Deque<String> props;
@@ -335,7 +609,14 @@ class CsvRequestParams {
             throw new IllegalArgumentException("db qparam is mandatory");
         }
 
-        sep = _sep != null ? _sep.size() > 0 ? _sep.getFirst() : "," : ",";
+        String _sepValue = _sep != null ? _sep.size() > 0 ? _sep.getFirst() : "," : ",";
+
+        // the parser supports single char separators
+        if (_sepValue.length() != 1) {
+            throw new IllegalArgumentException("sep qparam must be a char");
+        }
+
+        sep = _sepValue.charAt(0);
         String _idIdx = _id != null ? _id.size() > 0 ? _id.getFirst() : "-1" : "-1";
 
         try {
@@ -0,0 +1,98 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.applicationlogic;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import java.util.Map;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.restheart.Bootstrapper;
+import org.restheart.db.CursorPool;
+import org.restheart.hal.Representation;
+import org.restheart.handlers.PipedHttpHandler;
+import org.restheart.handlers.RequestContext;
+import org.restheart.handlers.RequestContext.METHOD;
+import org.restheart.utils.HttpStatus;
+import org.restheart.utils.JsonUtils;
+
+/**
+ * Returns the size and the counters of the db cursor pool by namespace
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class CursorPoolStatsHandler extends ApplicationLogicHandler {
+
+    /**
+     *
+     * @param next
+     * @param args
+     */
+    public CursorPoolStatsHandler(PipedHttpHandler next, Map<String, Object> args) {
+        super(next, args);
+    }
+
+    /**
+     *
+     * @param exchange
+     * @param context
+     * @throws Exception
+     */
+    @Override
+    public void handleRequest(HttpServerExchange exchange, RequestContext context) throws Exception {
+        if (context.getMethod() == METHOD.GET) {
+            CursorPool pool = CursorPool.getInstance();
+
+            BsonDocument stats = new BsonDocument();
+
+            stats.put("default-policy", new BsonString(Bootstrapper
+                    .getConfiguration()
+                    .getEagerDefaultPolicy()
+                    .name()));
+            stats.put("size", new BsonInt64(pool.getSize()));
+            stats.put("max-size", new BsonInt64(pool.getMaxSize()));
+
+            BsonDocument namespaces = new BsonDocument();
+
+            pool.getStats().forEach((ns, s) -> {
+                BsonDocument nsStats = new BsonDocument();
+
+                nsStats.put("hits", new BsonInt64(s.getHits()));
+                nsStats.put("misses", new BsonInt64(s.getMisses()));
+                nsStats.put("hit-rate", new BsonDouble(s.getHitRate()));
+                nsStats.put("rejections", new BsonInt64(s.getRejections()));
+                nsStats.put("prewarmed", new BsonInt64(s.getPrewarmed()));
+                nsStats.put("saved-skips", new BsonInt64(s.getSavedSkips()));
+
+                namespaces.put(ns, nsStats);
+            });
+
+            stats.put("namespaces", namespaces);
+
+            exchange.setStatusCode(HttpStatus.SC_OK);
+            exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, Representation.JSON_MEDIA_TYPE);
+            exchange.getResponseSender().send(JsonUtils.toJson(stats));
+            exchange.endExchange();
+        } else {
+            exchange.setStatusCode(HttpStatus.SC_METHOD_NOT_ALLOWED);
+            exchange.endExchange();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.applicationlogic;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import java.util.Map;
+import org.bson.BsonBoolean;
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.restheart.hal.Representation;
+import org.restheart.handlers.PipedHttpHandler;
+import org.restheart.handlers.RequestContext;
+import org.restheart.handlers.RequestContext.METHOD;
+import org.restheart.handlers.injectors.ResponseCacheSingleton;
+import org.restheart.utils.HttpStatus;
+import org.restheart.utils.JsonUtils;
+
+/**
+ * Returns the counters of the response cache
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class ResponseCacheStatsHandler extends ApplicationLogicHandler {
+
+    /**
+     *
+     * @param next
+     * @param args
+     */
+    public ResponseCacheStatsHandler(PipedHttpHandler next, Map<String, Object> args) {
+        super(next, args);
+    }
+
+    /**
+     *
+     * @param exchange
+     * @param context
+     * @throws Exception
+     */
+    @Override
+    public void handleRequest(HttpServerExchange exchange, RequestContext context) throws Exception {
+        if (context.getMethod() == METHOD.GET) {
+            BsonDocument stats = new BsonDocument();
+
+            stats.put("enabled", new BsonBoolean(ResponseCacheSingleton.isEnabled()));
+
+            if (ResponseCacheSingleton.isEnabled()) {
+                ResponseCacheSingleton cache = ResponseCacheSingleton.getInstance();
+
+                stats.put("size", new BsonInt64(cache.getSize()));
+                stats.put("hits", new BsonInt64(cache.getHits()));
+                stats.put("misses", new BsonInt64(cache.getMisses()));
+                stats.put("evictions", new BsonInt64(cache.getEvictions()));
+                stats.put("invalidations", new BsonInt64(cache.getInvalidations()));
+            }
+
+            exchange.setStatusCode(HttpStatus.SC_OK);
+            exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, Representation.JSON_MEDIA_TYPE);
+            exchange.getResponseSender().send(JsonUtils.toJson(stats));
+            exchange.endExchange();
+        } else {
+            exchange.setStatusCode(HttpStatus.SC_METHOD_NOT_ALLOWED);
+            exchange.endExchange();
+        }
+    }
+}
@@ -19,13 +19,22 @@ package org.restheart.handlers.bulk;
 
 import io.undertow.server.HttpServerExchange;
 import org.bson.BsonArray;
+import org.bson.BsonDocument;
 import org.bson.BsonValue;
+import org.bson.json.JsonParseException;
 import org.restheart.db.BulkOperationResult;
+import org.restheart.db.BulkUpsertWriter;
 import org.restheart.db.DocumentDAO;
 import org.restheart.handlers.PipedHttpHandler;
 import org.restheart.handlers.RequestContext;
 import org.restheart.handlers.RequestContext.DOC_ID_TYPE;
+import org.restheart.handlers.injectors.BodyInjectorHandler;
+import org.restheart.metadata.checkers.RequestChecker;
+import org.restheart.metadata.hooks.HookMetadata;
+import org.restheart.metadata.transformers.RepresentationTransformer;
 import org.restheart.utils.HttpStatus;
+import org.restheart.utils.JsonStreamDecoder;
+import org.restheart.utils.RequestBodyTooLargeException;
 import org.restheart.utils.ResponseHelper;
 
 /**
@@ -36,6 +45,26 @@ public class BulkPostCollectionHandler extends PipedHttpHandler {
 
     private final DocumentDAO documentDAO;
 
+    /**
+     * @param context
+     * @return true if the documents of the bulk POST can be written while the
+     * request body is read, i.e. no transformer, checker or hook needs the
+     * whole content
+     */
+    public static boolean isStreamable(RequestContext context) {
+        BsonDocument collProps = context.getCollectionProps();
+        BsonDocument dbProps = context.getDbProps();
+
+        return (collProps == null
+                || !(collProps.containsKey(
+                        RepresentationTransformer.RTS_ELEMENT_NAME)
+                || collProps.containsKey(RequestChecker.ROOT_KEY)
+                || collProps.containsKey(HookMetadata.ROOT_KEY)))
+                && (dbProps == null
+                || !dbProps.containsKey(
+                        RepresentationTransformer.RTS_ELEMENT_NAME));
+    }
+
     /**
      * Creates a new instance of BulkPostCollectionHandler
      */
@@ -84,6 +113,11 @@ public class BulkPostCollectionHandler extends PipedHttpHandler {
             next(exchange, context);
             return;
         }
+
+        if (context.getContentDecoder() != null) {
+            handleStreamingRequest(exchange, context);
+            return;
+        }
         
         BsonValue content = context.getContent();
 
@@ -106,6 +140,89 @@ public class BulkPostCollectionHandler extends PipedHttpHandler {
                         context.getFiltersDocument(),
                         context.getShardKey());
 
+        sendResult(exchange, context, result);
+    }
+
+    /**
+     * writes the documents in batches while the request body array is read
+     */
+    private void handleStreamingRequest(
+            HttpServerExchange exchange,
+            RequestContext context)
+            throws Exception {
+        JsonStreamDecoder decoder = context.getContentDecoder();
+        context.setContentDecoder(null);
+
+        BulkUpsertWriter writer = this.documentDAO
+                .newBulkUpsertDocumentsPostWriter(
+                        context.getDBName(),
+                        context.getCollectionName(),
+                        context.getFiltersDocument(),
+                        context.getShardKey());
+
+        int errorStatus = HttpStatus.SC_OK;
+        String error = null;
+
+        try {
+            decoder.resume(element -> {
+                String errMsg = BodyInjectorHandler
+                        .checkBulkElement(element, context);
+
+                if (errMsg != null) {
+                    throw new RejectedDocumentException(
+                            HttpStatus.SC_NOT_ACCEPTABLE,
+                            errMsg);
+                }
+
+                checkId(context, element);
+
+                writer.add(element.asDocument());
+            });
+        } catch (RequestBodyTooLargeException rbtle) {
+            errorStatus = HttpStatus.SC_REQUEST_TOO_LONG;
+            error = rbtle.getMessage();
+        } catch (JsonParseException jpe) {
+            errorStatus = HttpStatus.SC_NOT_ACCEPTABLE;
+            error = "Invalid JSON: " + jpe.getMessage();
+        } catch (RejectedDocumentException rde) {
+            errorStatus = rde.getStatus();
+            error = rde.getMessage();
+        }
+
+        // nothing written yet, fail as the buffered request does
+        if (error != null && writer.getBatches() == 0) {
+            this.documentDAO.finishBulkUpsertDocumentsPost(
+                    context.getDBName(),
+                    context.getCollectionName(),
+                    writer,
+                    errorStatus,
+                    error);
+
+            ResponseHelper.endExchangeWithMessage(
+                    exchange,
+                    context,
+                    errorStatus,
+                    error);
+            next(exchange, context);
+            return;
+        }
+
+        BulkOperationResult result = this.documentDAO
+                .finishBulkUpsertDocumentsPost(
+                        context.getDBName(),
+                        context.getCollectionName(),
+                        writer,
+                        errorStatus,
+                        error);
+
+        sendResult(exchange, context, result);
+    }
+
+    private void sendResult(
+            HttpServerExchange exchange,
+            RequestContext context,
+            BulkOperationResult result)
+            throws Exception {
         context.setDbOperationResult(result);
 
         // inject the etag
@@ -125,19 +242,25 @@ public class BulkPostCollectionHandler extends PipedHttpHandler {
     }
 
     private boolean checkIds(HttpServerExchange exchange, RequestContext context, BsonArray documents) throws Exception {
-        boolean ret = true;
-
         for (BsonValue document : documents) {
-            if (!checkId(exchange, context, document)) {
-                ret = false;
-                break;
+            try {
+                checkId(context, document);
+            } catch (RejectedDocumentException rde) {
+                ResponseHelper.endExchangeWithMessage(
+                        exchange,
+                        context,
+                        rde.getStatus(),
+                        rde.getMessage());
+                next(exchange, context);
+                return false;
             }
         }
 
-        return ret;
+        return true;
     }
 
-    private boolean checkId(HttpServerExchange exchange, RequestContext context, BsonValue document) throws Exception {
+    private static void checkId(RequestContext context, BsonValue document)
+            throws RejectedDocumentException {
         if (document.isDocument()
                 && document.asDocument().containsKey("_id")
                 && document.asDocument().get("_id").isString()
@@ -145,30 +268,37 @@ public class BulkPostCollectionHandler extends PipedHttpHandler {
                         context.getType(),
                         document.asDocument()
                                 .get("_id").asString().getValue())) {
-            ResponseHelper.endExchangeWithMessage(
-                    exchange,
-                    context,
+            throw new RejectedDocumentException(
                     HttpStatus.SC_FORBIDDEN,
                     "id is reserved: " + document.asDocument()
                             .get("_id").asString().getValue());
-            next(exchange, context);
-            return false;
         }
 
         if (document.isDocument()
                 && document.asDocument().containsKey("_id")) {
             if (!(context.getDocIdType() == DOC_ID_TYPE.OID
                     || context.getDocIdType() == DOC_ID_TYPE.STRING_OID)) {
-                ResponseHelper.endExchangeWithMessage(
-                        exchange,
-                        context,
+                throw new RejectedDocumentException(
                         HttpStatus.SC_NOT_ACCEPTABLE,
                         "_id in content body is mandatory for documents with id type " + context.getDocIdType().name());
-                next(exchange, context);
-                return false;
             }
         }
+    }
 
-        return true;
+    /**
+     * thrown when a document of the request cannot be written
+     */
+    private static class RejectedDocumentException extends RuntimeException {
+
+        private final int status;
+
+        RejectedDocumentException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        int getStatus() {
+            return status;
+        }
     }
 }
@@ -104,8 +104,15 @@ public class BulkResultRepresentationFactory extends AbstractRepresentationFacto
             nrep.addProperty("matched",
                     new BsonInt32(wr.getMatchedCount()));
 
+            if (result.getBatches() > 1) {
+                nrep.addProperty("batches",
+                        new BsonInt32(result.getBatches()));
+            }
+
             rep.addRepresentation("rh:result", nrep);
         }
+
+        addBatchErrors(result.getBatchErrors(), rep);
     }
 
     private void addWriteResult(
@@ -147,12 +154,54 @@ public class BulkResultRepresentationFactory extends AbstractRepresentationFacto
         }
     }
 
+    private void addBatchErrors(
+            final List<BulkOperationResult.BatchError> bes,
+            final Representation rep) {
+        bes.stream().forEach(batchError -> {
+            if (batchError.getMessage() == null) {
+                addWriteErrors(batchError.getWriteErrors(),
+                        rep,
+                        batchError.getBatch());
+            } else {
+                // the whole batch failed
+                Representation nrep = new Representation();
+
+                nrep.addProperty("batch",
+                        new BsonInt32(batchError.getBatch()));
+
+                if (batchError.getCode() != 0) {
+                    nrep.addProperty("mongodbErrorCode",
+                            new BsonInt32(batchError.getCode()));
+                }
+
+                nrep.addProperty("httpStatus",
+                        new BsonInt32(batchError.getHttpStatus()));
+                nrep.addProperty("message",
+                        new BsonString(batchError.getMessage()));
+
+                rep.addRepresentation("rh:error", nrep);
+            }
+        });
+    }
+
     private void addWriteErrors(
             final List<BulkWriteError> wes,
             final Representation rep) {
+        addWriteErrors(wes, rep, -1);
+    }
+
+    private void addWriteErrors(
+            final List<BulkWriteError> wes,
+            final Representation rep,
+            final int batch) {
         wes.stream().forEach(error -> {
             Representation nrep = new Representation();
 
+            if (batch >= 0) {
+                nrep.addProperty("batch",
+                        new BsonInt32(batch));
+            }
+
             nrep.addProperty("index",
                     new BsonInt32(error.getIndex()));
             nrep.addProperty("mongodbErrorCode",
@@ -28,6 +28,7 @@ import org.bson.BsonValue;
 import org.bson.types.ObjectId;
 import org.restheart.Configuration;
 import org.restheart.hal.AbstractRepresentationFactory;
+import org.restheart.hal.HALUtils;
 import org.restheart.hal.Link;
 import org.restheart.hal.Representation;
 import org.restheart.hal.UnsupportedDocumentIdException;
@@ -37,8 +38,11 @@ import org.restheart.handlers.RequestContext.TYPE;
 import org.restheart.handlers.aggregation.AbstractAggregationOperation;
 import org.restheart.handlers.document.DocumentRepresentationFactory;
 import org.restheart.handlers.metadata.InvalidMetadataException;
+import org.restheart.metadata.CompiledMetadata.Binding;
+import org.restheart.metadata.checkers.Checker;
 import org.restheart.metadata.checkers.JsonSchemaChecker;
 import org.restheart.metadata.checkers.RequestChecker;
+import org.restheart.utils.PageTokenUtils;
 import org.restheart.utils.URLUtils;
 
 /**
@@ -57,6 +61,7 @@ public class CollectionRepresentationFactory
     private static final String _LASTUPDATED_ON = "_lastupdated_on";
 
     private static final String _RETURNED = "_returned";
+    private static final String _NEXT_PAGE_TOKEN = "_next_page_token";
 
     private static final String RHINDEXES = "rh:indexes";
     private static final String RHPAGING = "rh:paging";
@@ -94,12 +99,12 @@ public class CollectionRepresentationFactory
             Representation rep,
             RequestContext context) {
         try {
-            List<RequestChecker> checkers
-                    = RequestChecker.getFromJson(context.getCollectionProps());
+            List<Binding<RequestChecker, Checker>> checkers
+                    = context.getCollectionMetadata().getCheckers();
 
             if (checkers != null) {
                 checkers
-                        .stream().filter((RequestChecker c) -> {
+                        .stream().map(Binding::getMetadata).filter((RequestChecker c) -> {
                             return JSON_SCHEMA_NAME.equals(c.getName());
                         }).forEach((RequestChecker c) -> {
                     BsonValue schemaId = c.getArgs().asDocument()
@@ -172,13 +177,24 @@ public class CollectionRepresentationFactory
         addSchemaLinks(rep, context);
         addEmbeddedData(embeddedData, rep, requestPath, exchange, context);
 
+        final String nextPageToken = getNextPageToken(context, embeddedData);
+
+        if (nextPageToken != null) {
+            rep.addProperty(_NEXT_PAGE_TOKEN, new BsonString(nextPageToken));
+        }
+
         if (context.isFullHalMode()) {
             addSpecialProperties(
                     rep,
                     context.getType(),
                     context.getCollectionProps());
 
-            addPaginationLinks(exchange, context, size, rep);
+            if (context.isKeysetPagination()) {
+                addKeysetPaginationLinks(exchange, context, nextPageToken, rep);
+            } else {
+                addPaginationLinks(exchange, context, size, rep);
+            }
+
             addLinkTemplates(context, rep, requestPath);
 
             // curies
@@ -189,6 +205,48 @@ public class CollectionRepresentationFactory
         return rep;
     }
 
+    /**
+     * in keyset pagination mode, the token of the next page is built from the
+     * sort key values of the last document if the page is full; it is not
+     * available if a sort key value of the last document has a type not
+     * supported by the keyset pagination, e.g. an array
+     *
+     * @param context
+     * @param embeddedData
+     * @return the next page token or null
+     */
+    private String getNextPageToken(
+            final RequestContext context,
+            final List<BsonDocument> embeddedData) {
+        if (!context.isKeysetPagination()
+                || embeddedData == null
+                || embeddedData.isEmpty()
+                || embeddedData.size() < context.getPagesize()) {
+            return null;
+        }
+
+        try {
+            return PageTokenUtils.encode(
+                    embeddedData.get(embeddedData.size() - 1),
+                    context.getSortByDocument());
+        } catch (IllegalArgumentException iae) {
+            context.addWarning("next page token not available, "
+                    + iae.getMessage());
+            return null;
+        }
+    }
+
+    private void addKeysetPaginationLinks(
+            final HttpServerExchange exchange,
+            final RequestContext context,
+            final String nextPageToken,
+            final Representation rep) {
+        if (context.getPagesize() > 0) {
+            HALUtils.getKeysetPaginationLinks(exchange, context, nextPageToken)
+                    .forEach((k, v) -> rep.addLink(new Link(k, v)));
+        }
+    }
+
     private void addProperties(
             final Representation rep,
             final RequestContext context) {
@@ -293,7 +351,7 @@ public class CollectionRepresentationFactory
 
         rep.addLink(new Link(RHFILTER, requestPath + "{?filter}", true));
         rep.addLink(new Link(RHSORT, requestPath + "{?sort_by}", true));
-        rep.addLink(new Link(RHPAGING, requestPath + "{?page}{&pagesize}", true));
+        rep.addLink(new Link(RHPAGING, requestPath + "{?page}{&pagesize}{&page_token}", true));
         rep.addLink(new Link(RHINDEXES, requestPath + "/_indexes"));
     }
 
@@ -305,74 +363,108 @@ public class CollectionRepresentationFactory
             Representation rep)
             throws IllegalQueryParamenterException {
         for (BsonDocument d : embeddedData) {
-            BsonValue _id = d.get(_ID);
-
-            if (_id != null
-                    && RequestContext.isReservedResourceCollection(
-                            _id.toString())) {
-                rep.addWarning("filtered out reserved resource "
-                        + requestPath + "/"
-                        + _id.toString());
-            } else {
-                Representation nrep;
-
-                if (_id == null) {
-                    nrep = new DocumentRepresentationFactory()
-                            .getRepresentation(
-                                    requestPath + "/_null",
-                                    exchange,
-                                    context,
-                                    d);
-                } else {
-                    nrep = new DocumentRepresentationFactory()
-                            .getRepresentation(
-                                    URLUtils.getReferenceLink(requestPath, _id),
-                                    exchange,
-                                    context,
-                                    d);
-                }
+            Representation nrep = getEmbeddedDocumentRepresentation(
+                    d,
+                    requestPath,
+                    exchange,
+                    context,
+                    rep);
+
+            if (nrep != null) {
+                rep.addRepresentation(getEmbeddedRel(context), nrep);
+            }
+        }
+    }
 
-                if (null == context.getType()) {
-                    if (context.isFullHalMode()) {
-                        DocumentRepresentationFactory.addSpecialProperties(
-                                nrep,
-                                TYPE.DOCUMENT,
-                                d);
-                    }
+    /**
+     *
+     * @param d the embedded document
+     * @param requestPath
+     * @param exchange
+     * @param context
+     * @param rep the collection representation, used to add warnings
+     * @return the representation of the embedded document or null if it is
+     * filtered out
+     * @throws IllegalQueryParamenterException
+     */
+    Representation getEmbeddedDocumentRepresentation(
+            BsonDocument d,
+            String requestPath,
+            HttpServerExchange exchange,
+            RequestContext context,
+            Representation rep)
+            throws IllegalQueryParamenterException {
+        BsonValue _id = d.get(_ID);
 
-                    rep.addRepresentation(RHDOC, nrep);
-                } else {
-                    switch (context.getType()) {
-                        case FILES_BUCKET:
-                            if (context.isFullHalMode()) {
-                                DocumentRepresentationFactory.addSpecialProperties(
-                                        nrep,
-                                        TYPE.FILE,
-                                        d);
-                            }
-                            rep.addRepresentation(RHFILE, nrep);
-                            break;
-                        case SCHEMA_STORE:
-                            if (context.isFullHalMode()) {
-                                DocumentRepresentationFactory.addSpecialProperties(
-                                        nrep,
-                                        TYPE.SCHEMA,
-                                        d);
-                            }
-                            rep.addRepresentation(RHSCHEMA, nrep);
-                            break;
-                        default:
-                            if (context.isFullHalMode()) {
-                                DocumentRepresentationFactory.addSpecialProperties(
-                                        nrep,
-                                        TYPE.DOCUMENT,
-                                        d);
-                            }
-                            rep.addRepresentation(RHDOC, nrep);
-                            break;
-                    }
-                }
-            }
+        if (_id != null
+                && RequestContext.isReservedResourceCollection(
+                        _id.toString())) {
+            rep.addWarning("filtered out reserved resource "
+                    + requestPath + "/"
+                    + _id.toString());
+
+            return null;
+        }
+
+        Representation nrep;
+
+        if (_id == null) {
+            nrep = new DocumentRepresentationFactory()
+                    .getRepresentation(
+                            requestPath + "/_null",
+                            exchange,
+                            context,
+                            d);
+        } else {
+            nrep = new DocumentRepresentationFactory()
+                    .getRepresentation(
+                            URLUtils.getReferenceLink(requestPath, _id),
+                            exchange,
+                            context,
+                            d);
+        }
+
+        if (context.isFullHalMode()) {
+            DocumentRepresentationFactory.addSpecialProperties(
+                    nrep,
+                    getEmbeddedType(context),
+                    d);
+        }
+
+        return nrep;
+    }
+
+    /**
+     * @param context
+     * @return the rel of the embedded documents
+     */
+    String getEmbeddedRel(RequestContext context) {
+        if (null == context.getType()) {
+            return RHDOC;
+        }
+
+        switch (context.getType()) {
+            case FILES_BUCKET:
+                return RHFILE;
+            case SCHEMA_STORE:
+                return RHSCHEMA;
+            default:
+                return RHDOC;
+        }
+    }
+
+    private TYPE getEmbeddedType(RequestContext context) {
+        if (null == context.getType()) {
+            return TYPE.DOCUMENT;
+        }
+
+        switch (context.getType()) {
+            case FILES_BUCKET:
+                return TYPE.FILE;
+            case SCHEMA_STORE:
+                return TYPE.SCHEMA;
+            default:
+                return TYPE.DOCUMENT;
         }
     }
 
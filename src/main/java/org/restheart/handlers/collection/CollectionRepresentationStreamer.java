@@ -0,0 +1,324 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.collection;
+
+import com.mongodb.client.MongoCursor;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import java.util.Map;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.codecs.BsonValueCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.json.JsonWriter;
+import org.restheart.Bootstrapper;
+import org.restheart.hal.Representation;
+import org.restheart.handlers.IllegalQueryParamenterException;
+import org.restheart.handlers.RequestContext;
+import org.restheart.handlers.aggregation.AggregationTransformer;
+import org.restheart.metadata.hooks.HookMetadata;
+import org.restheart.metadata.transformers.RepresentationTransformer;
+import org.restheart.utils.HttpStatus;
+import org.restheart.utils.JsonStreamSerializer;
+import org.restheart.utils.ResponseHelper;
+
+/**
+ * Writes the HAL representation of a collection page to the response while
+ * the documents are read from the cursor, so that the page is never fully
+ * held in memory.
+ *
+ * Streaming is only possible when nothing downstream needs the whole
+ * response content, i.e. no response transformers or hooks are defined for
+ * the collection (or transformers for its db), no relationships are expanded
+ * and the response is not going to be cached; otherwise GetCollectionHandler
+ * falls back to the buffered response.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+class CollectionRepresentationStreamer {
+
+    private static final String _ID = "_id";
+    private static final String _RETURNED = "_returned";
+    private static final String _EMBEDDED = "_embedded";
+    private static final String _LINKS = "_links";
+    private static final String _WARNINGS = "_warnings";
+    private static final String RHWARNINGS = "rh:warnings";
+
+    private static final int DEFAULT_BUFFER_SIZE = 16384;
+
+    private static final BsonValueCodec CODEC = new BsonValueCodec();
+
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext
+            .builder()
+            .build();
+
+    /**
+     * @param context
+     * @return true if the response to the GET collection request can be
+     * streamed
+     */
+    static boolean isStreamable(RequestContext context) {
+        if (context.getType() != RequestContext.TYPE.COLLECTION
+                || context.getPagesize() <= 0
+                || context.isKeysetPagination()
+                || context.getExpand() != null
+                || context.getResponseCacheKey() != null) {
+            return false;
+        }
+
+        // with np, the plain json response is just the array of documents
+        if (!isHal(context) && context.isNoProps()) {
+            return false;
+        }
+
+        BsonDocument collProps = context.getCollectionProps();
+        BsonDocument dbProps = context.getDbProps();
+
+        if (collProps != null
+                && (collProps.containsKey(
+                        RepresentationTransformer.RTS_ELEMENT_NAME)
+                || collProps.containsKey(HookMetadata.ROOT_KEY))) {
+            return false;
+        }
+
+        return dbProps == null || !dbProps.containsKey(
+                RepresentationTransformer.RTS_ELEMENT_NAME);
+    }
+
+    /**
+     * writes the response and ends the exchange
+     *
+     * @param exchange
+     * @param context
+     * @param cursor the cursor of the collection data, closed by the caller
+     * @param size the collection size if requested, otherwise -1
+     * @throws IllegalQueryParamenterException
+     */
+    void stream(
+            HttpServerExchange exchange,
+            RequestContext context,
+            MongoCursor<BsonDocument> cursor,
+            long size)
+            throws IllegalQueryParamenterException {
+        final CollectionRepresentationFactory factory
+                = new CollectionRepresentationFactory();
+
+        // the envelope holds everything but the embedded documents
+        final Representation envelopeRep = factory
+                .getRepresentation(exchange, context, null, size);
+
+        final BsonDocument envelope = envelopeRep.asBsonDocument();
+
+        // the same the AggregationTransformer does in the buffered pipeline
+        new AggregationTransformer().transform(exchange,
+                context,
+                envelope,
+                null);
+
+        envelope.remove(_RETURNED);
+        envelope.remove(_EMBEDDED);
+
+        final boolean hal = isHal(context);
+
+        final String contentType = hal
+                ? Representation.HAL_JSON_MEDIA_TYPE
+                : Representation.JSON_MEDIA_TYPE;
+
+        context.setResponseContentType(contentType);
+        context.setResponseStatusCode(HttpStatus.SC_OK);
+
+        ResponseHelper
+                .injectEtagHeader(exchange, context.getCollectionProps());
+
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, contentType);
+        exchange.setStatusCode(HttpStatus.SC_OK);
+
+        final JsonWriter writer = JsonStreamSerializer.newStreamingJsonWriter(
+                exchange.getOutputStream(),
+                getBufferSize());
+
+        // collects the warnings of the filtered out documents
+        final Representation warningsRep = new Representation();
+
+        writer.writeStartDocument();
+
+        // as the buffered response, the _id is the first property
+        if (envelope.containsKey(_ID)) {
+            writeProperty(writer, _ID, envelope.get(_ID));
+        }
+
+        final int returned;
+
+        if (hal) {
+            final BsonValue links = envelope.remove(_LINKS);
+
+            writeProperties(writer, envelope);
+
+            writer.writeName(_EMBEDDED);
+            writer.writeStartDocument();
+
+            returned = writeDocuments(writer,
+                    exchange,
+                    context,
+                    cursor,
+                    factory,
+                    warningsRep,
+                    factory.getEmbeddedRel(context));
+
+            BsonValue warnings = getWarnings(context, warningsRep, true);
+
+            if (warnings != null) {
+                writeProperty(writer, RHWARNINGS, warnings);
+            }
+
+            writer.writeEndDocument();
+
+            writeProperty(writer, _RETURNED, new BsonInt32(returned));
+
+            if (links != null) {
+                writeProperty(writer, _LINKS, links);
+            }
+        } else {
+            // plain json: the documents are the _embedded array
+            returned = writeDocuments(writer,
+                    exchange,
+                    context,
+                    cursor,
+                    factory,
+                    warningsRep,
+                    _EMBEDDED);
+
+            writeProperties(writer, envelope);
+
+            writeProperty(writer, _RETURNED, new BsonInt32(returned));
+
+            BsonValue warnings = getWarnings(context, warningsRep, false);
+
+            if (warnings != null) {
+                writeProperty(writer, _WARNINGS, warnings);
+            }
+        }
+
+        writer.writeEndDocument();
+        writer.flush();
+
+        exchange.endExchange();
+    }
+
+    /**
+     * writes the array of the documents, reading at most pagesize documents
+     * from the cursor
+     *
+     * @return the number of documents read from the cursor
+     */
+    private int writeDocuments(
+            JsonWriter writer,
+            HttpServerExchange exchange,
+            RequestContext context,
+            MongoCursor<BsonDocument> cursor,
+            CollectionRepresentationFactory factory,
+            Representation warningsRep,
+            String name)
+            throws IllegalQueryParamenterException {
+        final String requestPath = factory.buildRequestPath(exchange);
+
+        int returned = 0;
+
+        writer.writeName(name);
+        writer.writeStartArray();
+
+        while (returned < context.getPagesize() && cursor.hasNext()) {
+            BsonDocument d = cursor.next();
+            returned++;
+
+            Representation nrep = factory.getEmbeddedDocumentRepresentation(
+                    d,
+                    requestPath,
+                    exchange,
+                    context,
+                    warningsRep);
+
+            if (nrep != null) {
+                CODEC.encode(writer, nrep.asBsonDocument(), ENCODER_CONTEXT);
+            }
+        }
+
+        writer.writeEndArray();
+
+        return returned;
+    }
+
+    /**
+     * the warnings of the request context take precedence, as in
+     * ResponseSenderHandler
+     */
+    private BsonValue getWarnings(
+            RequestContext context,
+            Representation warningsRep,
+            boolean hal) {
+        if (context.getWarnings() != null
+                && !context.getWarnings().isEmpty()) {
+            BsonArray warnings = new BsonArray();
+
+            context.getWarnings().forEach(w -> {
+                if (hal) {
+                    Representation nrep = new Representation("#warnings");
+                    nrep.addProperty("message", new BsonString(w));
+                    warnings.add(nrep.asBsonDocument());
+                } else {
+                    warnings.add(new BsonString(w));
+                }
+            });
+
+            return warnings;
+        }
+
+        BsonValue _embedded = warningsRep.asBsonDocument().get(_EMBEDDED);
+
+        return _embedded == null
+                ? null
+                : _embedded.asDocument().get(RHWARNINGS);
+    }
+
+    private void writeProperties(JsonWriter writer, BsonDocument properties) {
+        for (Map.Entry<String, BsonValue> property : properties.entrySet()) {
+            if (!_ID.equals(property.getKey())) {
+                writeProperty(writer, property.getKey(), property.getValue());
+            }
+        }
+    }
+
+    private void writeProperty(JsonWriter writer, String key, BsonValue value) {
+        writer.writeName(key);
+        CODEC.encode(writer, value, ENCODER_CONTEXT);
+    }
+
+    private static boolean isHal(RequestContext context) {
+        return context.getRepresentationFormat()
+                == RequestContext.REPRESENTATION_FORMAT.HAL;
+    }
+
+    private int getBufferSize() {
+        return Bootstrapper.getConfiguration() == null
+                ? DEFAULT_BUFFER_SIZE
+                : Bootstrapper.getConfiguration().getBufferSize();
+    }
+}
@@ -19,17 +19,21 @@ package org.restheart.handlers.collection;
 
 import com.mongodb.MongoException;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.util.JSONParseException;
 import io.undertow.server.HttpServerExchange;
 import java.util.ArrayList;
 import org.bson.BsonDocument;
+import org.restheart.db.CursorPool.EAGER_CURSOR_ALLOCATION_POLICY;
 import org.restheart.db.Database;
 import org.restheart.db.DbsDAO;
 import org.restheart.hal.Representation;
 import org.restheart.handlers.IllegalQueryParamenterException;
 import org.restheart.handlers.PipedHttpHandler;
 import org.restheart.handlers.RequestContext;
+import org.restheart.handlers.document.RelationshipsExpander;
 import org.restheart.utils.HttpStatus;
+import org.restheart.utils.PageTokenUtils;
 import org.restheart.utils.ResponseHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -89,14 +93,62 @@ public class GetCollectionHandler extends PipedHttpHandler {
         if (context.getPagesize() > 0) {
 
             try {
-                data = getDatabase().getCollectionData(
-                        coll,
-                        context.getPage(),
-                        context.getPagesize(),
-                        context.getSortByDocument(),
-                        context.getFiltersDocument(),
-                        context.getProjectionDocument(),
-                        context.getCursorAllocationPolicy());
+                if (context.isKeysetPagination()) {
+                    // keyset pagination: the page token is turned into
+                    // a range filter on the sort keys, no skips needed
+                    BsonDocument sortBy = context.getSortByDocument();
+                    BsonDocument filters = context.getFiltersDocument();
+                    BsonDocument pageTokenValues
+                            = context.getPageTokenDocument();
+
+                    if (pageTokenValues != null) {
+                        filters = PageTokenUtils.and(filters,
+                                PageTokenUtils.getRangeFilter(
+                                        pageTokenValues,
+                                        sortBy));
+                    }
+
+                    data = getDatabase().getCollectionData(
+                            coll,
+                            1,
+                            context.getPagesize(),
+                            sortBy,
+                            filters,
+                            PageTokenUtils.getKeysetProjection(
+                                    context.getProjectionDocument(),
+                                    sortBy),
+                            EAGER_CURSOR_ALLOCATION_POLICY.NONE);
+                } else if (CollectionRepresentationStreamer
+                        .isStreamable(context)) {
+                    try (MongoCursor<BsonDocument> cursor = getDatabase()
+                            .getCollectionDataCursor(
+                                    coll,
+                                    context.getPage(),
+                                    context.getPagesize(),
+                                    context.getSortByDocument(),
+                                    context.getFiltersDocument(),
+                                    context.getProjectionDocument(),
+                                    context.getCursorAllocationPolicy())) {
+                        // query errors are raised here,
+                        // before the response is started
+                        cursor.hasNext();
+
+                        new CollectionRepresentationStreamer()
+                                .stream(exchange, context, cursor, size);
+                    }
+
+                    // the response has been sent, nothing left to pipe
+                    return;
+                } else {
+                    data = getDatabase().getCollectionData(
+                            coll,
+                            context.getPage(),
+                            context.getPagesize(),
+                            context.getSortByDocument(),
+                            context.getFiltersDocument(),
+                            context.getProjectionDocument(),
+                            context.getCursorAllocationPolicy());
+                }
             } catch (JSONParseException jpe) {
                 // the filter expression is not a valid json string
                 LOGGER.debug("invalid filter expression {}",
@@ -109,6 +161,15 @@ public class GetCollectionHandler extends PipedHttpHandler {
                         jpe);
                 next(exchange, context);
                 return;
+            } catch (IllegalQueryParamenterException ex) {
+                ResponseHelper.endExchangeWithMessage(
+                        exchange,
+                        context,
+                        HttpStatus.SC_BAD_REQUEST,
+                        ex.getMessage(),
+                        ex);
+                next(exchange, context);
+                return;
             } catch (MongoException me) {
                 if (me.getMessage().matches(".*Can't canonicalize query.*")) {
                     // error with the filter expression during query execution
@@ -137,6 +198,8 @@ public class GetCollectionHandler extends PipedHttpHandler {
         }
 
         try {
+            new RelationshipsExpander(getDatabase()).expand(exchange, context, data);
+
             context.setResponseContent(new CollectionRepresentationFactory()
                     .getRepresentation(exchange, context, data, size)
                     .asBsonDocument());
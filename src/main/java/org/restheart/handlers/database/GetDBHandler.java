@@ -25,6 +25,7 @@ import org.restheart.db.DbsDAO;
 import org.restheart.hal.Representation;
 import org.restheart.handlers.PipedHttpHandler;
 import org.restheart.handlers.RequestContext;
+import org.restheart.handlers.injectors.LocalCachesSingleton;
 import org.restheart.utils.HttpStatus;
 import org.restheart.utils.ResponseHelper;
 
@@ -65,8 +66,10 @@ public class GetDBHandler extends PipedHttpHandler {
             return;
         }
 
-        List<String> colls = getDatabase()
-                .getCollectionNames(context.getDBName());
+        List<String> colls = LocalCachesSingleton.isEnabled()
+                ? LocalCachesSingleton.getInstance()
+                        .getCollectionNames(context.getDBName())
+                : getDatabase().getCollectionNames(context.getDBName());
 
         List<BsonDocument> data = null;
 
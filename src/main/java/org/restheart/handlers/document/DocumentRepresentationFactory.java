@@ -58,7 +58,7 @@ public class DocumentRepresentationFactory {
         List<Relationship> rels = null;
 
         try {
-            rels = Relationship.getFromJson(context.getCollectionProps());
+            rels = context.getCollectionMetadata().getRelationships();
         } catch (InvalidMetadataException ex) {
             rep.addWarning("collection " + context.getDBName()
                     + "/" + context.getCollectionName()
@@ -81,6 +81,18 @@ public class DocumentRepresentationFactory {
         }
     }
 
+    private static void addExpandedRelationships(Representation rep, RequestContext context, BsonDocument data) {
+        BsonDocument expanded = context.getExpandedRelationships(data);
+
+        if (expanded != null) {
+            expanded.forEach((rel, targets) -> targets.asArray().forEach(target -> {
+                Representation nrep = new Representation();
+                nrep.addProperties(target.asDocument());
+                rep.addRepresentation(rel, nrep);
+            }));
+        }
+    }
+
     public DocumentRepresentationFactory() {
 
     }
@@ -112,6 +124,7 @@ public class DocumentRepresentationFactory {
                 .stream().forEach((key) -> rep.addProperty(key, data.get(key)));
 
         addRelationshipsLinks(rep, context, data);
+        addExpandedRelationships(rep, context, data);
 
         // link templates and curies
         String requestPath = URLUtils.removeTrailingSlashes(exchange.getRequestPath());
@@ -20,12 +20,14 @@ package org.restheart.handlers.document;
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
 import io.undertow.server.HttpServerExchange;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.HashSet;
 import org.bson.BsonDocument;
 import org.bson.BsonObjectId;
 import org.bson.conversions.Bson;
 import org.restheart.hal.Representation;
+import org.restheart.handlers.IllegalQueryParamenterException;
 import org.restheart.handlers.PipedHttpHandler;
 import org.restheart.handlers.RequestContext;
 import org.restheart.handlers.RequestContext.TYPE;
@@ -165,12 +167,30 @@ public class GetDocumentHandler extends PipedHttpHandler {
 
         // in case the request contains the IF_NONE_MATCH header with the current etag value,
         // just return 304 NOT_MODIFIED code
-        if (RequestHelper.checkReadEtag(exchange, (BsonObjectId) etag)) {
+        // the expanded documents can change while the document does not
+        if (context.getExpand() == null
+                && RequestHelper.checkReadEtag(exchange, (BsonObjectId) etag)) {
             context.setResponseStatusCode(HttpStatus.SC_NOT_MODIFIED);
             next(exchange, context);
             return;
         }
 
+        if (context.getExpand() != null) {
+            try {
+                new RelationshipsExpander(getDatabase())
+                        .expand(exchange, context, Arrays.asList(document));
+            } catch (IllegalQueryParamenterException ex) {
+                ResponseHelper.endExchangeWithMessage(
+                        exchange,
+                        context,
+                        HttpStatus.SC_BAD_REQUEST,
+                        ex.getMessage(),
+                        ex);
+                next(exchange, context);
+                return;
+            }
+        }
+
         String requestPath = URLUtils.removeTrailingSlashes(
                 exchange.getRequestPath());
 
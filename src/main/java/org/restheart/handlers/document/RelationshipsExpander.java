@@ -0,0 +1,526 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.document;
+
+import com.mongodb.client.MongoCursor;
+import io.undertow.predicate.Predicate;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HttpString;
+import io.undertow.util.Methods;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.restheart.db.Database;
+import org.restheart.handlers.IllegalQueryParamenterException;
+import org.restheart.handlers.RequestContext;
+import org.restheart.handlers.injectors.LocalCachesSingleton;
+import org.restheart.handlers.metadata.InvalidMetadataException;
+import org.restheart.metadata.CompiledMetadata;
+import org.restheart.metadata.CompiledMetadata.Binding;
+import org.restheart.metadata.Relationship;
+import org.restheart.metadata.transformers.RepresentationTransformer;
+import org.restheart.metadata.transformers.Transformer;
+import org.restheart.security.AccessManager;
+import org.restheart.security.handlers.AccessManagerHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Expands the relationships requested with the expand query parameter,
+ * collecting the documents of the target collections referenced by the
+ * documents of the response.
+ *
+ * The referenced ids are collected across all the documents of the page, so
+ * that each target collection is queried once with a $in filter whatever the
+ * page size. The expanded documents are embedded by the
+ * DocumentRepresentationFactory.
+ *
+ * A relationship is expanded only if the access manager that authorized the
+ * request also allows a GET on the target collection, and the response
+ * transformers of the target collection are applied to the expanded
+ * documents, as they would be to the response of a request to it.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class RelationshipsExpander {
+
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(RelationshipsExpander.class);
+
+    private static final String _ID = "_id";
+    private static final String $IN = "$in";
+
+    /**
+     * the max number of documents read from a target collection
+     */
+    public static final int MAX_EXPANDED_DOCUMENTS = 1000;
+
+    private final Database dbsDAO;
+
+    /**
+     *
+     * @param dbsDAO
+     */
+    public RelationshipsExpander(Database dbsDAO) {
+        this.dbsDAO = dbsDAO;
+    }
+
+    /**
+     * expands the requested relationships of the documents, adding the
+     * expanded documents to the request context
+     *
+     * @param exchange
+     * @param context
+     * @param data the documents of the response
+     * @throws IllegalQueryParamenterException if a requested relationship is
+     * not defined
+     */
+    public void expand(
+            HttpServerExchange exchange,
+            RequestContext context,
+            List<BsonDocument> data)
+            throws IllegalQueryParamenterException {
+        if (context.getExpand() == null || data == null || data.isEmpty()) {
+            return;
+        }
+
+        for (Relationship rel : getRelationships(context)) {
+            Target target = getTarget(exchange, context, rel);
+
+            if (target == null) {
+                continue;
+            }
+
+            if (rel.getRole() == Relationship.ROLE.OWNING) {
+                expandOwning(target, rel, data);
+            } else {
+                expandInverse(target, rel, data);
+            }
+        }
+    }
+
+    /**
+     * @return the target of the relationship or null if it cannot be
+     * expanded
+     */
+    private Target getTarget(
+            HttpServerExchange exchange,
+            RequestContext context,
+            Relationship rel) {
+        String db = rel.getTargetDb() == null
+                ? context.getDBName()
+                : rel.getTargetDb();
+
+        String coll = rel.getTargetCollection();
+
+        if (!isReadable(exchange, context, db, coll)) {
+            context.addWarning("relationship "
+                    + rel.getRel()
+                    + " not expanded, access to "
+                    + db + "/" + coll
+                    + " denied");
+            return null;
+        }
+
+        List<Binding<RepresentationTransformer, Transformer>> transformers
+                = new ArrayList<>();
+
+        try {
+            CompiledMetadata metadata = getCollectionMetadata(db, coll);
+
+            if (metadata != null) {
+                for (Binding<RepresentationTransformer, Transformer> brt
+                        : metadata.getTransformers()) {
+                    if (brt.getMetadata().getPhase()
+                            == RepresentationTransformer.PHASE.RESPONSE) {
+                        if (brt.getSingleton() == null) {
+                            throw new IllegalArgumentException(
+                                    "cannot find singleton "
+                                    + brt.getMetadata().getName()
+                                    + " in singleton group transformers");
+                        }
+
+                        transformers.add(brt);
+                    }
+                }
+            }
+        } catch (InvalidMetadataException | IllegalArgumentException ex) {
+            // never expand documents that could not be transformed
+            context.addWarning("relationship "
+                    + rel.getRel()
+                    + " not expanded, error applying the transformers of "
+                    + db + "/" + coll
+                    + ": "
+                    + ex.getMessage());
+            return null;
+        }
+
+        return new Target(exchange, context, db, coll, transformers);
+    }
+
+    private CompiledMetadata getCollectionMetadata(String db, String coll) {
+        if (LocalCachesSingleton.isEnabled()) {
+            BsonDocument props = LocalCachesSingleton.getInstance()
+                    .getCollectionProperties(db, coll);
+
+            return LocalCachesSingleton.getInstance()
+                    .getCollectionMetadata(db, coll, props);
+        } else {
+            return CompiledMetadata.compile(dbsDAO
+                    .getCollectionProperties(db, coll));
+        }
+    }
+
+    /**
+     * checks with the access manager that authorized the request if a GET
+     * on the target collection, through the same mongo-mount, is allowed.
+     *
+     * The access manager resolves the request, so the method and the paths
+     * of the exchange are switched to the ones of the target collection
+     * while checking; this happens on the thread handling the request.
+     */
+    private static boolean isReadable(
+            HttpServerExchange exchange,
+            RequestContext context,
+            String db,
+            String coll) {
+        AccessManager accessManager = exchange
+                .getAttachment(AccessManagerHandler.ACCESS_MANAGER_KEY);
+
+        if (accessManager == null) {
+            return false;
+        }
+
+        String target = "/" + db + "/" + coll;
+        String mappedTarget = context.mapUri(target);
+
+        // the target is not reachable through the mongo-mount of the request
+        if (!target.equals(context.unmapUri(mappedTarget))) {
+            return false;
+        }
+
+        String requestPath = exchange.getRequestPath();
+        String relativePath = exchange.getRelativePath();
+
+        // the path of the mongo-mount
+        String prefix = requestPath != null
+                && relativePath != null
+                && requestPath.endsWith(relativePath)
+                ? requestPath.substring(0,
+                        requestPath.length() - relativePath.length())
+                : "";
+
+        String relativeTarget = mappedTarget.startsWith(prefix)
+                ? mappedTarget.substring(prefix.length())
+                : mappedTarget;
+
+        if (!relativeTarget.startsWith("/")) {
+            relativeTarget = "/" + relativeTarget;
+        }
+
+        HttpString method = exchange.getRequestMethod();
+        Map<String, Object> predicateContext
+                = exchange.removeAttachment(Predicate.PREDICATE_CONTEXT);
+
+        try {
+            exchange.setRequestMethod(Methods.GET);
+            exchange.setRequestPath(mappedTarget);
+            exchange.setRelativePath(relativeTarget);
+
+            return accessManager.isAllowed(exchange, context);
+        } finally {
+            exchange.setRequestMethod(method);
+            exchange.setRequestPath(requestPath);
+            exchange.setRelativePath(relativePath);
+
+            if (predicateContext == null) {
+                exchange.removeAttachment(Predicate.PREDICATE_CONTEXT);
+            } else {
+                exchange.putAttachment(Predicate.PREDICATE_CONTEXT,
+                        predicateContext);
+            }
+        }
+    }
+
+    private List<Relationship> getRelationships(RequestContext context)
+            throws IllegalQueryParamenterException {
+        List<Relationship> defined = null;
+
+        try {
+            if (context.getCollectionMetadata() != null) {
+                defined = context.getCollectionMetadata().getRelationships();
+            }
+        } catch (InvalidMetadataException ime) {
+            throw new IllegalQueryParamenterException(
+                    "illegal expand paramenter, collection "
+                    + context.getDBName()
+                    + "/" + context.getCollectionName()
+                    + " has invalid relationships definition", ime);
+        }
+
+        Set<String> expand = context.getExpand();
+
+        if (expand.contains(RequestContext.RESOURCES_WILDCARD_KEY)) {
+            return defined == null ? new ArrayList<>() : defined;
+        }
+
+        List<Relationship> ret = new ArrayList<>();
+
+        for (String name : expand) {
+            Relationship rel = defined == null
+                    ? null
+                    : defined.stream()
+                            .filter(r -> name.equals(r.getRel()))
+                            .findFirst()
+                            .orElse(null);
+
+            if (rel == null) {
+                throw new IllegalQueryParamenterException(
+                        "illegal expand paramenter, relationship "
+                        + name
+                        + " is not defined");
+            }
+
+            ret.add(rel);
+        }
+
+        return ret;
+    }
+
+    /**
+     * the target documents are the ones whose _id is referenced by the
+     * reference field of the documents
+     */
+    private void expandOwning(
+            Target target,
+            Relationship rel,
+            List<BsonDocument> data) {
+        RequestContext context = target.context;
+
+        Map<BsonDocument, List<BsonValue>> referencedIds
+                = new IdentityHashMap<>();
+        Set<BsonValue> ids = new LinkedHashSet<>();
+
+        for (BsonDocument d : data) {
+            try {
+                List<BsonValue> refs = rel.getReferencedIds(d);
+
+                referencedIds.put(d, refs);
+                ids.addAll(refs);
+            } catch (IllegalArgumentException iae) {
+                context.addWarning(iae.getMessage());
+                LOGGER.debug(iae.getMessage());
+            }
+        }
+
+        Map<BsonValue, BsonDocument> targets = new HashMap<>();
+
+        if (!ids.isEmpty()) {
+            // the _id is read before the transformers can change it
+            find(target, rel, _ID, ids).forEach(found
+                    -> targets.put(found.getKey(), found.getValue()));
+        }
+
+        for (BsonDocument d : data) {
+            BsonArray expanded = new BsonArray();
+
+            List<BsonValue> refs = referencedIds.get(d);
+
+            if (refs != null) {
+                refs.stream()
+                        .map(targets::get)
+                        .filter(doc -> doc != null)
+                        .forEach(expanded::add);
+            }
+
+            context.addExpandedRelationship(d, rel.getRel(), expanded);
+        }
+    }
+
+    /**
+     * the target documents are the ones whose reference field is (or
+     * contains, for the to many relationships) the _id of the documents
+     */
+    private void expandInverse(
+            Target target,
+            Relationship rel,
+            List<BsonDocument> data) {
+        RequestContext context = target.context;
+
+        String referenceField = rel.getReferenceField();
+
+        if (referenceField.startsWith("$.")) {
+            context.addWarning("relationship "
+                    + rel.getRel()
+                    + " cannot be expanded, the ref-field of INVERSE "
+                    + "relationships cannot be a json path expression");
+            return;
+        }
+
+        Set<BsonValue> ids = new LinkedHashSet<>();
+
+        data.stream()
+                .map(d -> d.get(_ID))
+                .filter(id -> id != null)
+                .forEach(ids::add);
+
+        Map<BsonValue, BsonArray> targets = new HashMap<>();
+
+        if (!ids.isEmpty()) {
+            find(target, rel, referenceField, ids).forEach(found -> {
+                BsonValue ref = found.getKey();
+
+                List<BsonValue> refs = new ArrayList<>();
+
+                if (ref != null && ref.isArray()) {
+                    refs.addAll(ref.asArray().getValues());
+                } else if (ref != null) {
+                    refs.add(ref);
+                }
+
+                refs.stream()
+                        .filter(ids::contains)
+                        .distinct()
+                        .forEach(id -> targets
+                        .computeIfAbsent(id, k -> new BsonArray())
+                        .add(found.getValue()));
+            });
+        }
+
+        for (BsonDocument d : data) {
+            BsonArray expanded = d.get(_ID) == null
+                    ? null
+                    : targets.get(d.get(_ID));
+
+            context.addExpandedRelationship(d,
+                    rel.getRel(),
+                    expanded == null ? new BsonArray() : expanded);
+        }
+    }
+
+    /**
+     * finds the target documents with a single query and applies the
+     * response transformers of the target collection
+     *
+     * @return the value of field, read before transforming the documents,
+     * and the transformed documents
+     */
+    private List<Map.Entry<BsonValue, BsonDocument>> find(
+            Target target,
+            Relationship rel,
+            String field,
+            Set<BsonValue> values) {
+        RequestContext context = target.context;
+
+        BsonDocument filter = new BsonDocument(field,
+                new BsonDocument($IN, new BsonArray(new ArrayList<>(values))));
+
+        List<BsonDocument> ret = new ArrayList<>();
+
+        try (MongoCursor<BsonDocument> cursor = dbsDAO
+                .getCollection(target.db, target.coll)
+                .find(filter)
+                .limit(MAX_EXPANDED_DOCUMENTS)
+                .iterator()) {
+            cursor.forEachRemaining(ret::add);
+        }
+
+        if (ret.size() >= MAX_EXPANDED_DOCUMENTS) {
+            context.addWarning("the expansion of relationship "
+                    + rel.getRel()
+                    + " has been limited to "
+                    + MAX_EXPANDED_DOCUMENTS
+                    + " documents");
+        }
+
+        List<Map.Entry<BsonValue, BsonDocument>> found = new ArrayList<>();
+
+        for (BsonDocument doc : ret) {
+            BsonValue value = get(doc, field);
+
+            target.transform(doc);
+
+            found.add(new AbstractMap.SimpleImmutableEntry<>(value, doc));
+        }
+
+        return found;
+    }
+
+    /**
+     * @return the value of the (possibly dot notation) field
+     */
+    private static BsonValue get(BsonDocument doc, String field) {
+        BsonValue ret = doc;
+
+        for (String key : field.split("\\.")) {
+            if (ret == null || !ret.isDocument()) {
+                return null;
+            }
+
+            ret = ret.asDocument().get(key);
+        }
+
+        return ret;
+    }
+
+    /**
+     * the target collection of a relationship
+     */
+    private static class Target {
+
+        private final HttpServerExchange exchange;
+        private final RequestContext context;
+        private final String db;
+        private final String coll;
+        private final List<Binding<RepresentationTransformer, Transformer>> transformers;
+
+        Target(HttpServerExchange exchange,
+                RequestContext context,
+                String db,
+                String coll,
+                List<Binding<RepresentationTransformer, Transformer>> transformers) {
+            this.exchange = exchange;
+            this.context = context;
+            this.db = db;
+            this.coll = coll;
+            this.transformers = transformers;
+        }
+
+        /**
+         * applies the response transformers, as for a GET of the document
+         */
+        void transform(BsonDocument doc) {
+            for (Binding<RepresentationTransformer, Transformer> brt
+                    : transformers) {
+                brt.getSingleton().transform(exchange,
+                        context,
+                        doc,
+                        brt.getMetadata().getArgs(),
+                        brt.getConfArgs());
+            }
+        }
+    }
+}
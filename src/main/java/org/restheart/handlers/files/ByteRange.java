@@ -0,0 +1,182 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.files;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A satisfiable byte range of a Range request header (RFC 7233), with both
+ * positions resolved against the file length.
+ *
+ * @author Maurizio Turatti {@literal <maurizio@softinstigate.com>}
+ */
+class ByteRange {
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    /**
+     * requests with more ranges than this get the whole content
+     */
+    static final int MAX_RANGES = 20;
+
+    private final long start;
+    private final long end;
+
+    ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * parses the Range request header value, e.g. bytes=0-99,200-,-50
+     *
+     * @param header the Range header value
+     * @param length the length of the file
+     * @return the satisfiable ranges (empty if none is), sorted and with the
+     * overlapping or adjacent ones coalesced; null if the header is malformed
+     * or has too many ranges, so that it must be ignored
+     */
+    static List<ByteRange> parse(String header, long length) {
+        if (header == null || !header.startsWith(BYTES_UNIT)) {
+            return null;
+        }
+
+        String[] specs = header.substring(BYTES_UNIT.length()).split(",");
+
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+
+        List<ByteRange> ret = new ArrayList<>();
+
+        for (String _spec : specs) {
+            String spec = _spec.trim();
+            int dash = spec.indexOf('-');
+
+            if (dash < 0) {
+                return null;
+            }
+
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+
+            long start;
+            long end;
+
+            try {
+                if (first.isEmpty()) {
+                    // suffix range, the last n bytes
+                    long suffix = Long.parseLong(last);
+
+                    if (suffix < 0) {
+                        return null;
+                    } else if (suffix == 0) {
+                        continue;
+                    }
+
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(first);
+                    end = last.isEmpty()
+                            ? length - 1
+                            : Long.parseLong(last);
+
+                    if (start < 0 || end < start) {
+                        return null;
+                    }
+
+                    end = Math.min(end, length - 1);
+                }
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
+
+            if (start < length) {
+                ret.add(new ByteRange(start, end));
+            }
+        }
+
+        return coalesce(ret);
+    }
+
+    /**
+     * coalesces the overlapping or adjacent ranges, so that no byte is sent
+     * twice (RFC 7233, section 6.1)
+     *
+     * @param ranges
+     * @return the ranges sorted by start position and coalesced
+     */
+    static List<ByteRange> coalesce(List<ByteRange> ranges) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+
+        List<ByteRange> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingLong(ByteRange::getStart));
+
+        List<ByteRange> ret = new ArrayList<>();
+        ByteRange current = sorted.get(0);
+
+        for (ByteRange next : sorted.subList(1, sorted.size())) {
+            if (next.getStart() <= current.getEnd() + 1) {
+                current = new ByteRange(
+                        current.getStart(),
+                        Math.max(current.getEnd(), next.getEnd()));
+            } else {
+                ret.add(current);
+                current = next;
+            }
+        }
+
+        ret.add(current);
+
+        return ret;
+    }
+
+    /**
+     * @return the first byte position, inclusive
+     */
+    long getStart() {
+        return start;
+    }
+
+    /**
+     * @return the last byte position, inclusive
+     */
+    long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return the number of bytes of the range
+     */
+    long getLength() {
+        return end - start + 1;
+    }
+
+    /**
+     * @param length the length of the file
+     * @return the value of the Content-Range header
+     */
+    String getContentRange(long length) {
+        return "bytes " + start + "-" + end + "/" + length;
+    }
+}
@@ -17,13 +17,25 @@
  */
 package org.restheart.handlers.files;
 
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.gridfs.GridFSBucket;
 import com.mongodb.client.gridfs.GridFSBuckets;
 import com.mongodb.client.gridfs.model.GridFSFile;
+import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Filters.lte;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
 import org.bson.BsonObjectId;
 import org.bson.types.ObjectId;
 import org.restheart.db.MongoDBClientSingleton;
@@ -50,6 +62,13 @@ public class GetFileBinaryHandler extends PipedHttpHandler {
     private static final Logger LOGGER
             = LoggerFactory.getLogger(GetFileBinaryHandler.class);
 
+    private static final String CHUNKS_SUFFIX = ".chunks";
+
+    private static final String BYTES = "bytes";
+
+    private static final String MULTIPART_BYTERANGES
+            = "multipart/byteranges; boundary=";
+
     static String extractBucketName(final String collectionName) {
         return collectionName.split("\\.")[0];
     }
@@ -88,10 +107,10 @@ public class GetFileBinaryHandler extends PipedHttpHandler {
         LOGGER.trace("GET " + exchange.getRequestURL());
         final String bucket = extractBucketName(context.getCollectionName());
 
-        GridFSBucket gridFSBucket = GridFSBuckets.create(
-                MongoDBClientSingleton.getInstance().getClient()
-                        .getDatabase(context.getDBName()),
-                bucket);
+        MongoDatabase db = MongoDBClientSingleton.getInstance().getClient()
+                .getDatabase(context.getDBName());
+
+        GridFSBucket gridFSBucket = GridFSBuckets.create(db, bucket);
 
         GridFSFile dbsfile = gridFSBucket
                 .find(eq("_id", context.getDocumentId()))
@@ -100,7 +119,11 @@ public class GetFileBinaryHandler extends PipedHttpHandler {
         if (dbsfile == null) {
             fileNotFound(context, exchange);
         } else if (!checkEtag(exchange, dbsfile)) {
-            sendBinaryContent(gridFSBucket, dbsfile, exchange);
+            sendBinaryContent(
+                    gridFSBucket,
+                    db.getCollection(bucket + CHUNKS_SUFFIX, BsonDocument.class),
+                    dbsfile,
+                    exchange);
         }
 
         next(exchange, context);
@@ -151,30 +174,25 @@ public class GetFileBinaryHandler extends PipedHttpHandler {
 
     private void sendBinaryContent(
             final GridFSBucket gridFSBucket,
+            final MongoCollection<BsonDocument> chunks,
             final GridFSFile file,
             final HttpServerExchange exchange)
             throws IOException {
         LOGGER.trace("Filename = {}", file.getFilename());
         LOGGER.trace("Content length = {}", file.getLength());
 
+        final String contentType;
+
         if (file.getMetadata() != null
                 && file.getMetadata().get("contentType") != null) {
-            exchange.getResponseHeaders().put(Headers.CONTENT_TYPE,
-                    file.getMetadata().get("contentType").toString());
+            contentType = file.getMetadata().get("contentType").toString();
         } else if (file.getExtraElements() != null
                 && file.getExtraElements().get("contentType") != null) {
-            exchange.getResponseHeaders().put(Headers.CONTENT_TYPE,
-                    file.getExtraElements().get("contentType").toString());
+            contentType = file.getExtraElements().get("contentType").toString();
         } else {
-            exchange.getResponseHeaders().put(
-                    Headers.CONTENT_TYPE,
-                    APPLICATION_OCTET_STREAM);
+            contentType = APPLICATION_OCTET_STREAM;
         }
 
-        exchange.getResponseHeaders().put(
-                Headers.CONTENT_LENGTH,
-                file.getLength());
-
         exchange.getResponseHeaders().put(
                 Headers.CONTENT_DISPOSITION,
                 String.format("inline; filename=\"%s\"",
@@ -184,17 +202,198 @@ public class GetFileBinaryHandler extends PipedHttpHandler {
                 Headers.CONTENT_TRANSFER_ENCODING,
                 CONTENT_TRANSFER_ENCODING_BINARY);
 
+        exchange.getResponseHeaders().put(
+                Headers.ACCEPT_RANGES,
+                BYTES);
+
         ResponseHelper.injectEtagHeader(exchange, file.getMetadata());
 
-        exchange.setStatusCode(HttpStatus.SC_OK);
+        final List<ByteRange> ranges = getRequestedRanges(exchange, file);
+
+        if (ranges == null) {
+            exchange.getResponseHeaders().put(
+                    Headers.CONTENT_TYPE,
+                    contentType);
+
+            exchange.getResponseHeaders().put(
+                    Headers.CONTENT_LENGTH,
+                    file.getLength());
+
+            exchange.setStatusCode(HttpStatus.SC_OK);
+
+            gridFSBucket.downloadToStream(
+                    file.getId(),
+                    exchange.getOutputStream());
+        } else if (ranges.isEmpty()) {
+            exchange.getResponseHeaders().put(
+                    Headers.CONTENT_RANGE,
+                    "bytes */" + file.getLength());
+
+            exchange.setStatusCode(
+                    HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        } else if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
 
-        gridFSBucket.downloadToStream(
-                file.getId(),
-                exchange.getOutputStream());
+            exchange.getResponseHeaders().put(
+                    Headers.CONTENT_TYPE,
+                    contentType);
+
+            exchange.getResponseHeaders().put(
+                    Headers.CONTENT_RANGE,
+                    range.getContentRange(file.getLength()));
+
+            exchange.getResponseHeaders().put(
+                    Headers.CONTENT_LENGTH,
+                    range.getLength());
+
+            exchange.setStatusCode(HttpStatus.SC_PARTIAL_CONTENT);
+
+            sendRange(chunks, file, range, exchange.getOutputStream());
+        } else {
+            sendMultipartRanges(chunks, file, ranges, contentType, exchange);
+        }
 
         exchange.endExchange();
     }
 
+    /**
+     * @return the ranges to send, empty if none is satisfiable or null if the
+     * whole content must be sent, i.e. no (valid) Range header or the
+     * If-Range header does not match the current etag
+     */
+    private List<ByteRange> getRequestedRanges(
+            final HttpServerExchange exchange,
+            final GridFSFile file) {
+        String range = exchange.getRequestHeaders().getFirst(Headers.RANGE);
+
+        if (range == null) {
+            return null;
+        }
+
+        String ifRange = exchange.getRequestHeaders()
+                .getFirst(Headers.IF_RANGE);
+
+        if (ifRange != null) {
+            Object etag = file.getMetadata() == null
+                    ? null
+                    : file.getMetadata().get("_etag");
+
+            // weak etags and dates never match, since the strong etag
+            // is the only validator of the files
+            if (etag == null
+                    || !ifRange.equals("\"" + etag.toString() + "\"")
+                    && !ifRange.equals(etag.toString())) {
+                return null;
+            }
+        }
+
+        return ByteRange.parse(range, file.getLength());
+    }
+
+    /**
+     * writes the bytes of the range reading only the chunks holding it
+     */
+    private void sendRange(
+            final MongoCollection<BsonDocument> chunks,
+            final GridFSFile file,
+            final ByteRange range,
+            final OutputStream out)
+            throws IOException {
+        final long chunkSize = file.getChunkSize();
+        final int first = (int) (range.getStart() / chunkSize);
+        final int last = (int) (range.getEnd() / chunkSize);
+
+        try (MongoCursor<BsonDocument> cursor = chunks
+                .find(and(
+                        eq("files_id", file.getId()),
+                        gte("n", first),
+                        lte("n", last)))
+                .sort(new BsonDocument("n", new BsonInt32(1)))
+                .iterator()) {
+            int n = first;
+
+            while (cursor.hasNext()) {
+                BsonDocument chunk = cursor.next();
+
+                if (chunk.getNumber("n").intValue() != n) {
+                    throw new IOException("missing chunk " + n
+                            + " of file " + file.getId());
+                }
+
+                byte[] data = chunk.getBinary("data").getData();
+                long position = n * chunkSize;
+
+                int from = (int) Math.max(0, range.getStart() - position);
+                int to = (int) Math.min(data.length,
+                        range.getEnd() - position + 1);
+
+                if (to > from) {
+                    out.write(data, from, to - from);
+                }
+
+                n++;
+            }
+
+            if (n <= last) {
+                throw new IOException("missing chunk " + n
+                        + " of file " + file.getId());
+            }
+        }
+    }
+
+    /**
+     * sends a multipart/byteranges response
+     */
+    private void sendMultipartRanges(
+            final MongoCollection<BsonDocument> chunks,
+            final GridFSFile file,
+            final List<ByteRange> ranges,
+            final String contentType,
+            final HttpServerExchange exchange)
+            throws IOException {
+        final String boundary = new ObjectId().toHexString();
+
+        final List<byte[]> partHeaders = new ArrayList<>();
+
+        long length = 0;
+
+        for (ByteRange range : ranges) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                    + Headers.CONTENT_TYPE_STRING + ": " + contentType + "\r\n"
+                    + Headers.CONTENT_RANGE_STRING + ": "
+                    + range.getContentRange(file.getLength())
+                    + "\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1);
+
+            partHeaders.add(partHeader);
+            length += partHeader.length + range.getLength();
+        }
+
+        byte[] closing = ("\r\n--" + boundary + "--\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+
+        length += closing.length;
+
+        exchange.getResponseHeaders().put(
+                Headers.CONTENT_TYPE,
+                MULTIPART_BYTERANGES + boundary);
+
+        exchange.getResponseHeaders().put(
+                Headers.CONTENT_LENGTH,
+                length);
+
+        exchange.setStatusCode(HttpStatus.SC_PARTIAL_CONTENT);
+
+        OutputStream out = exchange.getOutputStream();
+
+        for (int i = 0; i < ranges.size(); i++) {
+            out.write(partHeaders.get(i));
+            sendRange(chunks, file, ranges.get(i), out);
+        }
+
+        out.write(closing);
+    }
+
     private String extractFilename(final GridFSFile dbsfile) {
         return dbsfile.getFilename() != null
                 ? dbsfile.getFilename()
@@ -89,6 +89,13 @@ public class PostBucketHandler extends PipedHttpHandler {
                                 context.getCollectionName(),
                                 metadata,
                                 context.getFilePath());
+            } else if (context.getFileInputStream() != null) {
+                result = gridFsDAO
+                        .createFile(getDatabase(),
+                                context.getDBName(),
+                                context.getCollectionName(),
+                                metadata,
+                                context.getFileInputStream());
             } else {
                 throw new RuntimeException("error. file data is null");
             }
@@ -24,8 +24,11 @@ import io.undertow.server.handlers.form.FormDataParser;
 import io.undertow.server.handlers.form.FormParserFactory;
 import io.undertow.util.HeaderValues;
 import io.undertow.util.Headers;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -35,13 +38,16 @@ import org.bson.BsonDocument;
 import org.bson.BsonString;
 import org.bson.BsonValue;
 import org.bson.json.JsonParseException;
+import org.restheart.Bootstrapper;
 import org.restheart.hal.Representation;
 import org.restheart.hal.UnsupportedDocumentIdException;
 import org.restheart.handlers.PipedHttpHandler;
 import org.restheart.handlers.RequestContext;
 import org.restheart.utils.ChannelReader;
 import org.restheart.utils.HttpStatus;
-import org.restheart.utils.JsonUtils;
+import org.restheart.utils.JsonStreamDecoder;
+import org.restheart.utils.MultipartStreamReader;
+import org.restheart.utils.RequestBodyTooLargeException;
 import org.restheart.utils.ResponseHelper;
 import org.restheart.utils.URLUtils;
 import org.slf4j.Logger;
@@ -65,6 +71,11 @@ public class BodyInjectorHandler extends PipedHttpHandler {
     static final String CONTENT_TYPE = "contentType";
     static final String FILENAME = "filename";
 
+    private static final int DEFAULT_BUFFER_SIZE = 16384;
+
+    // thread safe, creating it loads the mime types registry
+    private static final Tika TIKA = new Tika();
+
     private static final String ERROR_INVALID_CONTENTTYPE
             = "Content-Type must be either: "
             + Representation.HAL_JSON_MEDIA_TYPE
@@ -147,6 +158,34 @@ public class BodyInjectorHandler extends PipedHttpHandler {
         return null;
     }
 
+    /**
+     * Checks an element of the request data array of a bulk POST and filters
+     * out its reserved keys
+     *
+     * @param element
+     * @param context
+     * @return null if ok, otherwise the error message
+     */
+    public static String checkBulkElement(
+            final BsonValue element,
+            final RequestContext context) {
+        if (element.isDocument()) {
+            BsonValue _id = element.asDocument().get(_ID);
+
+            if (_id != null && _id.isArray()) {
+                return "the type of _id in request data"
+                        + " is not supported: "
+                        + _id.getBsonType().name();
+            }
+
+            filterJsonContent(element.asDocument(), context);
+            return null;
+        } else {
+            return "request data must be either "
+                    + "an json object or an array of objects";
+        }
+    }
+
     /**
      * Clean-up the JSON content, filtering out reserved keys
      *
@@ -188,6 +227,20 @@ public class BodyInjectorHandler extends PipedHttpHandler {
         });
     }
 
+    private static void injectContentTypeFromStream(
+            final BsonDocument content,
+            final InputStream stream,
+            final String fileName)
+            throws IOException {
+        if (content.get(CONTENT_TYPE) == null && stream != null) {
+            final String contentType = detectMediaType(stream, fileName);
+            if (contentType != null) {
+                content.append(CONTENT_TYPE,
+                        new BsonString(contentType));
+            }
+        }
+    }
+
     private static void injectContentTypeFromFile(
             final BsonDocument content,
             final File file)
@@ -240,8 +293,6 @@ public class BodyInjectorHandler extends PipedHttpHandler {
     protected static BsonDocument extractMetadata(
             final FormData formData)
             throws JSONParseException {
-        BsonDocument metadata = new BsonDocument();
-
         final String metadataString;
 
         metadataString = formData.getFirst(FILE_METADATA) != null
@@ -250,11 +301,19 @@ public class BodyInjectorHandler extends PipedHttpHandler {
                 ? formData.getFirst(PROPERTIES).getValue()
                 : null;
 
-        if (metadataString != null) {
-            metadata = BsonDocument.parse(metadataString);
-        }
+        return parseMetadata(metadataString);
+    }
 
-        return metadata;
+    /**
+     * @param metadataString
+     * @return the parsed BsonDocument or an empty BsonDocument if
+     * metadataString is null
+     */
+    private static BsonDocument parseMetadata(final String metadataString)
+            throws JSONParseException {
+        return metadataString == null
+                ? new BsonDocument()
+                : BsonDocument.parse(metadataString);
     }
 
     /**
@@ -282,10 +341,29 @@ public class BodyInjectorHandler extends PipedHttpHandler {
      * @throws IOException
      */
     public static String detectMediaType(File file) throws IOException {
-        return new Tika().detect(file);
+        return TIKA.detect(file);
+    }
+
+    /**
+     * Detect the mediatype from the first bytes of the stream; the stream
+     * must support mark/reset and is reset to its position before returning
+     *
+     * @param stream input stream
+     * @param fileName the file name, used as a hint; can be null
+     * @return the content-type as a String
+     * @throws IOException
+     */
+    public static String detectMediaType(InputStream stream, String fileName)
+            throws IOException {
+        return TIKA.detect(stream, fileName);
     }
     private final FormParserFactory formParserFactory;
 
+    private final long maxRequestBodySize;
+    private final boolean bulkPostStreaming;
+    private final boolean fileUploadStreaming;
+    private final int bufferSize;
+
     /**
      * Creates a new instance of BodyInjectorHandler
      *
@@ -294,6 +372,16 @@ public class BodyInjectorHandler extends PipedHttpHandler {
     public BodyInjectorHandler(PipedHttpHandler next) {
         super(next);
         this.formParserFactory = FormParserFactory.builder().build();
+        this.maxRequestBodySize = Bootstrapper.getConfiguration() == null
+                ? 0
+                : Bootstrapper.getConfiguration().getMaxRequestBodySize();
+        this.bulkPostStreaming = Bootstrapper.getConfiguration() != null
+                && Bootstrapper.getConfiguration().isBulkPostStreaming();
+        this.fileUploadStreaming = Bootstrapper.getConfiguration() != null
+                && Bootstrapper.getConfiguration().isFileUploadStreaming();
+        this.bufferSize = Bootstrapper.getConfiguration() == null
+                ? DEFAULT_BUFFER_SIZE
+                : Bootstrapper.getConfiguration().getBufferSize();
     }
 
     /**
@@ -319,6 +407,18 @@ public class BodyInjectorHandler extends PipedHttpHandler {
             return;
         }
 
+        if (maxRequestBodySize > 0
+                && exchange.getRequestContentLength() > maxRequestBodySize) {
+            ResponseHelper.endExchangeWithMessage(
+                    exchange,
+                    context,
+                    HttpStatus.SC_REQUEST_TOO_LONG,
+                    new RequestBodyTooLargeException(maxRequestBodySize)
+                            .getMessage());
+            next(exchange, context);
+            return;
+        }
+
         BsonValue content;
 
         if ((isPutRequest(context) && isFileRequest(context))
@@ -337,119 +437,262 @@ public class BodyInjectorHandler extends PipedHttpHandler {
                 return;
             }
 
-            FormDataParser parser
-                    = this.formParserFactory.createParser(exchange);
+            final String boundary = fileUploadStreaming
+                    ? MultipartStreamReader.getBoundary(exchange
+                            .getRequestHeaders()
+                            .getFirst(Headers.CONTENT_TYPE))
+                    : null;
 
-            if (parser == null) {
-                String errMsg = "There is no form parser registered "
-                        + "for the request content type";
+            if (boundary != null) {
+                // the file part is uploaded by the handler while it is read
+                final MultipartStreamReader reader = new MultipartStreamReader(
+                        exchange.getInputStream(),
+                        boundary,
+                        bufferSize);
 
-                ResponseHelper.endExchangeWithMessage(
-                        exchange,
-                        context,
-                        HttpStatus.SC_NOT_ACCEPTABLE,
-                        errMsg);
-                next(exchange, context);
-                return;
-            }
+                String metadataString = null;
+                String propertiesString = null;
+                boolean fileFound = false;
 
-            FormData formData;
+                try {
+                    while (reader.next()) {
+                        if (reader.isFile()) {
+                            fileFound = true;
+                            break;
+                        } else if (FILE_METADATA.equals(reader.getName())) {
+                            metadataString = reader.readString(
+                                    StandardCharsets.UTF_8,
+                                    maxRequestBodySize);
+                        } else if (PROPERTIES.equals(reader.getName())) {
+                            propertiesString = reader.readString(
+                                    StandardCharsets.UTF_8,
+                                    maxRequestBodySize);
+                        }
+                    }
+                } catch (RequestBodyTooLargeException rbtle) {
+                    ResponseHelper.endExchangeWithMessage(
+                            exchange,
+                            context,
+                            HttpStatus.SC_REQUEST_TOO_LONG,
+                            rbtle.getMessage());
+                    next(exchange, context);
+                    return;
+                } catch (IOException ioe) {
+                    String errMsg = "Error parsing the multipart form: "
+                            + "data could not be read";
 
-            try {
-                formData = parser.parseBlocking();
-            } catch (IOException ioe) {
-                String errMsg = "Error parsing the multipart form: "
-                        + "data could not be read";
+                    ResponseHelper.endExchangeWithMessage(
+                            exchange,
+                            context,
+                            HttpStatus.SC_NOT_ACCEPTABLE,
+                            errMsg,
+                            ioe);
+                    next(exchange, context);
+                    return;
+                }
 
-                ResponseHelper.endExchangeWithMessage(
-                        exchange,
-                        context,
-                        HttpStatus.SC_NOT_ACCEPTABLE,
-                        errMsg,
-                        ioe);
-                next(exchange, context);
-                return;
-            }
+                try {
+                    content = parseMetadata(metadataString != null
+                            ? metadataString
+                            : propertiesString);
+                } catch (JSONParseException | IllegalArgumentException ex) {
+                    String errMsg = "Invalid data: "
+                            + "'properties' field is not a valid JSON";
 
-            try {
-                content = extractMetadata(formData);
-            } catch (JSONParseException | IllegalArgumentException ex) {
-                String errMsg = "Invalid data: "
-                        + "'properties' field is not a valid JSON";
+                    ResponseHelper.endExchangeWithMessage(
+                            exchange,
+                            context,
+                            HttpStatus.SC_NOT_ACCEPTABLE,
+                            errMsg,
+                            ex);
+                    next(exchange, context);
+                    return;
+                }
 
-                ResponseHelper.endExchangeWithMessage(
-                        exchange,
-                        context,
-                        HttpStatus.SC_NOT_ACCEPTABLE,
-                        errMsg,
-                        ex);
-                next(exchange, context);
-                return;
-            }
+                if (!fileFound) {
+                    String errMsg = "This request does not contain any binary file";
+
+                    ResponseHelper.endExchangeWithMessage(
+                            exchange,
+                            context,
+                            HttpStatus.SC_NOT_ACCEPTABLE,
+                            errMsg);
+                    next(exchange, context);
+                    return;
+                }
 
-            final String fileField = extractFileField(formData);
+                // mark/reset allows sniffing the first bytes
+                final InputStream file = new BufferedInputStream(
+                        reader.getInputStream(),
+                        bufferSize);
 
-            if (fileField == null) {
-                String errMsg = "This request does not contain any binary file";
+                context.setFileInputStream(file);
 
-                ResponseHelper.endExchangeWithMessage(
-                        exchange,
-                        context,
-                        HttpStatus.SC_NOT_ACCEPTABLE,
-                        errMsg);
-                next(exchange, context);
-                return;
-            }
+                injectContentTypeFromStream(content.asDocument(),
+                        file,
+                        reader.getFileName());
+            } else {
+                FormDataParser parser
+                        = this.formParserFactory.createParser(exchange);
 
-            final Path path = formData.getFirst(fileField).getPath();
+                if (parser == null) {
+                    String errMsg = "There is no form parser registered "
+                            + "for the request content type";
 
-            context.setFilePath(path);
+                    ResponseHelper.endExchangeWithMessage(
+                            exchange,
+                            context,
+                            HttpStatus.SC_NOT_ACCEPTABLE,
+                            errMsg);
+                    next(exchange, context);
+                    return;
+                }
 
-            injectContentTypeFromFile(content.asDocument(), path.toFile());
-        } else {
-            // get and parse the content
-            final String contentString
-                    = ChannelReader.read(exchange.getRequestChannel());
+                FormData formData;
 
-            context.setRawContent(contentString);
+                try {
+                    formData = parser.parseBlocking();
+                } catch (IOException ioe) {
+                    String errMsg = "Error parsing the multipart form: "
+                            + "data could not be read";
 
-            if (contentString != null
-                    && !contentString.isEmpty()) { // check content type
-                if (unsupportedContentType(exchange
-                        .getRequestHeaders()
-                        .get(Headers.CONTENT_TYPE))) {
                     ResponseHelper.endExchangeWithMessage(
                             exchange,
                             context,
-                            HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE,
-                            ERROR_INVALID_CONTENTTYPE);
+                            HttpStatus.SC_NOT_ACCEPTABLE,
+                            errMsg,
+                            ioe);
                     next(exchange, context);
                     return;
                 }
 
                 try {
-                    content = JsonUtils.parse(contentString);
-
-                    if (content != null
-                            && !content.isDocument()
-                            && !content.isArray()) {
-                        throw new IllegalArgumentException(
-                                "request data must be either a json object "
-                                + "or an array"
-                                + ", got " + content.getBsonType().name());
-                    }
-                } catch (JsonParseException | IllegalArgumentException ex) {
+                    content = extractMetadata(formData);
+                } catch (JSONParseException | IllegalArgumentException ex) {
+                    String errMsg = "Invalid data: "
+                            + "'properties' field is not a valid JSON";
+
                     ResponseHelper.endExchangeWithMessage(
                             exchange,
                             context,
                             HttpStatus.SC_NOT_ACCEPTABLE,
-                            "Invalid JSON",
+                            errMsg,
                             ex);
                     next(exchange, context);
                     return;
                 }
-            } else {
-                content = null;
+
+                final String fileField = extractFileField(formData);
+
+                if (fileField == null) {
+                    String errMsg = "This request does not contain any binary file";
+
+                    ResponseHelper.endExchangeWithMessage(
+                            exchange,
+                            context,
+                            HttpStatus.SC_NOT_ACCEPTABLE,
+                            errMsg);
+                    next(exchange, context);
+                    return;
+                }
+
+                final Path path = formData.getFirst(fileField).getPath();
+
+                context.setFilePath(path);
+
+                injectContentTypeFromFile(content.asDocument(), path.toFile());
+            }
+        } else if (unsupportedContentType(exchange
+                .getRequestHeaders()
+                .get(Headers.CONTENT_TYPE))) {
+            // not json, only the raw content is injected
+            final String contentString;
+
+            try {
+                contentString = ChannelReader.read(
+                        exchange.getRequestChannel(),
+                        maxRequestBodySize);
+            } catch (RequestBodyTooLargeException rbtle) {
+                ResponseHelper.endExchangeWithMessage(
+                        exchange,
+                        context,
+                        HttpStatus.SC_REQUEST_TOO_LONG,
+                        rbtle.getMessage());
+                next(exchange, context);
+                return;
+            }
+
+            context.setRawContent(contentString);
+
+            if (contentString != null
+                    && !contentString.isEmpty()) {
+                ResponseHelper.endExchangeWithMessage(
+                        exchange,
+                        context,
+                        HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE,
+                        ERROR_INVALID_CONTENTTYPE);
+                next(exchange, context);
+                return;
+            }
+
+            content = null;
+        } else {
+            // parse the content while reading it
+            try {
+                if (bulkPostStreaming
+                        && context.getType() == RequestContext.TYPE.COLLECTION
+                        && context.getMethod() == RequestContext.METHOD.POST) {
+                    JsonStreamDecoder decoder = JsonStreamDecoder.start(
+                            exchange,
+                            maxRequestBodySize,
+                            bufferSize,
+                            true);
+
+                    if (decoder.isArray()) {
+                        // bulk POST, the elements are read by the handler
+                        // and not buffered, thus no raw content
+                        context.setContentDecoder(decoder);
+                        context.setContent(new BsonArray());
+                        next(exchange, context);
+                        return;
+                    }
+
+                    content = decoder.resume(null);
+                    context.setRawContent(decoder.getRawContent());
+                } else {
+                    JsonStreamDecoder decoder = new JsonStreamDecoder(
+                            maxRequestBodySize,
+                            null).keepRawContent();
+
+                    content = decoder.decode(exchange);
+                    context.setRawContent(decoder.getRawContent());
+                }
+
+                if (content != null
+                        && !content.isDocument()
+                        && !content.isArray()) {
+                    throw new IllegalArgumentException(
+                            "request data must be either a json object "
+                            + "or an array"
+                            + ", got " + content.getBsonType().name());
+                }
+            } catch (RequestBodyTooLargeException rbtle) {
+                ResponseHelper.endExchangeWithMessage(
+                        exchange,
+                        context,
+                        HttpStatus.SC_REQUEST_TOO_LONG,
+                        rbtle.getMessage());
+                next(exchange, context);
+                return;
+            } catch (JsonParseException | IllegalArgumentException ex) {
+                ResponseHelper.endExchangeWithMessage(
+                        exchange,
+                        context,
+                        HttpStatus.SC_NOT_ACCEPTABLE,
+                        "Invalid JSON",
+                        ex);
+                next(exchange, context);
+                return;
             }
         }
 
@@ -471,30 +714,9 @@ public class BodyInjectorHandler extends PipedHttpHandler {
             }
 
             if (!content.asArray().stream().anyMatch(_doc -> {
-                if (_doc.isDocument()) {
-                    BsonValue _id = _doc.asDocument().get(_ID);
-
-                    if (_id != null && _id.isArray()) {
-                        String errMsg = "the type of _id in request data"
-                                + " is not supported: "
-                                + (_id == null
-                                        ? ""
-                                        : _id.getBsonType().name());
-
-                        ResponseHelper.endExchangeWithMessage(
-                                exchange,
-                                context,
-                                HttpStatus.SC_NOT_ACCEPTABLE,
-                                errMsg);
-
-                        return false;
-                    }
-                    filterJsonContent(_doc.asDocument(), context);
-                    return true;
-                } else {
-                    String errMsg = "request data must be either "
-                            + "an json object or an array of objects";
+                String errMsg = checkBulkElement(_doc, context);
 
+                if (errMsg != null) {
                     ResponseHelper.endExchangeWithMessage(
                             exchange,
                             context,
@@ -502,6 +724,8 @@ public class BodyInjectorHandler extends PipedHttpHandler {
                             errMsg);
                     return false;
                 }
+
+                return true;
             })) {
                 // an error occurred
                 next(exchange, context);
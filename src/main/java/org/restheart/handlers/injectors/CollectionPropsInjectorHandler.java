@@ -85,6 +85,10 @@ public class CollectionPropsInjectorHandler extends PipedHttpHandler {
             } else {
                 collProps = LocalCachesSingleton.getInstance()
                         .getCollectionProperties(dbName, collName);
+
+                context.setCollectionMetadata(LocalCachesSingleton
+                        .getInstance()
+                        .getCollectionMetadata(dbName, collName, collProps));
             }
 
             // if collProps is null, the collection does not exist
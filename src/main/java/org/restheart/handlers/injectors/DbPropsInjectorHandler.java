@@ -87,6 +87,12 @@ public class DbPropsInjectorHandler extends PipedHttpHandler {
             }
 
             context.setDbProps(dbProps);
+
+            if (LocalCachesSingleton.isEnabled()) {
+                context.setDbMetadata(LocalCachesSingleton
+                        .getInstance()
+                        .getDbMetadata(dbName, dbProps));
+            }
         }
 
         next(exchange, context);
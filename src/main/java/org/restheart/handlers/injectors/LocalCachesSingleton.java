@@ -18,14 +18,25 @@
 package org.restheart.handlers.injectors;
 
 import com.mongodb.MongoException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.bson.BsonDocument;
+import org.bson.BsonValue;
 import org.restheart.Configuration;
 import org.restheart.cache.Cache;
 import org.restheart.cache.CacheFactory;
 import org.restheart.cache.LoadingCache;
+import org.restheart.db.CacheInvalidationChannel;
 import org.restheart.db.Database;
 import org.restheart.db.DbsDAO;
+import org.restheart.db.MongoDBClientSingleton;
+import org.restheart.metadata.CompiledMetadata;
 
 /**
  *
@@ -38,6 +49,8 @@ public class LocalCachesSingleton {
 
     private static long ttl = 1_000;
     private static boolean enabled = false;
+    private static boolean invalidationEnabled = false;
+    private static String invalidationDb = null;
     private static final long MAX_CACHE_SIZE = 1_000;
 
     /**
@@ -47,6 +60,8 @@ public class LocalCachesSingleton {
     public static void init(Configuration conf) {
         ttl = conf.getLocalCacheTtl();
         enabled = conf.isLocalCacheEnabled();
+        invalidationEnabled = conf.isLocalCacheInvalidationEnabled();
+        invalidationDb = conf.getLocalCacheInvalidationDb();
         initialized = true;
     }
 
@@ -67,6 +82,19 @@ public class LocalCachesSingleton {
     private final Database dbsDAO;
     private LoadingCache<String, BsonDocument> dbPropsCache = null;
     private LoadingCache<String, BsonDocument> collectionPropsCache = null;
+    private LoadingCache<String, List<String>> collectionNamesCache = null;
+
+    // the keys of the collectionPropsCache grouped by db name
+    private final Map<String, Set<String>> collectionKeysByDb
+            = new ConcurrentHashMap<>();
+
+    // the metadata compiled from the cached props, by cache key
+    private final Map<String, CompiledMetadata> dbMetadata
+            = new ConcurrentHashMap<>();
+    private final Map<String, CompiledMetadata> collectionMetadata
+            = new ConcurrentHashMap<>();
+
+    private CacheInvalidationChannel invalidationChannel = null;
 
     /**
      * Default ctor
@@ -85,16 +113,80 @@ public class LocalCachesSingleton {
             this.dbPropsCache = CacheFactory.createLocalLoadingCache(MAX_CACHE_SIZE, Cache.EXPIRE_POLICY.AFTER_WRITE, ttl,
                     (String key) -> {
                         return this.dbsDAO.getDatabaseProperties(key);
+                    },
+                    entry -> {
+                        if (!dbPropsCache.asMap().containsKey(entry.getKey())) {
+                            dbMetadata.remove(entry.getKey());
+                        }
                     });
 
             this.collectionPropsCache = CacheFactory.createLocalLoadingCache(MAX_CACHE_SIZE, Cache.EXPIRE_POLICY.AFTER_WRITE, ttl,
                     (String key) -> {
                         String[] dbNameAndCollectionName = key.split(SEPARATOR);
+
+                        indexCollectionKey(dbNameAndCollectionName[0], key);
+
                         return this.dbsDAO
                                 .getCollectionProperties(
                                         dbNameAndCollectionName[0],
                                         dbNameAndCollectionName[1]);
+                    },
+                    entry -> unindexCollectionKey(entry.getKey()));
+
+            this.collectionNamesCache = CacheFactory.createLocalLoadingCache(MAX_CACHE_SIZE, Cache.EXPIRE_POLICY.AFTER_WRITE, ttl,
+                    (String key) -> {
+                        return Collections.unmodifiableList(
+                                this.dbsDAO.getCollectionNames(key));
                     });
+
+            if (invalidationEnabled) {
+                this.invalidationChannel = new CacheInvalidationChannel(
+                        MongoDBClientSingleton.getInstance().getClient(),
+                        invalidationDb,
+                        this::onInvalidationMessage);
+
+                this.invalidationChannel.start();
+            }
+        }
+    }
+
+    private void indexCollectionKey(String dbName, String key) {
+        collectionKeysByDb.computeIfAbsent(
+                dbName,
+                db -> ConcurrentHashMap.newKeySet())
+                .add(key);
+    }
+
+    private void unindexCollectionKey(String key) {
+        // the entry can have been replaced or reloaded meanwhile
+        if (collectionPropsCache.asMap().containsKey(key)) {
+            return;
+        }
+
+        collectionMetadata.remove(key);
+
+        String dbName = key.split(SEPARATOR)[0];
+
+        collectionKeysByDb.computeIfPresent(dbName, (db, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private void onInvalidationMessage(BsonDocument message) {
+        BsonValue db = message.get(CacheInvalidationChannel.DB_KEY);
+        BsonValue coll = message.get(CacheInvalidationChannel.COLL_KEY);
+
+        if (db == null || !db.isString()) {
+            return;
+        }
+
+        if (coll != null && coll.isString()) {
+            invalidateCollectionLocally(
+                    db.asString().getValue(),
+                    coll.asString().getValue());
+        } else {
+            invalidateDbLocally(db.asString().getValue());
         }
     }
 
@@ -174,24 +266,199 @@ public class LocalCachesSingleton {
     }
 
     /**
+     * returns the properties of the given collections; the ones not cached are
+     * read with a single query and cached
+     *
+     * @param dbName
+     * @param collNames the names of existing collections
+     * @return the collection properties by collection name
+     */
+    public Map<String, BsonDocument> getCollectionsProperties(
+            String dbName,
+            List<String> collNames) {
+        if (!enabled) {
+            throw new IllegalStateException("tried to use disabled cache");
+        }
+
+        Map<String, BsonDocument> ret = new HashMap<>();
+        List<String> notCached = new ArrayList<>();
+
+        collNames.forEach(collName -> {
+            Optional<BsonDocument> _collProps = collectionPropsCache
+                    .get(dbName + SEPARATOR + collName);
+
+            if (_collProps == null) {
+                notCached.add(collName);
+            } else if (_collProps.isPresent()) {
+                ret.put(collName, _collProps.get());
+            }
+        });
+
+        if (!notCached.isEmpty()) {
+            dbsDAO.getCollectionsProperties(dbName, notCached)
+                    .forEach((collName, collProps) -> {
+                        String key = dbName + SEPARATOR + collName;
+
+                        indexCollectionKey(dbName, key);
+                        collectionPropsCache.put(key, collProps);
+
+                        ret.put(collName, collProps);
+                    });
+        }
+
+        return ret;
+    }
+
+    /**
+     * returns the ordered list of the db collections, reserved collections
+     * excluded; the list is cached and invalidated with the db or any of its
+     * collections
+     *
+     * @param dbName
+     * @return the collection names
+     */
+    public List<String> getCollectionNames(String dbName) {
+        if (!enabled) {
+            throw new IllegalStateException("tried to use disabled cache");
+        }
+
+        Optional<List<String>> _names = collectionNamesCache.get(dbName);
+
+        if (_names == null) {
+            try {
+                _names = collectionNamesCache.getLoading(dbName);
+            } catch (Throwable uex) {
+                if (uex.getCause() instanceof MongoException) {
+                    throw (RuntimeException) uex.getCause();
+                } else {
+                    throw uex;
+                }
+            }
+        }
+
+        return _names != null && _names.isPresent()
+                ? _names.get()
+                : Collections.emptyList();
+    }
+
+    /**
+     * returns the metadata compiled from the db properties; it is compiled
+     * once per loaded cache entry
+     *
+     * @param dbName
+     * @param dbProps the db properties returned by getDBProperties()
+     * @return the compiled metadata or null if dbProps is null
+     */
+    public CompiledMetadata getDbMetadata(String dbName, BsonDocument dbProps) {
+        return getMetadata(dbMetadata, dbName, dbProps);
+    }
+
+    /**
+     * returns the metadata compiled from the collection properties; it is
+     * compiled once per loaded cache entry
+     *
+     * @param dbName
+     * @param collName
+     * @param collProps the collection properties returned by
+     * getCollectionProperties()
+     * @return the compiled metadata or null if collProps is null
+     */
+    public CompiledMetadata getCollectionMetadata(
+            String dbName,
+            String collName,
+            BsonDocument collProps) {
+        return getMetadata(collectionMetadata,
+                dbName + SEPARATOR + collName,
+                collProps);
+    }
+
+    private CompiledMetadata getMetadata(
+            Map<String, CompiledMetadata> compiled,
+            String key,
+            BsonDocument props) {
+        if (!enabled) {
+            throw new IllegalStateException("tried to use disabled cache");
+        }
+
+        if (props == null) {
+            return null;
+        }
+
+        CompiledMetadata ret = compiled.get(key);
+
+        // compile again if the props have been reloaded
+        if (ret == null || ret.getProps() != props) {
+            ret = compiled.compute(key, (k, c) -> c != null
+                    && c.getProps() == props
+                            ? c
+                            : CompiledMetadata.compile(props));
+        }
+
+        return ret;
+    }
+
+    /**
+     * invalidates the db properties and the properties of its collections,
+     * on every node if the invalidation channel is enabled
      *
      * @param dbName
      */
     public void invalidateDb(String dbName) {
-        if (enabled && dbPropsCache != null) {
-            dbPropsCache.invalidate(dbName);
-            collectionPropsCache.asMap().keySet().stream().filter(k -> k.startsWith(dbName + SEPARATOR)).forEach(k -> collectionPropsCache.invalidate(k));
+        invalidateDbLocally(dbName);
+
+        if (invalidationChannel != null) {
+            invalidationChannel.publish(dbName);
         }
     }
 
     /**
+     * invalidates the collection properties, on every node if the
+     * invalidation channel is enabled
      *
      * @param dbName
      * @param collName
      */
     public void invalidateCollection(String dbName, String collName) {
+        invalidateCollectionLocally(dbName, collName);
+
+        if (invalidationChannel != null) {
+            invalidationChannel.publish(dbName, collName);
+        }
+    }
+
+    /**
+     * invalidates the cached collection names of the db on this node, i.e.
+     * when a collection not in the cached list is found to exist
+     *
+     * @param dbName
+     */
+    public void invalidateCollectionNames(String dbName) {
+        if (enabled && collectionNamesCache != null) {
+            collectionNamesCache.invalidate(dbName);
+        }
+    }
+
+    private void invalidateDbLocally(String dbName) {
+        if (enabled && dbPropsCache != null) {
+            dbPropsCache.invalidate(dbName);
+            dbMetadata.remove(dbName);
+            collectionNamesCache.invalidate(dbName);
+
+            Set<String> keys = collectionKeysByDb.remove(dbName);
+
+            if (keys != null) {
+                keys.forEach(k -> collectionPropsCache.invalidate(k));
+            }
+        }
+    }
+
+    private void invalidateCollectionLocally(String dbName, String collName) {
         if (enabled && collectionPropsCache != null) {
             collectionPropsCache.invalidate(dbName + SEPARATOR + collName);
+            collectionMetadata.remove(dbName + SEPARATOR + collName);
+
+            // the collection could have been created or deleted
+            collectionNamesCache.invalidate(dbName);
         }
     }
 
@@ -21,7 +21,9 @@ import com.mongodb.util.JSON;
 import io.undertow.server.HttpServerExchange;
 import java.util.Arrays;
 import java.util.Deque;
+import java.util.LinkedHashSet;
 import java.util.Optional;
+import java.util.Set;
 import org.bson.BSONObject;
 import org.bson.BsonDocument;
 import org.bson.json.JsonParseException;
@@ -33,6 +35,7 @@ import org.restheart.handlers.RequestContext;
 import org.restheart.handlers.RequestContext.DOC_ID_TYPE;
 import static org.restheart.handlers.RequestContext.DOC_ID_TYPE_QPARAM_KEY;
 import static org.restheart.handlers.RequestContext.EAGER_CURSOR_ALLOCATION_POLICY_QPARAM_KEY;
+import static org.restheart.handlers.RequestContext.EXPAND_QPARAM_KEY;
 import static org.restheart.handlers.RequestContext.FILTER_QPARAM_KEY;
 import org.restheart.handlers.RequestContext.HAL_MODE;
 import static org.restheart.handlers.RequestContext.HAL_QPARAM_KEY;
@@ -40,6 +43,7 @@ import static org.restheart.handlers.RequestContext.KEYS_QPARAM_KEY;
 import org.restheart.handlers.RequestContext.METHOD;
 import static org.restheart.handlers.RequestContext.PAGESIZE_QPARAM_KEY;
 import static org.restheart.handlers.RequestContext.PAGE_QPARAM_KEY;
+import static org.restheart.handlers.RequestContext.PAGE_TOKEN_QPARAM_KEY;
 import org.restheart.handlers.RequestContext.REPRESENTATION_FORMAT;
 import static org.restheart.handlers.RequestContext.SHARDKEY_QPARAM_KEY;
 import static org.restheart.handlers.RequestContext.SORT_BY_QPARAM_KEY;
@@ -270,6 +274,44 @@ public class RequestContextInjectorHandler extends PipedHttpHandler {
             rcontext.setSortBy(sort_by);
         }
 
+        // get and check page_token parameter (keyset pagination)
+        Deque<String> __pageToken = exchange.getQueryParameters()
+                .get(PAGE_TOKEN_QPARAM_KEY);
+
+        if (__pageToken != null) {
+            if (__page != null && !__page.isEmpty()) {
+                ResponseHelper.endExchangeWithMessage(
+                        exchange,
+                        rcontext,
+                        HttpStatus.SC_BAD_REQUEST,
+                        "illegal page_token paramenter, "
+                        + "it cannot be used with the page parameter");
+                next(exchange, rcontext);
+                return;
+            }
+
+            String _pageToken = __pageToken.isEmpty()
+                    || __pageToken.getFirst() == null
+                    ? ""
+                    : __pageToken.getFirst().trim();
+
+            rcontext.setPageToken(_pageToken);
+
+            try {
+                // throws IllegalArgumentException if invalid
+                rcontext.getPageTokenDocument();
+            } catch (IllegalArgumentException | JsonParseException ex) {
+                ResponseHelper.endExchangeWithMessage(
+                        exchange,
+                        rcontext,
+                        HttpStatus.SC_BAD_REQUEST,
+                        "illegal page_token paramenter: " + ex.getMessage(),
+                        ex);
+                next(exchange, rcontext);
+                return;
+            }
+        }
+
         Deque<String> keys = exchange.getQueryParameters().get(KEYS_QPARAM_KEY);
         if (keys != null) {
             if (keys.stream().anyMatch(f -> {
@@ -313,6 +355,32 @@ public class RequestContextInjectorHandler extends PipedHttpHandler {
             rcontext.setKeys(exchange.getQueryParameters().get(KEYS_QPARAM_KEY));
         }
 
+        // get and check expand parameter, either ?expand=a,b or ?expand=a&expand=b
+        Deque<String> __expand = exchange.getQueryParameters()
+                .get(EXPAND_QPARAM_KEY);
+
+        if (__expand != null) {
+            Set<String> expand = new LinkedHashSet<>();
+
+            for (String e : __expand) {
+                for (String rel : e == null ? new String[]{""} : e.split(",")) {
+                    if (rel.trim().isEmpty()) {
+                        ResponseHelper.endExchangeWithMessage(
+                                exchange,
+                                rcontext,
+                                HttpStatus.SC_BAD_REQUEST,
+                                "illegal expand paramenter (empty)");
+                        next(exchange, rcontext);
+                        return;
+                    }
+
+                    expand.add(rel.trim());
+                }
+            }
+
+            rcontext.setExpand(expand);
+        }
+
         // get and check filter parameter
         Deque<String> filters = exchange.getQueryParameters().get(FILTER_QPARAM_KEY);
 
@@ -452,7 +520,9 @@ public class RequestContextInjectorHandler extends PipedHttpHandler {
         Deque<String> __eager = exchange.getQueryParameters().get(EAGER_CURSOR_ALLOCATION_POLICY_QPARAM_KEY);
 
         // default value
-        EAGER_CURSOR_ALLOCATION_POLICY eager = EAGER_CURSOR_ALLOCATION_POLICY.LINEAR;
+        EAGER_CURSOR_ALLOCATION_POLICY eager = Bootstrapper
+                .getConfiguration()
+                .getEagerDefaultPolicy();
 
         if (__eager != null && !__eager.isEmpty()) {
             String _eager = __eager.getFirst();
@@ -465,7 +535,7 @@ public class RequestContextInjectorHandler extends PipedHttpHandler {
                             exchange,
                             rcontext,
                             HttpStatus.SC_BAD_REQUEST,
-                            "illegal eager paramenter (must be LINEAR, RANDOM or NONE)");
+                            "illegal eager paramenter (must be LINEAR, RANDOM, ADAPTIVE or NONE)");
                     try {
                         next(exchange, rcontext);
                     } catch (Exception e) {
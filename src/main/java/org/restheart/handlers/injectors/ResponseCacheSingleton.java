@@ -0,0 +1,383 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.injectors;
+
+import io.undertow.security.idm.Account;
+import io.undertow.server.HttpServerExchange;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.bson.BsonDocument;
+import org.restheart.Configuration;
+import org.restheart.cache.Cache;
+import org.restheart.cache.CacheFactory;
+import org.restheart.handlers.RequestContext;
+import org.restheart.metadata.hooks.HookMetadata;
+import org.restheart.metadata.transformers.RepresentationTransformer;
+
+/**
+ * Caches the serialized responses of GET document and GET collection
+ * requests.
+ *
+ * Aggregations are left to the AggregationResultCacheSingleton: a pipeline
+ * can write to a collection ($out) or read other collections ($lookup,
+ * $graphLookup) whose writes would not invalidate the cached response.
+ *
+ * The entries are keyed by the request path, the query parameters and the
+ * roles of the client and are invalidated by the writes on their collection
+ * (or db) performed via the DAOs. A request can put its response only if no
+ * write occurred since it started, so that a response computed before a
+ * write never replaces the invalidated one.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class ResponseCacheSingleton {
+
+    private static final String SEPARATOR = "_@_@_";
+    private static boolean initialized = false;
+
+    private static boolean enabled = false;
+    private static long size = 1_000;
+    private static long ttl = 1_000;
+    private static Cache.EXPIRE_POLICY expirePolicy = Cache.EXPIRE_POLICY.AFTER_WRITE;
+    private static int maxEntrySize = 1024 * 1024;
+
+    /**
+     *
+     * @param conf
+     */
+    public static void init(Configuration conf) {
+        enabled = conf.isResponseCacheEnabled();
+        size = conf.getResponseCacheSize();
+        ttl = conf.getResponseCacheTtl();
+        expirePolicy = conf.getResponseCacheExpirePolicy();
+        maxEntrySize = conf.getResponseCacheMaxEntrySize();
+        initialized = true;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public static ResponseCacheSingleton getInstance() {
+        return ResponseCacheSingletonHolder.INSTANCE;
+    }
+
+    /**
+     * @return the enabled
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    private Cache<String, CachedResponse> cache = null;
+
+    // the keys of the cache grouped by db and collection name
+    private final Map<String, Set<String>> keysByCollection
+            = new ConcurrentHashMap<>();
+
+    // incremented by every write, see put()
+    private final AtomicLong writes = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Default ctor
+     */
+    private ResponseCacheSingleton() {
+        setup();
+    }
+
+    private void setup() {
+        if (!initialized) {
+            throw new IllegalStateException("not initialized");
+        }
+
+        if (enabled) {
+            this.cache = CacheFactory.createLocalCache(
+                    size,
+                    expirePolicy,
+                    ttl,
+                    entry -> unindexKey(entry.getKey()));
+        }
+    }
+
+    /**
+     * @param context
+     * @return true if the response to the request can be cached
+     */
+    public static boolean isCacheable(RequestContext context) {
+        if (!enabled
+                || context.getMethod() != RequestContext.METHOD.GET
+                || context.isInError()) {
+            return false;
+        }
+
+        if (context.getType() != RequestContext.TYPE.DOCUMENT
+                && context.getType() != RequestContext.TYPE.COLLECTION) {
+            return false;
+        }
+
+        // the expanded documents are read from other collections
+        if (context.getExpand() != null) {
+            return false;
+        }
+
+        // transformers can depend on the client or the time of the request
+        // and hooks must be executed on every request
+        BsonDocument collProps = context.getCollectionProps();
+        BsonDocument dbProps = context.getDbProps();
+
+        if (collProps != null
+                && (collProps.containsKey(
+                        RepresentationTransformer.RTS_ELEMENT_NAME)
+                || collProps.containsKey(HookMetadata.ROOT_KEY))) {
+            return false;
+        }
+
+        return dbProps == null || !dbProps.containsKey(
+                RepresentationTransformer.RTS_ELEMENT_NAME);
+    }
+
+    /**
+     * @param exchange
+     * @param context
+     * @return the cache key of the request
+     */
+    public static String getKey(
+            HttpServerExchange exchange,
+            RequestContext context) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(context.getDBName())
+                .append(SEPARATOR)
+                .append(context.getCollectionName())
+                .append(SEPARATOR);
+
+        Account account = context.getAuthenticatedAccount();
+
+        if (account != null && account.getRoles() != null) {
+            // sorted, so that the key does not depend on the set order
+            sb.append(new TreeSet<>(account.getRoles()));
+        }
+
+        sb.append(SEPARATOR).append(exchange.getRequestPath());
+
+        // sorted names, the order of the values matters (e.g. sort_by)
+        Map<String, Deque<String>> qparams
+                = new TreeMap<>(exchange.getQueryParameters());
+
+        char sep = '?';
+
+        for (Map.Entry<String, Deque<String>> qparam : qparams.entrySet()) {
+            for (String value : qparam.getValue()) {
+                sb.append(sep)
+                        .append(qparam.getKey())
+                        .append('=')
+                        .append(value);
+
+                sep = '&';
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     *
+     * @param key
+     * @return the cached response or null
+     */
+    public CachedResponse get(String key) {
+        if (!enabled) {
+            throw new IllegalStateException("tried to use disabled cache");
+        }
+
+        Optional<CachedResponse> cached = cache.get(key);
+
+        if (cached != null && cached.isPresent()) {
+            hits.incrementAndGet();
+            return cached.get();
+        } else {
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * @return the number of writes so far, to be passed to put()
+     */
+    public long getWrites() {
+        return writes.get();
+    }
+
+    /**
+     * caches the response, unless it is too large or some write occurred
+     * after the request started
+     *
+     * @param key
+     * @param writesAtStart the value of getWrites() when the request started
+     * @param response
+     */
+    public void put(String key, long writesAtStart, CachedResponse response) {
+        if (!enabled) {
+            throw new IllegalStateException("tried to use disabled cache");
+        }
+
+        if (response.getContent().length > maxEntrySize
+                || writes.get() != writesAtStart) {
+            return;
+        }
+
+        Set<String> keys = keysByCollection.computeIfAbsent(
+                getCollectionKey(key),
+                k -> ConcurrentHashMap.newKeySet());
+
+        keys.add(key);
+
+        cache.put(key, response);
+
+        // a write occurred meanwhile, the response can be stale
+        if (writes.get() != writesAtStart) {
+            keys.remove(key);
+            cache.invalidate(key);
+        }
+    }
+
+    /**
+     * invalidates the responses of the db and of all its collections
+     *
+     * @param dbName
+     */
+    public void invalidateDb(String dbName) {
+        if (!enabled) {
+            return;
+        }
+
+        writes.incrementAndGet();
+
+        String prefix = dbName + SEPARATOR;
+
+        keysByCollection.keySet().stream()
+                .filter(k -> k.startsWith(prefix))
+                .forEach(this::invalidateKeys);
+    }
+
+    /**
+     * invalidates the responses of the collection and its documents
+     *
+     * @param dbName
+     * @param collName
+     */
+    public void invalidateCollection(String dbName, String collName) {
+        if (!enabled) {
+            return;
+        }
+
+        writes.incrementAndGet();
+
+        invalidateKeys(dbName + SEPARATOR + collName);
+    }
+
+    private void invalidateKeys(String collectionKey) {
+        Set<String> keys = keysByCollection.remove(collectionKey);
+
+        if (keys != null) {
+            keys.forEach(k -> {
+                invalidations.incrementAndGet();
+                cache.invalidate(k);
+            });
+        }
+    }
+
+    private void unindexKey(String key) {
+        // the entry can have been replaced meanwhile
+        if (cache.asMap().containsKey(key)) {
+            return;
+        }
+
+        // keys of invalidated collections are already unindexed
+        Set<String> keys = keysByCollection.get(getCollectionKey(key));
+
+        if (keys != null && keys.remove(key)) {
+            evictions.incrementAndGet();
+
+            keysByCollection.computeIfPresent(getCollectionKey(key),
+                    (k, v) -> v.isEmpty() ? null : v);
+        }
+    }
+
+    private static String getCollectionKey(String key) {
+        int idx = key.indexOf(SEPARATOR);
+
+        return key.substring(0,
+                key.indexOf(SEPARATOR, idx + SEPARATOR.length()));
+    }
+
+    /**
+     * @return the number of requests served by the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of cacheable requests not found in the cache
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of entries removed because of the size limit or
+     * expired
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of entries removed because of writes
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * @return the number of cached responses
+     */
+    public long getSize() {
+        return enabled ? cache.asMap().size() : 0;
+    }
+
+    private static class ResponseCacheSingletonHolder {
+
+        private static final ResponseCacheSingleton INSTANCE = new ResponseCacheSingleton();
+
+        private ResponseCacheSingletonHolder() {
+        }
+    }
+}
@@ -25,7 +25,7 @@ import org.bson.BsonDocument;
 import org.bson.BsonValue;
 import org.restheart.handlers.PipedHttpHandler;
 import org.restheart.handlers.RequestContext;
-import org.restheart.metadata.NamedSingletonsFactory;
+import org.restheart.metadata.CompiledMetadata.Binding;
 import org.restheart.metadata.checkers.Checker;
 import org.restheart.metadata.checkers.Checker.PHASE;
 import org.restheart.metadata.checkers.CheckersUtils;
@@ -89,20 +89,18 @@ public class BeforeWriteCheckMetadataHandler extends PipedHttpHandler {
             HttpServerExchange exchange,
             RequestContext context)
             throws InvalidMetadataException {
-        List<RequestChecker> checkers = RequestChecker
-                .getFromJson(context.getCollectionProps());
+        List<Binding<RequestChecker, Checker>> checkers = context
+                .getCollectionMetadata()
+                .getCheckers();
 
         return checkers != null
-                && checkers.stream().allMatch(checker -> {
+                && checkers.stream().allMatch(bChecker -> {
                     try {
-                        NamedSingletonsFactory nsf = NamedSingletonsFactory
-                                .getInstance();
+                        RequestChecker checker = bChecker.getMetadata();
 
-                        Checker _checker = (Checker) nsf
-                                .get(ROOT_KEY, checker.getName());
+                        Checker _checker = bChecker.getSingleton();
 
-                        BsonDocument confArgs
-                                = nsf.getArgs(ROOT_KEY, checker.getName());
+                        BsonDocument confArgs = bChecker.getConfArgs();
 
                         if (_checker == null) {
                             throw new IllegalArgumentException(
@@ -22,15 +22,19 @@ import java.util.List;
 import org.bson.BsonDocument;
 import org.restheart.handlers.PipedHttpHandler;
 import org.restheart.handlers.RequestContext;
-import org.restheart.metadata.NamedSingletonsFactory;
+import org.restheart.metadata.CompiledMetadata.Binding;
+import org.restheart.metadata.hooks.AsyncHookExecutor;
 import org.restheart.metadata.hooks.Hook;
 import org.restheart.metadata.hooks.HookMetadata;
+import org.restheart.metadata.hooks.RequestSnapshot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  *
- * handler that executes the hooks defined in the collection properties
+ * handler that executes the hooks defined in the collection properties; the
+ * hooks declared with "async": true are submitted to the AsyncHookExecutor
+ * with a snapshot of the request, since the response is sent meanwhile
  *
  * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
  */
@@ -64,28 +68,24 @@ public class HookMetadataHandler extends PipedHttpHandler {
                 && context.getCollectionProps()
                         .containsKey(HookMetadata.ROOT_KEY)) {
 
-            List<HookMetadata> mdHooks = null;
+            List<Binding<HookMetadata, Hook>> mdHooks = null;
 
             try {
-                mdHooks = HookMetadata.getFromJson(
-                        context.getCollectionProps());
+                mdHooks = context.getCollectionMetadata().getHooks();
             } catch (InvalidMetadataException ime) {
                 context.addWarning(ime.getMessage());
             }
 
             if (mdHooks != null) {
-                for (HookMetadata mdHook : mdHooks) {
+                for (Binding<HookMetadata, Hook> bHook : mdHooks) {
+                    HookMetadata mdHook = bHook.getMetadata();
                     Hook wh;
                     BsonDocument confArgs;
 
                     try {
-                        NamedSingletonsFactory nsf = NamedSingletonsFactory.getInstance();
+                        wh = bHook.getSingleton();
 
-                        wh = (Hook) nsf
-                                .get("hooks", mdHook.getName());
-
-                        confArgs
-                                = nsf.getArgs("hooks", mdHook.getName());
+                        confArgs = bHook.getConfArgs();
                     } catch (IllegalArgumentException ex) {
                         context.addWarning("error applying hook: "
                                 + ex.getMessage());
@@ -95,7 +95,25 @@ public class HookMetadataHandler extends PipedHttpHandler {
                     }
 
                     if (wh != null && wh.doesSupportRequests(context)) {
-                        wh.hook(exchange, context, mdHook.getArgs(), confArgs);
+                        if (mdHook.isAsync()) {
+                            final Hook _wh = wh;
+                            final BsonDocument _confArgs = confArgs;
+
+                            // taken here, the response sender changes the
+                            // response content and ends the exchange
+                            final RequestSnapshot request
+                                    = new RequestSnapshot(exchange, context);
+
+                            // the response is sent without waiting for it
+                            AsyncHookExecutor.getInstance().submit(
+                                    mdHook.getName(),
+                                    () -> _wh.hookAsync(request,
+                                            mdHook.getArgs(),
+                                            _confArgs));
+                        } else {
+                            wh.hook(exchange, context, mdHook.getArgs(),
+                                    confArgs);
+                        }
                     }
                 }
             }
@@ -24,7 +24,7 @@ import org.bson.BsonDocument;
 import org.bson.BsonValue;
 import org.restheart.handlers.PipedHttpHandler;
 import org.restheart.handlers.RequestContext;
-import org.restheart.metadata.NamedSingletonsFactory;
+import org.restheart.metadata.CompiledMetadata.Binding;
 import org.restheart.metadata.transformers.RepresentationTransformer;
 import org.restheart.metadata.transformers.Transformer;
 import org.slf4j.Logger;
@@ -87,23 +87,20 @@ public class RequestTransformerMetadataHandler
             HttpServerExchange exchange,
             RequestContext context)
             throws InvalidMetadataException {
-        List<RepresentationTransformer> dbRts
-                = RepresentationTransformer.getFromJson(context.getDbProps());
+        List<Binding<RepresentationTransformer, Transformer>> dbRts
+                = context.getDbMetadata().getTransformers();
 
         RequestContext.TYPE requestType = context.getType(); // DB, COLLECTION or FILES_BUCKET
 
-        for (RepresentationTransformer rt : dbRts) {
+        for (Binding<RepresentationTransformer, Transformer> brt : dbRts) {
+            RepresentationTransformer rt = brt.getMetadata();
             Transformer t;
             BsonDocument confArgs;
 
             try {
-                NamedSingletonsFactory nsf = NamedSingletonsFactory.getInstance();
+                t = brt.getSingleton();
 
-                t = (Transformer) nsf
-                        .get("transformers", rt.getName());
-
-                confArgs
-                        = nsf.getArgs("transformers", rt.getName());
+                confArgs = brt.getConfArgs();
             } catch (IllegalArgumentException ex) {
                 context.addWarning("error applying transformer: "
                         + ex.getMessage());
@@ -142,18 +139,16 @@ public class RequestTransformerMetadataHandler
             HttpServerExchange exchange,
             RequestContext context)
             throws InvalidMetadataException {
-        List<RepresentationTransformer> collRts = RepresentationTransformer
-                .getFromJson(context.getCollectionProps());
+        List<Binding<RepresentationTransformer, Transformer>> collRts
+                = context.getCollectionMetadata().getTransformers();
 
-        collRts.stream().filter((rt) -> (rt.getPhase() == RepresentationTransformer.PHASE.REQUEST))
-                .forEachOrdered((rt) -> {
-                    NamedSingletonsFactory nsf = NamedSingletonsFactory.getInstance();
+        collRts.stream().filter((brt) -> (brt.getMetadata().getPhase() == RepresentationTransformer.PHASE.REQUEST))
+                .forEachOrdered((brt) -> {
+                    RepresentationTransformer rt = brt.getMetadata();
 
-                    Transformer t = (Transformer) nsf
-                            .get("transformers", rt.getName());
+                    Transformer t = brt.getSingleton();
 
-                    BsonDocument confArgs
-                            = nsf.getArgs("transformers", rt.getName());
+                    BsonDocument confArgs = brt.getConfArgs();
 
                     if (t == null) {
                         throw new IllegalArgumentException("cannot find singleton "
@@ -24,7 +24,7 @@ import org.bson.BsonDocument;
 import org.bson.BsonValue;
 import org.restheart.handlers.PipedHttpHandler;
 import org.restheart.handlers.RequestContext;
-import org.restheart.metadata.NamedSingletonsFactory;
+import org.restheart.metadata.CompiledMetadata.Binding;
 import org.restheart.metadata.transformers.RepresentationTransformer;
 import org.restheart.metadata.transformers.Transformer;
 import org.slf4j.Logger;
@@ -96,18 +96,15 @@ public class ResponseTransformerMetadataHandler
             HttpServerExchange exchange,
             RequestContext context)
             throws InvalidMetadataException {
-        List<RepresentationTransformer> dbRts
-                = RepresentationTransformer
-                        .getFromJson(context.getDbProps());
+        List<Binding<RepresentationTransformer, Transformer>> dbRts
+                = context.getDbMetadata().getTransformers();
 
         RequestContext.TYPE requestType = context.getType(); // DB or COLLECTION
-        dbRts.stream().filter((rt) -> (rt.getPhase() == RepresentationTransformer.PHASE.RESPONSE)).forEachOrdered((rt) -> {
-            NamedSingletonsFactory nsf = NamedSingletonsFactory.getInstance();
-            Transformer t = (Transformer) nsf
-                    .get("transformers", rt.getName());
+        dbRts.stream().filter((brt) -> (brt.getMetadata().getPhase() == RepresentationTransformer.PHASE.RESPONSE)).forEachOrdered((brt) -> {
+            RepresentationTransformer rt = brt.getMetadata();
+            Transformer t = brt.getSingleton();
 
-            BsonDocument confArgs
-                    = nsf.getArgs("transformers", rt.getName());
+            BsonDocument confArgs = brt.getConfArgs();
 
             if (t == null) {
                 throw new IllegalArgumentException("cannot find singleton "
@@ -169,23 +166,22 @@ public class ResponseTransformerMetadataHandler
             HttpServerExchange exchange,
             RequestContext context)
             throws InvalidMetadataException {
-        List<RepresentationTransformer> dbRts = RepresentationTransformer
-                .getFromJson(context.getCollectionProps());
+        List<Binding<RepresentationTransformer, Transformer>> dbRts
+                = context.getCollectionMetadata().getTransformers();
 
         RequestContext.TYPE requestType = context.getType(); // DOCUMENT or COLLECTION
 
-        for (RepresentationTransformer rt : dbRts) {
+        for (Binding<RepresentationTransformer, Transformer> brt : dbRts) {
+            RepresentationTransformer rt = brt.getMetadata();
+
             if (rt.getPhase() == RepresentationTransformer.PHASE.RESPONSE) {
                 Transformer t;
                 BsonDocument confArgs;
 
                 try {
-                    NamedSingletonsFactory nsf = NamedSingletonsFactory.getInstance();
-                    t = (Transformer) nsf
-                            .get("transformers", rt.getName());
+                    t = brt.getSingleton();
 
-                    confArgs
-                            = nsf.getArgs("transformers", rt.getName());
+                    confArgs = brt.getConfArgs();
                 } catch (IllegalArgumentException ex) {
                     context.addWarning("error applying transformer: "
                             + ex.getMessage());
@@ -0,0 +1,1110 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.schema;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.bson.BsonArray;
+import org.bson.BsonBoolean;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+
+/**
+ * A json schema (draft 4) compiled once into a tree of validators that check
+ * BsonValues directly, without the conversion to json text and to org.json
+ * objects that the everit Schema requires.
+ *
+ * Values are validated as they appear in their strict mode json
+ * representation, i.e. as the everit Schema sees them: an ObjectId is the
+ * object {"$oid": "..."}, a 64 bit integer is {"$numberLong": "..."} and so
+ * on. Violation messages follow the everit ones.
+ *
+ * The format keyword and $ref other than local json pointers and schema store
+ * urls are not supported: compile() throws IllegalArgumentException and the
+ * schema has to be validated with everit.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class CompiledJsonSchema {
+
+    private static final String ROOT_PATH = "#";
+
+    private final Node root;
+
+    private CompiledJsonSchema(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * @param schema the (unescaped) schema
+     * @param resolver loads the (unescaped) schemas referred via schema store
+     * urls
+     * @return the compiled schema
+     * @throws IllegalArgumentException if the schema uses features not
+     * supported by the compiled schema or it is not valid
+     */
+    public static CompiledJsonSchema compile(
+            BsonDocument schema,
+            Function<SchemaStoreURL, BsonDocument> resolver) {
+        return new CompiledJsonSchema(new Compiler(resolver)
+                .compile(schema, schema));
+    }
+
+    /**
+     * @param value
+     * @return the violation messages, empty if the value is valid; as for
+     * everit, with more than one violation the first message reports their
+     * number
+     */
+    public List<String> validate(BsonValue value) {
+        List<String> violations = new ArrayList<>();
+
+        root.validate(toJsonValue(value), ROOT_PATH, violations);
+
+        if (violations.size() > 1) {
+            violations.add(0, ROOT_PATH + ": " + violations.size()
+                    + " schema violations found");
+        }
+
+        return violations;
+    }
+
+    /**
+     * @param value
+     * @return true if the value is valid
+     */
+    public boolean isValid(BsonValue value) {
+        List<String> violations = new ArrayList<>();
+
+        root.validate(toJsonValue(value), ROOT_PATH, violations);
+
+        return violations.isEmpty();
+    }
+
+    @FunctionalInterface
+    private interface Node {
+
+        /**
+         * @param value the json value, see toJsonValue()
+         * @param path the json pointer of the value, for messages
+         * @param violations collects the violation messages
+         */
+        void validate(BsonValue value, String path, List<String> violations);
+    }
+
+    private static class Compiler {
+
+        private final Function<SchemaStoreURL, BsonDocument> resolver;
+
+        // subschemas already compiled or being compiled (recursive $ref)
+        private final Map<BsonDocument, DeferredNode> compiled
+                = new IdentityHashMap<>();
+
+        Compiler(Function<SchemaStoreURL, BsonDocument> resolver) {
+            this.resolver = resolver;
+        }
+
+        Node compile(BsonValue schema, BsonDocument root) {
+            if (schema == null || !schema.isDocument()) {
+                throw new IllegalArgumentException("schema must be an object, "
+                        + "found " + schema);
+            }
+
+            BsonDocument _schema = schema.asDocument();
+
+            DeferredNode deferred = compiled.get(_schema);
+
+            if (deferred != null) {
+                return deferred.delegate != null
+                        ? deferred.delegate
+                        : deferred;
+            }
+
+            deferred = new DeferredNode();
+            compiled.put(_schema, deferred);
+
+            deferred.delegate = doCompile(_schema, root);
+
+            return deferred.delegate;
+        }
+
+        private Node doCompile(BsonDocument schema, BsonDocument root) {
+            // in draft 4 the other keywords of a $ref are ignored
+            if (schema.containsKey("$ref")) {
+                return compileRef(schema.get("$ref"), root);
+            }
+
+            if (schema.containsKey("format")) {
+                throw new IllegalArgumentException("format not supported");
+            }
+
+            final List<Node> nodes = new ArrayList<>();
+
+            final TypeNode type = schema.containsKey("type")
+                    ? new TypeNode(schema.get("type"))
+                    : null;
+
+            Node numberNode = compileNumber(schema);
+            Node stringNode = compileString(schema);
+            Node arrayNode = compileArray(schema, root);
+            Node objectNode = compileObject(schema, root);
+
+            // type specific keywords only apply if the type matches
+            final List<Node> typed = new ArrayList<>();
+
+            if (numberNode != null) {
+                typed.add(numberNode);
+            }
+            if (stringNode != null) {
+                typed.add(stringNode);
+            }
+            if (arrayNode != null) {
+                typed.add(arrayNode);
+            }
+            if (objectNode != null) {
+                typed.add(objectNode);
+            }
+
+            if (type != null || !typed.isEmpty()) {
+                nodes.add((value, path, violations) -> {
+                    if (type != null
+                            && !type.validate(value, path, violations)) {
+                        return;
+                    }
+
+                    typed.forEach(n -> n.validate(value, path, violations));
+                });
+            }
+
+            if (schema.containsKey("enum")) {
+                nodes.add(compileEnum(schema.get("enum")));
+            }
+
+            if (schema.containsKey("allOf")) {
+                nodes.add(compileAllOf(schema.get("allOf"), root));
+            }
+
+            if (schema.containsKey("anyOf")) {
+                nodes.add(compileAnyOf(schema.get("anyOf"), root));
+            }
+
+            if (schema.containsKey("oneOf")) {
+                nodes.add(compileOneOf(schema.get("oneOf"), root));
+            }
+
+            if (schema.containsKey("not")) {
+                nodes.add(compileNot(schema.get("not"), root));
+            }
+
+            if (nodes.isEmpty()) {
+                return (value, path, violations) -> {
+                };
+            } else if (nodes.size() == 1) {
+                return nodes.get(0);
+            } else {
+                return (value, path, violations) -> nodes
+                        .forEach(n -> n.validate(value, path, violations));
+            }
+        }
+
+        private Node compileRef(BsonValue ref, BsonDocument root) {
+            if (ref == null || !ref.isString()) {
+                throw new IllegalArgumentException("$ref must be a string");
+            }
+
+            String _ref = ref.asString().getValue();
+
+            int hash = _ref.indexOf('#');
+
+            String base = hash < 0 ? _ref : _ref.substring(0, hash);
+            String pointer = hash < 0 ? "" : _ref.substring(hash + 1);
+
+            BsonDocument target;
+
+            if (base.isEmpty()) {
+                target = root;
+            } else if (SchemaStoreURL.isValid(base)) {
+                target = resolver.apply(new SchemaStoreURL(base));
+
+                if (target == null) {
+                    throw new IllegalArgumentException("cannot resolve "
+                            + _ref);
+                }
+            } else {
+                throw new IllegalArgumentException("$ref " + _ref
+                        + " not supported");
+            }
+
+            return compile(resolvePointer(target, pointer, _ref), target);
+        }
+
+        private BsonValue resolvePointer(
+                BsonDocument doc,
+                String pointer,
+                String ref) {
+            if (pointer.isEmpty()) {
+                return doc;
+            }
+
+            if (!pointer.startsWith("/")) {
+                throw new IllegalArgumentException("$ref " + ref
+                        + " not supported");
+            }
+
+            BsonValue current = doc;
+
+            for (String token : pointer.substring(1).split("/", -1)) {
+                String _token;
+
+                try {
+                    _token = URLDecoder.decode(token, "UTF-8")
+                            .replace("~1", "/")
+                            .replace("~0", "~");
+                } catch (UnsupportedEncodingException ex) {
+                    throw new IllegalStateException(ex);
+                }
+
+                if (current.isDocument()
+                        && current.asDocument().containsKey(_token)) {
+                    current = current.asDocument().get(_token);
+                } else if (current.isArray() && isIndex(_token,
+                        current.asArray().size())) {
+                    current = current.asArray().get(Integer.parseInt(_token));
+                } else {
+                    throw new IllegalArgumentException("cannot resolve "
+                            + ref);
+                }
+            }
+
+            return current;
+        }
+
+        private static boolean isIndex(String token, int size) {
+            try {
+                int idx = Integer.parseInt(token);
+                return idx >= 0 && idx < size;
+            } catch (NumberFormatException nfe) {
+                return false;
+            }
+        }
+
+        private Node compileNumber(BsonDocument schema) {
+            final Double minimum = getNumber(schema, "minimum");
+            final Double maximum = getNumber(schema, "maximum");
+            final boolean exclusiveMinimum
+                    = getBoolean(schema, "exclusiveMinimum");
+            final boolean exclusiveMaximum
+                    = getBoolean(schema, "exclusiveMaximum");
+            final BigDecimal multipleOf = schema.containsKey("multipleOf")
+                    ? toBigDecimal(schema.get("multipleOf"))
+                    : null;
+
+            if (minimum == null && maximum == null && multipleOf == null) {
+                return null;
+            }
+
+            return (value, path, violations) -> {
+                if (!value.isNumber()) {
+                    return;
+                }
+
+                double v = value.asNumber().doubleValue();
+
+                if (minimum != null) {
+                    if (exclusiveMinimum && v <= minimum) {
+                        violations.add(path + ": " + format(value)
+                                + " is not higher than " + format(minimum));
+                    } else if (v < minimum) {
+                        violations.add(path + ": " + format(value)
+                                + " is not higher or equal to "
+                                + format(minimum));
+                    }
+                }
+
+                if (maximum != null) {
+                    if (exclusiveMaximum && v >= maximum) {
+                        violations.add(path + ": " + format(value)
+                                + " is not lower than " + format(maximum));
+                    } else if (v > maximum) {
+                        violations.add(path + ": " + format(value)
+                                + " is not lower or equal to "
+                                + format(maximum));
+                    }
+                }
+
+                if (multipleOf != null && toBigDecimal(value)
+                        .remainder(multipleOf)
+                        .compareTo(BigDecimal.ZERO) != 0) {
+                    violations.add(path + ": " + format(value)
+                            + " is not a multiple of "
+                            + multipleOf.toPlainString());
+                }
+            };
+        }
+
+        private Node compileString(BsonDocument schema) {
+            final Integer minLength = getInteger(schema, "minLength");
+            final Integer maxLength = getInteger(schema, "maxLength");
+            final Pattern pattern = schema.containsKey("pattern")
+                    ? Pattern.compile(getString(schema, "pattern"))
+                    : null;
+
+            if (minLength == null && maxLength == null && pattern == null) {
+                return null;
+            }
+
+            return (value, path, violations) -> {
+                if (!value.isString()) {
+                    return;
+                }
+
+                String s = value.asString().getValue();
+                int length = s.codePointCount(0, s.length());
+
+                if (minLength != null && length < minLength) {
+                    violations.add(path + ": expected minLength: "
+                            + minLength + ", actual: " + length);
+                }
+
+                if (maxLength != null && length > maxLength) {
+                    violations.add(path + ": expected maxLength: "
+                            + maxLength + ", actual: " + length);
+                }
+
+                if (pattern != null && !pattern.matcher(s).find()) {
+                    violations.add(path + ": string [" + s
+                            + "] does not match pattern "
+                            + pattern.pattern());
+                }
+            };
+        }
+
+        private Node compileArray(BsonDocument schema, BsonDocument root) {
+            final Integer minItems = getInteger(schema, "minItems");
+            final Integer maxItems = getInteger(schema, "maxItems");
+            final boolean uniqueItems = getBoolean(schema, "uniqueItems");
+
+            BsonValue items = schema.get("items");
+            BsonValue additionalItems = schema.get("additionalItems");
+
+            final Node allItems;
+            final List<Node> tupleItems;
+            final boolean noAdditionalItems;
+            final Node additionalItemsNode;
+
+            if (items == null) {
+                allItems = null;
+                tupleItems = null;
+                noAdditionalItems = false;
+                additionalItemsNode = null;
+            } else if (items.isArray()) {
+                allItems = null;
+                tupleItems = new ArrayList<>();
+
+                for (BsonValue item : items.asArray()) {
+                    tupleItems.add(compile(item, root));
+                }
+
+                noAdditionalItems = additionalItems != null
+                        && additionalItems.isBoolean()
+                        && !additionalItems.asBoolean().getValue();
+
+                additionalItemsNode = additionalItems != null
+                        && additionalItems.isDocument()
+                        ? compile(additionalItems, root)
+                        : null;
+            } else {
+                allItems = compile(items, root);
+                tupleItems = null;
+                noAdditionalItems = false;
+                additionalItemsNode = null;
+            }
+
+            if (minItems == null && maxItems == null && !uniqueItems
+                    && items == null) {
+                return null;
+            }
+
+            return (value, path, violations) -> {
+                if (!value.isArray()) {
+                    return;
+                }
+
+                BsonArray array = value.asArray();
+                int size = array.size();
+
+                if (minItems != null && size < minItems) {
+                    violations.add(path + ": expected minimum item count: "
+                            + minItems + ", found: " + size);
+                }
+
+                if (maxItems != null && size > maxItems) {
+                    violations.add(path + ": expected maximum item count: "
+                            + maxItems + ", found: " + size);
+                }
+
+                if (uniqueItems && !areUnique(array)) {
+                    violations.add(path + ": array items are not unique");
+                }
+
+                if (allItems != null) {
+                    for (int i = 0; i < size; i++) {
+                        allItems.validate(toJsonValue(array.get(i)),
+                                path + "/" + i,
+                                violations);
+                    }
+                } else if (tupleItems != null) {
+                    if (noAdditionalItems && size > tupleItems.size()) {
+                        violations.add(path
+                                + ": expected maximum item count: "
+                                + tupleItems.size() + ", found: " + size);
+                    }
+
+                    for (int i = 0; i < size; i++) {
+                        Node node = i < tupleItems.size()
+                                ? tupleItems.get(i)
+                                : additionalItemsNode;
+
+                        if (node != null) {
+                            node.validate(toJsonValue(array.get(i)),
+                                    path + "/" + i,
+                                    violations);
+                        }
+                    }
+                }
+            };
+        }
+
+        private Node compileObject(BsonDocument schema, BsonDocument root) {
+            final Integer minProperties = getInteger(schema, "minProperties");
+            final Integer maxProperties = getInteger(schema, "maxProperties");
+
+            final List<String> required = new ArrayList<>();
+
+            if (schema.containsKey("required")) {
+                BsonValue _required = schema.get("required");
+
+                if (!_required.isArray()) {
+                    throw new IllegalArgumentException(
+                            "required must be an array");
+                }
+
+                _required.asArray().forEach(r -> required.add(
+                        r.asString().getValue()));
+            }
+
+            final Map<String, Node> properties = new LinkedHashMap<>();
+
+            if (schema.containsKey("properties")) {
+                BsonValue _properties = schema.get("properties");
+
+                if (!_properties.isDocument()) {
+                    throw new IllegalArgumentException(
+                            "properties must be an object");
+                }
+
+                _properties.asDocument().forEach((k, v) -> properties
+                        .put(k, compile(v, root)));
+            }
+
+            final Map<Pattern, Node> patternProperties
+                    = new LinkedHashMap<>();
+
+            if (schema.containsKey("patternProperties")) {
+                BsonValue _patternProperties = schema.get("patternProperties");
+
+                if (!_patternProperties.isDocument()) {
+                    throw new IllegalArgumentException(
+                            "patternProperties must be an object");
+                }
+
+                _patternProperties.asDocument().forEach((k, v)
+                        -> patternProperties.put(Pattern.compile(k),
+                                compile(v, root)));
+            }
+
+            BsonValue additionalProperties = schema.get("additionalProperties");
+
+            final boolean noAdditionalProperties = additionalProperties != null
+                    && additionalProperties.isBoolean()
+                    && !additionalProperties.asBoolean().getValue();
+
+            final Node additionalPropertiesNode = additionalProperties != null
+                    && additionalProperties.isDocument()
+                    ? compile(additionalProperties, root)
+                    : null;
+
+            final Map<String, List<String>> propertyDependencies
+                    = new LinkedHashMap<>();
+            final Map<String, Node> schemaDependencies
+                    = new LinkedHashMap<>();
+
+            if (schema.containsKey("dependencies")) {
+                BsonValue dependencies = schema.get("dependencies");
+
+                if (!dependencies.isDocument()) {
+                    throw new IllegalArgumentException(
+                            "dependencies must be an object");
+                }
+
+                dependencies.asDocument().forEach((k, v) -> {
+                    if (v.isArray()) {
+                        propertyDependencies.put(k, v.asArray().stream()
+                                .map(d -> d.asString().getValue())
+                                .collect(Collectors.toList()));
+                    } else {
+                        schemaDependencies.put(k, compile(v, root));
+                    }
+                });
+            }
+
+            if (minProperties == null && maxProperties == null
+                    && required.isEmpty()
+                    && properties.isEmpty()
+                    && patternProperties.isEmpty()
+                    && additionalProperties == null
+                    && propertyDependencies.isEmpty()
+                    && schemaDependencies.isEmpty()) {
+                return null;
+            }
+
+            return (value, path, violations) -> {
+                if (!value.isDocument()) {
+                    return;
+                }
+
+                BsonDocument doc = value.asDocument();
+                Set<String> keys = doc.keySet();
+
+                if (minProperties != null && keys.size() < minProperties) {
+                    violations.add(path + ": minimum size: ["
+                            + minProperties + "], found: ["
+                            + keys.size() + "]");
+                }
+
+                if (maxProperties != null && keys.size() > maxProperties) {
+                    violations.add(path + ": maximum size: ["
+                            + maxProperties + "], found: ["
+                            + keys.size() + "]");
+                }
+
+                required.stream()
+                        .filter(r -> !keys.contains(r))
+                        .forEach(r -> violations.add(path
+                        + ": required key [" + r + "] not found"));
+
+                for (String key : keys) {
+                    BsonValue propValue = toJsonValue(doc.get(key));
+                    String propPath = path + "/" + escape(key);
+
+                    Node propNode = properties.get(key);
+
+                    boolean matched = propNode != null;
+
+                    if (propNode != null) {
+                        propNode.validate(propValue, propPath, violations);
+                    }
+
+                    for (Map.Entry<Pattern, Node> pp
+                            : patternProperties.entrySet()) {
+                        if (pp.getKey().matcher(key).find()) {
+                            matched = true;
+                            pp.getValue().validate(propValue,
+                                    propPath,
+                                    violations);
+                        }
+                    }
+
+                    if (!matched) {
+                        if (noAdditionalProperties) {
+                            violations.add(path + ": extraneous key ["
+                                    + key + "] is not permitted");
+                        } else if (additionalPropertiesNode != null) {
+                            additionalPropertiesNode.validate(propValue,
+                                    propPath,
+                                    violations);
+                        }
+                    }
+                }
+
+                propertyDependencies.forEach((k, deps) -> {
+                    if (keys.contains(k)) {
+                        deps.stream()
+                                .filter(d -> !keys.contains(d))
+                                .forEach(d -> violations.add(path
+                                + ": property [" + d + "] is required"));
+                    }
+                });
+
+                schemaDependencies.forEach((k, node) -> {
+                    if (keys.contains(k)) {
+                        node.validate(value, path, violations);
+                    }
+                });
+            };
+        }
+
+        private Node compileEnum(BsonValue _enum) {
+            if (!_enum.isArray()) {
+                throw new IllegalArgumentException("enum must be an array");
+            }
+
+            final BsonArray values = _enum.asArray();
+
+            return (value, path, violations) -> {
+                if (values.stream().noneMatch(v -> jsonEquals(v, value))) {
+                    violations.add(path + ": " + format(value)
+                            + " is not a valid enum value");
+                }
+            };
+        }
+
+        private List<Node> compileList(
+                String keyword,
+                BsonValue schemas,
+                BsonDocument root) {
+            if (!schemas.isArray() || schemas.asArray().isEmpty()) {
+                throw new IllegalArgumentException(keyword
+                        + " must be a non empty array");
+            }
+
+            List<Node> ret = new ArrayList<>();
+
+            schemas.asArray().forEach(s -> ret.add(compile(s, root)));
+
+            return ret;
+        }
+
+        private Node compileAllOf(BsonValue schemas, BsonDocument root) {
+            final List<Node> nodes = compileList("allOf", schemas, root);
+
+            return (value, path, violations) -> {
+                int matching = countMatching(nodes, value, path);
+
+                if (matching < nodes.size()) {
+                    violations.add(path + ": only " + matching
+                            + " subschema matches out of " + nodes.size());
+                }
+            };
+        }
+
+        private Node compileAnyOf(BsonValue schemas, BsonDocument root) {
+            final List<Node> nodes = compileList("anyOf", schemas, root);
+
+            return (value, path, violations) -> {
+                for (Node node : nodes) {
+                    List<String> _violations = new ArrayList<>();
+
+                    node.validate(value, path, _violations);
+
+                    if (_violations.isEmpty()) {
+                        return;
+                    }
+                }
+
+                violations.add(path + ": no subschema matched out of the total "
+                        + nodes.size() + " subschemas");
+            };
+        }
+
+        private Node compileOneOf(BsonValue schemas, BsonDocument root) {
+            final List<Node> nodes = compileList("oneOf", schemas, root);
+
+            return (value, path, violations) -> {
+                int matching = countMatching(nodes, value, path);
+
+                if (matching == 0) {
+                    violations.add(path
+                            + ": no subschema matched out of the total "
+                            + nodes.size() + " subschemas");
+                } else if (matching > 1) {
+                    violations.add(path + ": " + matching
+                            + " subschemas matched instead of one");
+                }
+            };
+        }
+
+        private Node compileNot(BsonValue schema, BsonDocument root) {
+            final Node node = compile(schema, root);
+            final String _schema = schema.asDocument().toJson();
+
+            return (value, path, violations) -> {
+                List<String> _violations = new ArrayList<>();
+
+                node.validate(value, path, _violations);
+
+                if (_violations.isEmpty()) {
+                    violations.add(path
+                            + ": subject must not be valid against schema "
+                            + _schema);
+                }
+            };
+        }
+
+        private static int countMatching(
+                List<Node> nodes,
+                BsonValue value,
+                String path) {
+            int matching = 0;
+
+            for (Node node : nodes) {
+                List<String> _violations = new ArrayList<>();
+
+                node.validate(value, path, _violations);
+
+                if (_violations.isEmpty()) {
+                    matching++;
+                }
+            }
+
+            return matching;
+        }
+    }
+
+    /**
+     * allows recursive $ref: the node is referred before being compiled
+     */
+    private static class DeferredNode implements Node {
+
+        private Node delegate = null;
+
+        @Override
+        public void validate(
+                BsonValue value,
+                String path,
+                List<String> violations) {
+            delegate.validate(value, path, violations);
+        }
+    }
+
+    private enum JSON_TYPE {
+        STRING("string", "String"),
+        NUMBER("number", "Number"),
+        INTEGER("integer", "Integer"),
+        BOOLEAN("boolean", "Boolean"),
+        OBJECT("object", "JSONObject"),
+        ARRAY("array", "JSONArray"),
+        NULL("null", "Null");
+
+        private final String keyword;
+        private final String name;
+
+        JSON_TYPE(String keyword, String name) {
+            this.keyword = keyword;
+            this.name = name;
+        }
+
+        static JSON_TYPE of(String keyword) {
+            for (JSON_TYPE type : values()) {
+                if (type.keyword.equals(keyword)) {
+                    return type;
+                }
+            }
+
+            throw new IllegalArgumentException("unknown type " + keyword);
+        }
+
+        boolean matches(BsonValue value) {
+            switch (this) {
+                case STRING:
+                    return value.isString();
+                case NUMBER:
+                    return value.isNumber();
+                case INTEGER:
+                    return value.isInt32();
+                case BOOLEAN:
+                    return value.isBoolean();
+                case OBJECT:
+                    return value.isDocument();
+                case ARRAY:
+                    return value.isArray();
+                default:
+                    return value.isNull();
+            }
+        }
+    }
+
+    private static class TypeNode {
+
+        private final List<JSON_TYPE> types = new ArrayList<>();
+
+        TypeNode(BsonValue type) {
+            if (type.isString()) {
+                types.add(JSON_TYPE.of(type.asString().getValue()));
+            } else if (type.isArray()) {
+                type.asArray().forEach(t -> types.add(JSON_TYPE
+                        .of(t.asString().getValue())));
+            } else {
+                throw new IllegalArgumentException(
+                        "type must be a string or an array");
+            }
+        }
+
+        boolean validate(BsonValue value, String path, List<String> violations) {
+            for (JSON_TYPE type : types) {
+                if (type.matches(value)) {
+                    return true;
+                }
+            }
+
+            String expected = types.size() == 1
+                    ? types.get(0).name
+                    : "one of " + types.stream()
+                            .map(t -> t.name)
+                            .collect(Collectors.toList());
+
+            violations.add(path + ": expected type: " + expected
+                    + ", found: " + typeName(value));
+
+            return false;
+        }
+    }
+
+    private static String typeName(BsonValue value) {
+        switch (value.getBsonType()) {
+            case STRING:
+                return "String";
+            case INT32:
+                return "Integer";
+            case DOUBLE:
+                return "Double";
+            case BOOLEAN:
+                return "Boolean";
+            case DOCUMENT:
+                return "JSONObject";
+            case ARRAY:
+                return "JSONArray";
+            default:
+                return "Null";
+        }
+    }
+
+    /**
+     * @param value
+     * @return the value as it appears in its strict mode json representation;
+     * json native values are returned as they are
+     */
+    static BsonValue toJsonValue(BsonValue value) {
+        switch (value.getBsonType()) {
+            case DOCUMENT:
+            case ARRAY:
+            case STRING:
+            case INT32:
+            case DOUBLE:
+            case BOOLEAN:
+            case NULL:
+                return value;
+            case OBJECT_ID:
+                return new BsonDocument("$oid", new BsonString(
+                        value.asObjectId().getValue().toHexString()));
+            case INT64:
+                return new BsonDocument("$numberLong", new BsonString(
+                        Long.toString(value.asInt64().getValue())));
+            case DECIMAL128:
+                return new BsonDocument("$numberDecimal", new BsonString(
+                        value.asDecimal128().getValue().toString()));
+            case DATE_TIME:
+                return new BsonDocument("$date", new BsonInt64(
+                        value.asDateTime().getValue()));
+            case TIMESTAMP:
+                return new BsonDocument("$timestamp", new BsonDocument()
+                        .append("t", new BsonInt32(
+                                value.asTimestamp().getTime()))
+                        .append("i", new BsonInt32(
+                                value.asTimestamp().getInc())));
+            case BINARY:
+                return new BsonDocument("$binary", new BsonString(Base64
+                        .getEncoder()
+                        .encodeToString(value.asBinary().getData())))
+                        .append("$type", new BsonString(String.format("%02X",
+                                value.asBinary().getType())));
+            case REGULAR_EXPRESSION:
+                return new BsonDocument("$regex", new BsonString(
+                        value.asRegularExpression().getPattern()))
+                        .append("$options", new BsonString(
+                                value.asRegularExpression().getOptions()));
+            case SYMBOL:
+                return new BsonDocument("$symbol", new BsonString(
+                        value.asSymbol().getSymbol()));
+            case JAVASCRIPT:
+                return new BsonDocument("$code", new BsonString(
+                        value.asJavaScript().getCode()));
+            case JAVASCRIPT_WITH_SCOPE:
+                return new BsonDocument("$code", new BsonString(
+                        value.asJavaScriptWithScope().getCode()))
+                        .append("$scope",
+                                value.asJavaScriptWithScope().getScope());
+            case MIN_KEY:
+                return new BsonDocument("$minKey", new BsonInt32(1));
+            case MAX_KEY:
+                return new BsonDocument("$maxKey", new BsonInt32(1));
+            case UNDEFINED:
+                return new BsonDocument("$undefined", BsonBoolean.TRUE);
+            default:
+                // db pointer and others, through the strict mode json
+                BsonValue parsed = BsonDocument.parse(
+                        new BsonDocument("v", value).toJson()).get("v");
+                return parsed.getBsonType() == value.getBsonType()
+                        ? new BsonString(parsed.toString())
+                        : toJsonValue(parsed);
+        }
+    }
+
+    /**
+     * @return true if the json values are equal; numbers are compared by
+     * value, as 1 and 1.0 are equal
+     */
+    static boolean jsonEquals(BsonValue a, BsonValue b) {
+        BsonValue _a = toJsonValue(a);
+        BsonValue _b = toJsonValue(b);
+
+        if (_a.isNumber() && _b.isNumber()) {
+            return _a.asNumber().doubleValue() == _b.asNumber().doubleValue();
+        } else if (_a.isDocument() && _b.isDocument()) {
+            BsonDocument da = _a.asDocument();
+            BsonDocument db = _b.asDocument();
+
+            return da.keySet().equals(db.keySet())
+                    && da.keySet().stream()
+                            .allMatch(k -> jsonEquals(da.get(k), db.get(k)));
+        } else if (_a.isArray() && _b.isArray()) {
+            BsonArray aa = _a.asArray();
+            BsonArray ab = _b.asArray();
+
+            if (aa.size() != ab.size()) {
+                return false;
+            }
+
+            for (int i = 0; i < aa.size(); i++) {
+                if (!jsonEquals(aa.get(i), ab.get(i))) {
+                    return false;
+                }
+            }
+
+            return true;
+        } else {
+            return _a.equals(_b);
+        }
+    }
+
+    private static boolean areUnique(BsonArray array) {
+        for (int i = 0; i < array.size(); i++) {
+            for (int j = i + 1; j < array.size(); j++) {
+                if (jsonEquals(array.get(i), array.get(j))) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static String escape(String key) {
+        return key.replace("~", "~0").replace("/", "~1");
+    }
+
+    private static String format(BsonValue value) {
+        if (value.isString()) {
+            return value.asString().getValue();
+        } else if (value.isInt32()) {
+            return Integer.toString(value.asInt32().getValue());
+        } else if (value.isDouble()) {
+            return format(value.asDouble().getValue());
+        } else {
+            return value.isDocument()
+                    ? value.asDocument().toJson()
+                    : value.toString();
+        }
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value)
+                ? Long.toString((long) value)
+                : Double.toString(value);
+    }
+
+    private static BigDecimal toBigDecimal(BsonValue value) {
+        if (value.isInt32()) {
+            return BigDecimal.valueOf(value.asInt32().getValue());
+        } else if (value.isInt64()) {
+            return BigDecimal.valueOf(value.asInt64().getValue());
+        } else if (value.isDouble()) {
+            return BigDecimal.valueOf(value.asDouble().getValue());
+        } else {
+            throw new IllegalArgumentException("expected a number, found "
+                    + value);
+        }
+    }
+
+    private static Double getNumber(BsonDocument schema, String keyword) {
+        BsonValue value = schema.get(keyword);
+
+        if (value == null) {
+            return null;
+        } else if (value.isNumber()) {
+            return value.asNumber().doubleValue();
+        } else {
+            throw new IllegalArgumentException(keyword
+                    + " must be a number");
+        }
+    }
+
+    private static Integer getInteger(BsonDocument schema, String keyword) {
+        Double value = getNumber(schema, keyword);
+
+        return value == null ? null : value.intValue();
+    }
+
+    private static boolean getBoolean(BsonDocument schema, String keyword) {
+        BsonValue value = schema.get(keyword);
+
+        if (value == null) {
+            return false;
+        } else if (value.isBoolean()) {
+            return value.asBoolean().getValue();
+        } else {
+            throw new IllegalArgumentException(keyword
+                    + " must be a boolean");
+        }
+    }
+
+    private static String getString(BsonDocument schema, String keyword) {
+        BsonValue value = schema.get(keyword);
+
+        if (value != null && value.isString()) {
+            return value.asString().getValue();
+        } else {
+            throw new IllegalArgumentException(keyword
+                    + " must be a string");
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.schema;
+
+import io.undertow.server.HttpServerExchange;
+import org.restheart.handlers.PipedHttpHandler;
+import org.restheart.handlers.RequestContext;
+
+/**
+ * Evicts the cached schemas of the schema store after a write to it, so that
+ * documents are not validated against a stale (loaded or compiled) schema
+ * until the cache entries expire.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class JsonSchemaCacheInvalidatorHandler extends PipedHttpHandler {
+
+    /**
+     * Creates a new instance of JsonSchemaCacheInvalidatorHandler
+     *
+     * @param next
+     */
+    public JsonSchemaCacheInvalidatorHandler(PipedHttpHandler next) {
+        super(next);
+    }
+
+    /**
+     *
+     * @param exchange
+     * @param context
+     * @throws Exception
+     */
+    @Override
+    public void handleRequest(
+            HttpServerExchange exchange,
+            RequestContext context)
+            throws Exception {
+        if (!context.isInError()) {
+            JsonSchemaCacheSingleton.getInstance()
+                    .invalidate(context.getDBName());
+        }
+
+        next(exchange, context);
+    }
+}
@@ -40,6 +40,7 @@ public class JsonSchemaCacheSingleton {
 
     private Cache<String, Schema> schemaCache = null;
     private Cache<String, BsonDocument> rawSchemaCache = null;
+    private Cache<String, CompiledJsonSchema> compiledSchemaCache = null;
 
     JsonSchemaCacheSingleton() {
         dbsDAO = new DbsDAO();
@@ -52,6 +53,11 @@ public class JsonSchemaCacheSingleton {
             this.rawSchemaCache = CacheFactory.createLocalCache(MAX_CACHE_SIZE,
                     Cache.EXPIRE_POLICY.AFTER_WRITE,
                     Bootstrapper.getConfiguration().getSchemaCacheTtl());
+
+            this.compiledSchemaCache = CacheFactory.createLocalCache(
+                    MAX_CACHE_SIZE,
+                    Cache.EXPIRE_POLICY.AFTER_WRITE,
+                    Bootstrapper.getConfiguration().getSchemaCacheTtl());
         }
     }
 
@@ -103,6 +109,81 @@ public class JsonSchemaCacheSingleton {
         }
     }
 
+    /**
+     * @param schemaStoreDb
+     * @param schemaId
+     * @return the compiled schema or null if the schema cannot be compiled,
+     * i.e. it uses features not supported by CompiledJsonSchema; in this case
+     * the schema returned by get() must be used
+     * @throws JsonSchemaNotFoundException
+     */
+    public CompiledJsonSchema getCompiled(
+            String schemaStoreDb,
+            BsonValue schemaId)
+            throws JsonSchemaNotFoundException {
+        if (Bootstrapper.getConfiguration().isSchemaCacheEnabled()) {
+            Optional<CompiledJsonSchema> _schema = compiledSchemaCache.get(
+                    schemaStoreDb
+                    + SEPARATOR
+                    + schemaId);
+
+            if (_schema != null) {
+                // empty if the schema cannot be compiled
+                return _schema.orElse(null);
+            } else {
+                // compile it
+                CompiledJsonSchema s = compile(schemaStoreDb, schemaId);
+
+                compiledSchemaCache.put(schemaStoreDb + SEPARATOR + schemaId,
+                        s);
+
+                return s;
+            }
+        } else {
+            return compile(schemaStoreDb, schemaId);
+        }
+    }
+
+    /**
+     * evicts the schemas of the given schema store db; since schemas can refer
+     * other schemas, all the loaded and compiled schemas are evicted
+     *
+     * @param schemaStoreDb
+     */
+    public void invalidate(String schemaStoreDb) {
+        if (Bootstrapper.getConfiguration().isSchemaCacheEnabled()) {
+            rawSchemaCache.asMap().keySet().removeIf(
+                    k -> k.startsWith(schemaStoreDb + SEPARATOR));
+
+            schemaCache.asMap().clear();
+            compiledSchemaCache.asMap().clear();
+        }
+    }
+
+    private CompiledJsonSchema compile(
+            String schemaStoreDb,
+            BsonValue schemaId)
+            throws JsonSchemaNotFoundException {
+        BsonDocument document = getRaw(schemaStoreDb, schemaId);
+
+        try {
+            return CompiledJsonSchema.compile(document, url -> {
+                try {
+                    return getRaw(url.getSchemaDb(), url.getSchemaId());
+                } catch (JsonSchemaNotFoundException ex) {
+                    throw new IllegalArgumentException(ex.getMessage(), ex);
+                }
+            });
+        } catch (IllegalArgumentException iae) {
+            LOGGER.debug("schema {}/{} cannot be compiled, {}",
+                    schemaStoreDb,
+                    JsonUtils.getIdAsString(schemaId, false),
+                    iae.getMessage());
+
+            return null;
+        }
+    }
+
     private Schema load(
             String schemaStoreDb,
             BsonValue schemaId)
@@ -0,0 +1,320 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.metadata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import org.bson.BsonDocument;
+import org.restheart.handlers.aggregation.AbstractAggregationOperation;
+import org.restheart.handlers.metadata.InvalidMetadataException;
+import org.restheart.metadata.checkers.Checker;
+import org.restheart.metadata.checkers.RequestChecker;
+import org.restheart.metadata.hooks.Hook;
+import org.restheart.metadata.hooks.HookMetadata;
+import org.restheart.metadata.transformers.RepresentationTransformer;
+import org.restheart.metadata.transformers.Transformer;
+
+/**
+ * The transformers, checkers, hooks, relationships and aggregations defined
+ * in the db or collection properties, parsed once and bound to the named
+ * singletons that implement them.
+ *
+ * The definitions are parsed when the properties are loaded in the local
+ * cache, so that the metadata handlers only walk the prepared lists. Invalid
+ * definitions are not reported at compile time: the InvalidMetadataException
+ * (or the IllegalArgumentException for a missing singleton) is thrown when the
+ * definitions are used, exactly as parsing them on every request does.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class CompiledMetadata {
+
+    public static final String TRANSFORMERS_GROUP = "transformers";
+    public static final String CHECKERS_GROUP = "checkers";
+    public static final String HOOKS_GROUP = "hooks";
+
+    private final BsonDocument props;
+
+    private final Parsed<List<Binding<RepresentationTransformer, Transformer>>> transformers;
+    private final Parsed<List<Binding<RequestChecker, Checker>>> checkers;
+    private final Parsed<List<Binding<HookMetadata, Hook>>> hooks;
+    private final Parsed<List<Relationship>> relationships;
+    private final Parsed<List<AbstractAggregationOperation>> aggregations;
+
+    /**
+     * compiles the metadata defined in the properties
+     *
+     * @param props the db or collection properties
+     * @return the compiled metadata or null if props is null
+     */
+    public static CompiledMetadata compile(BsonDocument props) {
+        return props == null ? null : new CompiledMetadata(props);
+    }
+
+    private CompiledMetadata(BsonDocument props) {
+        this.props = props;
+
+        this.transformers = props.containsKey(
+                RepresentationTransformer.RTS_ELEMENT_NAME)
+                ? bind(props,
+                        RepresentationTransformer::getFromJson,
+                        TRANSFORMERS_GROUP,
+                        RepresentationTransformer::getName,
+                        Transformer.class)
+                : Parsed.empty();
+
+        this.checkers = props.containsKey(RequestChecker.ROOT_KEY)
+                ? bind(props,
+                        RequestChecker::getFromJson,
+                        CHECKERS_GROUP,
+                        RequestChecker::getName,
+                        Checker.class)
+                : Parsed.empty();
+
+        this.hooks = props.containsKey(HookMetadata.ROOT_KEY)
+                ? checkAsyncHooks(bind(props,
+                        HookMetadata::getFromJson,
+                        HOOKS_GROUP,
+                        HookMetadata::getName,
+                        Hook.class))
+                : Parsed.empty();
+
+        this.relationships = parse(props, Relationship::getFromJson);
+
+        this.aggregations = parse(props,
+                AbstractAggregationOperation::getFromJson);
+    }
+
+    /**
+     * @return the properties the metadata was compiled from
+     */
+    public BsonDocument getProps() {
+        return props;
+    }
+
+    /**
+     * @return the representation transformers bound to their singletons
+     * @throws InvalidMetadataException
+     */
+    public List<Binding<RepresentationTransformer, Transformer>> getTransformers()
+            throws InvalidMetadataException {
+        return transformers.get();
+    }
+
+    /**
+     * @return the request checkers bound to their singletons
+     * @throws InvalidMetadataException
+     */
+    public List<Binding<RequestChecker, Checker>> getCheckers()
+            throws InvalidMetadataException {
+        return checkers.get();
+    }
+
+    /**
+     * @return the hooks bound to their singletons
+     * @throws InvalidMetadataException
+     */
+    public List<Binding<HookMetadata, Hook>> getHooks()
+            throws InvalidMetadataException {
+        return hooks.get();
+    }
+
+    /**
+     * @return the relationships
+     * @throws InvalidMetadataException
+     */
+    public List<Relationship> getRelationships()
+            throws InvalidMetadataException {
+        return relationships.get();
+    }
+
+    /**
+     * @return the aggregation operations
+     * @throws InvalidMetadataException
+     */
+    public List<AbstractAggregationOperation> getAggregations()
+            throws InvalidMetadataException {
+        return aggregations.get();
+    }
+
+    /**
+     * the hooks declared with "async": true must support the async
+     * execution, otherwise they would fail on every request
+     */
+    private static Parsed<List<Binding<HookMetadata, Hook>>> checkAsyncHooks(
+            Parsed<List<Binding<HookMetadata, Hook>>> hooks) {
+        if (hooks.error != null) {
+            return hooks;
+        }
+
+        for (Binding<HookMetadata, Hook> hook : hooks.value) {
+            if (hook.getMetadata().isAsync()
+                    && hook.error == null
+                    && !hook.type.cast(hook.singleton).supportsAsync()) {
+                return new Parsed<>(null, new InvalidMetadataException(
+                        "hook " + hook.getMetadata().getName()
+                        + " does not support the async execution, "
+                        + "remove its '" + HookMetadata.ASYNC_KEY
+                        + "' property"));
+            }
+        }
+
+        return hooks;
+    }
+
+    private static <T> Parsed<List<T>> parse(
+            BsonDocument props,
+            Parser<T> parser) {
+        try {
+            List<T> parsed = parser.parse(props);
+
+            return new Parsed<>(parsed == null
+                    ? null
+                    : Collections.unmodifiableList(parsed), null);
+        } catch (InvalidMetadataException ime) {
+            return new Parsed<>(null, ime);
+        }
+    }
+
+    private static <M, S> Parsed<List<Binding<M, S>>> bind(
+            BsonDocument props,
+            Parser<M> parser,
+            String group,
+            Function<M, String> name,
+            Class<S> type) {
+        Parsed<List<M>> parsed = parse(props, parser);
+
+        if (parsed.error != null) {
+            return new Parsed<>(null, parsed.error);
+        }
+
+        NamedSingletonsFactory nsf = NamedSingletonsFactory.getInstance();
+
+        List<Binding<M, S>> ret = new ArrayList<>();
+
+        for (M md : parsed.value) {
+            Object singleton;
+            BsonDocument confArgs;
+            IllegalArgumentException error;
+
+            try {
+                singleton = nsf.get(group, name.apply(md));
+                confArgs = nsf.getArgs(group, name.apply(md));
+                error = null;
+            } catch (IllegalArgumentException iae) {
+                singleton = null;
+                confArgs = null;
+                error = iae;
+            }
+
+            ret.add(new Binding<>(md, type, singleton, confArgs, error));
+        }
+
+        return new Parsed<>(Collections.unmodifiableList(ret), null);
+    }
+
+    /**
+     * a metadata definition bound to the named singleton implementing it
+     *
+     * @param <M> the type of the metadata definition
+     * @param <S> the type of the singleton
+     */
+    public static class Binding<M, S> {
+
+        private final M metadata;
+        private final Class<S> type;
+        private final Object singleton;
+        private final BsonDocument confArgs;
+        private final IllegalArgumentException error;
+
+        private Binding(
+                M metadata,
+                Class<S> type,
+                Object singleton,
+                BsonDocument confArgs,
+                IllegalArgumentException error) {
+            this.metadata = metadata;
+            this.type = type;
+            this.singleton = singleton;
+            this.confArgs = confArgs;
+            this.error = error;
+        }
+
+        /**
+         * @return the metadata definition
+         */
+        public M getMetadata() {
+            return metadata;
+        }
+
+        /**
+         * @return the singleton
+         * @throws IllegalArgumentException if no singleton is configured
+         * with the name of the definition
+         */
+        public S getSingleton() throws IllegalArgumentException {
+            if (error != null) {
+                throw error;
+            }
+
+            return type.cast(singleton);
+        }
+
+        /**
+         * @return the args of the singleton from the configuration
+         */
+        public BsonDocument getConfArgs() {
+            return confArgs;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Parser<T> {
+
+        List<T> parse(BsonDocument props) throws InvalidMetadataException;
+    }
+
+    private static class Parsed<T> {
+
+        private static final Parsed<?> EMPTY
+                = new Parsed<>(Collections.emptyList(), null);
+
+        private final T value;
+        private final InvalidMetadataException error;
+
+        Parsed(T value, InvalidMetadataException error) {
+            this.value = value;
+            this.error = error;
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> Parsed<T> empty() {
+            return (Parsed<T>) EMPTY;
+        }
+
+        T get() throws InvalidMetadataException {
+            if (error != null) {
+                throw error;
+            }
+
+            return value;
+        }
+    }
+}
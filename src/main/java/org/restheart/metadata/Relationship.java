@@ -27,7 +27,7 @@ import org.bson.BsonValue;
 import org.restheart.hal.UnsupportedDocumentIdException;
 import org.restheart.handlers.RequestContext;
 import org.restheart.handlers.metadata.InvalidMetadataException;
-import org.restheart.utils.JsonUtils;
+import org.restheart.utils.CompiledJsonPath;
 import org.restheart.utils.URLUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -171,6 +171,9 @@ public class Relationship {
     private final String targetCollection;
     private final String referenceField;
 
+    // the compiled reference field if it is a json path expression
+    private final CompiledJsonPath referencePath;
+
     /**
      *
      * @param rel
@@ -193,6 +196,7 @@ public class Relationship {
         this.targetDb = targetDb;
         this.targetCollection = targetCollection;
         this.referenceField = referenceField;
+        this.referencePath = compileReferencePath(referenceField);
     }
 
     /**
@@ -240,6 +244,21 @@ public class Relationship {
         this.targetDb = targetDb;
         this.targetCollection = targetCollection;
         this.referenceField = referenceField;
+        this.referencePath = compileReferencePath(referenceField);
+    }
+
+    private static CompiledJsonPath compileReferencePath(
+            String referenceField) {
+        if (referenceField == null || !referenceField.startsWith("$.")) {
+            return null;
+        }
+
+        try {
+            return CompiledJsonPath.compile(referenceField);
+        } catch (IllegalArgumentException ex) {
+            // the reference field value is null, see getReferenceFieldValue()
+            return null;
+        }
     }
 
     /**
@@ -327,6 +346,51 @@ public class Relationship {
         return null;
     }
 
+    /**
+     * the ids of the documents of the target collection referenced by data,
+     * with the same semantic of the OWNING relationship links
+     *
+     * @param data
+     * @return the referenced ids, empty if the reference field is missing or
+     * its value is null
+     * @throws IllegalArgumentException if the relationship is to many and the
+     * reference field is not an array
+     */
+    public List<BsonValue> getReferencedIds(BsonDocument data)
+            throws IllegalArgumentException {
+        BsonValue _referenceValue
+                = getReferenceFieldValue(referenceField, data);
+
+        if (_referenceValue == null || _referenceValue.isNull()) {
+            return new ArrayList<>();
+        }
+
+        if (type == TYPE.ONE_TO_ONE || type == TYPE.MANY_TO_ONE) {
+            BsonValue id = _referenceValue;
+
+            // can be an array if ref-field is a json path expression
+            if (id.isArray() && id.asArray().size() == 1) {
+                id = id.asArray().get(0);
+            }
+
+            List<BsonValue> ret = new ArrayList<>();
+            ret.add(id);
+            return ret;
+        } else if (!_referenceValue.isArray()) {
+            throw new IllegalArgumentException(
+                    "in resource "
+                    + data.get("_id")
+                    + " the "
+                    + type.name()
+                    + " relationship ref-field "
+                    + this.referenceField
+                    + " should be an array, but it is "
+                    + _referenceValue);
+        } else {
+            return new ArrayList<>(_referenceValue.asArray().getValues());
+        }
+    }
+
     /**
      *
      * @returns the reference field value, either it is an object or, in case
@@ -342,8 +406,12 @@ public class Relationship {
 
             List<Optional<BsonValue>> objs;
 
+            if (referencePath == null) {
+                return null;
+            }
+
             try {
-                objs = JsonUtils.getPropsFromPath(data, referenceField);
+                objs = referencePath.getProps(data);
             } catch (IllegalArgumentException ex) {
                 return null;
             }
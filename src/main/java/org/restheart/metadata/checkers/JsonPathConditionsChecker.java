@@ -17,16 +17,25 @@
  */
 package org.restheart.metadata.checkers;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import io.undertow.server.HttpServerExchange;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import org.bson.BsonArray;
 import org.bson.BsonDocument;
 import org.bson.BsonValue;
 import org.restheart.handlers.RequestContext;
+import org.restheart.utils.CompiledJsonPath;
 import org.restheart.utils.JsonUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -87,6 +96,17 @@ import org.slf4j.LoggerFactory;
 public class JsonPathConditionsChecker implements Checker {
     static final Logger LOGGER = LoggerFactory.getLogger(JsonPathConditionsChecker.class);
 
+    /**
+     * the conditions compiled from the args. args belong to the (cached)
+     * collection metadata, thus conditions are compiled once per metadata
+     * version; weak keys are compared by identity and the entries go away
+     * with the metadata.
+     */
+    private static final LoadingCache<BsonArray, List<Condition>> CONDITIONS
+            = CacheBuilder.newBuilder()
+                    .weakKeys()
+                    .build(CacheLoader.from(JsonPathConditionsChecker::compile));
+
     protected static String avoidEscapedChars(String s) {
         return s.replaceAll("\"", "'").replaceAll("\t", "  ");
     }
@@ -98,10 +118,8 @@ public class JsonPathConditionsChecker implements Checker {
             BsonDocument contentToCheck,
             BsonValue args) {
         if (args.isArray()) {
-            BsonArray conditions
-                    = filterMissingOptionalAndNullNullableConditions(
-                            args.asArray(),
-                            contentToCheck);
+            List<Condition> conditions = CONDITIONS
+                    .getUnchecked(args.asArray());
 
             return applyConditions(conditions, contentToCheck, context);
         } else {
@@ -131,348 +149,189 @@ public class JsonPathConditionsChecker implements Checker {
                 && getPhase(context) == PHASE.AFTER_WRITE);
     }
 
-    protected boolean applyConditions(BsonArray conditions, BsonDocument json, final RequestContext context) {
-        return conditions.stream().allMatch(_condition -> {
-            if (_condition.isDocument()) {
-                BsonDocument condition = _condition.asDocument();
-
-                String path = null;
-                BsonValue _path = condition.get("path");
-                if (_path != null && _path.isString()) {
-                    path = _path.asString().getValue();
-                }
-
-                String type = null;
-                BsonValue _type = condition.get("type");
-                if (_type != null && _type.isString()) {
-                    type = _type.asString().getValue();
-                }
+    private boolean applyConditions(
+            List<Condition> conditions,
+            BsonDocument json,
+            final RequestContext context) {
+        // the properties of each condition path, resolved once
+        Props[] props = new Props[conditions.size()];
+
+        boolean[] skip = filterMissingOptionalAndNullNullableConditions(
+                conditions,
+                json,
+                props);
+
+        for (int cont = 0; cont < conditions.size(); cont++) {
+            if (skip[cont]) {
+                continue;
+            }
 
-                Set<Integer> counts = new HashSet<>();
-                BsonValue _count = condition.get("count");
-                if (_count != null) {
-                    if (_count.isInt32()) {
-                        counts.add(_count.asInt32().getValue());
-                    } else if (_count.isArray()) {
-                        BsonArray countsArray = _count.asArray();
-
-                        countsArray.forEach(countElement -> {
-                            if (countElement.isInt32()) {
-                                counts.add(countElement.asInt32().getValue());
-                            }
-                        });
-                    }
-                }
+            Condition condition = conditions.get(cont);
 
-                Set<String> mandatoryFields;
-                BsonValue _mandatoryFields = condition.get("mandatoryFields");
-                if (_mandatoryFields != null) {
-                    mandatoryFields = new HashSet<>();
-                    if (_mandatoryFields.isArray()) {
-                        BsonArray mandatoryFieldsArray = _mandatoryFields
-                                .asArray();
-
-                        mandatoryFieldsArray.forEach(element -> {
-                            if (element.isString()) {
-                                mandatoryFields.add(element
-                                        .asString().getValue());
-                            }
-                        });
-                    }
-                } else {
-                    mandatoryFields = null;
-                }
+            if (condition.counts.isEmpty()
+                    && condition.type == null
+                    && condition.regex == null) {
+                context.addWarning("condition does not have any of "
+                        + "'count', 'type' and 'regex' properties, "
+                        + "specify at least one: " + condition.definition);
+                continue;
+            }
 
-                Set<String> optionalFields;
-                BsonValue _optionalFields = condition.get("optionalFields");
-                if (_optionalFields != null) {
-                    optionalFields = new HashSet<>();
-                    if (_optionalFields.isArray()) {
-                        BsonArray optionalFieldsArray = _optionalFields
-                                .asArray();
-
-                        optionalFieldsArray.forEach(element -> {
-                            if (element.isString()) {
-                                optionalFields.add(
-                                        element.asString().getValue());
-                            }
-                        });
-                    }
-                } else {
-                    optionalFields = null;
-                }
-                String regex = null;
+            Props _props = props(conditions, props, cont, json);
 
-                BsonValue _regex = condition.get("regex");
-                if (_regex != null && _regex.isString()) {
-                    regex = _regex.asString().getValue();
-                }
+            boolean ret = (condition.counts.isEmpty()
+                    || checkCount(condition, _props, context))
+                    && (condition.type == null
+                    || checkType(condition, _props, context))
+                    && (condition.regex == null
+                    || checkRegex(condition, _props, context));
 
-                Boolean optional = false;
-                BsonValue _optional = condition.get("optional");
-                if (_optional != null && _optional.isBoolean()) {
-                    optional = _optional.asBoolean().getValue();
-                }
-
-                Boolean nullable = false;
-                BsonValue _nullable = condition.get("nullable");
-                if (_nullable != null && _nullable.isBoolean()) {
-                    nullable = _nullable.asBoolean().getValue();
-                }
-                if (counts.isEmpty() && type == null && regex == null) {
-                    context.addWarning("condition does not have any of "
-                            + "'count', 'type' and 'regex' properties, "
-                            + "specify at least one: " + _condition);
-                    return true;
-                }
-                if (path == null) {
-                    context.addWarning(
-                            "condition in the args list does "
-                            + "not have the 'path' property: " + _condition);
-                    return true;
-                }
-                if (type != null && !counts.isEmpty() && regex != null) {
-                    return checkCount(
-                            json,
-                            path,
-                            counts,
-                            context)
-                            && checkType(
-                                    json,
-                                    path,
-                                    type,
-                                    mandatoryFields,
-                                    optionalFields,
-                                    optional,
-                                    nullable,
-                                    context)
-                            && checkRegex(
-                                    json,
-                                    path,
-                                    regex,
-                                    optional,
-                                    nullable,
-                                    context);
-                } else if (type != null && !counts.isEmpty()) {
-                    return checkCount(
-                            json,
-                            path,
-                            counts,
-                            context)
-                            && checkType(
-                                    json,
-                                    path,
-                                    type,
-                                    mandatoryFields,
-                                    optionalFields,
-                                    optional,
-                                    nullable,
-                                    context);
-                } else if (type != null && regex != null) {
-                    return checkType(
-                            json,
-                            path,
-                            type,
-                            mandatoryFields,
-                            optionalFields,
-                            optional,
-                            nullable,
-                            context)
-                            && checkRegex(
-                                    json,
-                                    path,
-                                    regex,
-                                    optional,
-                                    nullable,
-                                    context);
-                } else if (!counts.isEmpty() && regex != null) {
-                    return checkCount(
-                            json,
-                            path,
-                            counts,
-                            context)
-                            && checkRegex(
-                                    json,
-                                    path,
-                                    regex,
-                                    optional,
-                                    nullable,
-                                    context);
-                } else if (type != null) {
-                    return checkType(
-                            json,
-                            path,
-                            type,
-                            mandatoryFields,
-                            optionalFields,
-                            optional,
-                            nullable,
-                            context);
-                } else if (!counts.isEmpty()) {
-                    return checkCount(
-                            json,
-                            path,
-                            counts,
-                            context);
-                } else if (regex != null) {
-                    return checkRegex(
-                            json,
-                            path,
-                            regex,
-                            optional,
-                            nullable,
-                            context);
-                }
-                return true;
-            } else {
-                context.addWarning(
-                        "property in the args list is not an object: "
-                        + _condition);
-                return true;
+            if (!ret) {
+                return false;
             }
-        });
+        }
+
+        return true;
     }
 
     /**
      * this filters out the nullable and optional conditions where the path
      * resolves to null
      *
-     * @param conditions
-     * @param content
-     * @return
+     * @return the conditions to skip
      */
-    protected BsonArray filterMissingOptionalAndNullNullableConditions(BsonArray conditions, BsonValue content) {
-        Set<String> nullPaths = new HashSet<>();
-        BsonArray ret = new BsonArray();
-
-        conditions.stream().forEach(_condition -> {
-            if (_condition.isDocument()) {
-                BsonDocument condition = _condition.asDocument();
-
-                Boolean nullable = false;
-                BsonValue _nullable = condition.get("nullable");
-                if (_nullable != null && _nullable.isBoolean()) {
-                    nullable = _nullable.asBoolean().getValue();
+    private boolean[] filterMissingOptionalAndNullNullableConditions(
+            List<Condition> conditions,
+            BsonDocument content,
+            Props[] props) {
+        boolean[] nullPaths = new boolean[conditions.size()];
+
+        for (int cont = 0; cont < conditions.size(); cont++) {
+            Condition condition = conditions.get(cont);
+
+            if (condition.nullable) {
+                Props _props = props(conditions, props, cont, content);
+
+                if (_props.error != null) {
+                    nullPaths[cont] = true;
+                } else if (_props.value != null && _props.value.stream()
+                        .allMatch(prop -> prop != null && !prop.isPresent())) {
+                    LOGGER.debug("ignoring null path {}", condition.path);
+                    nullPaths[cont] = true;
                 }
+            }
+
+            if (condition.optional) {
+                Props _props = props(conditions, props, cont, content);
 
-                Boolean optional = false;
-                BsonValue _optional = condition.get("optional");
-                if (_optional != null && _optional.isBoolean()) {
-                    optional = _optional.asBoolean().getValue();
+                if (_props.error != null
+                        || _props.value == null
+                        || _props.value.stream()
+                                .allMatch(prop -> prop == null)) {
+                    nullPaths[cont] = true;
                 }
-                if (nullable) {
-                    BsonValue _path = condition.get("path");
-                    if (_path != null && _path.isString()) {
-                        String path = _path.asString().getValue();
-                        List<Optional<BsonValue>> props;
-                        try {
-                            props = JsonUtils.getPropsFromPath(content, path);
-                            if (props != null && props.stream().allMatch(
-                                    (Optional<BsonValue> prop) -> {
-                                        return prop != null && !prop.isPresent();
-                                    })) {
-                                LOGGER.debug("ignoring null path {}", path);
-                                nullPaths.add(path);
-                            }
-                        } catch (IllegalArgumentException ex) {
-                            nullPaths.add(path);
-                        }
-                    }
+            }
+        }
+
+        boolean[] skip = new boolean[conditions.size()];
+
+        for (int cont = 0; cont < conditions.size(); cont++) {
+            Condition condition = conditions.get(cont);
+
+            for (int nullPath = 0; nullPath < nullPaths.length; nullPath++) {
+                if (!nullPaths[nullPath]) {
+                    continue;
                 }
-                if (optional) {
-                    BsonValue _path = condition.get("path");
-                    if (_path != null && _path.isString()) {
-                        String path = _path.asString().getValue();
-                        List<Optional<BsonValue>> props;
-                        try {
-                            props = JsonUtils.getPropsFromPath(content, path);
-                            if (props == null || props.stream().allMatch(
-                                    (Optional<BsonValue> prop) -> {
-                                        return prop == null;
-                                    })) {
-                                nullPaths.add(path);
-                            }
-                        } catch (IllegalArgumentException ex) {
-                            nullPaths.add(path);
-                        }
-                    }
+
+                IllegalArgumentException error = condition.ancestorErrors
+                        .get(nullPath);
+
+                if (error != null) {
+                    throw error;
                 }
-            }
-        });
-        conditions.stream().forEach(_condition -> {
-            if (_condition.isDocument()) {
-                BsonDocument condition = _condition.asDocument();
-
-                BsonValue _path = condition.get("path");
-                if (_path != null && _path.isString()) {
-                    String path = _path.asString().getValue();
-                    boolean hasNullParent = nullPaths.stream().anyMatch(
-                            (String nullPath) -> {
-                                return JsonUtils.isAncestorPath(nullPath, path);
-                            });
-                    if (!hasNullParent) {
-                        ret.add(condition);
-                    }
+
+                if (condition.ancestors.contains(nullPath)) {
+                    skip[cont] = true;
+                    break;
                 }
             }
-        });
-        return ret;
+        }
+
+        return skip;
     }
 
-    protected boolean checkCount(BsonValue json,
-            String path, Set<Integer> expectedCounts,
-            RequestContext context) {
-        Integer count;
-        try {
-            count = JsonUtils.countPropsFromPath(json, path);
-        } catch (IllegalArgumentException ex) {
-            return false;
+    private static Props props(
+            List<Condition> conditions,
+            Props[] props,
+            int index,
+            BsonDocument json) {
+        if (props[index] == null) {
+            props[index] = conditions.get(index).getProps(json);
         }
+
+        return props[index];
+    }
+
+    private boolean checkCount(
+            Condition condition,
+            Props props,
+            RequestContext context) {
         // props is null when path does not exist. count is false
-        if (count == null) {
+        if (props.error != null || props.value == null) {
             return false;
         }
-        boolean ret = expectedCounts.contains(count);
-        LOGGER.debug("checkCount({}, {}) -> {}", path, expectedCounts, ret);
+
+        Integer count = props.value.size();
+
+        boolean ret = condition.counts.contains(count);
+        LOGGER.debug("checkCount({}, {}) -> {}",
+                condition.path,
+                condition.counts,
+                ret);
         if (ret == false) {
             context.addWarning("checkCount condition failed: path: "
-                    + path
+                    + condition.path
                     + ", expected: "
-                    + expectedCounts
+                    + condition.counts
                     + ", got: "
                     + count);
         }
         return ret;
     }
 
-    protected boolean checkType(BsonDocument json,
-            String path, String type,
-            Set<String> mandatoryFields,
-            Set<String> optionalFields,
-            boolean optional,
-            boolean nullable,
+    private boolean checkType(
+            Condition condition,
+            Props _props,
             RequestContext context) {
-        List<Optional<BsonValue>> props;
+        final String path = condition.path;
+        final String type = condition.type;
+        final Set<String> mandatoryFields = condition.mandatoryFields;
+        final Set<String> optionalFields = condition.optionalFields;
+        final boolean optional = condition.optional;
+        final boolean nullable = condition.nullable;
+
         boolean ret;
         boolean failedFieldsCheck = false;
-        try {
-            props = JsonUtils.getPropsFromPath(json, path);
-        } catch (IllegalArgumentException ex) {
+
+        if (_props.error != null) {
             LOGGER.debug("checkType({}, {}, {}, {}) -> {} -> false",
                     path,
                     type,
                     mandatoryFields,
                     optionalFields,
-                    ex.getMessage());
+                    _props.error.getMessage());
 
             context.addWarning(
                     "checkType condition failed: path: "
                     + path
                     + ", expected type: "
                     + type + ", error: "
-                    + ex.getMessage());
+                    + _props.error.getMessage());
             return false;
         }
+
+        List<Optional<BsonValue>> props = _props.value;
+
         // props is null when path does not exist.
         if (props == null) {
             ret = optional;
@@ -499,9 +358,9 @@ public class JsonPathConditionsChecker implements Checker {
                                     } catch (NumberFormatException nfe) {
                                         return false;
                                     }
-                                }) || JsonUtils.checkType(prop, type);
+                                }) || condition.typeChecker.test(prop);
                     } else {
-                        return JsonUtils.checkType(prop, type);
+                        return condition.typeChecker.test(prop);
                     }
                 } else {
                     return nullable;
@@ -511,13 +370,8 @@ public class JsonPathConditionsChecker implements Checker {
             if (ret && "object".equals(type)
                     && (mandatoryFields != null
                     || optionalFields != null)) {
-                Set<String> allFields = new HashSet<>();
-                if (mandatoryFields != null) {
-                    allFields.addAll(mandatoryFields);
-                }
-                if (optionalFields != null) {
-                    allFields.addAll(optionalFields);
-                }
+                final Set<String> allFields = condition.allFields;
+
                 ret = props.stream().allMatch((Optional<BsonValue> prop) -> {
                     if (prop == null) {
                         return optional;
@@ -542,14 +396,16 @@ public class JsonPathConditionsChecker implements Checker {
         }
 
         if (ret) {
-            LOGGER.trace(
-                    "checkType({}, {}, {}, {}) -> {} -> {}",
-                    path,
-                    type,
-                    mandatoryFields,
-                    optionalFields,
-                    getRootPropsString(props),
-                    ret);
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace(
+                        "checkType({}, {}, {}, {}) -> {} -> {}",
+                        path,
+                        type,
+                        mandatoryFields,
+                        optionalFields,
+                        getRootPropsString(props),
+                        ret);
+            }
         } else {
             LOGGER.debug(
                     "checkType({}, {}, {}, {}) -> {} -> {}",
@@ -583,20 +439,21 @@ public class JsonPathConditionsChecker implements Checker {
         return ret;
     }
 
-    protected boolean checkRegex(BsonDocument json,
-            String path, String regex,
-            boolean optional,
-            boolean nullable,
+    private boolean checkRegex(
+            Condition condition,
+            Props _props,
             RequestContext context) {
-        List<Optional<BsonValue>> props;
-        try {
-            props = JsonUtils.getPropsFromPath(json, path);
-        } catch (IllegalArgumentException ex) {
+        final String path = condition.path;
+        final String regex = condition.regex;
+        final boolean optional = condition.optional;
+        final boolean nullable = condition.nullable;
+
+        if (_props.error != null) {
             LOGGER.debug(
                     "checkRegex({}, {}) -> {}",
                     path,
                     regex,
-                    ex.getMessage());
+                    _props.error.getMessage());
 
             context.addWarning(
                     "checkRegex condition failed: path: "
@@ -604,16 +461,19 @@ public class JsonPathConditionsChecker implements Checker {
                     + ", regex: "
                     + regex
                     + ", got: "
-                    + ex.getMessage());
+                    + _props.error.getMessage());
 
             return false;
         }
+
+        List<Optional<BsonValue>> props = _props.value;
+
         boolean ret;
         // props is null when path does not exist.
         if (props == null) {
             ret = optional;
         } else {
-            Pattern p = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+            Pattern p = condition.getPattern();
             ret = props.stream().allMatch((Optional<BsonValue> prop) -> {
                 if (prop == null) {
                     return optional;
@@ -632,12 +492,14 @@ public class JsonPathConditionsChecker implements Checker {
         }
 
         if (ret) {
-            LOGGER.trace(
-                    "checkRegex({}, {}) -> {} -> {}",
-                    path,
-                    regex,
-                    getRootPropsString(props),
-                    ret);
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace(
+                        "checkRegex({}, {}) -> {} -> {}",
+                        path,
+                        regex,
+                        getRootPropsString(props),
+                        ret);
+            }
         } else {
             LOGGER.debug(
                     "checkRegex({}, {}) -> {} -> {}",
@@ -658,6 +520,211 @@ public class JsonPathConditionsChecker implements Checker {
         return ret;
     }
 
+    /**
+     * compiles the conditions of the args array; the elements that are not
+     * objects or do not have the path property are ignored
+     *
+     * @param args
+     * @return the compiled conditions
+     */
+    private static List<Condition> compile(BsonArray args) {
+        List<Condition> ret = new ArrayList<>();
+
+        args.stream()
+                .filter(BsonValue::isDocument)
+                .map(BsonValue::asDocument)
+                .filter(condition -> condition.get("path") != null
+                && condition.get("path").isString())
+                .forEach(condition -> ret.add(new Condition(condition)));
+
+        // a condition is skipped if the path of a missing optional or
+        // null nullable condition is an ancestor of its path
+        for (Condition condition : ret) {
+            for (int cont = 0; cont < ret.size(); cont++) {
+                Condition other = ret.get(cont);
+
+                if (!other.nullable && !other.optional) {
+                    continue;
+                }
+
+                try {
+                    if (JsonUtils.isAncestorPath(other.path, condition.path)) {
+                        condition.ancestors.add(cont);
+                    }
+                } catch (IllegalArgumentException iae) {
+                    condition.ancestorErrors.put(cont, iae);
+                }
+            }
+        }
+
+        return Collections.unmodifiableList(ret);
+    }
+
+    /**
+     * a condition of the args, parsed once
+     */
+    private static class Condition {
+
+        private final BsonDocument definition;
+        private final String path;
+        private final CompiledJsonPath compiledPath;
+        private final IllegalArgumentException pathError;
+        private final String type;
+        private final Predicate<Optional<BsonValue>> typeChecker;
+        private final Set<Integer> counts = new HashSet<>();
+        private final Set<String> mandatoryFields;
+        private final Set<String> optionalFields;
+        private final Set<String> allFields = new HashSet<>();
+        private final String regex;
+        private final Pattern pattern;
+        private final RuntimeException patternError;
+        private final boolean optional;
+        private final boolean nullable;
+
+        // the conditions (indexes) whose path is an ancestor of this path
+        private final Set<Integer> ancestors = new HashSet<>();
+        private final Map<Integer, IllegalArgumentException> ancestorErrors
+                = new HashMap<>();
+
+        Condition(BsonDocument condition) {
+            this.definition = condition;
+            this.path = condition.get("path").asString().getValue();
+
+            CompiledJsonPath _compiledPath;
+            IllegalArgumentException _pathError;
+
+            try {
+                _compiledPath = CompiledJsonPath.compile(path);
+                _pathError = null;
+            } catch (IllegalArgumentException iae) {
+                _compiledPath = null;
+                _pathError = iae;
+            }
+
+            this.compiledPath = _compiledPath;
+            this.pathError = _pathError;
+
+            BsonValue _type = condition.get("type");
+            if (_type != null && _type.isString()) {
+                type = _type.asString().getValue();
+                typeChecker = JsonUtils.typeChecker(type);
+            } else {
+                type = null;
+                typeChecker = null;
+            }
+
+            BsonValue _count = condition.get("count");
+            if (_count != null) {
+                if (_count.isInt32()) {
+                    counts.add(_count.asInt32().getValue());
+                } else if (_count.isArray()) {
+                    _count.asArray().forEach(countElement -> {
+                        if (countElement.isInt32()) {
+                            counts.add(countElement.asInt32().getValue());
+                        }
+                    });
+                }
+            }
+
+            mandatoryFields = getFields(condition, "mandatoryFields");
+            optionalFields = getFields(condition, "optionalFields");
+
+            if (mandatoryFields != null) {
+                allFields.addAll(mandatoryFields);
+            }
+            if (optionalFields != null) {
+                allFields.addAll(optionalFields);
+            }
+
+            BsonValue _regex = condition.get("regex");
+            if (_regex != null && _regex.isString()) {
+                regex = _regex.asString().getValue();
+            } else {
+                regex = null;
+            }
+
+            Pattern _pattern;
+            RuntimeException _patternError;
+
+            try {
+                _pattern = regex == null
+                        ? null
+                        : Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+                _patternError = null;
+            } catch (RuntimeException re) {
+                _pattern = null;
+                _patternError = re;
+            }
+
+            this.pattern = _pattern;
+            this.patternError = _patternError;
+
+            BsonValue _optional = condition.get("optional");
+            optional = _optional != null && _optional.isBoolean()
+                    && _optional.asBoolean().getValue();
+
+            BsonValue _nullable = condition.get("nullable");
+            nullable = _nullable != null && _nullable.isBoolean()
+                    && _nullable.asBoolean().getValue();
+        }
+
+        private static Set<String> getFields(
+                BsonDocument condition,
+                String key) {
+            BsonValue _fields = condition.get(key);
+
+            if (_fields == null) {
+                return null;
+            }
+
+            Set<String> ret = new HashSet<>();
+
+            if (_fields.isArray()) {
+                _fields.asArray().forEach(element -> {
+                    if (element.isString()) {
+                        ret.add(element.asString().getValue());
+                    }
+                });
+            }
+
+            return ret;
+        }
+
+        Props getProps(BsonDocument json) {
+            if (pathError != null) {
+                return new Props(null, pathError);
+            }
+
+            try {
+                return new Props(compiledPath.getProps(json), null);
+            } catch (IllegalArgumentException iae) {
+                return new Props(null, iae);
+            }
+        }
+
+        Pattern getPattern() {
+            if (patternError != null) {
+                throw patternError;
+            }
+
+            return pattern;
+        }
+    }
+
+    /**
+     * the properties the path of a condition resolves to or the error
+     */
+    private static class Props {
+
+        private final List<Optional<BsonValue>> value;
+        private final IllegalArgumentException error;
+
+        Props(List<Optional<BsonValue>> value, IllegalArgumentException error) {
+            this.value = value;
+            this.error = error;
+        }
+    }
+
     private String getRootPropsString(List<Optional<BsonValue>> props) {
         if (props == null) {
             return null;
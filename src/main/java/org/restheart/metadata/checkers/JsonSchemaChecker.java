@@ -18,6 +18,7 @@
 package org.restheart.metadata.checkers;
 
 import io.undertow.server.HttpServerExchange;
+import java.util.List;
 import java.util.Objects;
 import org.bson.BsonDocument;
 import org.bson.BsonValue;
@@ -25,9 +26,11 @@ import org.everit.json.schema.Schema;
 import org.everit.json.schema.ValidationException;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.restheart.Bootstrapper;
 import org.restheart.hal.UnsupportedDocumentIdException;
 import org.restheart.handlers.RequestContext;
 import org.restheart.handlers.RequestContext.METHOD;
+import org.restheart.handlers.schema.CompiledJsonSchema;
 import org.restheart.handlers.schema.JsonSchemaCacheSingleton;
 import org.restheart.handlers.schema.JsonSchemaNotFoundException;
 import org.restheart.utils.HttpStatus;
@@ -96,6 +99,31 @@ public class JsonSchemaChecker implements Checker {
                     "schema 'id' is not a valid id", ex);
         }
 
+        if (Bootstrapper.getConfiguration().isSchemaCompiledValidation()) {
+            CompiledJsonSchema compiled;
+
+            try {
+                compiled = JsonSchemaCacheSingleton
+                        .getInstance()
+                        .getCompiled(schemaStoreDb, schemaId);
+            } catch (JsonSchemaNotFoundException ex) {
+                context.addWarning(ex.getMessage());
+                return false;
+            }
+
+            // null if the schema cannot be compiled, validate via json text
+            if (compiled != null) {
+                List<String> violations = compiled.validate(
+                        contentToCheck == null
+                                ? new BsonDocument()
+                                : contentToCheck);
+
+                violations.forEach(context::addWarning);
+
+                return violations.isEmpty();
+            }
+        }
+
         Schema theschema;
 
         try {
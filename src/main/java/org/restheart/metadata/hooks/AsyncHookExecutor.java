@@ -0,0 +1,299 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.metadata.hooks;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import org.restheart.Bootstrapper;
+import org.restheart.Configuration.ASYNC_HOOKS_QUEUE_POLICY;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes the hooks declared with "async": true on a dedicated bounded
+ * executor, so that the response is sent without waiting for them.
+ *
+ * When the queue is full, the hook is either dropped or the request thread
+ * waits for room in the queue, according to the async-hooks-queue-policy
+ * configuration option.
+ *
+ * The metrics of each hook (queued, executed, failed and dropped executions
+ * and latencies) are returned by the AsyncHooksStatsHandler and logged every
+ * minute at debug level.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class AsyncHookExecutor {
+
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(AsyncHookExecutor.class);
+
+    private static final int DEFAULT_THREADS = 4;
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    public static AsyncHookExecutor getInstance() {
+        return AsyncHookExecutorHolder.INSTANCE;
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final ASYNC_HOOKS_QUEUE_POLICY policy;
+
+    private final Map<String, Metrics> metrics = new ConcurrentHashMap<>();
+
+    private AsyncHookExecutor() {
+        int threads = Bootstrapper.getConfiguration() == null
+                ? DEFAULT_THREADS
+                : Math.max(1,
+                        Bootstrapper.getConfiguration().getAsyncHooksThreads());
+
+        int queueSize = Bootstrapper.getConfiguration() == null
+                ? DEFAULT_QUEUE_SIZE
+                : Math.max(1,
+                        Bootstrapper.getConfiguration().getAsyncHooksQueueSize());
+
+        this.policy = Bootstrapper.getConfiguration() == null
+                ? ASYNC_HOOKS_QUEUE_POLICY.DROP
+                : Bootstrapper.getConfiguration().getAsyncHooksQueuePolicy();
+
+        this.executor = new ThreadPoolExecutor(
+                threads, threads,
+                0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("async-hook-%d")
+                        .build(),
+                policy == ASYNC_HOOKS_QUEUE_POLICY.BLOCK
+                        ? new BlockPolicy()
+                        : new ThreadPoolExecutor.AbortPolicy());
+
+        if (LOGGER.isDebugEnabled()) {
+            // print stats every 1 minute
+            Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder()
+                            .setDaemon(true)
+                            .setNameFormat("async-hook-stats-%d")
+                            .build())
+                    .scheduleAtFixedRate(() -> {
+                        LOGGER.debug("async hooks queue depth: {}",
+                                getQueueDepth());
+
+                        metrics.forEach((name, m) -> {
+                            LOGGER.debug("async hook {}: {}", name, m);
+                        });
+                    }, 1, 1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * submits the execution of a hook
+     *
+     * @param name the name of the hook, metrics are collected by name
+     * @param hook returns true if completed successfully, otherwise the
+     * execution is counted as failed
+     * @return false if the hook has been dropped because the queue is full
+     */
+    public boolean submit(String name, BooleanSupplier hook) {
+        final Metrics m = metrics.computeIfAbsent(name, k -> new Metrics());
+        final long submitted = System.nanoTime();
+
+        m.queued.incrementAndGet();
+
+        try {
+            executor.execute(() -> {
+                long started = System.nanoTime();
+
+                m.queued.decrementAndGet();
+                m.queueWait.add(started - submitted);
+
+                try {
+                    if (!hook.getAsBoolean()) {
+                        m.failed.increment();
+
+                        LOGGER.debug("async hook {} not completed "
+                                + "successfully", name);
+                    }
+                } catch (Throwable t) {
+                    m.failed.increment();
+
+                    LOGGER.warn("error executing async hook {}", name, t);
+                } finally {
+                    long latency = System.nanoTime() - started;
+
+                    m.executed.increment();
+                    m.latency.add(latency);
+                    m.maxLatency.accumulateAndGet(latency, Math::max);
+                }
+            });
+
+            return true;
+        } catch (RejectedExecutionException ree) {
+            m.queued.decrementAndGet();
+            m.dropped.increment();
+
+            LOGGER.warn("async hooks queue full, hook {} dropped", name);
+
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of hooks waiting to be executed
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the policy applied when the queue is full
+     */
+    public ASYNC_HOOKS_QUEUE_POLICY getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the metrics by hook name
+     */
+    public Map<String, Metrics> getMetrics() {
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    /**
+     * waits for room in the queue, so that the request thread is slowed down
+     * instead of dropping the hook
+     */
+    private static class BlockPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(
+                Runnable r,
+                ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("executor shut down");
+            }
+
+            try {
+                executor.getQueue().put(r);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(ie);
+            }
+        }
+    }
+
+    /**
+     * the metrics of an async hook
+     */
+    public static class Metrics {
+
+        private final AtomicInteger queued = new AtomicInteger();
+        private final LongAdder executed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder latency = new LongAdder();
+        private final AtomicLong maxLatency = new AtomicLong();
+        private final LongAdder queueWait = new LongAdder();
+
+        /**
+         * @return the executions waiting in the queue
+         */
+        public int getQueued() {
+            return queued.get();
+        }
+
+        /**
+         * @return the completed executions
+         */
+        public long getExecuted() {
+            return executed.sum();
+        }
+
+        /**
+         * @return the executions that threw an exception
+         */
+        public long getFailed() {
+            return failed.sum();
+        }
+
+        /**
+         * @return the executions dropped because the queue was full
+         */
+        public long getDropped() {
+            return dropped.sum();
+        }
+
+        /**
+         * @return the average execution time in nanoseconds
+         */
+        public long getAvgLatencyNanos() {
+            long n = executed.sum();
+            return n == 0 ? 0 : latency.sum() / n;
+        }
+
+        /**
+         * @return the max execution time in nanoseconds
+         */
+        public long getMaxLatencyNanos() {
+            return maxLatency.get();
+        }
+
+        /**
+         * @return the average time spent in the queue in nanoseconds
+         */
+        public long getAvgQueueWaitNanos() {
+            long n = executed.sum();
+            return n == 0 ? 0 : queueWait.sum() / n;
+        }
+
+        @Override
+        public String toString() {
+            return "queued: " + getQueued()
+                    + ", executed: " + getExecuted()
+                    + ", failed: " + getFailed()
+                    + ", dropped: " + getDropped()
+                    + ", avg latency: "
+                    + TimeUnit.NANOSECONDS.toMicros(getAvgLatencyNanos())
+                    + " us, max latency: "
+                    + TimeUnit.NANOSECONDS.toMicros(getMaxLatencyNanos())
+                    + " us, avg queue wait: "
+                    + TimeUnit.NANOSECONDS.toMicros(getAvgQueueWaitNanos())
+                    + " us";
+        }
+    }
+
+    private static class AsyncHookExecutorHolder {
+
+        private static final AsyncHookExecutor INSTANCE
+                = new AsyncHookExecutor();
+
+        private AsyncHookExecutorHolder() {
+        }
+    }
+}
@@ -90,6 +90,35 @@ public interface Hook {
         return hook(exchange, context, args);
     }
 
+    /**
+     * @return true if the hook implements hookAsync() and thus can be
+     * declared with "async": true in the collection metadata
+     */
+    default boolean supportsAsync() {
+        return false;
+    }
+
+    /**
+     * executes the hook declared with "async": true; it runs after the
+     * response has been sent, so it gets a snapshot of the request instead
+     * of the exchange and the request context.
+     *
+     * It is only invoked on hooks whose supportsAsync() returns true: the
+     * metadata declaring other hooks as async is invalid.
+     *
+     * @param request the snapshot of the request
+     * @param args the args sepcified in the collection metadata via args property
+     * @param confArgs args specified in the configuration file via args property
+     * @return true if completed successfully
+     */
+    default boolean hookAsync(
+            RequestSnapshot request,
+            BsonValue args,
+            BsonDocument confArgs) {
+        throw new UnsupportedOperationException(getClass().getSimpleName()
+                + " does not support async execution");
+    }
+
     /**
      *
      * @param context
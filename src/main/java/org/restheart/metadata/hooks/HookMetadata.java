@@ -36,6 +36,7 @@ public class HookMetadata {
     public final static String NAME_KEY = "name";
     public final static String CONF_ARGS_KEY = "args";
     public final static String ARGS_KEY = "args";
+    public final static String ASYNC_KEY = "async";
 
     public static BsonValue getProps(BsonDocument props) {
         return props == null
@@ -89,12 +90,23 @@ public class HookMetadata {
 
         String name = _name.asString().getValue();
 
+        BsonValue _async = props.get(ASYNC_KEY);
+
+        if (_async != null && !_async.isBoolean()) {
+            throw new InvalidMetadataException("invalid '"
+                    + ASYNC_KEY
+                    + "' element. it must be of type Boolean");
+        }
+
+        boolean async = _async != null && _async.asBoolean().getValue();
+
         // args is optional
-        return new HookMetadata(name, props.get(ARGS_KEY));
+        return new HookMetadata(name, props.get(ARGS_KEY), async);
     }
 
     private final String name;
     private final BsonValue args;
+    private final boolean async;
 
     /**
      *
@@ -102,8 +114,20 @@ public class HookMetadata {
      * @param args
      */
     public HookMetadata(String name, BsonValue args) {
+        this(name, args, false);
+    }
+
+    /**
+     *
+     * @param name
+     * @param args
+     * @param async true if the hook is executed by the AsyncHookExecutor,
+     * without delaying the response
+     */
+    public HookMetadata(String name, BsonValue args, boolean async) {
         this.name = name;
         this.args = args;
+        this.async = async;
 
         List<Map<String, Object>> singletons
                 = Bootstrapper.getConfiguration().getMetadataNamedSingletons();
@@ -124,4 +148,11 @@ public class HookMetadata {
         return args;
     }
 
+    /**
+     * @return true if the hook is executed asynchronously
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
 }
@@ -0,0 +1,279 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.metadata.hooks;
+
+import io.undertow.security.idm.Account;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.HeaderValues;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.restheart.db.OperationResult;
+import org.restheart.handlers.RequestContext;
+
+/**
+ * A copy of what an async hook can read of a request, taken on the request
+ * thread when the hook is submitted.
+ *
+ * Async hooks run after the response has been sent, when the exchange and
+ * the request context are completed (and the response content is changed by
+ * the response sender), so they get this snapshot instead.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class RequestSnapshot {
+
+    private final RequestContext.METHOD method;
+    private final RequestContext.TYPE type;
+    private final String dbName;
+    private final String collectionName;
+    private final BsonValue documentId;
+    private final String requestPath;
+    private final String unmappedRequestUri;
+    private final String relativePath;
+    private final String queryString;
+    private final int responseStatusCode;
+    private final HeaderMap requestHeaders;
+    private final HeaderMap responseHeaders;
+    private final String remoteUser;
+    private final Set<String> roles;
+    private final BsonValue content;
+    private final BsonValue responseContent;
+    private final BsonDocument oldData;
+    private final BsonDocument newData;
+    private final List<String> warnings;
+
+    /**
+     * takes the snapshot of the request
+     *
+     * @param exchange
+     * @param context
+     */
+    public RequestSnapshot(HttpServerExchange exchange, RequestContext context) {
+        this.method = context.getMethod();
+        this.type = context.getType();
+        this.dbName = context.getDBName();
+        this.collectionName = context.getCollectionName();
+        this.documentId = copy(context.getDocumentId());
+        this.requestPath = exchange.getRequestPath();
+        this.unmappedRequestUri = context.getUnmappedRequestUri();
+        this.relativePath = exchange.getRelativePath();
+        this.queryString = exchange.getQueryString();
+        this.responseStatusCode = context.getResponseStatusCode();
+        this.requestHeaders = copy(exchange.getRequestHeaders());
+        this.responseHeaders = copy(exchange.getResponseHeaders());
+
+        Account account = context.getAuthenticatedAccount();
+
+        if (account != null) {
+            this.remoteUser = account.getPrincipal() == null
+                    ? null
+                    : account.getPrincipal().getName();
+
+            this.roles = account.getRoles() == null
+                    ? Collections.emptySet()
+                    : Collections.unmodifiableSet(
+                            new HashSet<>(account.getRoles()));
+        } else {
+            this.remoteUser = null;
+            this.roles = Collections.emptySet();
+        }
+
+        this.content = copy(context.getContent());
+        this.responseContent = copy(context.getResponseContent());
+
+        OperationResult result = context.getDbOperationResult();
+
+        this.oldData = result == null || result.getOldData() == null
+                ? null
+                : result.getOldData().clone();
+
+        this.newData = result == null || result.getNewData() == null
+                ? null
+                : result.getNewData().clone();
+
+        this.warnings = Collections.unmodifiableList(
+                new ArrayList<>(context.getWarnings()));
+    }
+
+    /**
+     * @return a deep copy of the value
+     */
+    private static BsonValue copy(BsonValue value) {
+        if (value == null) {
+            return null;
+        } else if (value.isDocument()) {
+            return value.asDocument().clone();
+        } else if (value.isArray()) {
+            return new BsonDocument("a", value).clone().get("a");
+        } else {
+            return value;
+        }
+    }
+
+    private static HeaderMap copy(HeaderMap headers) {
+        HeaderMap ret = new HeaderMap();
+
+        if (headers != null) {
+            for (HeaderValues values : headers) {
+                ret.putAll(values.getHeaderName(), values);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return the request method
+     */
+    public RequestContext.METHOD getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the request type
+     */
+    public RequestContext.TYPE getType() {
+        return type;
+    }
+
+    /**
+     * @return the db name
+     */
+    public String getDBName() {
+        return dbName;
+    }
+
+    /**
+     * @return the collection name
+     */
+    public String getCollectionName() {
+        return collectionName;
+    }
+
+    /**
+     * @return the document id
+     */
+    public BsonValue getDocumentId() {
+        return documentId;
+    }
+
+    /**
+     * @return the request path
+     */
+    public String getRequestPath() {
+        return requestPath;
+    }
+
+    /**
+     * @return the request path mapped to the mongodb resource (/db/coll)
+     */
+    public String getUnmappedRequestUri() {
+        return unmappedRequestUri;
+    }
+
+    /**
+     * @return the request path relative to the mongo-mount
+     */
+    public String getRelativePath() {
+        return relativePath;
+    }
+
+    /**
+     * @return the query string
+     */
+    public String getQueryString() {
+        return queryString;
+    }
+
+    /**
+     * @return the response status code
+     */
+    public int getResponseStatusCode() {
+        return responseStatusCode;
+    }
+
+    /**
+     * @return a copy of the request headers
+     */
+    public HeaderMap getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    /**
+     * @return a copy of the response headers set before the hook was
+     * submitted
+     */
+    public HeaderMap getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    /**
+     * @return the name of the authenticated user or null
+     */
+    public String getRemoteUser() {
+        return remoteUser;
+    }
+
+    /**
+     * @return the roles of the authenticated user
+     */
+    public Set<String> getRoles() {
+        return roles;
+    }
+
+    /**
+     * @return a copy of the request content
+     */
+    public BsonValue getContent() {
+        return content;
+    }
+
+    /**
+     * @return a copy of the response content
+     */
+    public BsonValue getResponseContent() {
+        return responseContent;
+    }
+
+    /**
+     * @return a copy of the old data of write requests
+     */
+    public BsonDocument getOldData() {
+        return oldData;
+    }
+
+    /**
+     * @return a copy of the new data of write requests
+     */
+    public BsonDocument getNewData() {
+        return newData;
+    }
+
+    /**
+     * @return the warnings of the request
+     */
+    public List<String> getWarnings() {
+        return warnings;
+    }
+}
@@ -75,6 +75,44 @@ public class SnooperHook implements Hook {
         return true;
     }
 
+    @Override
+    public boolean supportsAsync() {
+        return true;
+    }
+
+    @Override
+    public boolean hookAsync(
+            RequestSnapshot request,
+            BsonValue args,
+            BsonDocument confArgs) {
+        LOGGER.info("Request {} {} {}",
+                request.getMethod(),
+                request.getRequestPath(), request.getResponseStatusCode());
+
+        LOGGER.info("Metadata args {}",
+                JsonUtils.toJson(args));
+
+        LOGGER.info("Configuration args {}",
+                JsonUtils.toJson(confArgs));
+
+        if (request.getNewData() != null || request.getOldData() != null) {
+            LOGGER.info("**** New data ****\n{}",
+                    request.getNewData() == null
+                            ? null : request.getNewData().toJson());
+
+            LOGGER.info("**** Old data ****\n{}",
+                    request.getOldData() == null
+                            ? null : request.getOldData().toJson());
+        }
+
+        if (request.getResponseContent() != null) {
+            LOGGER.info("*** Response content ****\n{}",
+                    JsonUtils.toJson(request.getResponseContent()));
+        }
+
+        return true;
+    }
+
     @Override
     public boolean doesSupportRequests(RequestContext context) {
         return true;
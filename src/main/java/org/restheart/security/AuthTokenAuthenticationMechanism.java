@@ -56,14 +56,19 @@ public class AuthTokenAuthenticationMechanism extends BasicAuthenticationMechani
             array[i] = 0x00;
         }
     }
-    private final String mechanismName = "TOKEN";
+    /**
+     * the name of the mechanism
+     */
+    public static final String MECHANISM_NAME = "TOKEN";
+
+    private final String mechanismName = MECHANISM_NAME;
 
     /**
      *
      * @param realmName
      */
     public AuthTokenAuthenticationMechanism(String realmName) {
-        super(realmName, "TOKEN", true);
+        super(realmName, MECHANISM_NAME, true);
     }
 
     @Override
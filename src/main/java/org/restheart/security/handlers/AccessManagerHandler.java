@@ -18,6 +18,7 @@
 package org.restheart.security.handlers;
 
 import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
 import org.restheart.handlers.PipedHttpHandler;
 import org.restheart.handlers.RequestContext;
 import org.restheart.security.AccessManager;
@@ -29,6 +30,14 @@ import org.restheart.utils.HttpStatus;
  */
 public class AccessManagerHandler extends PipedHttpHandler {
 
+    /**
+     * the access manager that authorized the request, used to check the
+     * access to the other resources read to serve it (e.g. the targets of the
+     * expanded relationships)
+     */
+    public static final AttachmentKey<AccessManager> ACCESS_MANAGER_KEY
+            = AttachmentKey.create(AccessManager.class);
+
     private final AccessManager accessManager;
 
     /**
@@ -51,6 +60,7 @@ public class AccessManagerHandler extends PipedHttpHandler {
     @Override
     public void handleRequest(HttpServerExchange exchange, RequestContext context) throws Exception {
         if (accessManager.isAllowed(exchange, context)) {
+            exchange.putAttachment(ACCESS_MANAGER_KEY, accessManager);
             next(exchange, context);
         } else {
             exchange.setStatusCode(HttpStatus.SC_FORBIDDEN);
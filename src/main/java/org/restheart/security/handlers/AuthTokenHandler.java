@@ -91,7 +91,7 @@ public class AuthTokenHandler extends PipedHttpHandler {
             exchange.getResponseSender().send(rep.toString());
             exchange.endExchange();
         } else if (Methods.DELETE.equals(exchange.getRequestMethod())) {
-            AuthTokenIdentityManager.getInstance().getCachedAccounts()
+            AuthTokenIdentityManager.getInstance().getTokenStore()
                     .invalidate(exchange.getSecurityContext().getAuthenticatedAccount().getPrincipal().getName());
             removeAuthTokens(exchange);
             exchange.setStatusCode(HttpStatus.SC_NO_CONTENT);
@@ -21,7 +21,6 @@ import io.undertow.security.idm.Account;
 import io.undertow.server.HttpServerExchange;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
-import java.util.Optional;
 import java.util.UUID;
 import org.restheart.Bootstrapper;
 import org.restheart.handlers.PipedHttpHandler;
@@ -29,7 +28,9 @@ import org.restheart.handlers.RequestContext;
 import static org.restheart.security.handlers.IAuthToken.AUTH_TOKEN_HEADER;
 import static org.restheart.security.handlers.IAuthToken.AUTH_TOKEN_LOCATION_HEADER;
 import static org.restheart.security.handlers.IAuthToken.AUTH_TOKEN_VALID_HEADER;
+import org.restheart.security.AuthTokenAuthenticationMechanism;
 import org.restheart.security.impl.AuthTokenIdentityManager;
+import org.restheart.security.impl.AuthTokenStore;
 import org.restheart.security.impl.SimpleAccount;
 
 /**
@@ -61,7 +62,9 @@ public class AuthTokenInjecterHandler extends PipedHttpHandler {
             if (exchange.getSecurityContext() != null && exchange.getSecurityContext().isAuthenticated()) {
                 Account authenticatedAccount = exchange.getSecurityContext().getAuthenticatedAccount();
 
-                char[] token = cacheSessionToken(authenticatedAccount);
+                char[] token = cacheSessionToken(
+                        authenticatedAccount,
+                        exchange.getSecurityContext().getMechanismName());
 
                 injectTokenHeaders(exchange, new HeadersManager(exchange), token);
             }
@@ -76,18 +79,27 @@ public class AuthTokenInjecterHandler extends PipedHttpHandler {
         headers.addResponseHeader(AUTH_TOKEN_LOCATION_HEADER, "/_authtokens/" + exchange.getSecurityContext().getAuthenticatedAccount().getPrincipal().getName());
     }
 
-    private char[] cacheSessionToken(Account authenticatedAccount) {
+    private char[] cacheSessionToken(Account authenticatedAccount, String mechanismName) {
+        // the client authenticated with the token, that is the password of the account
+        if (AuthTokenAuthenticationMechanism.MECHANISM_NAME.equals(mechanismName)
+                && authenticatedAccount instanceof SimpleAccount) {
+            return ((SimpleAccount) authenticatedAccount).getCredentials().getPassword();
+        }
+
         String id = authenticatedAccount.getPrincipal().getName();
-        Optional<SimpleAccount> cachedTokenAccount = AuthTokenIdentityManager.getInstance().getCachedAccounts().get(id);
+        AuthTokenStore tokenStore = AuthTokenIdentityManager.getInstance().getTokenStore();
 
-        if (cachedTokenAccount == null) {
-            char[] token = UUID.randomUUID().toString().toCharArray();
-            SimpleAccount newCachedTokenAccount = new SimpleAccount(id, token, authenticatedAccount.getRoles());
-            AuthTokenIdentityManager.getInstance().getCachedAccounts().put(id, newCachedTokenAccount);
+        if (AuthTokenIdentityManager.getInstance().isTokenReused()) {
+            SimpleAccount cachedTokenAccount = tokenStore.getNewest(id);
 
-            return token;
-        } else {
-            return cachedTokenAccount.get().getCredentials().getPassword();
+            if (cachedTokenAccount != null) {
+                return cachedTokenAccount.getCredentials().getPassword();
+            }
         }
+
+        char[] token = UUID.randomUUID().toString().toCharArray();
+        tokenStore.put(new SimpleAccount(id, token, authenticatedAccount.getRoles()));
+
+        return token;
     }
 }
@@ -0,0 +1,744 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.security.impl;
+
+import io.undertow.predicate.Predicate;
+import static io.undertow.predicate.Predicate.PREDICATE_CONTEXT;
+import io.undertow.server.HttpServerExchange;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import org.restheart.cache.Cache;
+import org.restheart.cache.CacheFactory;
+
+/**
+ * The permissions of the SimpleAccessManager compiled into an index, so that
+ * a request only evaluates the predicates that can match it instead of all
+ * the predicates of all the roles of the account.
+ *
+ * The predicate strings are analyzed to find the conditions that any
+ * request matching them must satisfy: the methods of a method[] and the
+ * leading literal segments of a path-prefix[], path[] or path-template[]
+ * that are in and with the rest of the predicate. The predicates are indexed
+ * in a trie of path segments, each node holding them by method; a request
+ * evaluates only the ones on the nodes of its relative path. Predicates
+ * that cannot be analyzed (e.g. with or) are put on the root, for any
+ * method, so that they are always evaluated: the index never excludes a
+ * predicate that could match.
+ *
+ * If cacheSize is greater than 0, the decisions are cached by roles, method
+ * and relative path when they only depend on them, i.e. all the evaluated
+ * predicates are made of method[], path-prefix[], path[] and
+ * path-template[] only.
+ *
+ * The engine is built while the permissions are loaded (add() is not thread
+ * safe), then isAllowed() can be called concurrently.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class AclDecisionEngine {
+
+    private static final int MATCHED = 1;
+    private static final int NOT_CACHEABLE = 2;
+
+    private final Node root = new Node();
+    private final Set<String> roles = new HashSet<>();
+    private int size = 0;
+
+    private final Cache<DecisionKey, Boolean> decisions;
+
+    /**
+     * @param cacheSize the max number of cached decisions, 0 to disable the
+     * cache
+     */
+    public AclDecisionEngine(int cacheSize) {
+        this.decisions = cacheSize > 0
+                ? CacheFactory.createLocalCache(cacheSize,
+                        Cache.EXPIRE_POLICY.NEVER, -1)
+                : null;
+    }
+
+    /**
+     * adds a permission
+     *
+     * @param role
+     * @param source the predicate string, as in the permissions file
+     * @param predicate the parsed predicate
+     */
+    public void add(String role, String source, Predicate predicate) {
+        Constraints constraints = analyze(source);
+
+        Entry entry = new Entry(role,
+                predicate,
+                constraints.pathOnly,
+                constraints.needsContext);
+
+        Node node = root;
+
+        for (String segment : constraints.segments) {
+            node = node.children.computeIfAbsent(segment, s -> new Node());
+        }
+
+        if (constraints.methods == null) {
+            node.anyMethod.add(entry);
+        } else {
+            for (String method : constraints.methods) {
+                node.byMethod.computeIfAbsent(method, m -> new ArrayList<>())
+                        .add(entry);
+            }
+        }
+
+        roles.add(role);
+        size++;
+    }
+
+    /**
+     * @param role
+     * @return true if the role has at least one permission
+     */
+    public boolean hasPermissions(String role) {
+        return roles.contains(role);
+    }
+
+    /**
+     * @return the number of permissions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param roles
+     * @param exchange
+     * @return true if a predicate of one of the roles resolves to true
+     */
+    public boolean isAllowed(Set<String> roles, HttpServerExchange exchange) {
+        if (roles == null || roles.isEmpty()) {
+            return false;
+        }
+
+        String method = exchange.getRequestMethod().toString()
+                .toUpperCase(Locale.ROOT);
+
+        String path = exchange.getRelativePath();
+
+        DecisionKey key = null;
+
+        if (decisions != null) {
+            key = new DecisionKey(roles, method, path);
+
+            Optional<Boolean> cached = decisions.get(key);
+
+            if (cached != null && cached.isPresent()) {
+                return cached.get();
+            }
+        }
+
+        int result = evaluate(root, roles, method, exchange);
+
+        if ((result & MATCHED) == 0 && path != null) {
+            Node node = root;
+            int start = 0;
+            int length = path.length();
+
+            while (start < length && (result & MATCHED) == 0) {
+                int end = path.indexOf('/', start);
+
+                if (end < 0) {
+                    end = length;
+                }
+
+                if (end > start) {
+                    node = node.children.get(path.substring(start, end));
+
+                    if (node == null) {
+                        break;
+                    }
+
+                    result |= evaluate(node, roles, method, exchange);
+                }
+
+                start = end + 1;
+            }
+        }
+
+        boolean allowed = (result & MATCHED) != 0;
+
+        // only the decisions reached evaluating path only predicates
+        if (key != null && (result & NOT_CACHEABLE) == 0) {
+            decisions.put(key.immutable(), allowed);
+        }
+
+        return allowed;
+    }
+
+    private int evaluate(
+            Node node,
+            Set<String> roles,
+            String method,
+            HttpServerExchange exchange) {
+        int result = 0;
+
+        if (!node.byMethod.isEmpty()) {
+            List<Entry> entries = node.byMethod.get(method);
+
+            if (entries != null) {
+                result = evaluate(entries, roles, exchange);
+            }
+        }
+
+        if ((result & MATCHED) == 0 && !node.anyMethod.isEmpty()) {
+            result |= evaluate(node.anyMethod, roles, exchange);
+        }
+
+        return result;
+    }
+
+    private int evaluate(
+            List<Entry> entries,
+            Set<String> roles,
+            HttpServerExchange exchange) {
+        int result = 0;
+
+        for (Entry entry : entries) {
+            if (!roles.contains(entry.role)) {
+                continue;
+            }
+
+            // this fixes undertow bug 377
+            // https://issues.jboss.org/browse/UNDERTOW-377
+            if (entry.needsContext
+                    && exchange.getAttachment(PREDICATE_CONTEXT) == null) {
+                exchange.putAttachment(PREDICATE_CONTEXT, new TreeMap<>());
+            }
+
+            // the decision depends on more than roles, method and path,
+            // whether the predicate matches or not
+            if (!entry.pathOnly) {
+                result |= NOT_CACHEABLE;
+            }
+
+            if (entry.predicate.resolve(exchange)) {
+                return result | MATCHED;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @param source the predicate string
+     * @return the conditions that the requests matching the predicate
+     * satisfy
+     */
+    static Constraints analyze(String source) {
+        Constraints ret = new Constraints();
+
+        if (source == null || !analyze(source, ret)) {
+            return new Constraints(false);
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return false if the predicate is not a conjunction
+     */
+    private static boolean analyze(String source, Constraints constraints) {
+        List<String> conjuncts = splitConjuncts(stripParens(source.trim()));
+
+        if (conjuncts == null) {
+            return false;
+        }
+
+        for (String conjunct : conjuncts) {
+            if (conjunct.startsWith("(")) {
+                if (!analyze(conjunct, constraints)) {
+                    constraints.pathOnly = false;
+                    constraints.needsContext = true;
+                }
+
+                continue;
+            }
+
+            int open = conjunct.indexOf('[');
+
+            String name = (open < 0 ? conjunct : conjunct.substring(0, open))
+                    .trim()
+                    .toLowerCase(Locale.ROOT);
+
+            Map<String, List<String>> args = open < 0
+                    || !conjunct.endsWith("]")
+                    ? null
+                    : parseArgs(conjunct.substring(open + 1,
+                            conjunct.length() - 1));
+
+            switch (name) {
+                case "true":
+                case "false":
+                    break;
+                case "method":
+                    constraints.addMethods(args == null
+                            ? null
+                            : args.get("value"));
+                    break;
+                case "path-prefix":
+                    constraints.addPaths(args == null
+                            ? null
+                            : args.get("path"));
+                    break;
+                case "path":
+                    constraints.addPaths(args == null
+                            ? null
+                            : args.get("path"));
+                    break;
+                case "path-template":
+                    List<String> match = args == null
+                            ? null
+                            : args.get("match");
+
+                    // only the templates matching the relative path
+                    if (match == null
+                            || (match.size() == 1
+                            && ("%R".equals(match.get(0))
+                            || "%{RELATIVE_PATH}".equals(match.get(0))))) {
+                        constraints.addTemplate(args == null
+                                ? null
+                                : args.get("value"));
+                    } else {
+                        constraints.pathOnly = false;
+                    }
+
+                    // the template parameters are put in the context
+                    constraints.needsContext = true;
+                    break;
+                default:
+                    constraints.pathOnly = false;
+                    constraints.needsContext = true;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the operands of the top level and, or null if the predicate
+     * has a top level or, not or unbalanced brackets
+     */
+    private static List<String> splitConjuncts(String source) {
+        List<String> ret = new ArrayList<>();
+
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+
+        for (int idx = 0; idx < source.length(); idx++) {
+            char c = source.charAt(idx);
+
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '(' || c == '[' || c == '{') {
+                depth++;
+            } else if (c == ')' || c == ']' || c == '}') {
+                depth--;
+
+                if (depth < 0) {
+                    return null;
+                }
+            } else if (depth == 0 && isWordStart(source, idx)) {
+                if (isWord(source, idx, "or") || isWord(source, idx, "not")) {
+                    return null;
+                } else if (isWord(source, idx, "and")) {
+                    ret.add(source.substring(start, idx).trim());
+                    idx += 2;
+                    start = idx + 1;
+                }
+            }
+        }
+
+        if (depth != 0 || quote != 0) {
+            return null;
+        }
+
+        ret.add(source.substring(start).trim());
+
+        return ret.stream().anyMatch(String::isEmpty) ? null : ret;
+    }
+
+    private static boolean isWordStart(String source, int idx) {
+        return idx == 0
+                || Character.isWhitespace(source.charAt(idx - 1))
+                || source.charAt(idx - 1) == ')';
+    }
+
+    private static boolean isWord(String source, int idx, String word) {
+        int end = idx + word.length();
+
+        return source.regionMatches(true, idx, word, 0, word.length())
+                && (end == source.length()
+                || Character.isWhitespace(source.charAt(end))
+                || source.charAt(end) == '(');
+    }
+
+    /**
+     * removes the brackets enclosing the whole predicate
+     */
+    private static String stripParens(String source) {
+        while (source.startsWith("(")
+                && closingParen(source) == source.length() - 1) {
+            source = source.substring(1, source.length() - 1).trim();
+        }
+
+        return source;
+    }
+
+    private static int closingParen(String source) {
+        int depth = 0;
+        char quote = 0;
+
+        for (int idx = 0; idx < source.length(); idx++) {
+            char c = source.charAt(idx);
+
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return idx;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * parses the arguments of a predicate, e.g. value="GET" or
+     * {'/a', '/b'}; the unnamed one is returned with key value and path
+     *
+     * @return the values by argument name
+     */
+    private static Map<String, List<String>> parseArgs(String args) {
+        Map<String, List<String>> ret = new HashMap<>();
+
+        for (String arg : splitTopLevel(args, ',')) {
+            int eq = argNameEnd(arg);
+
+            List<String> values = parseValues(eq < 0
+                    ? arg
+                    : arg.substring(eq + 1));
+
+            if (eq < 0) {
+                // the default argument of method[] and path-template[] is
+                // value, the one of path-prefix[] and path[] is path
+                ret.computeIfAbsent("value", k -> new ArrayList<>())
+                        .addAll(values);
+                ret.computeIfAbsent("path", k -> new ArrayList<>())
+                        .addAll(values);
+            } else {
+                ret.computeIfAbsent(arg.substring(0, eq).trim(),
+                        k -> new ArrayList<>())
+                        .addAll(values);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return the index of the = following the argument name or -1
+     */
+    private static int argNameEnd(String arg) {
+        for (int idx = 0; idx < arg.length(); idx++) {
+            char c = arg.charAt(idx);
+
+            if (c == '=') {
+                return idx > 0 ? idx : -1;
+            } else if (!Character.isLetterOrDigit(c)
+                    && c != '-'
+                    && !Character.isWhitespace(c)) {
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+
+    private static List<String> parseValues(String value) {
+        String _value = value.trim();
+
+        List<String> ret = new ArrayList<>();
+
+        if (_value.startsWith("{") && _value.endsWith("}")) {
+            for (String v : splitTopLevel(
+                    _value.substring(1, _value.length() - 1), ',')) {
+                ret.add(unquote(v.trim()));
+            }
+        } else {
+            ret.add(unquote(_value));
+        }
+
+        return ret;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2
+                && (value.charAt(0) == '\'' || value.charAt(0) == '"')
+                && value.charAt(value.length() - 1) == value.charAt(0)) {
+            return value.substring(1, value.length() - 1);
+        }
+
+        return value;
+    }
+
+    private static List<String> splitTopLevel(String source, char separator) {
+        List<String> ret = new ArrayList<>();
+
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+
+        for (int idx = 0; idx < source.length(); idx++) {
+            char c = source.charAt(idx);
+
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '{' || c == '[' || c == '(') {
+                depth++;
+            } else if (c == '}' || c == ']' || c == ')') {
+                depth--;
+            } else if (c == separator && depth == 0) {
+                ret.add(source.substring(start, idx));
+                start = idx + 1;
+            }
+        }
+
+        ret.add(source.substring(start));
+
+        return ret;
+    }
+
+    /**
+     * @return the path segments, null if the path is not literal
+     */
+    private static List<String> segments(String path, boolean template) {
+        List<String> ret = new ArrayList<>();
+
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+
+            if (template
+                    && (segment.contains("{") || segment.contains("*"))) {
+                break;
+            }
+
+            ret.add(segment);
+        }
+
+        return ret;
+    }
+
+    /**
+     * the conditions satisfied by the requests matching a predicate
+     */
+    static class Constraints {
+
+        // null means any method
+        Set<String> methods = null;
+
+        // the leading segments of the relative path
+        List<String> segments = Collections.emptyList();
+
+        // true if the predicate only depends on the method and the path
+        boolean pathOnly;
+
+        // true if the predicate can use the PREDICATE_CONTEXT
+        boolean needsContext = false;
+
+        Constraints() {
+            this(true);
+        }
+
+        Constraints(boolean pathOnly) {
+            this.pathOnly = pathOnly;
+            this.needsContext = !pathOnly;
+        }
+
+        void addMethods(List<String> _methods) {
+            if (_methods == null || _methods.isEmpty()) {
+                pathOnly = false;
+                return;
+            }
+
+            Set<String> upper = new HashSet<>();
+
+            _methods.forEach(m -> upper.add(m.trim().toUpperCase(Locale.ROOT)));
+
+            if (methods == null) {
+                methods = upper;
+            } else {
+                // all the method[] must match
+                methods.retainAll(upper);
+            }
+        }
+
+        void addPaths(List<String> paths) {
+            if (paths == null || paths.isEmpty()) {
+                pathOnly = false;
+                return;
+            }
+
+            // any of the paths can match: their common segments
+            List<String> common = null;
+
+            for (String path : paths) {
+                List<String> _segments = segments(path, false);
+
+                if (common == null) {
+                    common = _segments;
+                } else {
+                    int idx = 0;
+
+                    while (idx < common.size()
+                            && idx < _segments.size()
+                            && common.get(idx).equals(_segments.get(idx))) {
+                        idx++;
+                    }
+
+                    common = common.subList(0, idx);
+                }
+            }
+
+            addSegments(common);
+        }
+
+        void addTemplate(List<String> templates) {
+            if (templates == null || templates.size() != 1) {
+                pathOnly = false;
+                return;
+            }
+
+            addSegments(segments(templates.get(0), true));
+        }
+
+        private void addSegments(List<String> _segments) {
+            // all of them must match, the longest is the most selective
+            if (_segments.size() > segments.size()) {
+                segments = new ArrayList<>(_segments);
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final String role;
+        private final Predicate predicate;
+        private final boolean pathOnly;
+        private final boolean needsContext;
+
+        Entry(String role,
+                Predicate predicate,
+                boolean pathOnly,
+                boolean needsContext) {
+            this.role = role;
+            this.predicate = predicate;
+            this.pathOnly = pathOnly;
+            this.needsContext = needsContext;
+        }
+    }
+
+    private static class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+        private final Map<String, List<Entry>> byMethod
+                = new LinkedHashMap<>();
+        private final List<Entry> anyMethod = new ArrayList<>();
+    }
+
+    private static class DecisionKey {
+
+        private final Set<String> roles;
+        private final String method;
+        private final String path;
+        private final int hash;
+
+        DecisionKey(Set<String> roles, String method, String path) {
+            this.roles = roles;
+            this.method = method;
+            this.path = path;
+            this.hash = 31 * (31 * roles.hashCode() + method.hashCode())
+                    + (path == null ? 0 : path.hashCode());
+        }
+
+        /**
+         * @return the key to put in the cache, the roles of the account
+         * could change
+         */
+        DecisionKey immutable() {
+            return new DecisionKey(
+                    Collections.unmodifiableSet(new HashSet<>(roles)),
+                    method,
+                    path);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof DecisionKey)) {
+                return false;
+            }
+
+            DecisionKey other = (DecisionKey) obj;
+
+            return hash == other.hash
+                    && method.equals(other.method)
+                    && (path == null ? other.path == null
+                    : path.equals(other.path))
+                    && roles.equals(other.roles);
+        }
+    }
+}
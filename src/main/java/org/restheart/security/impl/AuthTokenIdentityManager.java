@@ -21,11 +21,9 @@ import io.undertow.security.idm.Account;
 import io.undertow.security.idm.Credential;
 import io.undertow.security.idm.IdentityManager;
 import io.undertow.security.idm.PasswordCredential;
-import java.util.Arrays;
-import java.util.Optional;
 import org.restheart.Bootstrapper;
-import org.restheart.cache.Cache;
-import org.restheart.cache.CacheFactory;
+import org.restheart.Configuration;
+import org.restheart.db.MongoDBClientSingleton;
 
 /**
  *
@@ -35,6 +33,8 @@ public class AuthTokenIdentityManager implements IdentityManager {
 
     private static final long TTL = Bootstrapper.getConfiguration().getAuthTokenTtl();
     private static final boolean ENABLED = Bootstrapper.getConfiguration().isAuthTokenEnabled();
+    private static final long MAX_TOKENS = Bootstrapper.getConfiguration().getAuthTokenMaxTokens();
+    private static final int MAX_TOKENS_PER_USER = Bootstrapper.getConfiguration().getAuthTokenMaxTokensPerUser();
 
     /**
      *
@@ -43,14 +43,26 @@ public class AuthTokenIdentityManager implements IdentityManager {
     public static AuthTokenIdentityManager getInstance() {
         return SessionTokenIdentityManagerHolder.INSTANCE;
     }
-    private final Cache<String, SimpleAccount> cachedAccounts;
+    private final AuthTokenStore tokenStore;
 
     /**
      *
      * @param next
      */
     private AuthTokenIdentityManager() {
-        this.cachedAccounts = CacheFactory.createLocalCache(Long.MAX_VALUE, Cache.EXPIRE_POLICY.AFTER_READ, TTL * 60 * 1_000);
+        if (Bootstrapper.getConfiguration().getAuthTokenStore()
+                == Configuration.AUTH_TOKEN_STORE.MONGO) {
+            this.tokenStore = new MongoAuthTokenStore(
+                    MongoDBClientSingleton.getInstance().getClient(),
+                    Bootstrapper.getConfiguration().getAuthTokenStoreDb(),
+                    MAX_TOKENS_PER_USER,
+                    TTL * 60 * 1_000);
+        } else {
+            this.tokenStore = new LocalAuthTokenStore(
+                    MAX_TOKENS,
+                    MAX_TOKENS_PER_USER,
+                    TTL * 60 * 1_000);
+        }
     }
 
     @Override
@@ -64,13 +76,13 @@ public class AuthTokenIdentityManager implements IdentityManager {
 
     @Override
     public Account verify(String id, Credential credential) {
-        if (!ENABLED) {
+        if (!ENABLED || !(credential instanceof PasswordCredential)) {
             return null;
         }
 
-        final Optional<SimpleAccount> _account = cachedAccounts.get(id);
-
-        return _account != null && _account.isPresent() && verifyToken(_account.get(), credential) ? _account.get() : null;
+        // the store looks up the user id and the token at once
+        return tokenStore.get(id,
+                ((PasswordCredential) credential).getPassword());
     }
 
     @Override
@@ -78,18 +90,16 @@ public class AuthTokenIdentityManager implements IdentityManager {
         return null;
     }
 
-    private boolean verifyToken(Account account, Credential credential) {
-        if (credential instanceof PasswordCredential && account instanceof SimpleAccount) {
-            char[] token = ((PasswordCredential) credential).getPassword();
-            char[] expectedToken = cachedAccounts.get(account.getPrincipal().getName()).get().getCredentials().getPassword();
-
-            return Arrays.equals(token, expectedToken);
-        }
-        return false;
+    /**
+     * @return true if requests authenticated with the actual credentials must
+     * reuse the token of the user, since just one token per user is allowed
+     */
+    public boolean isTokenReused() {
+        return MAX_TOKENS_PER_USER <= 1;
     }
 
-    public Cache<String, SimpleAccount> getCachedAccounts() {
-        return cachedAccounts;
+    public AuthTokenStore getTokenStore() {
+        return tokenStore;
     }
 
     private static class SessionTokenIdentityManagerHolder {
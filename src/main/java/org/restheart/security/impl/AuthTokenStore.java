@@ -0,0 +1,73 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.security.impl;
+
+import java.util.Set;
+
+/**
+ * Stores the auth tokens issued by the AuthTokenInjecterHandler.
+ *
+ * The tokens are the passwords of the stored accounts; each token expires
+ * when not used for the configured TTL.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public interface AuthTokenStore {
+
+    /**
+     * verifies the token with a single lookup, renewing its TTL (at least
+     * when the token is past half of it)
+     *
+     * @param id the user id
+     * @param token
+     * @return the account the token was issued to, null if the token is not
+     * valid
+     */
+    public SimpleAccount get(String id, char[] token);
+
+    /**
+     * @param id the user id
+     * @return the account of the most recently issued valid token of the
+     * user, null if the user does not have any or if the store does not keep
+     * the tokens in clear (a new token is then issued)
+     */
+    public SimpleAccount getNewest(String id);
+
+    /**
+     * stores the account of a new token, discarding the oldest tokens of the
+     * user beyond the per-user limit
+     *
+     * @param account the account whose password is the token
+     */
+    public void put(SimpleAccount account);
+
+    /**
+     * updates the roles of all the tokens of the user
+     *
+     * @param id the user id
+     * @param roles
+     */
+    public void updateRoles(String id, Set<String> roles);
+
+    /**
+     * invalidates all the tokens of the user
+     *
+     * @param id the user id
+     */
+    public void invalidate(String id);
+}
@@ -325,27 +325,11 @@ public class DbIdentityManager
      * @param account
      */
     private void updateAuthTokenCache(SimpleAccount account) {
-        Cache<String, SimpleAccount> authTokenCache
-                = AuthTokenIdentityManager.getInstance().getCachedAccounts();
+        AuthTokenIdentityManager.getInstance().getTokenStore().updateRoles(
+                account.getPrincipal().getName(),
+                account.getRoles());
 
-        String id = account.getPrincipal().getName();
-
-        Optional<SimpleAccount> _authTokenAccount
-                = authTokenCache.get(id);
-
-        if (_authTokenAccount != null && _authTokenAccount.isPresent()) {
-            SimpleAccount authTokenAccount = _authTokenAccount.get();
-
-            SimpleAccount updatedAuthTokenAccount
-                    = new SimpleAccount(
-                            id,
-                            authTokenAccount.getCredentials().getPassword(),
-                            account.getRoles());
-
-            authTokenCache.put(id, updatedAuthTokenAccount);
-
-            LOGGER.debug("***** updated auth token cache");
-        }
+        LOGGER.debug("***** updated auth token cache");
     }
 
     private boolean verifyCredential(Account account, Credential credential) {
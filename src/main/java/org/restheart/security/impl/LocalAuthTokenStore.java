@@ -0,0 +1,166 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.security.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.restheart.cache.Cache;
+import org.restheart.cache.CacheFactory;
+
+/**
+ * Keeps the auth tokens in a bounded local cache, evicting the least recently
+ * used ones when full.
+ *
+ * The cache is keyed by user id and token, so that verifying a token takes a
+ * single lookup.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class LocalAuthTokenStore implements AuthTokenStore {
+
+    private static final String SEPARATOR = "_@_@_";
+
+    private final Cache<String, SimpleAccount> tokens;
+
+    // the keys of the tokens of each user, the most recent first
+    private final Map<String, Deque<String>> keysByUser
+            = new ConcurrentHashMap<>();
+
+    private final int maxTokensPerUser;
+
+    /**
+     *
+     * @param maxTokens the maximum number of tokens
+     * @param maxTokensPerUser the maximum number of tokens of each user
+     * @param ttl Time To Live in milliseconds after the last use
+     */
+    public LocalAuthTokenStore(long maxTokens, int maxTokensPerUser, long ttl) {
+        this.maxTokensPerUser = Math.max(1, maxTokensPerUser);
+
+        this.tokens = CacheFactory.createLocalCache(
+                maxTokens,
+                Cache.EXPIRE_POLICY.AFTER_READ,
+                ttl,
+                entry -> unindexKey(entry.getKey()));
+    }
+
+    @Override
+    public SimpleAccount get(String id, char[] token) {
+        Optional<SimpleAccount> account = tokens.get(key(id, token));
+
+        return account != null && account.isPresent() ? account.get() : null;
+    }
+
+    @Override
+    public SimpleAccount getNewest(String id) {
+        for (String key : getKeys(id)) {
+            Optional<SimpleAccount> account = tokens.get(key);
+
+            if (account != null && account.isPresent()) {
+                return account.get();
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void put(SimpleAccount account) {
+        String id = account.getPrincipal().getName();
+        String key = key(id, account.getCredentials().getPassword());
+
+        List<String> discarded = new ArrayList<>();
+
+        keysByUser.compute(id, (k, keys) -> {
+            if (keys == null) {
+                keys = new ArrayDeque<>();
+            }
+
+            keys.addFirst(key);
+
+            while (keys.size() > maxTokensPerUser) {
+                discarded.add(keys.removeLast());
+            }
+
+            return keys;
+        });
+
+        tokens.put(key, account);
+
+        // invalidated out of compute(), since the remover updates keysByUser
+        discarded.forEach(tokens::invalidate);
+    }
+
+    @Override
+    public void updateRoles(String id, Set<String> roles) {
+        for (String key : getKeys(id)) {
+            Optional<SimpleAccount> account = tokens.get(key);
+
+            if (account != null && account.isPresent()) {
+                tokens.put(key, new SimpleAccount(
+                        id,
+                        account.get().getCredentials().getPassword(),
+                        roles));
+            }
+        }
+    }
+
+    @Override
+    public void invalidate(String id) {
+        Deque<String> keys = keysByUser.remove(id);
+
+        if (keys != null) {
+            keys.forEach(tokens::invalidate);
+        }
+    }
+
+    private List<String> getKeys(String id) {
+        List<String> ret = new ArrayList<>();
+
+        keysByUser.computeIfPresent(id, (k, keys) -> {
+            ret.addAll(keys);
+            return keys;
+        });
+
+        return ret;
+    }
+
+    private void unindexKey(String key) {
+        // the entry can have been replaced meanwhile
+        if (tokens.asMap().containsKey(key)) {
+            return;
+        }
+
+        String id = key.substring(0, key.lastIndexOf(SEPARATOR));
+
+        keysByUser.computeIfPresent(id, (k, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private static String key(String id, char[] token) {
+        return id + SEPARATOR + new String(token);
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.security.impl;
+
+import com.google.common.hash.Hashing;
+import com.mongodb.MongoClient;
+import com.mongodb.client.MongoCollection;
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.in;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Sorts.descending;
+import static com.mongodb.client.model.Updates.set;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.bson.BsonArray;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.conversions.Bson;
+
+/**
+ * Stores the auth tokens in a MongoDB collection, so that they are shared
+ * between the nodes and survive restarts. Clients can therefore switch node
+ * without authenticating again with their actual credentials, that can
+ * involve an expensive password hash check.
+ *
+ * Only the SHA-256 of the tokens is stored, so that the collection (or a
+ * backup of it) does not allow to authenticate; for the same reason the
+ * newest token of a user cannot be returned to be reused.
+ *
+ * The expiration of a token is renewed only once it is past half its TTL, so
+ * that most authenticated requests only read the store.
+ *
+ * Expired tokens are deleted by a TTL index.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class MongoAuthTokenStore implements AuthTokenStore {
+
+    /**
+     * the name of the collection
+     */
+    public static final String COLLECTION_NAME = "_authtokens";
+
+    private static final String _ID = "_id";
+    private static final String USER = "user";
+    private static final String ROLES = "roles";
+    private static final String CREATED = "created";
+    private static final String EXPIRES = "expires";
+
+    private final MongoCollection<BsonDocument> coll;
+    private final int maxTokensPerUser;
+    private final long ttl;
+
+    /**
+     *
+     * @param client
+     * @param dbName the db of the collection
+     * @param maxTokensPerUser the maximum number of tokens of each user
+     * @param ttl Time To Live in milliseconds after the last use
+     */
+    public MongoAuthTokenStore(
+            MongoClient client,
+            String dbName,
+            int maxTokensPerUser,
+            long ttl) {
+        this.coll = client.getDatabase(dbName)
+                .getCollection(COLLECTION_NAME, BsonDocument.class);
+
+        this.maxTokensPerUser = Math.max(1, maxTokensPerUser);
+        this.ttl = ttl;
+
+        coll.createIndex(Indexes.ascending(EXPIRES),
+                new IndexOptions().expireAfter(0l, TimeUnit.SECONDS));
+
+        coll.createIndex(Indexes.compoundIndex(
+                Indexes.ascending(USER),
+                Indexes.descending(CREATED)));
+    }
+
+    @Override
+    public SimpleAccount get(String id, char[] token) {
+        BsonDocument doc = coll.find(
+                and(eq(_ID, hash(token)), eq(USER, id), notExpired()))
+                .first();
+
+        if (doc == null) {
+            return null;
+        }
+
+        BsonValue _expires = doc.get(EXPIRES);
+
+        // renews the TTL only when the token is past half of it
+        if (_expires == null
+                || !_expires.isDateTime()
+                || _expires.asDateTime().getValue()
+                - System.currentTimeMillis() < ttl / 2) {
+            coll.updateOne(eq(_ID, doc.get(_ID)), set(EXPIRES, expires()));
+        }
+
+        return toAccount(doc, token);
+    }
+
+    /**
+     * the tokens are stored hashed and cannot be returned
+     *
+     * @param id the user id
+     * @return null
+     */
+    @Override
+    public SimpleAccount getNewest(String id) {
+        return null;
+    }
+
+    @Override
+    public void put(SimpleAccount account) {
+        String id = account.getPrincipal().getName();
+        long now = System.currentTimeMillis();
+
+        BsonDocument doc = new BsonDocument();
+
+        doc.put(_ID, hash(account.getCredentials().getPassword()));
+        doc.put(USER, new BsonString(id));
+        doc.put(ROLES, toBsonArray(account.getRoles()));
+        doc.put(CREATED, new BsonDateTime(now));
+        doc.put(EXPIRES, new BsonDateTime(now + ttl));
+
+        coll.insertOne(doc);
+
+        List<BsonValue> discarded = new ArrayList<>();
+
+        coll.find(eq(USER, id))
+                .sort(descending(CREATED))
+                .skip(maxTokensPerUser)
+                .projection(include(_ID))
+                .into(new ArrayList<>())
+                .forEach(d -> discarded.add(d.get(_ID)));
+
+        if (!discarded.isEmpty()) {
+            coll.deleteMany(in(_ID, discarded));
+        }
+    }
+
+    @Override
+    public void updateRoles(String id, Set<String> roles) {
+        coll.updateMany(eq(USER, id), set(ROLES, toBsonArray(roles)));
+    }
+
+    @Override
+    public void invalidate(String id) {
+        coll.deleteMany(eq(USER, id));
+    }
+
+    private Bson notExpired() {
+        // the TTL index deletes the expired documents only once a minute
+        return gt(EXPIRES, new BsonDateTime(System.currentTimeMillis()));
+    }
+
+    private BsonDateTime expires() {
+        return new BsonDateTime(System.currentTimeMillis() + ttl);
+    }
+
+    /**
+     * @param token
+     * @return the hex encoded SHA-256 of the token, the _id of its document
+     */
+    static BsonString hash(char[] token) {
+        return new BsonString(Hashing.sha256()
+                .hashString(new String(token), StandardCharsets.UTF_8)
+                .toString());
+    }
+
+    /**
+     * @param doc the stored token document
+     * @param token the token the client authenticated with
+     * @return the account
+     */
+    private static SimpleAccount toAccount(BsonDocument doc, char[] token) {
+        Set<String> roles = new HashSet<>();
+
+        BsonValue _roles = doc.get(ROLES);
+
+        if (_roles != null && _roles.isArray()) {
+            _roles.asArray().stream()
+                    .filter(BsonValue::isString)
+                    .forEach(r -> roles.add(r.asString().getValue()));
+        }
+
+        return new SimpleAccount(
+                doc.getString(USER).getValue(),
+                token,
+                roles);
+    }
+
+    private static BsonArray toBsonArray(Set<String> roles) {
+        BsonArray ret = new BsonArray();
+
+        if (roles != null) {
+            roles.forEach(r -> ret.add(new BsonString(r)));
+        }
+
+        return ret;
+    }
+}
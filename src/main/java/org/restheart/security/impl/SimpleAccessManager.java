@@ -19,36 +19,68 @@ package org.restheart.security.impl;
 
 import static com.google.common.collect.Sets.newHashSet;
 import io.undertow.predicate.Predicate;
-import static io.undertow.predicate.Predicate.PREDICATE_CONTEXT;
 import io.undertow.predicate.PredicateParser;
 import io.undertow.security.idm.Account;
 import io.undertow.server.HttpServerExchange;
 import java.io.FileNotFoundException;
-import java.security.Principal;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.function.Consumer;
-import java.util.stream.Stream;
 import org.restheart.handlers.RequestContext;
 import org.restheart.security.AccessManager;
 
 /**
+ * The permissions are compiled into an AclDecisionEngine, so that a request
+ * only evaluates the predicates that can match its method and path.
+ *
  * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
  */
 public class SimpleAccessManager extends AbstractSimpleSecurityManager implements AccessManager {
 
+    /**
+     * the key of the max number of cached decisions in the access manager
+     * configuration; 0 (the default) disables the cache
+     */
+    public static final String DECISION_CACHE_SIZE_KEY = "decision-cache-size";
+
+    private static final String UNAUTHENTICATED = "$unauthenticated";
+
+    private static final Set<String> UNAUTHENTICATED_ROLES
+            = Collections.singleton(UNAUTHENTICATED);
+
     private final HashMap<String, Set<Predicate>> acl = new HashMap<>();
 
+    private final AclDecisionEngine engine;
+
     /**
      * @param configuration
      * @throws java.io.FileNotFoundException
      */
     public SimpleAccessManager(Map<String, Object> configuration) throws FileNotFoundException {
+        this.engine = new AclDecisionEngine(decisionCacheSize(configuration));
+
         init(configuration, "permissions");
     }
 
+    private static int decisionCacheSize(Map<String, Object> configuration) {
+        Object _size = configuration == null
+                ? null
+                : configuration.get(DECISION_CACHE_SIZE_KEY);
+
+        if (_size == null) {
+            return 0;
+        }
+
+        if (!(_size instanceof Integer) || (Integer) _size < 0) {
+            throw new IllegalArgumentException("wrong configuration. "
+                    + DECISION_CACHE_SIZE_KEY + " must be a positive integer");
+        }
+
+        return (Integer) _size;
+    }
+
     @Override
     Consumer<? super Map<String, Object>> consumeConfiguration() {
         return u -> {
@@ -74,6 +106,7 @@ public class SimpleAccessManager extends AbstractSimpleSecurityManager implement
             }
 
             aclForRole(role).add(predicate);
+            engine.add(role, (String) _predicate, predicate);
         };
     }
 
@@ -88,13 +121,7 @@ public class SimpleAccessManager extends AbstractSimpleSecurityManager implement
             return false;
         }
 
-        // this fixes undertow bug 377
-        // https://issues.jboss.org/browse/UNDERTOW-377
-        if (exchange.getAttachment(PREDICATE_CONTEXT) == null) {
-            exchange.putAttachment(PREDICATE_CONTEXT, new TreeMap<>());
-        }
-
-        return roles(exchange).anyMatch(role -> aclForRole(role).stream().anyMatch(p -> p.resolve(exchange)));
+        return engine.isAllowed(roles(exchange), exchange);
     }
 
     @Override
@@ -103,12 +130,13 @@ public class SimpleAccessManager extends AbstractSimpleSecurityManager implement
             return true;
         }
 
-        Set<Predicate> ps = getAcl().get("$unauthenticated");
-        return ps == null ? true : !ps.stream().anyMatch(p -> p.resolve(exchange));
+        return !engine.hasPermissions(UNAUTHENTICATED)
+                || !engine.isAllowed(UNAUTHENTICATED_ROLES, exchange);
     }
 
-    private Stream<String> roles(HttpServerExchange exchange) {
-        return account(exchange).getRoles().stream();
+    private Set<String> roles(HttpServerExchange exchange) {
+        final Account account = exchange.getSecurityContext().getAuthenticatedAccount();
+        return isAuthenticated(account) ? account.getRoles() : UNAUTHENTICATED_ROLES;
     }
 
     private boolean noAclDefined() {
@@ -125,11 +153,6 @@ public class SimpleAccessManager extends AbstractSimpleSecurityManager implement
         return predicates;
     }
 
-    private Account account(HttpServerExchange exchange) {
-        final Account account = exchange.getSecurityContext().getAuthenticatedAccount();
-        return isAuthenticated(account) ? account : new NotAuthenticatedAccount();
-    }
-
     private boolean isAuthenticated(Account authenticatedAccount) {
         return authenticatedAccount != null;
     }
@@ -140,17 +163,4 @@ public class SimpleAccessManager extends AbstractSimpleSecurityManager implement
     public HashMap<String, Set<Predicate>> getAcl() {
         return acl;
     }
-
-    private static class NotAuthenticatedAccount implements Account {
-
-        @Override
-        public Principal getPrincipal() {
-            return null;
-        }
-
-        @Override
-        public Set<String> getRoles() {
-            return newHashSet("$unauthenticated");
-        }
-    }
 }
@@ -0,0 +1,76 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.utils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.restheart.Bootstrapper;
+
+/**
+ * The executor of the batches written in background by the bulk requests.
+ *
+ * The request threads wait for the batches they submit, so the batches must
+ * not run on a shared executor whose tasks can wait for them: when all its
+ * threads wait for batches queued behind them, nothing progresses. The
+ * batches never wait for the requests, so a dedicated pool cannot deadlock.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class BulkWriteExecutorSingleton {
+
+    /**
+     *
+     * @return
+     */
+    public static BulkWriteExecutorSingleton getInstance() {
+        return BulkWriteExecutorSingletonHolder.INSTANCE;
+    }
+
+    private static final int DEFAULT_THREADS = 8;
+
+    private final ExecutorService executorService;
+
+    private BulkWriteExecutorSingleton() {
+        int threads = Bootstrapper.getConfiguration() == null
+                ? DEFAULT_THREADS
+                : Math.max(1,
+                        Bootstrapper.getConfiguration().getBulkWriteThreads());
+
+        this.executorService = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("bulk-write-%d")
+                        .build());
+    }
+
+    /**
+     * @return the executorService
+     */
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    private static class BulkWriteExecutorSingletonHolder {
+
+        private static final BulkWriteExecutorSingleton INSTANCE = new BulkWriteExecutorSingleton();
+
+        private BulkWriteExecutorSingletonHolder() {
+        }
+    }
+}
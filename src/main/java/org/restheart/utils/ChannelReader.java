@@ -40,6 +40,20 @@ public class ChannelReader {
      * @throws IOException
      */
     public static String read(StreamSourceChannel channel) throws IOException {
+        return read(channel, 0);
+    }
+
+    /**
+     *
+     * @param channel
+     * @param maxSize the max number of bytes to read, &lt;= 0 means no limit
+     * @return
+     * @throws IOException
+     * @throws RequestBodyTooLargeException if the channel has more than
+     * maxSize bytes
+     */
+    public static String read(StreamSourceChannel channel, long maxSize)
+            throws IOException {
         final int capacity = 1024;
 
         ByteArrayOutputStream os = new ByteArrayOutputStream(capacity);
@@ -50,6 +64,10 @@ public class ChannelReader {
             buf.flip();
             os.write(buf.array(), 0, buf.remaining());
             buf.clear();
+
+            if (maxSize > 0 && os.size() > maxSize) {
+                throw new RequestBodyTooLargeException(maxSize);
+            }
         }
         return new String(os.toByteArray(), CHARSET);
     }
@@ -0,0 +1,250 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+/**
+ * A json path expression (as used by JsonUtils.getPropsFromPath()) split in
+ * tokens once, so that it can be evaluated against many documents without
+ * parsing it again.
+ *
+ * The evaluation walks the tokens by index and adds the properties to a
+ * single list, instead of creating the sub paths and the intermediate lists
+ * at every step. Results and errors are the same of getPropsFromPath().
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class CompiledJsonPath {
+
+    private static final String DOLLAR = "$";
+    private static final String ALL_PROPS = "*";
+    private static final String ALL_ITEMS = "[*]";
+
+    private final String path;
+    private final String[] tokens;
+
+    private CompiledJsonPath(String path, String[] tokens) {
+        this.path = path;
+        this.tokens = tokens;
+    }
+
+    /**
+     * @param path the json path expression
+     * @return the compiled path
+     * @throws IllegalArgumentException if the path does not use the . notation
+     * or does not start with $
+     */
+    public static CompiledJsonPath compile(String path)
+            throws IllegalArgumentException {
+        String[] tokens = path.split(Pattern.quote("."));
+
+        if (tokens.length == 0 || !tokens[0].equals(DOLLAR)) {
+            throw new IllegalArgumentException(
+                    "wrong path. it must use the . notation and start with $");
+        }
+
+        return new CompiledJsonPath(path, tokens);
+    }
+
+    /**
+     * @param root the Bson to extract properties from
+     * @return the List of Optional&lt;Object&gt;s extracted from root ojbect
+     * and identified by the path or null if path does not exist
+     * @throws IllegalArgumentException
+     * @see JsonUtils#getPropsFromPath(org.bson.BsonValue, java.lang.String)
+     */
+    public List<Optional<BsonValue>> getProps(BsonValue root)
+            throws IllegalArgumentException {
+        if (!(root instanceof BsonDocument)) {
+            throw new IllegalArgumentException(
+                    "wrong json. it must be an object");
+        }
+
+        List<Optional<BsonValue>> ret = new ArrayList<>();
+
+        return collect(root, 0, ret) ? ret : null;
+    }
+
+    /**
+     * @param root
+     * @return then number of properties identitified by the path or null if
+     * path does not exist
+     * @throws IllegalArgumentException
+     */
+    public Integer countProps(BsonValue root) throws IllegalArgumentException {
+        List<Optional<BsonValue>> props = getProps(root);
+
+        return props == null ? null : props.size();
+    }
+
+    /**
+     * @return the json path expression
+     */
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+
+    /**
+     * adds to ret the properties identified by the tokens starting at index
+     *
+     * @return false if the path does not exist, in this case nothing has been
+     * added to ret
+     */
+    private boolean collect(
+            BsonValue json,
+            int index,
+            List<Optional<BsonValue>> ret) {
+        if (index == tokens.length) {
+            // if value is null add an empty optional
+            ret.add(json.isNull() ? Optional.empty() : Optional.of(json));
+            return true;
+        }
+
+        if (json == null) {
+            return false;
+        }
+
+        String token = tokens[index];
+
+        if ("".equals(token)) {
+            throw new IllegalArgumentException("wrong path "
+                    + remaining(index)
+                    + " path tokens cannot be empty strings");
+        }
+
+        switch (token) {
+            case DOLLAR:
+                if (!json.isDocument()) {
+                    throw new IllegalArgumentException("wrong path "
+                            + remaining(index)
+                            + " at token "
+                            + token
+                            + "; it should be an object but found "
+                            + json.toString());
+                }
+
+                if (index != 0) {
+                    throw new IllegalArgumentException("wrong path "
+                            + remaining(index)
+                            + " at token "
+                            + token
+                            + "; $ can only start the expression");
+                }
+
+                return collect(json, index + 1, ret);
+            case ALL_PROPS:
+                if (!json.isDocument()) {
+                    return false;
+                }
+
+                collectAll(json.asDocument(), index, ret);
+
+                return true;
+            case ALL_ITEMS:
+                if (json.isArray()) {
+                    BsonArray array = json.asArray();
+
+                    for (int cont = 0; cont < array.size(); cont++) {
+                        collectNested(array.get(cont), index, ret);
+                    }
+
+                    return true;
+                } else if (json.isDocument() && hasAllNumericKeys(
+                        json.asDocument())) {
+                    // this might be the case of PATCHING an element array using the dot notation
+                    // e.g. object.array.2
+                    // if so, the array comes as an BsonDocument with all numberic keys
+                    // in any case, it might also be the object { "object": { "array": {"2": xxx }}}
+                    collectAll(json.asDocument(), index, ret);
+
+                    return true;
+                } else {
+                    return false;
+                }
+            default:
+                if (json.isArray()) {
+                    throw new IllegalArgumentException("wrong path "
+                            + remainingAfter(index)
+                            + " at token "
+                            + token
+                            + "; it should be '[*]'");
+                } else if (json.isDocument()) {
+                    BsonValue value = json.asDocument().get(token);
+
+                    return value != null && collect(value, index + 1, ret);
+                } else {
+                    return false;
+                }
+        }
+    }
+
+    private void collectAll(
+            BsonDocument json,
+            int index,
+            List<Optional<BsonValue>> ret) {
+        for (Map.Entry<String, BsonValue> entry : json.entrySet()) {
+            collectNested(entry.getValue(), index, ret);
+        }
+    }
+
+    private void collectNested(
+            BsonValue json,
+            int index,
+            List<Optional<BsonValue>> ret) {
+        // only add null if the next token was the last one
+        if (!collect(json, index + 1, ret) && index == tokens.length - 2) {
+            ret.add(null);
+        }
+    }
+
+    private static boolean hasAllNumericKeys(BsonDocument json) {
+        for (String key : json.keySet()) {
+            try {
+                Integer.parseInt(key);
+            } catch (NumberFormatException nfe) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private String remaining(int index) {
+        return Arrays.toString(Arrays.copyOfRange(tokens, index,
+                tokens.length));
+    }
+
+    private String remainingAfter(int index) {
+        return String.join(".", Arrays.copyOfRange(tokens, index + 1,
+                tokens.length));
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses CSV data (RFC 4180) in a single pass while it is read, holding in
+ * memory only the current record.
+ *
+ * Fields can be enclosed in double quotes, in which case they can contain
+ * the separator, line breaks and escaped double quotes (""). Records are
+ * terminated by CRLF, LF or CR; blank lines are skipped. As common CSV
+ * parsers do, the chars following the closing quote of a field are
+ * appended to it rather than rejected.
+ *
+ * Not thread safe.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class CsvStreamParser {
+
+    private static final char QUOTE = '"';
+    private static final char CR = '\r';
+    private static final char LF = '\n';
+    private static final char BOM = '\uFEFF';
+
+    private enum STATE {
+        FIELD_START,
+        UNQUOTED,
+        QUOTED,
+        QUOTE_IN_QUOTED
+    }
+
+    private final Reader reader;
+    private final char separator;
+    private final int maxFieldLength;
+
+    private final char[] buffer;
+    private int pos = 0;
+    private int limit = 0;
+    private boolean eof = false;
+
+    private final StringBuilder field = new StringBuilder();
+    private final List<String> fields = new ArrayList<>();
+    private boolean[] quoted = new boolean[16];
+    private boolean fieldQuoted = false;
+
+    // the number of line breaks read so far
+    private long line = 0;
+    private long recordLine = 0;
+    private boolean skipLF = false;
+    private boolean started = false;
+
+    /**
+     * @param reader the CSV data
+     * @param separator the field separator
+     * @param bufferSize the size of the char buffer
+     * @param maxFieldLength the max number of chars of a field, i.e. to fail
+     * fast on a missing closing quote
+     */
+    public CsvStreamParser(
+            Reader reader,
+            char separator,
+            int bufferSize,
+            int maxFieldLength) {
+        if (separator == QUOTE || separator == CR || separator == LF) {
+            throw new IllegalArgumentException("invalid separator "
+                    + separator);
+        }
+
+        this.reader = reader;
+        this.separator = separator;
+        this.buffer = new char[bufferSize];
+        this.maxFieldLength = maxFieldLength;
+    }
+
+    /**
+     * reads the next record
+     *
+     * @return false if there are no more records
+     * @throws IOException if the data cannot be read
+     * @throws CsvParseException if the data is not valid CSV
+     */
+    public boolean next() throws IOException {
+        fields.clear();
+        field.setLength(0);
+        fieldQuoted = false;
+
+        STATE state = STATE.FIELD_START;
+        recordLine = line + 1;
+
+        int c;
+
+        while ((c = read()) >= 0) {
+            char ch = (char) c;
+
+            if (skipLF) {
+                skipLF = false;
+
+                if (ch == LF) {
+                    continue;
+                }
+            }
+
+            switch (state) {
+                case FIELD_START:
+                    if (ch == QUOTE) {
+                        fieldQuoted = true;
+                        state = STATE.QUOTED;
+                    } else if (ch == separator) {
+                        endField();
+                    } else if (ch == CR || ch == LF) {
+                        if (endRecord(ch)) {
+                            return true;
+                        }
+
+                        recordLine = line + 1;
+                    } else {
+                        append(ch);
+                        state = STATE.UNQUOTED;
+                    }
+                    break;
+                case UNQUOTED:
+                    if (ch == separator) {
+                        endField();
+                        state = STATE.FIELD_START;
+                    } else if (ch == CR || ch == LF) {
+                        endRecord(ch);
+                        return true;
+                    } else {
+                        append(ch);
+                    }
+                    break;
+                case QUOTED:
+                    if (ch == QUOTE) {
+                        state = STATE.QUOTE_IN_QUOTED;
+                    } else {
+                        if (ch == LF || (ch == CR && peek() != LF)) {
+                            line++;
+                        }
+
+                        append(ch);
+                    }
+                    break;
+                case QUOTE_IN_QUOTED:
+                    if (ch == QUOTE) {
+                        // escaped double quote
+                        append(ch);
+                        state = STATE.QUOTED;
+                    } else if (ch == separator) {
+                        endField();
+                        state = STATE.FIELD_START;
+                    } else if (ch == CR || ch == LF) {
+                        endRecord(ch);
+                        return true;
+                    } else {
+                        append(ch);
+                        state = STATE.UNQUOTED;
+                    }
+                    break;
+            }
+        }
+
+        if (state == STATE.QUOTED) {
+            throw new CsvParseException("missing closing quote of the "
+                    + "field starting at line " + recordLine);
+        }
+
+        if (state != STATE.FIELD_START || !fields.isEmpty() || fieldQuoted) {
+            endField();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the number of fields of the current record
+     */
+    public int size() {
+        return fields.size();
+    }
+
+    /**
+     * @param idx
+     * @return the value of the field of the current record
+     */
+    public String get(int idx) {
+        return fields.get(idx);
+    }
+
+    /**
+     * @param idx
+     * @return true if the field of the current record was enclosed in double
+     * quotes
+     */
+    public boolean isQuoted(int idx) {
+        return quoted[idx];
+    }
+
+    /**
+     * @return the fields of the current record
+     */
+    public List<String> getFields() {
+        return new ArrayList<>(fields);
+    }
+
+    /**
+     * @return the line number where the current record starts
+     */
+    public long getLine() {
+        return recordLine;
+    }
+
+    private void append(char ch) throws CsvParseException {
+        if (field.length() >= maxFieldLength) {
+            throw new CsvParseException("field at line " + recordLine
+                    + " exceeds the max length of "
+                    + maxFieldLength + " chars");
+        }
+
+        field.append(ch);
+    }
+
+    private void endField() {
+        if (fields.size() == quoted.length) {
+            quoted = Arrays.copyOf(quoted, quoted.length * 2);
+        }
+
+        quoted[fields.size()] = fieldQuoted;
+        fields.add(field.toString());
+
+        field.setLength(0);
+        fieldQuoted = false;
+    }
+
+    /**
+     * @return false if the line is blank and was skipped
+     */
+    private boolean endRecord(char ch) {
+        line++;
+        skipLF = ch == CR;
+
+        if (fields.isEmpty() && field.length() == 0 && !fieldQuoted) {
+            return false;
+        }
+
+        endField();
+        return true;
+    }
+
+    private int read() throws IOException {
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+
+        return buffer[pos++];
+    }
+
+    private int peek() throws IOException {
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+
+        return buffer[pos];
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+
+        int read;
+
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+
+        pos = 0;
+        limit = read;
+
+        // skip the byte order mark
+        if (!started) {
+            started = true;
+
+            if (buffer[0] == BOM) {
+                pos = 1;
+                return pos < limit || fill();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * thrown when the data is not valid CSV
+     */
+    public static class CsvParseException extends IOException {
+
+        /**
+         * @param message
+         */
+        public CsvParseException(String message) {
+            super(message);
+        }
+    }
+}
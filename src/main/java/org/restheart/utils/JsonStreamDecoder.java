@@ -0,0 +1,459 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.utils;
+
+import io.undertow.connector.PooledByteBuffer;
+import io.undertow.server.HttpServerExchange;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import org.bson.BsonArray;
+import org.bson.BsonValue;
+import org.bson.json.JsonParseException;
+import org.xnio.channels.Channels;
+import org.xnio.channels.StreamSourceChannel;
+
+/**
+ * Decodes a json request body as its bytes are read from the pooled request
+ * buffers.
+ *
+ * The elements of a json array are parsed one at a time, as soon as their
+ * last byte is read, so that only the current element is buffered; they can
+ * either be collected in a BsonArray or passed to a consumer. Other json
+ * values are parsed when the body is complete.
+ *
+ * The body size is checked while reading: a body exceeding the max size is
+ * rejected as soon as the limit is hit.
+ *
+ * The decoding can also be done in two steps: start() reads the body up to
+ * its first json token, so that the rest of an array can be decoded by a later
+ * handler with resume() and an element consumer.
+ *
+ * If keepRawContent() is invoked, the body is also kept as a string, unless
+ * the elements of an array are passed to a consumer, i.e. they are not
+ * buffered.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class JsonStreamDecoder {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private enum STATE {
+        START, // before the first non whitespace char
+        VALUE, // reading a json value other than an array
+        ARRAY, // in the array, between elements
+        ELEMENT, // reading an array element
+        END // after the end of the array
+    }
+
+    private final long maxSize;
+    private Consumer<BsonValue> elementConsumer;
+
+    // only for the decoding in two steps
+    private StreamSourceChannel channel = null;
+    private ByteBuffer buf = null;
+
+    private STATE state = STATE.START;
+    private long size = 0;
+
+    // the bytes of the value (or array element) being read
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int count = 0;
+
+    // the bytes of the whole body, only if keepRawContent() is invoked
+    private byte[] raw = null;
+    private int rawCount = 0;
+
+    private BsonArray array = null;
+    private boolean afterComma = false;
+    private int depth = 0;
+    private byte quote = 0;
+    private boolean escaped = false;
+
+    /**
+     * reads and decodes the request body
+     *
+     * @param exchange
+     * @param maxSize the max body size in bytes, &lt;= 0 means no limit
+     * @param elementConsumer if not null and the body is an array, it gets
+     * the elements as soon as they are parsed and the returned array is empty
+     * @return the decoded body or null if the body is empty
+     * @throws IOException
+     * @throws RequestBodyTooLargeException if the body exceeds maxSize
+     * @throws JsonParseException if the body is not valid json
+     */
+    public static BsonValue decode(
+            HttpServerExchange exchange,
+            long maxSize,
+            Consumer<BsonValue> elementConsumer)
+            throws IOException {
+        return new JsonStreamDecoder(maxSize, elementConsumer)
+                .decode(exchange);
+    }
+
+    /**
+     * reads and decodes the request body
+     *
+     * @param exchange
+     * @return the decoded body or null if the body is empty
+     * @throws IOException
+     * @throws RequestBodyTooLargeException if the body exceeds maxSize
+     * @throws JsonParseException if the body is not valid json
+     */
+    public BsonValue decode(HttpServerExchange exchange) throws IOException {
+        // reject early, no need to read the body
+        if (maxSize > 0 && exchange.getRequestContentLength() > maxSize) {
+            throw new RequestBodyTooLargeException(maxSize);
+        }
+
+        StreamSourceChannel requestChannel = exchange.getRequestChannel();
+
+        try (PooledByteBuffer pooled = exchange
+                .getConnection()
+                .getByteBufferPool()
+                .allocate()) {
+            ByteBuffer readBuf = pooled.getBuffer();
+            readBuf.clear();
+
+            while (Channels.readBlocking(requestChannel, readBuf) != -1) {
+                readBuf.flip();
+                feed(readBuf);
+                readBuf.clear();
+            }
+        }
+
+        return finish();
+    }
+
+    /**
+     * reads the request body up to its first json token; the rest of the body
+     * is decoded by resume()
+     *
+     * @param exchange
+     * @param maxSize the max body size in bytes, &lt;= 0 means no limit
+     * @param bufferSize the size of the buffer to read the body
+     * @return the decoder
+     * @throws IOException
+     * @throws RequestBodyTooLargeException if the body exceeds maxSize
+     */
+    public static JsonStreamDecoder start(
+            HttpServerExchange exchange,
+            long maxSize,
+            int bufferSize)
+            throws IOException {
+        return start(exchange, maxSize, bufferSize, false);
+    }
+
+    /**
+     * reads the request body up to its first json token; the rest of the body
+     * is decoded by resume()
+     *
+     * @param exchange
+     * @param maxSize the max body size in bytes, &lt;= 0 means no limit
+     * @param bufferSize the size of the buffer to read the body
+     * @param keepRawContent true to keep the body as a string
+     * @return the decoder
+     * @throws IOException
+     * @throws RequestBodyTooLargeException if the body exceeds maxSize
+     */
+    public static JsonStreamDecoder start(
+            HttpServerExchange exchange,
+            long maxSize,
+            int bufferSize,
+            boolean keepRawContent)
+            throws IOException {
+        // reject early, no need to read the body
+        if (maxSize > 0 && exchange.getRequestContentLength() > maxSize) {
+            throw new RequestBodyTooLargeException(maxSize);
+        }
+
+        JsonStreamDecoder decoder = new JsonStreamDecoder(maxSize, null);
+
+        if (keepRawContent) {
+            decoder.keepRawContent();
+        }
+
+        decoder.channel = exchange.getRequestChannel();
+        decoder.buf = ByteBuffer.allocate(bufferSize);
+        decoder.buf.flip();
+
+        while (decoder.state == STATE.START
+                && (decoder.buf.hasRemaining() || decoder.read())) {
+            decoder.process(decoder.buf.get());
+        }
+
+        return decoder;
+    }
+
+    /**
+     * @return true if the body read by start() is a json array
+     */
+    public boolean isArray() {
+        return state == STATE.ARRAY;
+    }
+
+    /**
+     * reads and decodes the rest of the request body started with start()
+     *
+     * @param elementConsumer if not null and the body is an array, it gets
+     * the elements as soon as they are parsed and the returned array is empty
+     * @return the decoded body or null if the body is empty
+     * @throws IOException
+     * @throws RequestBodyTooLargeException if the body exceeds maxSize
+     * @throws JsonParseException if the body is not valid json
+     */
+    public BsonValue resume(Consumer<BsonValue> elementConsumer)
+            throws IOException {
+        if (channel == null) {
+            throw new IllegalStateException("decoding not started");
+        }
+
+        this.elementConsumer = elementConsumer;
+
+        if (elementConsumer != null) {
+            // the elements are not buffered, neither is the body
+            raw = null;
+        }
+
+        do {
+            while (buf.hasRemaining()) {
+                process(buf.get());
+            }
+        } while (read());
+
+        return finish();
+    }
+
+    /**
+     *
+     * @param maxSize the max body size in bytes, &lt;= 0 means no limit
+     * @param elementConsumer if not null and the body is an array, it gets
+     * the elements as soon as they are parsed
+     */
+    public JsonStreamDecoder(
+            long maxSize,
+            Consumer<BsonValue> elementConsumer) {
+        this.maxSize = maxSize;
+        this.elementConsumer = elementConsumer;
+    }
+
+    /**
+     * keeps the bytes of the body, returned as a string by getRawContent()
+     *
+     * @return this decoder
+     */
+    public JsonStreamDecoder keepRawContent() {
+        if (raw == null) {
+            raw = new byte[INITIAL_CAPACITY];
+            rawCount = 0;
+        }
+
+        return this;
+    }
+
+    /**
+     * @return the body read so far as a string, null if keepRawContent() has
+     * not been invoked or if the array elements are passed to a consumer
+     */
+    public String getRawContent() {
+        return raw == null || elementConsumer != null
+                ? null
+                : new String(raw, 0, rawCount, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * decodes the bytes of the buffer
+     *
+     * @param buf
+     * @throws RequestBodyTooLargeException
+     * @throws JsonParseException
+     */
+    public void feed(ByteBuffer buf) throws RequestBodyTooLargeException {
+        size += buf.remaining();
+
+        if (maxSize > 0 && size > maxSize) {
+            throw new RequestBodyTooLargeException(maxSize);
+        }
+
+        while (buf.hasRemaining()) {
+            process(buf.get());
+        }
+    }
+
+    /**
+     * @return the decoded value, null if no bytes have been fed
+     * @throws JsonParseException
+     */
+    public BsonValue finish() {
+        switch (state) {
+            case START:
+                if (size == 0) {
+                    return null;
+                } else {
+                    throw new JsonParseException("no json content");
+                }
+            case VALUE:
+                return parse();
+            case END:
+                return array;
+            default:
+                throw new JsonParseException("unexpected end of json array");
+        }
+    }
+
+    private boolean read() throws IOException {
+        buf.clear();
+
+        int read = Channels.readBlocking(channel, buf);
+
+        buf.flip();
+
+        if (read == -1) {
+            return false;
+        }
+
+        size += read;
+
+        if (maxSize > 0 && size > maxSize) {
+            throw new RequestBodyTooLargeException(maxSize);
+        }
+
+        return true;
+    }
+
+    private void process(byte b) {
+        if (raw != null) {
+            if (rawCount == raw.length) {
+                raw = Arrays.copyOf(raw, raw.length * 2);
+            }
+
+            raw[rawCount++] = b;
+        }
+
+        switch (state) {
+            case START:
+                if (isWhitespace(b)) {
+                    return;
+                }
+
+                if (b == '[') {
+                    array = new BsonArray();
+                    state = STATE.ARRAY;
+                } else {
+                    state = STATE.VALUE;
+                    append(b);
+                }
+
+                return;
+            case VALUE:
+                append(b);
+                return;
+            case ARRAY:
+                if (isWhitespace(b)) {
+                    return;
+                }
+
+                if (b == ']') {
+                    if (afterComma) {
+                        throw new JsonParseException("unexpected ] "
+                                + "after , in json array");
+                    }
+
+                    state = STATE.END;
+                } else if (b == ',') {
+                    throw new JsonParseException("unexpected , "
+                            + "in json array");
+                } else {
+                    afterComma = false;
+                    state = STATE.ELEMENT;
+                    processElement(b);
+                }
+
+                return;
+            case ELEMENT:
+                processElement(b);
+                return;
+            case END:
+                if (!isWhitespace(b)) {
+                    throw new JsonParseException("unexpected content "
+                            + "after the end of json array");
+                }
+        }
+    }
+
+    private void processElement(byte b) {
+        if (quote != 0) {
+            if (escaped) {
+                escaped = false;
+            } else if (b == '\\') {
+                escaped = true;
+            } else if (b == quote) {
+                quote = 0;
+            }
+        } else if (depth == 0 && (b == ',' || b == ']')) {
+            BsonValue element = parse();
+
+            if (elementConsumer == null) {
+                array.add(element);
+            } else {
+                elementConsumer.accept(element);
+            }
+
+            if (b == ']') {
+                state = STATE.END;
+            } else {
+                afterComma = true;
+                state = STATE.ARRAY;
+            }
+
+            return;
+        } else if (b == '"' || b == '\'') {
+            quote = b;
+        } else if (b == '{' || b == '[') {
+            depth++;
+        } else if (b == '}' || b == ']') {
+            depth--;
+        }
+
+        append(b);
+    }
+
+    private BsonValue parse() {
+        // multibyte chars never contain ascii bytes, so the value bytes
+        // always end at a char boundary
+        String json = new String(bytes, 0, count, StandardCharsets.UTF_8);
+        count = 0;
+
+        return JsonUtils.parse(json);
+    }
+
+    private void append(byte b) {
+        if (count == bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+
+        bytes[count++] = b;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.utils;
+
+import io.undertow.connector.ByteBufferPool;
+import io.undertow.connector.PooledByteBuffer;
+import io.undertow.io.IoCallback;
+import io.undertow.io.Sender;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.json.JsonWriter;
+import org.bson.json.JsonWriterSettings;
+
+/**
+ * Serializes BsonDocument and BsonArray values to compact json in a single
+ * pass, writing the UTF-8 bytes straight into (pooled) ByteBuffers without
+ * intermediate strings.
+ *
+ * The output is byte-for-byte the same of JsonUtils.toJson()
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class JsonStreamSerializer {
+
+    private static final BsonDocumentCodec CODEC = new BsonDocumentCodec();
+
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext
+            .builder()
+            .isEncodingCollectibleDocument(true)
+            .build();
+
+    // JsonUtils.toJson() wraps arrays as {"wrapped": [...]}
+    private static final String WRAPPER = "wrapped";
+
+    /**
+     * sends the json representation of the bson value via the exchange
+     * sender; the bytes are written into buffers taken from the connection
+     * pool that are released when the sending completes.
+     *
+     * @param exchange
+     * @param bson
+     * @param callback invoked after the pooled buffers have been released
+     */
+    public static void send(
+            final HttpServerExchange exchange,
+            final BsonValue bson,
+            final IoCallback callback) {
+        if (bson == null) {
+            callback.onComplete(exchange, exchange.getResponseSender());
+            return;
+        }
+
+        if (!bson.isDocument() && !bson.isArray()) {
+            exchange.getResponseSender().send(JsonUtils.toJson(bson), callback);
+            return;
+        }
+
+        final ByteBufferPool pool = exchange.getConnection().getByteBufferPool();
+        final List<PooledByteBuffer> pooled = new ArrayList<>();
+
+        List<ByteBuffer> buffers;
+
+        try {
+            buffers = write(bson, () -> {
+                PooledByteBuffer p = pool.allocate();
+                pooled.add(p);
+                ByteBuffer b = p.getBuffer();
+                b.clear();
+                return b;
+            });
+        } catch (RuntimeException re) {
+            pooled.forEach(PooledByteBuffer::close);
+            throw re;
+        }
+
+        // as the sender does when sending a String with END_EXCHANGE
+        if (callback == IoCallback.END_EXCHANGE
+                && !exchange.isResponseStarted()
+                && exchange.getResponseContentLength() < 0
+                && !exchange.getResponseHeaders()
+                        .contains(Headers.TRANSFER_ENCODING)) {
+            exchange.setResponseContentLength(
+                    buffers.stream().mapToLong(ByteBuffer::remaining).sum());
+        }
+
+        exchange.getResponseSender().send(
+                buffers.toArray(new ByteBuffer[buffers.size()]),
+                new IoCallback() {
+            @Override
+            public void onComplete(
+                    HttpServerExchange exchange,
+                    Sender sender) {
+                pooled.forEach(PooledByteBuffer::close);
+                callback.onComplete(exchange, sender);
+            }
+
+            @Override
+            public void onException(
+                    HttpServerExchange exchange,
+                    Sender sender,
+                    IOException exception) {
+                pooled.forEach(PooledByteBuffer::close);
+                callback.onException(exchange, sender, exception);
+            }
+        });
+    }
+
+    /**
+     * writes the json representation of the bson value into the buffers
+     * obtained from the allocator.
+     *
+     * @param bson either a BsonDocument or a BsonArray
+     * @param allocator supplies empty buffers to write to
+     * @return the buffers, flipped and ready to be read
+     * @throws IllegalArgumentException if bson is not a BsonDocument or a
+     * BsonArray
+     */
+    public static List<ByteBuffer> write(
+            final BsonValue bson,
+            final Supplier<ByteBuffer> allocator) {
+        final BsonDocument doc;
+        final MinifyingUtf8Writer out;
+
+        if (bson.isDocument()) {
+            doc = bson.asDocument();
+            out = new MinifyingUtf8Writer(allocator, 0, false);
+        } else if (bson.isArray()) {
+            doc = new BsonDocument(WRAPPER, bson.asArray());
+            // skip {"wrapped": and the closing }
+            out = new MinifyingUtf8Writer(allocator, WRAPPER.length() + 4, true);
+        } else {
+            throw new IllegalArgumentException("bson must be either "
+                    + "a BsonDocument or a BsonArray");
+        }
+
+        JsonWriter writer = new JsonWriter(out, new JsonWriterSettings());
+
+        CODEC.encode(writer, doc, ENCODER_CONTEXT);
+
+        writer.flush();
+
+        try {
+            return out.finish();
+        } catch (IOException ioe) {
+            // cannot happen, buffers are not drained to any stream
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    /**
+     * creates a JsonWriter that writes compact json to the output stream
+     * through a buffer of the given size; the buffer is written to the
+     * stream every time it gets full and when the JsonWriter is flushed.
+     *
+     * @param out
+     * @param bufferSize
+     * @return the JsonWriter
+     */
+    public static JsonWriter newStreamingJsonWriter(
+            final OutputStream out,
+            final int bufferSize) {
+        return new JsonWriter(
+                new MinifyingUtf8Writer(
+                        () -> ByteBuffer.allocate(bufferSize),
+                        out),
+                new JsonWriterSettings());
+    }
+
+    /**
+     * a Writer that removes the whitespaces outside strings (the same
+     * JsonUtils.minify() does on the JsonWriter output) and encodes the
+     * characters in UTF-8 directly into ByteBuffers
+     */
+    private static class MinifyingUtf8Writer extends Writer {
+
+        private final Supplier<ByteBuffer> allocator;
+        private final List<ByteBuffer> buffers = new ArrayList<>();
+        private ByteBuffer current = null;
+
+        // if not null, the buffer is reused and drained to it when full
+        private final OutputStream sink;
+
+        private int toSkip;
+        private final boolean skipLast;
+        private int pending = -1;
+
+        private boolean inString = false;
+        private boolean escaped = false;
+        private char highSurrogate = 0;
+
+        MinifyingUtf8Writer(
+                Supplier<ByteBuffer> allocator,
+                int toSkip,
+                boolean skipLast) {
+            this.allocator = allocator;
+            this.sink = null;
+            this.toSkip = toSkip;
+            this.skipLast = skipLast;
+        }
+
+        MinifyingUtf8Writer(
+                Supplier<ByteBuffer> allocator,
+                OutputStream sink) {
+            this.allocator = allocator;
+            this.sink = sink;
+            this.toSkip = 0;
+            this.skipLast = false;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                process(cbuf[i]);
+            }
+        }
+
+        @Override
+        public void write(String str) throws IOException {
+            for (int i = 0; i < str.length(); i++) {
+                process(str.charAt(i));
+            }
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            process((char) c);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (sink != null) {
+                if (pending >= 0) {
+                    encode((char) pending);
+                    pending = -1;
+                }
+
+                drain();
+                sink.flush();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        List<ByteBuffer> finish() throws IOException {
+            if (pending >= 0 && !skipLast) {
+                encode((char) pending);
+            }
+
+            pending = -1;
+
+            buffers.forEach(ByteBuffer::flip);
+
+            return buffers;
+        }
+
+        private void process(char c) throws IOException {
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (Character.isWhitespace(c)) {
+                return;
+            } else if (c == '"') {
+                inString = true;
+            }
+
+            if (toSkip > 0) {
+                toSkip--;
+                return;
+            }
+
+            // hold back one char, so that the last one can be skipped
+            if (pending >= 0) {
+                encode((char) pending);
+            }
+
+            pending = c;
+        }
+
+        private void encode(char c) throws IOException {
+            if (highSurrogate != 0 && !Character.isLowSurrogate(c)) {
+                // unpaired surrogate, replaced as String.getBytes() does
+                highSurrogate = 0;
+                put((byte) '?');
+            }
+
+            if (Character.isHighSurrogate(c)) {
+                highSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                if (highSurrogate == 0) {
+                    put((byte) '?');
+                    return;
+                }
+
+                int cp = Character.toCodePoint(highSurrogate, c);
+                highSurrogate = 0;
+                put((byte) (0xF0 | (cp >> 18)));
+                put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                put((byte) (0x80 | (cp & 0x3F)));
+            } else if (c < 0x80) {
+                put((byte) c);
+            } else if (c < 0x800) {
+                put((byte) (0xC0 | (c >> 6)));
+                put((byte) (0x80 | (c & 0x3F)));
+            } else {
+                put((byte) (0xE0 | (c >> 12)));
+                put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+
+        private void put(byte b) throws IOException {
+            if (current == null) {
+                current = allocator.get();
+
+                if (sink == null) {
+                    buffers.add(current);
+                }
+            } else if (!current.hasRemaining()) {
+                if (sink == null) {
+                    current = allocator.get();
+                    buffers.add(current);
+                } else {
+                    drain();
+                }
+            }
+
+            current.put(b);
+        }
+
+        private void drain() throws IOException {
+            if (current == null || current.position() == 0) {
+                return;
+            }
+
+            current.flip();
+
+            if (current.hasArray()) {
+                sink.write(current.array(),
+                        current.arrayOffset() + current.position(),
+                        current.remaining());
+            } else {
+                byte[] bytes = new byte[current.remaining()];
+                current.get(bytes);
+                sink.write(bytes);
+            }
+
+            current.clear();
+        }
+    }
+
+    private JsonStreamSerializer() {
+    }
+}
@@ -18,11 +18,10 @@
 package org.restheart.utils;
 
 import com.mongodb.MongoClient;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import org.bson.BsonArray;
 import org.bson.BsonDocument;
@@ -224,180 +223,7 @@ public class JsonUtils {
             BsonValue root,
             String path)
             throws IllegalArgumentException {
-        String pathTokens[] = path.split(Pattern.quote("."));
-
-        if (pathTokens == null
-                || pathTokens.length == 0
-                || !pathTokens[0].equals(DOLLAR)) {
-            throw new IllegalArgumentException(
-                    "wrong path. it must use the . notation and start with $");
-        } else if (!(root instanceof BsonDocument)) {
-            throw new IllegalArgumentException(
-                    "wrong json. it must be an object");
-        } else {
-            return _getPropsFromPath(root, pathTokens, pathTokens.length);
-        }
-    }
-
-    private static List<Optional<BsonValue>> _getPropsFromPath(
-            BsonValue json,
-            String[] pathTokens,
-            int totalTokensLength)
-            throws IllegalArgumentException {
-        if (pathTokens == null) {
-            throw new IllegalArgumentException("pathTokens argument cannot be null");
-        }
-
-        String pathToken;
-
-        if (pathTokens.length > 0) {
-            if (json == null) {
-                return null;
-            } else {
-                pathToken = pathTokens[0];
-
-                if ("".equals(pathToken)) {
-                    throw new IllegalArgumentException("wrong path "
-                            + Arrays.toString(pathTokens)
-                            + " path tokens cannot be empty strings");
-                }
-            }
-        } else if (json.isNull()) {
-            // if value is null return an empty optional
-            ArrayList<Optional<BsonValue>> ret = new ArrayList<>();
-            ret.add(Optional.empty());
-            return ret;
-        } else {
-            ArrayList<Optional<BsonValue>> ret = new ArrayList<>();
-            ret.add(Optional.ofNullable(json));
-            return ret;
-        }
-
-        List<Optional<BsonValue>> nested;
-
-        switch (pathToken) {
-            case DOLLAR:
-                if (!(json.isDocument())) {
-                    throw new IllegalArgumentException("wrong path "
-                            + Arrays.toString(pathTokens)
-                            + " at token "
-                            + pathToken
-                            + "; it should be an object but found "
-                            + json.toString());
-                }
-
-                if (pathTokens.length != totalTokensLength) {
-                    throw new IllegalArgumentException("wrong path "
-                            + Arrays.toString(pathTokens)
-                            + " at token "
-                            + pathToken
-                            + "; $ can only start the expression");
-                }
-
-                return _getPropsFromPath(
-                        json,
-                        subpath(pathTokens),
-                        totalTokensLength);
-            case "*":
-                if (!(json.isDocument())) {
-                    return null;
-                } else {
-                    ArrayList<Optional<BsonValue>> ret = new ArrayList<>();
-
-                    for (String key : json.asDocument().keySet()) {
-                        nested = _getPropsFromPath(json.asDocument().get(key), subpath(pathTokens), totalTokensLength);
-
-                        // only add null if subpath(pathTokens) was the last token
-                        if (nested == null && pathTokens.length == 2) {
-                            ret.add(null);
-                        } else if (nested != null) {
-                            ret.addAll(nested);
-                        }
-                    }
-
-                    return ret;
-                }
-            case "[*]":
-                if (!(json.isArray())) {
-                    if (json.isDocument()) {
-                        // this might be the case of PATCHING an element array using the dot notation
-                        // e.g. object.array.2
-                        // if so, the array comes as an BsonDocument with all numberic keys
-                        // in any case, it might also be the object { "object": { "array": {"2": xxx }}}
-
-                        boolean allNumbericKeys = json.asDocument().keySet()
-                                .stream().allMatch(k -> {
-                                    try {
-                                        Integer.parseInt(k);
-                                        return true;
-                                    } catch (NumberFormatException nfe) {
-                                        return false;
-                                    }
-                                });
-
-                        if (allNumbericKeys) {
-                            ArrayList<Optional<BsonValue>> ret = new ArrayList<>();
-
-                            for (String key : json.asDocument().keySet()) {
-                                nested = _getPropsFromPath(
-                                        json.asDocument().get(key),
-                                        subpath(pathTokens),
-                                        totalTokensLength);
-
-                                // only add null if subpath(pathTokens) was the last token
-                                if (nested == null && pathTokens.length == 2) {
-                                    ret.add(null);
-                                } else if (nested != null) {
-                                    ret.addAll(nested);
-                                }
-                            }
-
-                            return ret;
-                        }
-                    }
-
-                    return null;
-                } else {
-                    ArrayList<Optional<BsonValue>> ret = new ArrayList<>();
-
-                    if (!json.asArray().isEmpty()) {
-                        for (int index = 0; index < json.asArray().size(); index++) {
-                            nested = _getPropsFromPath(
-                                    json.asArray().get(index),
-                                    subpath(pathTokens),
-                                    totalTokensLength);
-
-                            // only add null if subpath(pathTokens) was the last token
-                            if (nested == null && pathTokens.length == 2) {
-                                ret.add(null);
-                            } else if (nested != null) {
-                                ret.addAll(nested);
-                            }
-                        }
-                    }
-
-                    return ret;
-                }
-            default:
-                if (json.isArray()) {
-                    throw new IllegalArgumentException("wrong path "
-                            + pathFromTokens(pathTokens)
-                            + " at token "
-                            + pathToken
-                            + "; it should be '[*]'");
-                } else if (json.isDocument()) {
-                    if (json.asDocument().containsKey(pathToken)) {
-                        return _getPropsFromPath(
-                                json.asDocument().get(pathToken),
-                                subpath(pathTokens),
-                                totalTokensLength);
-                    } else {
-                        return null;
-                    }
-                } else {
-                    return null;
-                }
-        }
+        return CompiledJsonPath.compile(path).getProps(root);
     }
 
     /**
@@ -481,73 +307,52 @@ public class JsonUtils {
         return items.size();
     }
 
-    private static String pathFromTokens(String[] pathTokens) {
-        if (pathTokens == null) {
-            return null;
-        }
-
-        String ret = "";
-
-        for (int cont = 1; cont < pathTokens.length; cont++) {
-            ret = ret.concat(pathTokens[cont]);
-
-            if (cont < pathTokens.length - 1) {
-                ret = ret.concat(".");
-            }
-        }
-
-        return ret;
-    }
-
-    private static String[] subpath(String[] pathTokens) {
-        ArrayList<String> subpath = new ArrayList<>();
-
-        for (int cont = 1; cont < pathTokens.length; cont++) {
-            subpath.add(pathTokens[cont]);
-        }
-
-        return subpath.toArray(new String[subpath.size()]);
-    }
-
     public static boolean checkType(Optional<BsonValue> o, String type) {
-        if (!o.isPresent() && !"null".equals(type) && !"notnull".equals(type)) {
-            return false;
-        }
+        return typeChecker(type).test(o);
+    }
 
+    /**
+     * @param type
+     * @return the predicate that checks if a property (as returned by
+     * getPropsFromPath()) is of the given type, to be created once and used
+     * on many properties
+     */
+    public static Predicate<Optional<BsonValue>> typeChecker(String type) {
         switch (type.toLowerCase().trim()) {
             case "null":
-                return !o.isPresent();
+                return o -> !o.isPresent();
             case "notnull":
-                return o.isPresent();
+                return o -> o.isPresent();
             case "object":
-                return o.get().isDocument();
+                return o -> o.isPresent() && o.get().isDocument();
             case "array":
-                return o.get().isArray();
+                return o -> o.isPresent() && o.get().isArray();
             case "string":
-                return o.get().isString();
+                return o -> o.isPresent() && o.get().isString();
             case "number":
-                return o.get().isNumber();
+                return o -> o.isPresent() && o.get().isNumber();
             case "boolean":
-                return o.get().isBoolean();
+                return o -> o.isPresent() && o.get().isBoolean();
             case "objectid":
-                return o.get().isObjectId();
+                return o -> o.isPresent() && o.get().isObjectId();
             case "objectidstring":
-                return o.get().isString()
+                return o -> o.isPresent()
+                        && o.get().isString()
                         && ObjectId.isValid(o.get().asString().getValue());
             case "date":
-                return o.get().isDateTime();
+                return o -> o.isPresent() && o.get().isDateTime();
             case "timestamp":
-                return o.get().isTimestamp();
+                return o -> o.isPresent() && o.get().isTimestamp();
             case "maxkey":
-                return o.get() instanceof BsonMaxKey;
+                return o -> o.isPresent() && o.get() instanceof BsonMaxKey;
             case "minkey":
-                return o.get() instanceof BsonMinKey;
+                return o -> o.isPresent() && o.get() instanceof BsonMinKey;
             case "symbol":
-                return o.get().isSymbol();
+                return o -> o.isPresent() && o.get().isSymbol();
             case "code":
-                return o.get() instanceof BsonJavaScript;
+                return o -> o.isPresent() && o.get() instanceof BsonJavaScript;
             default:
-                return false;
+                return o -> false;
         }
     }
 
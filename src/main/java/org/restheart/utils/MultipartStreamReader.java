@@ -0,0 +1,348 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.utils;
+
+import io.undertow.util.Headers;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads a multipart/form-data request body one part at a time, exposing the
+ * body of the current part as an InputStream that ends at the next boundary.
+ *
+ * Unlike undertow's FormDataParser, file parts are never spooled to disk or
+ * buffered: the memory used is the buffer, whatever the size of the parts.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class MultipartStreamReader {
+
+    private static final int MAX_HEADER_LINE_LENGTH = 8192;
+
+    private static final String CONTENT_DISPOSITION = "content-disposition";
+    private static final String CONTENT_TYPE = "content-type";
+
+    private final InputStream in;
+
+    // CRLF--boundary
+    private final byte[] delimiter;
+
+    private final byte[] buf;
+    private int pos = 0;
+    private int limit = 0;
+    private boolean eof = false;
+
+    private boolean partEnded = false;
+    private boolean finished = false;
+
+    private Map<String, String> headers = new HashMap<>();
+
+    private final InputStream partInputStream = new PartInputStream();
+
+    /**
+     *
+     * @param in the request body
+     * @param boundary the boundary of the multipart content type
+     * @param bufferSize
+     */
+    public MultipartStreamReader(
+            InputStream in,
+            String boundary,
+            int bufferSize) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary)
+                .getBytes(StandardCharsets.ISO_8859_1);
+        this.buf = new byte[Math.max(bufferSize, delimiter.length * 2)];
+
+        // the first boundary has no leading CRLF; with this the content
+        // before it is read as a (discarded) part
+        buf[limit++] = '\r';
+        buf[limit++] = '\n';
+    }
+
+    /**
+     * @param contentType the request content type
+     * @return the boundary or null if the content type is not
+     * multipart/form-data or does not specify the boundary
+     */
+    public static String getBoundary(String contentType) {
+        if (contentType == null
+                || !contentType.toLowerCase()
+                        .startsWith("multipart/form-data")) {
+            return null;
+        }
+
+        return Headers.extractQuotedValueFromHeader(contentType, "boundary");
+    }
+
+    /**
+     * moves to the next part, skipping what has not been read of the current
+     * one
+     *
+     * @return false if there are no more parts
+     * @throws IOException
+     */
+    public boolean next() throws IOException {
+        if (finished) {
+            return false;
+        }
+
+        byte[] skip = new byte[buf.length];
+
+        while (readPart(skip, 0, skip.length) >= 0) {
+        }
+
+        if (fill(2) < 2) {
+            throw new IOException("unexpected end of multipart content");
+        }
+
+        if (buf[pos] == '-' && buf[pos + 1] == '-') {
+            finished = true;
+            return false;
+        }
+
+        // the rest of the boundary line
+        readLine();
+
+        headers = new HashMap<>();
+
+        String line;
+
+        while (!(line = readLine()).isEmpty()) {
+            int idx = line.indexOf(':');
+
+            if (idx > 0) {
+                headers.put(line.substring(0, idx).trim().toLowerCase(),
+                        line.substring(idx + 1).trim());
+            }
+        }
+
+        partEnded = false;
+
+        return true;
+    }
+
+    /**
+     * @return the name of the current part
+     */
+    public String getName() {
+        return getDispositionValue("name");
+    }
+
+    /**
+     * @return the file name of the current part or null if it is not a file
+     */
+    public String getFileName() {
+        return getDispositionValue("filename");
+    }
+
+    /**
+     * @return true if the current part is a file
+     */
+    public boolean isFile() {
+        return getFileName() != null;
+    }
+
+    /**
+     * @return the content type of the current part or null if not specified
+     */
+    public String getContentType() {
+        return headers.get(CONTENT_TYPE);
+    }
+
+    /**
+     * @return the body of the current part; the stream ends at the next
+     * boundary and it is not valid after next() is invoked
+     */
+    public InputStream getInputStream() {
+        return partInputStream;
+    }
+
+    /**
+     * reads the body of the current part as a string
+     *
+     * @param charset
+     * @param maxSize the max size in bytes, &lt;= 0 means no limit
+     * @return the body of the current part
+     * @throws IOException
+     * @throws RequestBodyTooLargeException if the part exceeds maxSize
+     */
+    public String readString(Charset charset, long maxSize)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] b = new byte[buf.length];
+
+        int read;
+
+        while ((read = readPart(b, 0, b.length)) >= 0) {
+            if (maxSize > 0 && out.size() + read > maxSize) {
+                throw new RequestBodyTooLargeException(maxSize);
+            }
+
+            out.write(b, 0, read);
+        }
+
+        return new String(out.toByteArray(), charset);
+    }
+
+    private String getDispositionValue(String key) {
+        String disposition = headers.get(CONTENT_DISPOSITION);
+
+        return disposition == null
+                ? null
+                : Headers.extractQuotedValueFromHeader(disposition, key);
+    }
+
+    /**
+     * reads from the current part, stopping at the delimiter
+     *
+     * @return the number of bytes read or -1 at the end of the part
+     */
+    private int readPart(byte[] b, int off, int len) throws IOException {
+        if (partEnded) {
+            return -1;
+        }
+
+        if (len == 0) {
+            return 0;
+        }
+
+        int available = fill(delimiter.length);
+
+        if (available < delimiter.length) {
+            throw new IOException("unexpected end of multipart content");
+        }
+
+        int max = Math.min(len, available);
+        int n = 0;
+
+        while (n < max) {
+            int i = pos + n;
+
+            if (buf[i] == '\r') {
+                if (limit - i < delimiter.length) {
+                    // might be a partial delimiter, wait for more bytes
+                    break;
+                }
+
+                if (isDelimiterAt(i)) {
+                    if (n == 0) {
+                        pos += delimiter.length;
+                        partEnded = true;
+                        return -1;
+                    }
+
+                    break;
+                }
+            }
+
+            n++;
+        }
+
+        System.arraycopy(buf, pos, b, off, n);
+        pos += n;
+
+        return n;
+    }
+
+    private boolean isDelimiterAt(int i) {
+        for (int j = 0; j < delimiter.length; j++) {
+            if (buf[i + j] != delimiter[j]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        while (true) {
+            if (fill(2) < 2) {
+                throw new IOException("unexpected end of multipart content");
+            }
+
+            if (buf[pos] == '\r' && buf[pos + 1] == '\n') {
+                pos += 2;
+                return new String(line.toByteArray(), StandardCharsets.UTF_8);
+            }
+
+            if (line.size() >= MAX_HEADER_LINE_LENGTH) {
+                throw new IOException("multipart header line too long");
+            }
+
+            line.write(buf[pos++]);
+        }
+    }
+
+    /**
+     * makes sure that at least n bytes are buffered, unless the stream ends
+     *
+     * @return the number of buffered bytes
+     */
+    private int fill(int n) throws IOException {
+        if (limit - pos >= n || eof) {
+            return limit - pos;
+        }
+
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+
+        while (limit < n) {
+            int read = in.read(buf, limit, buf.length - limit);
+
+            if (read < 0) {
+                eof = true;
+                break;
+            }
+
+            limit += read;
+        }
+
+        return limit - pos;
+    }
+
+    private class PartInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+
+            int read;
+
+            while ((read = readPart(b, 0, 1)) == 0) {
+            }
+
+            return read < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return readPart(b, off, len);
+        }
+    }
+}
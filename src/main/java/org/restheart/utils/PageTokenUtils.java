@@ -0,0 +1,363 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.bson.BsonArray;
+import org.bson.BsonBoolean;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonNull;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.json.JsonParseException;
+
+/**
+ * Helper for the keyset (seek) pagination mode.
+ *
+ * The page token is the url-safe base64 encoding of the json document holding
+ * the sort key values of the last document of a page; it is turned back into
+ * a range filter on the sort fields so that every page costs the same,
+ * regardless of its position.
+ *
+ * The values are encoded as strict extended json, so that their BSON type
+ * survives the round trip: since comparison operators only match values of
+ * the same type, the range filter also selects the values of the types
+ * following (or preceding, for descending keys) the one of the token in the
+ * canonical MongoDB sort order. Missing fields sort and match as null.
+ * Arrays and regular expressions are not supported as sort key values.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class PageTokenUtils {
+
+    private static final String _ID = "_id";
+
+    /**
+     * the $type aliases of the canonical MongoDB sort order, types in the
+     * same bracket compare by value. Null also matches the missing fields.
+     */
+    private static final List<List<String>> TYPE_ORDER = Arrays.asList(
+            Collections.singletonList("minKey"),
+            Collections.singletonList("null"),
+            Collections.singletonList("number"),
+            Arrays.asList("symbol", "string"),
+            Collections.singletonList("object"),
+            Collections.singletonList("binData"),
+            Collections.singletonList("objectId"),
+            Collections.singletonList("bool"),
+            Collections.singletonList("date"),
+            Collections.singletonList("timestamp"),
+            Collections.singletonList("regex"),
+            Collections.singletonList("maxKey"));
+
+    private static final int MIN_KEY_BRACKET = 0;
+    private static final int NULL_BRACKET = 1;
+    private static final int MAX_KEY_BRACKET = TYPE_ORDER.size() - 1;
+
+    /**
+     * the keyset pagination requires a total order, this adds the _id as last
+     * sort key if missing.
+     *
+     * @param sort
+     * @return the sort document with the _id tie-breaker
+     */
+    public static BsonDocument getKeysetSort(BsonDocument sort) {
+        BsonDocument ret = sort == null ? new BsonDocument() : sort.clone();
+
+        if (!ret.containsKey(_ID)) {
+            ret.put(_ID, new BsonInt32(1));
+        }
+
+        return ret;
+    }
+
+    /**
+     * adds the sort fields to an inclusive projection, since the sort key
+     * values of the last document are needed to build the next page token
+     *
+     * @param keys the projection, can be null
+     * @param sort
+     * @return the projection including the sort keys
+     */
+    public static BsonDocument getKeysetProjection(
+            BsonDocument keys,
+            BsonDocument sort) {
+        if (keys == null || keys.isEmpty() || !isInclusive(keys)) {
+            return keys;
+        }
+
+        BsonDocument ret = keys.clone();
+
+        sort.keySet().stream()
+                .filter(k -> !ret.containsKey(k))
+                .forEach(k -> ret.put(k, new BsonInt32(1)));
+
+        return ret;
+    }
+
+    /**
+     * @param last the last document of the page
+     * @param sort the keyset sort document
+     * @return the token pointing to the page following the document
+     * @throws IllegalArgumentException if a sort key value of the document
+     * has a type not supported by the keyset pagination
+     */
+    public static String encode(BsonDocument last, BsonDocument sort)
+            throws IllegalArgumentException {
+        BsonDocument values = new BsonDocument();
+
+        sort.keySet().forEach(k -> {
+            BsonValue value = getValue(last, k);
+
+            // throws IllegalArgumentException if not supported
+            getTypeBracket(k, value);
+
+            values.put(k, value);
+        });
+
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(values.toJson()
+                        .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param token
+     * @param sort the keyset sort document
+     * @return the sort key values of the token
+     * @throws IllegalArgumentException if the token is invalid or does not
+     * match the sort document
+     */
+    public static BsonDocument decode(String token, BsonDocument sort)
+            throws IllegalArgumentException {
+        BsonDocument values;
+
+        try {
+            values = BsonDocument.parse(new String(
+                    Base64.getUrlDecoder().decode(token),
+                    StandardCharsets.UTF_8));
+        } catch (JsonParseException jpe) {
+            throw new IllegalArgumentException("invalid page token", jpe);
+        }
+
+        if (!new ArrayList<>(values.keySet())
+                .equals(new ArrayList<>(sort.keySet()))) {
+            throw new IllegalArgumentException("page token does not match "
+                    + "the sort_by parameter");
+        }
+
+        values.forEach((k, v) -> getTypeBracket(k, v));
+
+        return values;
+    }
+
+    /**
+     * builds the filter selecting the documents following the given sort key
+     * values, i.e. for sort {a:1, b:-1} and values {a:x, b:y}<br>
+     * {$or: [ {a: {$gt: x}}, {a: x, b: {$lt: y}} ]}<br>
+     * where {a: {$gt: x}} actually is the disjunction of the values greater
+     * than x of its type bracket and of the values of the following brackets,
+     * e.g. {a: {$type: 'string'}} if x is a number.
+     *
+     * @param values the sort key values
+     * @param sort the keyset sort document
+     * @return the range filter
+     */
+    public static BsonDocument getRangeFilter(
+            BsonDocument values,
+            BsonDocument sort) {
+        BsonArray or = new BsonArray();
+        List<Map.Entry<String, BsonValue>> previous = new ArrayList<>();
+
+        for (Map.Entry<String, BsonValue> s : sort.entrySet()) {
+            BsonDocument cond = new BsonDocument();
+
+            previous.forEach(p -> cond.put(p.getKey(),
+                    getEqualityCondition(values.get(p.getKey()))));
+
+            List<BsonDocument> following = getFollowingConditions(
+                    s.getKey(),
+                    values.get(s.getKey()),
+                    isDescending(s.getValue()));
+
+            if (following.size() == 1) {
+                cond.putAll(following.get(0));
+                or.add(cond);
+            } else if (cond.isEmpty()) {
+                following.forEach(or::add);
+            } else if (!following.isEmpty()) {
+                cond.put("$or", new BsonArray(following));
+                or.add(cond);
+            }
+
+            previous.add(s);
+        }
+
+        if (or.isEmpty()) {
+            // the token points past the end of the sort order
+            return new BsonDocument(_ID,
+                    new BsonDocument("$exists", new BsonBoolean(false)));
+        }
+
+        return or.size() == 1
+                ? or.get(0).asDocument()
+                : new BsonDocument("$or", or);
+    }
+
+    /**
+     * @param filter the filter of the request, can be empty
+     * @param rangeFilter
+     * @return the filter combining both
+     */
+    public static BsonDocument and(
+            BsonDocument filter,
+            BsonDocument rangeFilter) {
+        if (filter == null || filter.isEmpty()) {
+            return rangeFilter;
+        }
+
+        BsonArray and = new BsonArray();
+        and.add(filter);
+        and.add(rangeFilter);
+
+        return new BsonDocument("$and", and);
+    }
+
+    /**
+     * @return the conditions on key matching the values following value,
+     * i.e. the greater (or lower for descending keys) values of the same type
+     * bracket and the values of the following (or preceding) brackets
+     */
+    private static List<BsonDocument> getFollowingConditions(
+            String key,
+            BsonValue value,
+            boolean descending) {
+        List<BsonDocument> ret = new ArrayList<>();
+
+        int bracket = getTypeBracket(key, value);
+
+        // null, minKey and maxKey are the only values of their bracket
+        if (bracket != MIN_KEY_BRACKET
+                && bracket != NULL_BRACKET
+                && bracket != MAX_KEY_BRACKET) {
+            ret.add(new BsonDocument(key,
+                    new BsonDocument(descending ? "$lt" : "$gt", value)));
+        }
+
+        int from = descending ? 0 : bracket + 1;
+        int to = descending ? bracket : TYPE_ORDER.size();
+
+        for (int b = from; b < to; b++) {
+            if (b == NULL_BRACKET) {
+                // also matches the missing fields
+                ret.add(new BsonDocument(key, BsonNull.VALUE));
+            } else {
+                TYPE_ORDER.get(b).forEach(type -> ret.add(
+                        new BsonDocument(key, new BsonDocument("$type",
+                                new BsonString(type)))));
+            }
+        }
+
+        return ret;
+    }
+
+    private static BsonValue getEqualityCondition(BsonValue value) {
+        // a document value would be taken as an operator expression
+        return value.isDocument()
+                ? new BsonDocument("$eq", value)
+                : value;
+    }
+
+    /**
+     * @return the index of the bracket of value in TYPE_ORDER
+     * @throws IllegalArgumentException if the type of value is not supported
+     */
+    private static int getTypeBracket(String key, BsonValue value)
+            throws IllegalArgumentException {
+        switch (value.getBsonType()) {
+            case MIN_KEY:
+                return MIN_KEY_BRACKET;
+            case NULL:
+                return NULL_BRACKET;
+            case INT32:
+            case INT64:
+            case DOUBLE:
+            case DECIMAL128:
+                return 2;
+            case SYMBOL:
+            case STRING:
+                return 3;
+            case DOCUMENT:
+                return 4;
+            case BINARY:
+                return 5;
+            case OBJECT_ID:
+                return 6;
+            case BOOLEAN:
+                return 7;
+            case DATE_TIME:
+                return 8;
+            case TIMESTAMP:
+                return 9;
+            case MAX_KEY:
+                return MAX_KEY_BRACKET;
+            default:
+                throw new IllegalArgumentException("sort key " + key
+                        + " of type " + value.getBsonType()
+                        + " is not supported with keyset pagination");
+        }
+    }
+
+    private static boolean isDescending(BsonValue direction) {
+        return direction.isNumber()
+                && direction.asNumber().intValue() < 0;
+    }
+
+    private static boolean isInclusive(BsonDocument keys) {
+        return keys.entrySet().stream()
+                .filter(e -> !_ID.equals(e.getKey()))
+                .anyMatch(e -> (e.getValue().isNumber()
+                        && e.getValue().asNumber().intValue() != 0)
+                        || (e.getValue().isBoolean()
+                        && e.getValue().asBoolean().getValue()));
+    }
+
+    private static BsonValue getValue(BsonDocument doc, String path) {
+        BsonValue cur = doc;
+
+        for (String token : path.split("\\.")) {
+            if (cur == null || !cur.isDocument()) {
+                return BsonNull.VALUE;
+            }
+
+            cur = cur.asDocument().get(token);
+        }
+
+        return cur == null ? BsonNull.VALUE : cur;
+    }
+
+    private PageTokenUtils() {
+    }
+}
@@ -41,8 +41,11 @@ public class HttpServerExchange extends AbstractAttachable {
     private int statusCode = 0;
     private String queryString;
     private String requestPath;
+    private String relativePath;
     private HttpString requestMethod;
     private Map<String, Deque<String>> queryParameters;
+    private final HeaderMap requestHeaders = new HeaderMap();
+    private final HeaderMap responseHeaders = new HeaderMap();
 
     public HttpServerExchange() {
     }
@@ -121,6 +124,22 @@ public class HttpServerExchange extends AbstractAttachable {
         this.requestPath = requestPath;
     }
 
+    /**
+     * @return the relativePath
+     */
+    public String getRelativePath() {
+        return relativePath;
+    }
+
+    /**
+     * @param relativePath the relativePath to set
+     * @return
+     */
+    public HttpServerExchange setRelativePath(String relativePath) {
+        this.relativePath = relativePath;
+        return this;
+    }
+
     /**
      * @return the requestMethod
      */
@@ -140,7 +159,11 @@ public class HttpServerExchange extends AbstractAttachable {
     }
 
     public HeaderMap getRequestHeaders() {
-        return null;
+        return requestHeaders;
+    }
+
+    public HeaderMap getResponseHeaders() {
+        return responseHeaders;
     }
 
     public SecurityContext getSecurityContext() {
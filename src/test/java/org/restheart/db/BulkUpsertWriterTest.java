@@ -0,0 +1,218 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.db;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.WriteModel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonObjectId;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.restheart.utils.HttpStatus;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class BulkUpsertWriterTest {
+
+    private MongoCollection<BsonDocument> coll;
+
+    // the number of the bulkWrite call that fails, -1 for none
+    private int failingCall = -1;
+    private int calls = 0;
+
+    public BulkUpsertWriterTest() {
+    }
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        coll = mock(MongoCollection.class);
+
+        when(coll.bulkWrite(anyList(), any(BulkWriteOptions.class)))
+                .thenAnswer(invocation -> {
+                    List<WriteModel<BsonDocument>> models
+                            = invocation.getArgument(0);
+
+                    BulkWriteResult result = upserted(models.size());
+
+                    if (calls++ == failingCall) {
+                        throw new MongoBulkWriteException(
+                                upserted(1),
+                                Collections.singletonList(new BulkWriteError(
+                                        11000,
+                                        "duplicate key",
+                                        new BsonDocument(),
+                                        1)),
+                                null,
+                                new ServerAddress());
+                    }
+
+                    return result;
+                });
+    }
+
+    @Test
+    public void testBatches() {
+        BulkUpsertWriter writer = writer(10, true);
+
+        for (int i = 0; i < 25; i++) {
+            writer.add(doc(i));
+        }
+
+        BulkOperationResult result = writer.finish();
+
+        verify(coll, times(3)).bulkWrite(anyList(), any(BulkWriteOptions.class));
+
+        assertEquals(HttpStatus.SC_OK, result.getHttpCode());
+        assertEquals(3, result.getBatches());
+        assertEquals(25, result.getBulkResult().getUpserts().size());
+        assertEquals(24, result.getBulkResult().getUpserts().get(24).getIndex());
+        assertTrue(result.getBatchErrors().isEmpty());
+    }
+
+    @Test
+    public void testSingleBatch() {
+        BulkUpsertWriter writer = writer(0, true);
+
+        for (int i = 0; i < 25; i++) {
+            writer.add(doc(i));
+        }
+
+        BulkOperationResult result = writer.finish();
+
+        verify(coll, times(1)).bulkWrite(anyList(), any(BulkWriteOptions.class));
+
+        assertEquals(1, result.getBatches());
+        assertEquals(25, result.getBulkResult().getUpserts().size());
+    }
+
+    @Test
+    public void testEmpty() {
+        BulkOperationResult result = writer(10, true).finish();
+
+        verify(coll, times(0)).bulkWrite(anyList(), any(BulkWriteOptions.class));
+
+        assertEquals(HttpStatus.SC_OK, result.getHttpCode());
+        assertEquals(0, result.getBulkResult().getUpserts().size());
+    }
+
+    @Test
+    public void testOrderedStopsAtFailedBatch() {
+        failingCall = 1;
+
+        BulkUpsertWriter writer = writer(10, true);
+
+        for (int i = 0; i < 35; i++) {
+            writer.add(doc(i));
+        }
+
+        BulkOperationResult result = writer.finish();
+
+        verify(coll, times(2)).bulkWrite(anyList(), any(BulkWriteOptions.class));
+
+        assertEquals(HttpStatus.SC_MULTI_STATUS, result.getHttpCode());
+        assertEquals(4, result.getBatches());
+        assertEquals(11, result.getBulkResult().getUpserts().size());
+        assertEquals(1, result.getBatchErrors().size());
+        assertEquals(1, result.getBatchErrors().get(0).getBatch());
+        assertEquals(11, result.getBatchErrors().get(0)
+                .getWriteErrors().get(0).getIndex());
+    }
+
+    @Test
+    public void testUnorderedContinuesAfterFailedBatch() {
+        failingCall = 1;
+
+        BulkUpsertWriter writer = writer(10, false);
+
+        for (int i = 0; i < 35; i++) {
+            writer.add(doc(i));
+        }
+
+        BulkOperationResult result = writer.finish();
+
+        verify(coll, times(4)).bulkWrite(anyList(), any(BulkWriteOptions.class));
+
+        assertEquals(HttpStatus.SC_MULTI_STATUS, result.getHttpCode());
+        assertEquals(26, result.getBulkResult().getUpserts().size());
+        assertEquals(1, result.getBatchErrors().size());
+    }
+
+    @Test
+    public void testAbort() {
+        BulkUpsertWriter writer = writer(10, true);
+
+        for (int i = 0; i < 15; i++) {
+            writer.add(doc(i));
+        }
+
+        BulkOperationResult result = writer.abort(
+                HttpStatus.SC_NOT_ACCEPTABLE,
+                "Invalid JSON");
+
+        verify(coll, times(1)).bulkWrite(anyList(), any(BulkWriteOptions.class));
+
+        assertEquals(HttpStatus.SC_MULTI_STATUS, result.getHttpCode());
+        assertEquals(10, result.getBulkResult().getUpserts().size());
+        assertEquals(1, result.getBatchErrors().size());
+        assertEquals(HttpStatus.SC_NOT_ACCEPTABLE,
+                result.getBatchErrors().get(0).getHttpStatus());
+    }
+
+    private BulkUpsertWriter writer(int batchSize, boolean ordered) {
+        return new BulkUpsertWriter(coll,
+                null,
+                null,
+                batchSize,
+                ordered,
+                null);
+    }
+
+    private static BsonDocument doc(int n) {
+        return new BsonDocument("n", new BsonInt32(n));
+    }
+
+    private static BulkWriteResult upserted(int count) {
+        List<BulkWriteUpsert> upserts = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            upserts.add(new BulkWriteUpsert(i, new BsonObjectId()));
+        }
+
+        return BulkWriteResult.acknowledged(0, 0, 0, 0, upserts);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.db;
+
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class CursorPoolDemandTest {
+
+    public CursorPoolDemandTest() {
+    }
+
+    @Test
+    public void testNoDemand() {
+        CursorPoolDemand demand = new CursorPoolDemand();
+
+        assertTrue(demand.getHotSkips(4).isEmpty());
+
+        // a page requested once is not hot
+        demand.record(5000);
+
+        assertTrue(demand.getHotSkips(4).isEmpty());
+    }
+
+    @Test
+    public void testPredictsNextPage() {
+        CursorPoolDemand demand = new CursorPoolDemand();
+
+        demand.record(5000);
+        demand.record(5100);
+
+        assertEquals(Arrays.asList(5200), demand.getHotSkips(4));
+
+        // going back stops the prediction
+        demand.record(1000);
+
+        assertTrue(demand.getHotSkips(4).isEmpty());
+    }
+
+    @Test
+    public void testMostRequestedPages() {
+        CursorPoolDemand demand = new CursorPoolDemand();
+
+        for (int i = 0; i < 3; i++) {
+            demand.record(9000);
+            demand.record(2000);
+        }
+
+        demand.record(9000);
+        demand.record(1000);
+
+        List<Integer> hot = demand.getHotSkips(4);
+
+        assertEquals(Arrays.asList(9000, 2000), hot);
+
+        assertEquals(Arrays.asList(9000), demand.getHotSkips(1));
+    }
+
+    @Test
+    public void testOldPagesFadeOut() {
+        CursorPoolDemand demand = new CursorPoolDemand();
+
+        demand.record(9000);
+        demand.record(9000);
+
+        // decreasing skips, so that no next page is predicted
+        for (int i = 0; i < CursorPoolDemand.MAX_TRACKED_SKIPS; i++) {
+            demand.record(100_000 - i);
+        }
+
+        assertTrue(demand.getHotSkips(4).isEmpty());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.db;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import java.util.Map;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class CursorPoolIndexTest {
+
+    private MongoCollection<BsonDocument> coll;
+    private FindIterable<BsonDocument> cursor;
+    private CursorPoolIndex index;
+
+    public CursorPoolIndexTest() {
+    }
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        coll = mock(MongoCollection.class);
+        when(coll.getNamespace()).thenReturn(new MongoNamespace("db.coll"));
+        cursor = mock(FindIterable.class);
+        index = new CursorPoolIndex();
+    }
+
+    @Test
+    public void testClaimFloor() {
+        index.put(key(null, 1000, 1), cursor);
+        index.put(key(null, 2000, 2), cursor);
+        index.put(key(null, 3000, 3), cursor);
+
+        Map.Entry<CursorPoolEntryKey, FindIterable<BsonDocument>> claimed
+                = index.claimFloor(key(null, 2050, -1), 1845);
+
+        assertNotNull(claimed);
+        assertEquals(2000, claimed.getKey().getSkipped());
+        assertEquals(2, index.size());
+
+        // the 2000 slice has been claimed, 1000 is too far
+        assertNull(index.claimFloor(key(null, 2050, -1), 1845));
+    }
+
+    @Test
+    public void testClaimFloorOtherGroup() {
+        index.put(key(new BsonDocument("a", new BsonInt32(1)), 1000, 1),
+                cursor);
+
+        assertNull(index.claimFloor(key(null, 1000, -1), 900));
+        assertNotNull(index.claimFloor(
+                key(new BsonDocument("a", new BsonInt32(1)), 1000, -1), 900));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testCountAndRemove() {
+        index.put(key(null, 1000, 1), cursor);
+        index.put(key(null, 1000, 2), cursor);
+        index.put(key(null, 2000, 3), cursor);
+
+        assertEquals(2, index.count(key(null, 1000, -1)));
+
+        index.remove(key(null, 1000, 1));
+
+        assertEquals(1, index.count(key(null, 1000, -1)));
+        assertEquals(2, index.size());
+    }
+
+    private CursorPoolEntryKey key(BsonDocument filter, int skipped, long id) {
+        return new CursorPoolEntryKey(coll, null, filter, null, skipped, id);
+    }
+}
@@ -55,4 +55,16 @@ public class DAOUtilsTest {
         assertEquals(DAOUtils.validContent(dbo), dbo);
     }
 
+    @Test
+    public void testIsReplacement() {
+        assertTrue(DAOUtils.isReplacement(
+                BsonDocument.parse("{'a': 1, 'b': {'c': 2}}")));
+
+        assertFalse(DAOUtils.isReplacement(
+                BsonDocument.parse("{'a': 1, '$inc': {'n': 1}}")));
+
+        assertFalse(DAOUtils.isReplacement(
+                BsonDocument.parse("{'a.b': 1}")));
+    }
+
 }
@@ -0,0 +1,101 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.aggregation;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.BsonDocument;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.restheart.handlers.metadata.InvalidMetadataException;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class AggregationPipelineTest {
+
+    public AggregationPipelineTest() {
+    }
+
+    @Test
+    public void testPaginate() {
+        List<BsonDocument> paginated = AggregationPipeline.paginate(
+                stages(), 20, 10);
+
+        assertEquals(3, paginated.size());
+        assertEquals(BsonDocument.parse("{'$skip': 20}"), paginated.get(1));
+        assertEquals(BsonDocument.parse("{'$limit': 10}"), paginated.get(2));
+    }
+
+    @Test
+    public void testPaginateFirstPage() {
+        List<BsonDocument> paginated = AggregationPipeline.paginate(
+                stages(), 0, 10);
+
+        assertEquals(2, paginated.size());
+        assertEquals(BsonDocument.parse("{'$limit': 10}"), paginated.get(1));
+    }
+
+    @Test
+    public void testCount() {
+        List<BsonDocument> stages = stages();
+
+        List<BsonDocument> count = AggregationPipeline.count(stages);
+
+        assertEquals(2, count.size());
+        assertEquals(stages.get(0), count.get(0));
+        assertEquals(BsonDocument.parse("{'$count': 'count'}"), count.get(1));
+
+        // the resolved stages are not modified
+        assertEquals(1, stages.size());
+    }
+
+    @Test
+    public void testHasOutStage() {
+        List<BsonDocument> stages = stages();
+
+        assertFalse(AggregationPipeline.hasOutStage(stages));
+
+        stages.add(BsonDocument.parse("{'$out': 'coll'}"));
+
+        assertTrue(AggregationPipeline.hasOutStage(stages));
+    }
+
+    @Test
+    public void testAllowDiskUse() throws InvalidMetadataException {
+        AggregationPipeline pipeline = new AggregationPipeline(
+                BsonDocument.parse("{'type': 'pipeline', 'uri': 'test', "
+                        + "'stages': [], 'allowDiskUse': true}"));
+
+        assertTrue(pipeline.isAllowDiskUse());
+    }
+
+    @Test(expected = InvalidMetadataException.class)
+    public void testInvalidAllowDiskUse() throws InvalidMetadataException {
+        new AggregationPipeline(
+                BsonDocument.parse("{'type': 'pipeline', 'uri': 'test', "
+                        + "'stages': [], 'allowDiskUse': 'yes'}"));
+    }
+
+    private static List<BsonDocument> stages() {
+        List<BsonDocument> ret = new ArrayList<>();
+        ret.add(BsonDocument.parse("{'$match': {'a': 1}}"));
+        return ret;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.aggregation;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.restheart.handlers.metadata.InvalidMetadataException;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class AggregationResultCacheSingletonTest {
+
+    private final AggregationResultCacheSingleton cache
+            = AggregationResultCacheSingleton.getInstance();
+
+    public AggregationResultCacheSingletonTest() {
+    }
+
+    @Test
+    public void testPutAndGet() throws InvalidMetadataException {
+        AggregationPipeline pipeline = pipeline("testPutAndGet");
+        String key = key("db", "coll", pipeline, 1);
+
+        cache.put(pipeline, key, cache.getWrites(), data(), 5);
+
+        AggregationResultCacheSingleton.CachedResult cached
+                = cache.get(pipeline, key);
+
+        assertNotNull(cached);
+        assertEquals(data(), cached.getData());
+        assertEquals(5, cached.getSize());
+
+        assertNull(cache.get(pipeline, key("db", "coll", pipeline, 2)));
+    }
+
+    @Test
+    public void testCachedDataIsCopied() throws InvalidMetadataException {
+        AggregationPipeline pipeline = pipeline("testCachedDataIsCopied");
+        String key = key("db", "coll", pipeline, 1);
+
+        List<BsonDocument> data = data();
+
+        cache.put(pipeline, key, cache.getWrites(), data, 5);
+
+        data.get(0).put("a", new BsonInt32(100));
+        cache.get(pipeline, key).getData().get(0).put("a", new BsonInt32(100));
+
+        assertEquals(data(), cache.get(pipeline, key).getData());
+    }
+
+    @Test
+    public void testInvalidateCollection() throws InvalidMetadataException {
+        AggregationPipeline pipeline = pipeline("testInvalidateCollection");
+        String key = key("db", "coll", pipeline, 1);
+        String otherKey = key("db", "other", pipeline, 1);
+
+        cache.put(pipeline, key, cache.getWrites(), data(), 5);
+        cache.put(pipeline, otherKey, cache.getWrites(), data(), 5);
+
+        cache.invalidateCollection("db", "coll");
+
+        assertNull(cache.get(pipeline, key));
+        assertNotNull(cache.get(pipeline, otherKey));
+    }
+
+    @Test
+    public void testInvalidateDb() throws InvalidMetadataException {
+        AggregationPipeline pipeline = pipeline("testInvalidateDb");
+        String key = key("db", "coll", pipeline, 1);
+        String otherKey = key("otherdb", "coll", pipeline, 1);
+
+        cache.put(pipeline, key, cache.getWrites(), data(), 5);
+        cache.put(pipeline, otherKey, cache.getWrites(), data(), 5);
+
+        cache.invalidateDb("db");
+
+        assertNull(cache.get(pipeline, key));
+        assertNotNull(cache.get(pipeline, otherKey));
+    }
+
+    @Test
+    public void testNotCachedAfterWrite() throws InvalidMetadataException {
+        AggregationPipeline pipeline = pipeline("testNotCachedAfterWrite");
+        String key = key("db", "coll", pipeline, 1);
+
+        long writesAtStart = cache.getWrites();
+
+        // the collection is written while the aggregation executes
+        cache.invalidateCollection("db", "coll");
+
+        cache.put(pipeline, key, writesAtStart, data(), 5);
+
+        assertNull(cache.get(pipeline, key));
+    }
+
+    @Test
+    public void testCacheMetadata() throws InvalidMetadataException {
+        AggregationPipeline pipeline = new AggregationPipeline(
+                BsonDocument.parse("{'type': 'pipeline', 'uri': 'test', "
+                        + "'stages': [], 'cache': {'ttl': 60, 'persist': true}}"));
+
+        assertTrue(pipeline.isCached());
+        assertEquals(60, pipeline.getCacheTtl());
+        assertTrue(pipeline.isCachePersisted());
+
+        assertFalse(new AggregationPipeline(
+                BsonDocument.parse("{'type': 'pipeline', 'uri': 'test', "
+                        + "'stages': []}")).isCached());
+    }
+
+    @Test(expected = InvalidMetadataException.class)
+    public void testInvalidCacheMetadata() throws InvalidMetadataException {
+        new AggregationPipeline(
+                BsonDocument.parse("{'type': 'pipeline', 'uri': 'test', "
+                        + "'stages': [], 'cache': {'ttl': -1}}"));
+    }
+
+    private static AggregationPipeline pipeline(String uri)
+            throws InvalidMetadataException {
+        return new AggregationPipeline(
+                BsonDocument.parse("{'type': 'pipeline', 'uri': '" + uri + "', "
+                        + "'stages': [{'$match': {'a': {'$var': 'a'}}}], "
+                        + "'cache': {'ttl': 60}}"));
+    }
+
+    private static String key(
+            String dbName,
+            String collName,
+            AggregationPipeline pipeline,
+            int a) {
+        return AggregationResultCacheSingleton.getKey(
+                dbName,
+                collName,
+                pipeline,
+                new BsonDocument("stages", BsonDocument.parse(
+                        "{'$match': {'a': " + a + "}}")));
+    }
+
+    private static List<BsonDocument> data() {
+        List<BsonDocument> ret = new ArrayList<>();
+        ret.add(BsonDocument.parse("{'a': 1}"));
+        ret.add(BsonDocument.parse("{'a': 2}"));
+        return ret;
+    }
+}
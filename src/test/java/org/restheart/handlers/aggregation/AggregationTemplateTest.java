@@ -0,0 +1,104 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.aggregation;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.restheart.handlers.metadata.InvalidMetadataException;
+import org.restheart.utils.JsonUtils;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class AggregationTemplateTest {
+
+    private static final String STAGES = "{'stages': ["
+            + "{'_$match': {'name': {'_$exists': true}, 'a_::_b': {'_$var': 'n'}}},"
+            + "{'_$group': {'_id': '$name', 'avg': {'_$avg': '$age'}}},"
+            + "{'_$project': {'c': ['_$x', {'_$var': 'c'}, [{'_$var': 'n'}]]}}"
+            + "]}";
+
+    public AggregationTemplateTest() {
+    }
+
+    @Test
+    public void testBind() throws Exception {
+        BsonArray stages = BsonDocument.parse(STAGES).getArray("stages");
+
+        BsonDocument aVars = BsonDocument.parse("{'n': 1, 'c': {'d': 'e'}}");
+
+        AggregationTemplate template = new AggregationTemplate(stages);
+
+        assertFalse(template.isConstant());
+        assertEquals(bind(stages, aVars), template.bind(aVars));
+    }
+
+    @Test
+    public void testBindConstant() throws Exception {
+        BsonArray stages = BsonDocument.parse("{'stages': ["
+                + "{'_$match': {'name': {'_$exists': true}}}]}")
+                .getArray("stages");
+
+        AggregationTemplate template = new AggregationTemplate(stages);
+
+        assertTrue(template.isConstant());
+        assertEquals(bind(stages, null), template.bind(null));
+    }
+
+    @Test
+    public void testSharesConstantPaths() throws Exception {
+        BsonArray stages = BsonDocument.parse(STAGES).getArray("stages");
+
+        BsonDocument aVars = BsonDocument.parse("{'n': 1, 'c': 2}");
+
+        AggregationTemplate template = new AggregationTemplate(stages);
+
+        BsonArray first = template.bind(aVars).asArray();
+        BsonArray second = template.bind(aVars).asArray();
+
+        // the $group stage has no variables
+        assertSame(first.get(1), second.get(1));
+        assertNotSame(first.get(0), second.get(0));
+    }
+
+    @Test(expected = QueryVariableNotBoundException.class)
+    public void testVariableNotBound() throws Exception {
+        new AggregationTemplate(BsonDocument.parse(STAGES).getArray("stages"))
+                .bind(BsonDocument.parse("{'n': 1}"));
+    }
+
+    @Test(expected = InvalidMetadataException.class)
+    public void testWrongVariableName() throws Exception {
+        new AggregationTemplate(BsonDocument.parse("{'a': {'_$var': 1}}"))
+                .bind(BsonDocument.parse("{'n': 1}"));
+    }
+
+    private static BsonValue bind(BsonValue json, BsonDocument aVars)
+            throws Exception {
+        AggregationPipeline pipeline = new AggregationPipeline(
+                BsonDocument.parse("{'type': 'pipeline', 'uri': 'test', "
+                        + "'stages': []}"));
+
+        return pipeline.bindAggregationVariables(
+                JsonUtils.unescapeKeys(json), aVars);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.applicationlogic;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInvalidOperationException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class CsvBatchInserterTest {
+
+    public CsvBatchInserterTest() {
+    }
+
+    @Test
+    public void testFailedBatchesAreCounted() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            CsvBatchInserter inserter = new CsvBatchInserter(
+                    failingCollection(),
+                    10,
+                    2,
+                    executor);
+
+            for (int line = 1; line <= 35; line++) {
+                inserter.add(new BsonDocument("line", new BsonInt32(line)),
+                        line);
+            }
+
+            inserter.finish();
+
+            assertEquals(35, inserter.getRows());
+            assertEquals(4, inserter.getBatches());
+            assertEquals(inserter.getRows(),
+                    inserter.getInserted() + inserter.getFailed());
+
+            // the batches with line 13 and 31 fail as a whole
+            assertEquals(20, inserter.getInserted());
+            assertEquals(15, inserter.getFailed());
+            assertEquals(2, inserter.getErrors().size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailedBatchesAreCountedSync() {
+        CsvBatchInserter inserter = new CsvBatchInserter(
+                failingCollection(),
+                10,
+                2,
+                null);
+
+        for (int line = 1; line <= 15; line++) {
+            inserter.add(new BsonDocument("line", new BsonInt32(line)), line);
+        }
+
+        inserter.finish();
+
+        assertEquals(10, inserter.getInserted());
+        assertEquals(5, inserter.getFailed());
+        assertEquals(1, inserter.getErrors().size());
+        assertEquals(11, inserter.getErrors().get(0).asDocument()
+                .getInt64("fromLine").getValue());
+    }
+
+    /**
+     * a collection that fails, with an exception other than MongoException,
+     * the batches containing the document of line 13 or 31
+     */
+    @SuppressWarnings("unchecked")
+    private static MongoCollection<BsonDocument> failingCollection() {
+        MongoCollection<BsonDocument> coll = mock(MongoCollection.class);
+
+        doAnswer(invocation -> {
+            List<BsonDocument> docs = invocation.getArgument(0);
+
+            for (BsonDocument doc : docs) {
+                int line = doc.getInt32("line").getValue();
+
+                if (line == 13 || line == 31) {
+                    throw new BsonInvalidOperationException("cannot encode");
+                }
+            }
+
+            return null;
+        }).when(coll).insertMany(anyList(), any(InsertManyOptions.class));
+
+        return coll;
+    }
+}
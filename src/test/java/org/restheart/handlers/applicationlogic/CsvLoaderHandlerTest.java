@@ -0,0 +1,71 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.applicationlogic;
+
+import org.bson.BsonBoolean;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonNull;
+import org.bson.BsonString;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class CsvLoaderHandlerTest {
+
+    public CsvLoaderHandlerTest() {
+    }
+
+    @Test
+    public void testGetBsonValue() {
+        assertEquals(new BsonInt32(12), value("12"));
+        assertEquals(new BsonInt32(-3), value("-3"));
+        assertEquals(new BsonInt64(12345678901L), value("12345678901"));
+        assertEquals(new BsonDouble(1.5), value("1.5"));
+        assertEquals(new BsonDouble(-2e3), value("-2e3"));
+        assertEquals(BsonBoolean.TRUE, value("true"));
+        assertEquals(BsonNull.VALUE, value("null"));
+        assertEquals(BsonDocument.parse("{'a': 1}"), value("{\"a\": 1}"));
+    }
+
+    @Test
+    public void testGetBsonValueStrings() {
+        assertEquals(new BsonString(""), value(""));
+        assertEquals(new BsonString("abc"), value("abc"));
+        assertEquals(new BsonString("00123"), value("00123"));
+        assertEquals(new BsonString("1.2.3"), value("1.2.3"));
+        assertEquals(new BsonString("12e"), value("12e"));
+        assertEquals(new BsonString("-"), value("-"));
+        assertEquals(new BsonString("{not json"), value("{not json"));
+        assertEquals(new BsonString("12345678901234567890"),
+                value("12345678901234567890"));
+
+        // quoted values are always strings
+        assertEquals(new BsonString("12"),
+                CsvLoaderHandler.getBsonValue("12", true));
+    }
+
+    private static Object value(String raw) {
+        return CsvLoaderHandler.getBsonValue(raw, false);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.document;
+
+import com.mongodb.client.MongoCollection;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HttpString;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.bson.BsonDocument;
+import org.junit.Before;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.restheart.db.Database;
+import org.restheart.handlers.RequestContext;
+import org.restheart.security.AccessManager;
+import org.restheart.security.handlers.AccessManagerHandler;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class RelationshipsExpanderTest {
+
+    private static final String RELS = "{'_id': 'parents', 'rels': [{"
+            + "'ref-field': 'child', "
+            + "'rel': 'child', "
+            + "'role': 'OWNING', "
+            + "'target-coll': 'children', "
+            + "'type':'ONE_TO_ONE'}]}";
+
+    private HttpServerExchange exchange;
+    private RequestContext context;
+    private Database dbsDAO;
+
+    private final List<String> checked = new ArrayList<>();
+
+    public RelationshipsExpanderTest() {
+    }
+
+    @Before
+    public void setUp() {
+        exchange = new HttpServerExchange();
+        exchange.setRequestPath("/api/db/parents");
+        exchange.setRelativePath("/db/parents");
+        exchange.setRequestMethod(new HttpString("GET"));
+
+        context = new RequestContext(exchange, "/api", "*");
+        context.setCollectionProps(BsonDocument.parse(RELS));
+        context.setExpand(Collections.singleton("child"));
+
+        dbsDAO = mock(Database.class, RETURNS_DEEP_STUBS);
+    }
+
+    @Test
+    public void testExpandDenied() throws Exception {
+        exchange.putAttachment(AccessManagerHandler.ACCESS_MANAGER_KEY,
+                accessManager(false));
+
+        new RelationshipsExpander(dbsDAO).expand(exchange,
+                context,
+                Arrays.asList(BsonDocument.parse("{'_id': 1, 'child': 2}")));
+
+        assertEquals(Arrays.asList("/db/children"), checked);
+        assertEquals(1, context.getWarnings().size());
+        assertTrue(context.getWarnings().get(0).contains("denied"));
+
+        verify(dbsDAO, never()).getCollection(anyString(), anyString());
+
+        // the exchange is restored after the check
+        assertEquals("/api/db/parents", exchange.getRequestPath());
+        assertEquals("/db/parents", exchange.getRelativePath());
+    }
+
+    @Test
+    public void testExpandWithoutAccessManager() throws Exception {
+        new RelationshipsExpander(dbsDAO).expand(exchange,
+                context,
+                Arrays.asList(BsonDocument.parse("{'_id': 1, 'child': 2}")));
+
+        assertEquals(1, context.getWarnings().size());
+
+        verify(dbsDAO, never()).getCollection(anyString(), anyString());
+    }
+
+    @Test
+    public void testExpandAllowed() throws Exception {
+        exchange.putAttachment(AccessManagerHandler.ACCESS_MANAGER_KEY,
+                accessManager(true));
+
+        MongoCollection<BsonDocument> coll = dbsDAO
+                .getCollection("db", "children");
+
+        when(dbsDAO.getCollectionProperties("db", "children"))
+                .thenReturn(null);
+
+        BsonDocument parent = BsonDocument.parse("{'_id': 1, 'child': 2}");
+
+        new RelationshipsExpander(dbsDAO).expand(exchange,
+                context,
+                Arrays.asList(parent));
+
+        assertEquals(Arrays.asList("/db/children"), checked);
+        assertTrue(context.getWarnings().isEmpty());
+        assertNotNull(context.getExpandedRelationships(parent));
+
+        verify(coll).find(BsonDocument.parse("{'_id': {'$in': [2]}}"));
+    }
+
+    private AccessManager accessManager(boolean allowed) {
+        return new AccessManager() {
+            @Override
+            public boolean isAllowed(
+                    HttpServerExchange exchange,
+                    RequestContext context) {
+                assertEquals("GET", exchange.getRequestMethod().toString());
+                assertEquals("/api/db/children", exchange.getRequestPath());
+
+                checked.add(exchange.getRelativePath());
+
+                return allowed;
+            }
+
+            @Override
+            public boolean isAuthenticationRequired(
+                    HttpServerExchange exchange) {
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.files;
+
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * @author Maurizio Turatti {@literal <maurizio@softinstigate.com>}
+ */
+public class ByteRangeTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ByteRangeTest.class);
+
+    @Rule
+    public TestRule watcher = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            LOG.info("executing test {}", description.toString());
+        }
+    };
+
+    public ByteRangeTest() {
+    }
+
+    @Test
+    public void testSingleRange() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=0-99", 1000);
+
+        assertEquals(1, ranges.size());
+        assertEquals(0, ranges.get(0).getStart());
+        assertEquals(99, ranges.get(0).getEnd());
+        assertEquals(100, ranges.get(0).getLength());
+        assertEquals("bytes 0-99/1000", ranges.get(0).getContentRange(1000));
+    }
+
+    @Test
+    public void testOpenAndSuffixRanges() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=-50, 900-", 1000);
+
+        assertEquals(1, ranges.size());
+        assertEquals(900, ranges.get(0).getStart());
+        assertEquals(999, ranges.get(0).getEnd());
+
+        ranges = ByteRange.parse("bytes=-50, 800-", 1000);
+
+        assertEquals(1, ranges.size());
+        assertEquals(800, ranges.get(0).getStart());
+
+        ranges = ByteRange.parse("bytes=-50, 0-99", 1000);
+
+        assertEquals(2, ranges.size());
+        assertEquals(0, ranges.get(0).getStart());
+        assertEquals(99, ranges.get(0).getEnd());
+        assertEquals(950, ranges.get(1).getStart());
+        assertEquals(999, ranges.get(1).getEnd());
+    }
+
+    @Test
+    public void testRangesClampedToLength() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=500-5000,-5000", 1000);
+
+        assertEquals(1, ranges.size());
+        assertEquals(0, ranges.get(0).getStart());
+        assertEquals(999, ranges.get(0).getEnd());
+    }
+
+    @Test
+    public void testOverlappingAndAdjacentRangesAreCoalesced() {
+        List<ByteRange> ranges = ByteRange.parse(
+                "bytes=500-599,0-99,50-149,150-199,550-", 1000);
+
+        assertEquals(2, ranges.size());
+        assertEquals(0, ranges.get(0).getStart());
+        assertEquals(199, ranges.get(0).getEnd());
+        assertEquals(500, ranges.get(1).getStart());
+        assertEquals(999, ranges.get(1).getEnd());
+
+        // the same range many times is sent once
+        ranges = ByteRange.parse("bytes=0-99,0-99,0-99", 1000);
+
+        assertEquals(1, ranges.size());
+        assertEquals(100, ranges.get(0).getLength());
+    }
+
+    @Test
+    public void testUnsatisfiableRanges() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=1000-1999", 1000);
+
+        assertNotNull(ranges);
+        assertTrue(ranges.isEmpty());
+    }
+
+    @Test
+    public void testInvalidRangesAreIgnored() {
+        assertNull(ByteRange.parse("items=0-9", 1000));
+        assertNull(ByteRange.parse("bytes=9-0", 1000));
+        assertNull(ByteRange.parse("bytes=a-b", 1000));
+        assertNull(ByteRange.parse("bytes=10", 1000));
+
+        StringBuilder tooMany = new StringBuilder("bytes=0-0");
+
+        for (int i = 1; i <= ByteRange.MAX_RANGES; i++) {
+            tooMany.append(",").append(i).append("-").append(i);
+        }
+
+        assertNull(ByteRange.parse(tooMany.toString(), 1000));
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.handlers.schema;
+
+import java.util.List;
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.bson.BsonObjectId;
+import org.bson.types.ObjectId;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class CompiledJsonSchemaTest {
+
+    private static final String SCHEMA = "{"
+            + "'$schema': 'http://json-schema.org/draft-04/schema#', "
+            + "'type': 'object', "
+            + "'properties': {"
+            + "  'name': {'type': 'string', 'minLength': 2, 'pattern': '^[A-Z]'}, "
+            + "  'age': {'type': 'integer', 'minimum': 0, 'maximum': 150}, "
+            + "  'score': {'type': 'number', 'multipleOf': 0.5}, "
+            + "  'tags': {'type': 'array', 'items': {'type': 'string'}, 'uniqueItems': true}, "
+            + "  'status': {'enum': ['active', 'disabled']}, "
+            + "  'address': {'$ref': '#/definitions/address'}}, "
+            + "'required': ['name'], "
+            + "'additionalProperties': false, "
+            + "'definitions': {"
+            + "  'address': {'type': 'object', 'properties': {'city': {'type': 'string'}}, 'required': ['city']}}}";
+
+    public CompiledJsonSchemaTest() {
+    }
+
+    @Test
+    public void testValid() {
+        CompiledJsonSchema schema = compile(SCHEMA);
+
+        assertTrue(schema.validate(BsonDocument.parse("{"
+                + "'name': 'Andrea', 'age': 40, 'score': 7.5, "
+                + "'tags': ['a', 'b'], 'status': 'active', "
+                + "'address': {'city': 'Rome'}}")).isEmpty());
+    }
+
+    @Test
+    public void testViolations() {
+        CompiledJsonSchema schema = compile(SCHEMA);
+
+        List<String> violations = schema.validate(BsonDocument.parse("{"
+                + "'name': 'a', 'age': 200, 'tags': ['a', 'a'], "
+                + "'status': 'deleted', 'address': {}, 'other': 1}"));
+
+        assertEquals("#: 7 schema violations found", violations.get(0));
+        assertTrue(violations.contains("#/name: expected minLength: 2, actual: 1"));
+        assertTrue(violations.contains("#/name: string [a] does not match pattern ^[A-Z]"));
+        assertTrue(violations.contains("#/age: 200 is not lower or equal to 150"));
+        assertTrue(violations.contains("#/tags: array items are not unique"));
+        assertTrue(violations.contains("#/status: deleted is not a valid enum value"));
+        assertTrue(violations.contains("#/address: required key [city] not found"));
+        assertTrue(violations.contains("#: extraneous key [other] is not permitted"));
+    }
+
+    @Test
+    public void testType() {
+        CompiledJsonSchema schema = compile("{'properties': {"
+                + "'i': {'type': 'integer'}, "
+                + "'n': {'type': ['number', 'null']}}}");
+
+        assertEquals(1, schema.validate(BsonDocument.parse("{'i': 1.5}"))
+                .size());
+        assertEquals("#/i: expected type: Integer, found: Double",
+                schema.validate(BsonDocument.parse("{'i': 1.5}")).get(0));
+        assertTrue(schema.isValid(BsonDocument.parse("{'n': null}")));
+        assertTrue(schema.isValid(BsonDocument.parse("{'n': 2}")));
+        assertFalse(schema.isValid(BsonDocument.parse("{'n': 'x'}")));
+    }
+
+    @Test
+    public void testNonJsonTypes() {
+        // as for everit, bson types are validated as their json representation
+        CompiledJsonSchema schema = compile("{'properties': {"
+                + "'_id': {'type': 'object', 'required': ['$oid']}, "
+                + "'l': {'type': 'object', 'properties': {'$numberLong': {'type': 'string'}}}}}");
+
+        assertTrue(schema.isValid(new BsonDocument("_id",
+                new BsonObjectId(new ObjectId()))
+                .append("l", new BsonInt64(1))));
+    }
+
+    @Test
+    public void testCombinators() {
+        CompiledJsonSchema schema = compile("{'properties': {"
+                + "'a': {'anyOf': [{'type': 'string'}, {'type': 'integer'}]}, "
+                + "'o': {'oneOf': [{'minimum': 0}, {'maximum': 10}]}, "
+                + "'n': {'not': {'type': 'string'}}}}");
+
+        assertTrue(schema.isValid(BsonDocument.parse("{'a': 1, 'o': 20, 'n': 1}")));
+        assertFalse(schema.isValid(BsonDocument.parse("{'a': true}")));
+        assertFalse(schema.isValid(BsonDocument.parse("{'o': 5}")));
+        assertFalse(schema.isValid(BsonDocument.parse("{'n': 'x'}")));
+    }
+
+    @Test
+    public void testRecursiveRef() {
+        CompiledJsonSchema schema = compile("{'type': 'object', "
+                + "'properties': {'name': {'type': 'string'}, "
+                + "'children': {'type': 'array', 'items': {'$ref': '#'}}}}");
+
+        assertTrue(schema.isValid(BsonDocument.parse("{'name': 'a', "
+                + "'children': [{'name': 'b', 'children': [{'name': 'c'}]}]}")));
+
+        assertEquals("#/children/0/children/0/name: expected type: String, "
+                + "found: Integer",
+                schema.validate(BsonDocument.parse("{'name': 'a', "
+                        + "'children': [{'name': 'b', 'children': [{'name': 1}]}]}"))
+                        .get(0));
+    }
+
+    @Test
+    public void testSchemaStoreRef() {
+        BsonDocument other = BsonDocument.parse("{'type': 'string'}");
+
+        CompiledJsonSchema schema = CompiledJsonSchema.compile(
+                BsonDocument.parse("{'properties': {'s': "
+                        + "{'$ref': 'http://schema-store/db/other#'}}}"),
+                url -> "db".equals(url.getSchemaDb())
+                && "other".equals(url.getSchemaId().asString().getValue())
+                ? other
+                : null);
+
+        assertTrue(schema.isValid(BsonDocument.parse("{'s': 'x'}")));
+        assertFalse(schema.isValid(BsonDocument.parse("{'s': 1}")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFormatNotSupported() {
+        compile("{'properties': {'email': {'type': 'string', 'format': 'email'}}}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRemoteRefNotSupported() {
+        compile("{'properties': {'a': {'$ref': 'http://json-schema.org/geo'}}}");
+    }
+
+    private static CompiledJsonSchema compile(String schema) {
+        return CompiledJsonSchema.compile(BsonDocument.parse(schema),
+                url -> null);
+    }
+}
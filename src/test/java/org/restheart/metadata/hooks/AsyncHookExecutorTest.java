@@ -0,0 +1,74 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.metadata.hooks;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class AsyncHookExecutorTest {
+
+    public AsyncHookExecutorTest() {
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        AsyncHookExecutor executor = AsyncHookExecutor.getInstance();
+
+        CountDownLatch done = new CountDownLatch(4);
+
+        assertTrue(executor.submit("testMetrics", () -> {
+            done.countDown();
+            return true;
+        }));
+        assertTrue(executor.submit("testMetrics", () -> {
+            done.countDown();
+            return true;
+        }));
+        assertTrue(executor.submit("testMetrics", () -> {
+            done.countDown();
+            throw new IllegalStateException("failing hook");
+        }));
+        // a hook returning false is failed as well
+        assertTrue(executor.submit("testMetrics", () -> {
+            done.countDown();
+            return false;
+        }));
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        AsyncHookExecutor.Metrics m = executor.getMetrics().get("testMetrics");
+
+        // metrics are updated after the hook returns
+        long timeout = System.currentTimeMillis() + 10_000;
+
+        while (m.getExecuted() < 4 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(4, m.getExecuted());
+        assertEquals(2, m.getFailed());
+        assertEquals(0, m.getDropped());
+        assertEquals(0, m.getQueued());
+    }
+}
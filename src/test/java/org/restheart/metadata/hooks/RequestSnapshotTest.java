@@ -0,0 +1,79 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.metadata.hooks;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.restheart.handlers.RequestContext;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class RequestSnapshotTest {
+
+    public RequestSnapshotTest() {
+    }
+
+    @Test
+    public void testSnapshotIsDetached() {
+        HttpServerExchange exchange = new HttpServerExchange();
+        exchange.setRequestPath("/db/coll");
+        exchange.setRelativePath("/db/coll");
+        exchange.setRequestMethod(new HttpString("POST"));
+        exchange.setQueryString("a=1");
+        exchange.getRequestHeaders().put(Headers.CONTENT_TYPE, "application/json");
+
+        RequestContext context = new RequestContext(exchange, "/", "*");
+
+        context.setContent(BsonDocument.parse("{'a': {'b': 1}}"));
+        context.setResponseContent(BsonDocument.parse("{'_embedded': []}"));
+        context.setResponseStatusCode(201);
+
+        RequestSnapshot snapshot = new RequestSnapshot(exchange, context);
+
+        // what the response sender and the next requests do meanwhile
+        context.getContent().asDocument().get("a").asDocument()
+                .put("b", new BsonInt32(2));
+        context.getResponseContent().asDocument()
+                .put("_warnings", new BsonArray());
+        exchange.getRequestHeaders().remove(Headers.CONTENT_TYPE);
+        exchange.setRequestPath("/other");
+
+        assertEquals(RequestContext.METHOD.POST, snapshot.getMethod());
+        assertEquals("db", snapshot.getDBName());
+        assertEquals("coll", snapshot.getCollectionName());
+        assertEquals("/db/coll", snapshot.getRequestPath());
+        assertEquals("a=1", snapshot.getQueryString());
+        assertEquals(201, snapshot.getResponseStatusCode());
+        assertEquals("application/json",
+                snapshot.getRequestHeaders().getFirst(Headers.CONTENT_TYPE));
+        assertEquals(BsonDocument.parse("{'a': {'b': 1}}"),
+                snapshot.getContent());
+        assertEquals(BsonDocument.parse("{'_embedded': []}"),
+                snapshot.getResponseContent());
+        assertNull(snapshot.getRemoteUser());
+        assertTrue(snapshot.getRoles().isEmpty());
+    }
+}
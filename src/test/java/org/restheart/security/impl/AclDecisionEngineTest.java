@@ -0,0 +1,209 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.security.impl;
+
+import io.undertow.predicate.PredicateParser;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HttpString;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.restheart.security.impl.AclDecisionEngine.Constraints;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class AclDecisionEngineTest {
+
+    public AclDecisionEngineTest() {
+    }
+
+    @Test
+    public void testAnalyzeMethodAndPathPrefix() {
+        Constraints c = AclDecisionEngine.analyze(
+                "path-prefix[path=\"/publicdb/\"] and method[value=\"GET\"]");
+
+        assertEquals(Collections.singleton("GET"), c.methods);
+        assertEquals(Arrays.asList("publicdb"), c.segments);
+        assertTrue(c.pathOnly);
+        assertFalse(c.needsContext);
+    }
+
+    @Test
+    public void testAnalyzeMethods() {
+        Constraints c = AclDecisionEngine.analyze(
+                "method[{'GET', 'post'}] and path-prefix['/db/coll']");
+
+        assertEquals(new HashSet<>(Arrays.asList("GET", "POST")), c.methods);
+        assertEquals(Arrays.asList("db", "coll"), c.segments);
+        assertTrue(c.pathOnly);
+    }
+
+    @Test
+    public void testAnalyzePathTemplate() {
+        Constraints c = AclDecisionEngine.analyze(
+                "path-template[value=\"/publicdb/{username}/*\"] "
+                + "and equals[%u, \"${username}\"]");
+
+        assertNull(c.methods);
+        assertEquals(Arrays.asList("publicdb"), c.segments);
+        assertFalse(c.pathOnly);
+        assertTrue(c.needsContext);
+    }
+
+    @Test
+    public void testAnalyzeCommonPrefix() {
+        Constraints c = AclDecisionEngine.analyze(
+                "path-prefix[{'/db/a', '/db/b'}]");
+
+        assertEquals(Arrays.asList("db"), c.segments);
+    }
+
+    @Test
+    public void testAnalyzeNested() {
+        Constraints c = AclDecisionEngine.analyze(
+                "(method[GET] and (path-prefix['/db'] and regex['/db/.*']))");
+
+        assertEquals(Collections.singleton("GET"), c.methods);
+        assertEquals(Arrays.asList("db"), c.segments);
+        assertFalse(c.pathOnly);
+    }
+
+    @Test
+    public void testAnalyzeNotIndexable() {
+        for (String p : new String[]{
+            "method[GET] or path-prefix['/db']",
+            "not path-prefix['/db']",
+            "path-prefix['/db'] and not method[GET]",
+            "regex[pattern=\"/.*/.*\", value=\"%R\", full-match=true]"}) {
+            Constraints c = AclDecisionEngine.analyze(p);
+
+            assertNull(p, c.methods);
+            assertTrue(p, c.segments.isEmpty());
+            assertFalse(p, c.pathOnly);
+        }
+    }
+
+    @Test
+    public void testIsAllowed() {
+        AclDecisionEngine engine = engine(0);
+
+        assertTrue(engine.isAllowed(roles("admin"), exchange("DELETE", "/db/coll")));
+        assertTrue(engine.isAllowed(roles("user"), exchange("GET", "/publicdb/coll")));
+        assertTrue(engine.isAllowed(roles("user"), exchange("GET", "/publicdb")));
+        assertFalse(engine.isAllowed(roles("user"), exchange("PUT", "/publicdb/coll")));
+        assertFalse(engine.isAllowed(roles("user"), exchange("GET", "/publicdbx")));
+        assertFalse(engine.isAllowed(roles("user"), exchange("GET", "/db/coll")));
+        assertTrue(engine.isAllowed(roles("user"), exchange("POST", "/users/a")));
+        assertTrue(engine.isAllowed(roles("user"), exchange("PATCH", "/users/a/b")));
+        assertFalse(engine.isAllowed(roles("user"), exchange("PATCH", "/users")));
+        assertTrue(engine.isAllowed(roles("reader"), exchange("GET", "/x/y")));
+        assertFalse(engine.isAllowed(roles("reader"), exchange("GET", "/x")));
+        assertTrue(engine.isAllowed(roles("reader", "user"), exchange("GET", "/x")));
+        assertFalse(engine.isAllowed(roles("unknown"), exchange("GET", "/publicdb")));
+        assertFalse(engine.isAllowed(Collections.emptySet(), exchange("GET", "/publicdb")));
+    }
+
+    @Test
+    public void testIsAllowedLowerCaseMethod() {
+        AclDecisionEngine engine = engine(0);
+
+        assertTrue(engine.isAllowed(roles("user"), exchange("get", "/publicdb/coll")));
+    }
+
+    @Test
+    public void testCachedDecisions() {
+        AclDecisionEngine engine = engine(100);
+
+        for (int i = 0; i < 2; i++) {
+            assertTrue(engine.isAllowed(roles("user"), exchange("GET", "/publicdb/coll")));
+            assertFalse(engine.isAllowed(roles("user"), exchange("PUT", "/publicdb/coll")));
+            assertTrue(engine.isAllowed(roles("reader"), exchange("GET", "/x/y")));
+            assertFalse(engine.isAllowed(roles("reader"), exchange("GET", "/x")));
+        }
+    }
+
+    @Test
+    public void testNotCacheableDecisions() {
+        AclDecisionEngine engine = new AclDecisionEngine(100);
+
+        engine.add("user", "path-template['/{db}/{coll}'] and equals[%{i,X-Allow}, 'true']",
+                PredicateParser.parse("path-template['/{db}/{coll}'] and equals[%{i,X-Allow}, 'true']",
+                        getClass().getClassLoader()));
+
+        HttpServerExchange allowed = exchange("GET", "/db/coll");
+        allowed.getRequestHeaders().put(new HttpString("X-Allow"), "true");
+
+        assertFalse(engine.isAllowed(roles("user"), exchange("GET", "/db/coll")));
+        assertTrue(engine.isAllowed(roles("user"), allowed));
+        assertFalse(engine.isAllowed(roles("user"), exchange("GET", "/db/coll")));
+    }
+
+    @Test
+    public void testMatchedDecisionsNotCached() {
+        AclDecisionEngine engine = new AclDecisionEngine(100);
+
+        add(engine, "user", "path-prefix['/db'] and equals[%{i,X-Allow}, 'true']");
+        add(engine, "user", "path-prefix['/db/coll'] and method[GET]");
+
+        HttpServerExchange allowed = exchange("PUT", "/db/coll");
+        allowed.getRequestHeaders().put(new HttpString("X-Allow"), "true");
+
+        // the match of a predicate depending on the headers is not reused
+        assertTrue(engine.isAllowed(roles("user"), allowed));
+        assertFalse(engine.isAllowed(roles("user"), exchange("PUT", "/db/coll")));
+
+        // the header predicate is evaluated before the path only one
+        assertTrue(engine.isAllowed(roles("user"), exchange("GET", "/db/coll")));
+        assertTrue(engine.isAllowed(roles("user"), exchange("GET", "/db/coll")));
+    }
+
+    private AclDecisionEngine engine(int cacheSize) {
+        AclDecisionEngine engine = new AclDecisionEngine(cacheSize);
+
+        add(engine, "admin", "path-prefix[path=\"/\"]");
+        add(engine, "user", "path-prefix[path=\"/publicdb/\"] and method[value=\"GET\"]");
+        add(engine, "user", "path-prefix[path=\"/users/\"] and method[{'POST', 'PATCH'}] and regex['/users/.+']");
+        add(engine, "user", "path[path=\"/x\"]");
+        add(engine, "reader", "regex[pattern=\"/.*/.*\", value=\"%R\", full-match=true] and method[value=\"GET\"]");
+
+        return engine;
+    }
+
+    private void add(AclDecisionEngine engine, String role, String predicate) {
+        engine.add(role, predicate, PredicateParser.parse(predicate,
+                getClass().getClassLoader()));
+    }
+
+    private static Set<String> roles(String... roles) {
+        return new HashSet<>(Arrays.asList(roles));
+    }
+
+    private static HttpServerExchange exchange(String method, String path) {
+        HttpServerExchange exchange = new HttpServerExchange();
+
+        exchange.setRequestMethod(new HttpString(method));
+        exchange.setRelativePath(path);
+
+        return exchange;
+    }
+}
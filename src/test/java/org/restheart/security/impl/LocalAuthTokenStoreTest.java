@@ -0,0 +1,107 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.security.impl;
+
+import com.google.common.collect.Sets;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class LocalAuthTokenStoreTest {
+
+    private static final Logger LOG
+            = LoggerFactory.getLogger(LocalAuthTokenStoreTest.class);
+
+    @Rule
+    public TestRule watcher = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            LOG.info("executing test {}", description.toString());
+        }
+    };
+
+    public LocalAuthTokenStoreTest() {
+    }
+
+    @Test
+    public void testGet() {
+        LocalAuthTokenStore store = new LocalAuthTokenStore(100, 1, 60_000);
+
+        store.put(new SimpleAccount("user", "token".toCharArray(),
+                Sets.newHashSet("admin")));
+
+        Assert.assertNotNull("valid token",
+                store.get("user", "token".toCharArray()));
+
+        Assert.assertNull("wrong token",
+                store.get("user", "wrong".toCharArray()));
+
+        Assert.assertNull("token of another user",
+                store.get("other", "token".toCharArray()));
+    }
+
+    @Test
+    public void testMaxTokensPerUser() {
+        LocalAuthTokenStore store = new LocalAuthTokenStore(100, 2, 60_000);
+
+        store.put(new SimpleAccount("user", "t1".toCharArray(), null));
+        store.put(new SimpleAccount("user", "t2".toCharArray(), null));
+        store.put(new SimpleAccount("user", "t3".toCharArray(), null));
+
+        Assert.assertNull("oldest token discarded",
+                store.get("user", "t1".toCharArray()));
+        Assert.assertNotNull(store.get("user", "t2".toCharArray()));
+        Assert.assertNotNull(store.get("user", "t3".toCharArray()));
+
+        Assert.assertArrayEquals("newest token",
+                "t3".toCharArray(),
+                store.getNewest("user").getCredentials().getPassword());
+    }
+
+    @Test
+    public void testUpdateRolesAndInvalidate() {
+        LocalAuthTokenStore store = new LocalAuthTokenStore(100, 2, 60_000);
+
+        store.put(new SimpleAccount("user", "t1".toCharArray(),
+                Sets.newHashSet("user")));
+        store.put(new SimpleAccount("user", "t2".toCharArray(),
+                Sets.newHashSet("user")));
+
+        store.updateRoles("user", Sets.newHashSet("admin"));
+
+        Assert.assertEquals(Sets.newHashSet("admin"),
+                store.get("user", "t1".toCharArray()).getRoles());
+        Assert.assertEquals(Sets.newHashSet("admin"),
+                store.get("user", "t2".toCharArray()).getRoles());
+
+        store.invalidate("user");
+
+        Assert.assertNull(store.get("user", "t1".toCharArray()));
+        Assert.assertNull(store.get("user", "t2".toCharArray()));
+        Assert.assertNull(store.getNewest("user"));
+    }
+}
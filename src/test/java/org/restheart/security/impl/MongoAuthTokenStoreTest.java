@@ -0,0 +1,146 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.security.impl;
+
+import com.google.common.collect.Sets;
+import com.mongodb.MongoClient;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import org.bson.BsonArray;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.conversions.Bson;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class MongoAuthTokenStoreTest {
+
+    private static final long TTL = 60_000;
+
+    private MongoCollection<BsonDocument> coll;
+    private FindIterable<BsonDocument> found;
+    private MongoAuthTokenStore store;
+
+    public MongoAuthTokenStoreTest() {
+    }
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        MongoClient client = mock(MongoClient.class);
+        MongoDatabase db = mock(MongoDatabase.class);
+
+        coll = mock(MongoCollection.class);
+        found = mock(FindIterable.class);
+
+        when(client.getDatabase(anyString())).thenReturn(db);
+        when(db.getCollection(anyString(), eq(BsonDocument.class)))
+                .thenReturn(coll);
+        when(coll.find(any(Bson.class))).thenReturn(found);
+        when(found.sort(any())).thenReturn(found);
+        when(found.skip(anyInt())).thenReturn(found);
+        when(found.projection(any())).thenReturn(found);
+        when(found.into(any())).thenAnswer(i -> i.getArgument(0));
+
+        store = new MongoAuthTokenStore(client, "restheart", 1, TTL);
+    }
+
+    @Test
+    public void testPutStoresTheHash() {
+        store.put(new SimpleAccount("user", "token".toCharArray(),
+                Sets.newHashSet("admin")));
+
+        ArgumentCaptor<BsonDocument> inserted
+                = ArgumentCaptor.forClass(BsonDocument.class);
+
+        verify(coll).insertOne(inserted.capture());
+
+        BsonDocument doc = inserted.getValue();
+
+        assertEquals(MongoAuthTokenStore.hash("token".toCharArray()),
+                doc.get("_id"));
+        assertNotEquals(new BsonString("token"), doc.get("_id"));
+        assertEquals(64, doc.getString("_id").getValue().length());
+    }
+
+    @Test
+    public void testGetDoesNotRenewFreshTokens() {
+        when(found.first()).thenReturn(tokenDoc(
+                System.currentTimeMillis() + TTL - 1000));
+
+        SimpleAccount account = store.get("user", "token".toCharArray());
+
+        assertNotNull(account);
+        assertArrayEquals("token".toCharArray(),
+                account.getCredentials().getPassword());
+        assertTrue(account.getRoles().contains("admin"));
+
+        verify(coll, never()).updateOne(any(Bson.class), any(Bson.class));
+    }
+
+    @Test
+    public void testGetRenewsTokensPastHalfTtl() {
+        when(found.first()).thenReturn(tokenDoc(
+                System.currentTimeMillis() + TTL / 4));
+
+        assertNotNull(store.get("user", "token".toCharArray()));
+
+        verify(coll).updateOne(any(Bson.class), any(Bson.class));
+    }
+
+    @Test
+    public void testGetWrongToken() {
+        when(found.first()).thenReturn(null);
+
+        assertNull(store.get("user", "wrong".toCharArray()));
+    }
+
+    @Test
+    public void testGetNewest() {
+        // the stored hashes cannot be returned as tokens
+        assertNull(store.getNewest("user"));
+    }
+
+    private static BsonDocument tokenDoc(long expires) {
+        BsonArray roles = new BsonArray();
+        roles.add(new BsonString("admin"));
+
+        return new BsonDocument("_id",
+                MongoAuthTokenStore.hash("token".toCharArray()))
+                .append("user", new BsonString("user"))
+                .append("roles", roles)
+                .append("created", new BsonDateTime(0))
+                .append("expires", new BsonDateTime(expires));
+    }
+}
@@ -120,4 +120,56 @@ public class RelationshipsIT extends AbstactIT {
 
         Assert.assertTrue("check href", childrenUrl.endsWith("filter={'_id':{'$in':[0,1,2,3,4,5,6,7,8,9]}}"));
     }
+
+    @Test
+    public void testGetParentExpanded() throws Exception {
+        resp = Unirest.get(url(DB, COLL_PARENT, "parent"))
+                .queryString("expand", "children")
+                .basicAuth(ADMIN_ID, ADMIN_PWD)
+                .asString();
+
+        Assert.assertEquals("check status", HttpStatus.SC_OK, resp.getStatus());
+
+        JsonValue rbody = Json.parse(resp.getBody().toString());
+
+        Assert.assertTrue("check _embedded",
+                rbody != null
+                && rbody.isObject()
+                && rbody.asObject().get("_embedded") != null
+                && rbody.asObject().get("_embedded").isObject()
+                && rbody.asObject().get("_embedded").asObject().get("children") != null
+                && rbody.asObject().get("_embedded").asObject().get("children").isArray());
+
+        Assert.assertEquals("check expanded children", 10,
+                rbody.asObject().get("_embedded").asObject().get("children").asArray().size());
+    }
+
+    @Test
+    public void testGetParentsExpanded() throws Exception {
+        resp = Unirest.get(url(DB, COLL_PARENT))
+                .queryString("expand", "children")
+                .basicAuth(ADMIN_ID, ADMIN_PWD)
+                .asString();
+
+        Assert.assertEquals("check status", HttpStatus.SC_OK, resp.getStatus());
+
+        JsonValue rbody = Json.parse(resp.getBody().toString());
+
+        JsonValue parent = rbody.asObject().get("_embedded").asObject()
+                .get("rh:doc").asArray().get(0);
+
+        Assert.assertEquals("check expanded children", 10,
+                parent.asObject().get("_embedded").asObject()
+                        .get("children").asArray().size());
+    }
+
+    @Test
+    public void testExpandUndefinedRelationship() throws Exception {
+        resp = Unirest.get(url(DB, COLL_PARENT))
+                .queryString("expand", "undefined")
+                .basicAuth(ADMIN_ID, ADMIN_PWD)
+                .asString();
+
+        Assert.assertEquals("check status", HttpStatus.SC_BAD_REQUEST, resp.getStatus());
+    }
 }
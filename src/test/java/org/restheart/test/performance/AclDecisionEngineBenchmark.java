@@ -0,0 +1,186 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.test.performance;
+
+import io.undertow.predicate.Predicate;
+import static io.undertow.predicate.Predicate.PREDICATE_CONTEXT;
+import io.undertow.predicate.PredicateParser;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HttpString;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.restheart.security.impl.AclDecisionEngine;
+
+/**
+ * measures the authorization of a request against a large ACL (40 roles
+ * with 25 permissions each, mixing method and path-prefix, path-template
+ * with equals and regex predicates): resolving all the predicates of all the
+ * roles of the account, as SimpleAccessManager used to do, against the
+ * AclDecisionEngine index, without and with the decision cache.
+ *
+ * run it with: java -cp target/test-classes:target/classes:&lt;deps&gt;
+ * org.restheart.test.performance.AclDecisionEngineBenchmark
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AclDecisionEngineBenchmark {
+
+    private static final int ROLES = 40;
+    private static final int DBS = 25;
+    private static final int ACCOUNT_ROLES = 4;
+
+    private final Map<String, Set<Predicate>> acl = new HashMap<>();
+
+    private AclDecisionEngine engine;
+    private AclDecisionEngine cachingEngine;
+
+    private Set<String> roles;
+
+    private final List<HttpServerExchange> exchanges = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        engine = new AclDecisionEngine(0);
+        cachingEngine = new AclDecisionEngine(10_000);
+
+        for (int r = 0; r < ROLES; r++) {
+            String role = "role" + r;
+
+            for (int d = 0; d < DBS; d++) {
+                String source;
+
+                switch (d % 5) {
+                    case 0:
+                        source = "path-prefix[path=\"/db" + d + "/coll" + r
+                                + "\"] and method[value=\"GET\"]";
+                        break;
+                    case 1:
+                        source = "path-prefix[path=\"/db" + d + "/coll" + r
+                                + "\"] and method[{\"POST\", \"PATCH\", \"PUT\"}]";
+                        break;
+                    case 2:
+                        source = "path-template[value=\"/db" + d
+                                + "/{username}/*\"] and equals[%R, \"/db" + d
+                                + "/${username}/_meta\"]";
+                        break;
+                    case 3:
+                        source = "path[path=\"/db" + d + "/coll" + r
+                                + "/_indexes\"] and method[value=\"GET\"]";
+                        break;
+                    default:
+                        source = "regex[pattern=\"/db" + d + "/coll" + r
+                                + "/.*\", value=\"%R\", full-match=true] "
+                                + "and method[value=\"DELETE\"]";
+                }
+
+                Predicate predicate = PredicateParser.parse(source,
+                        getClass().getClassLoader());
+
+                acl.computeIfAbsent(role, k -> new HashSet<>()).add(predicate);
+                engine.add(role, source, predicate);
+                cachingEngine.add(role, source, predicate);
+            }
+        }
+
+        roles = new HashSet<>();
+
+        for (int r = 0; r < ACCOUNT_ROLES; r++) {
+            roles.add("role" + (r * 10 + 3));
+        }
+
+        // allowed and forbidden requests
+        exchanges.add(exchange("GET", "/db0/coll13/doc"));
+        exchanges.add(exchange("PATCH", "/db21/coll33/doc"));
+        exchanges.add(exchange("GET", "/db3/coll3/_indexes"));
+        exchanges.add(exchange("GET", "/db7/coll1/doc"));
+        exchanges.add(exchange("DELETE", "/db24/coll5/doc"));
+        exchanges.add(exchange("PUT", "/db11/coll23"));
+    }
+
+    @Benchmark
+    public void linearScan(Blackhole bh) {
+        for (HttpServerExchange exchange : exchanges) {
+            exchange.putAttachment(PREDICATE_CONTEXT, new TreeMap<>());
+
+            bh.consume(roles.stream().anyMatch(role -> {
+                Set<Predicate> predicates = acl.get(role);
+
+                return predicates != null && predicates.stream()
+                        .anyMatch(p -> p.resolve(exchange));
+            }));
+        }
+    }
+
+    @Benchmark
+    public void indexed(Blackhole bh) {
+        for (HttpServerExchange exchange : exchanges) {
+            exchange.removeAttachment(PREDICATE_CONTEXT);
+            bh.consume(engine.isAllowed(roles, exchange));
+        }
+    }
+
+    @Benchmark
+    public void indexedWithCache(Blackhole bh) {
+        for (HttpServerExchange exchange : exchanges) {
+            exchange.removeAttachment(PREDICATE_CONTEXT);
+            bh.consume(cachingEngine.isAllowed(roles, exchange));
+        }
+    }
+
+    private static HttpServerExchange exchange(String method, String path) {
+        HttpServerExchange exchange = new HttpServerExchange();
+
+        exchange.setRequestMethod(new HttpString(method));
+        exchange.setRelativePath(path);
+
+        return exchange;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AclDecisionEngineBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.test.performance;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.bson.BsonDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.restheart.Bootstrapper;
+import org.restheart.Configuration;
+import org.restheart.handlers.metadata.InvalidMetadataException;
+import org.restheart.metadata.CompiledMetadata;
+import org.restheart.metadata.CompiledMetadata.Binding;
+import org.restheart.metadata.NamedSingletonsFactory;
+import org.restheart.metadata.checkers.Checker;
+import org.restheart.metadata.checkers.RequestChecker;
+import org.restheart.metadata.transformers.RepresentationTransformer;
+import org.restheart.metadata.transformers.Transformer;
+
+/**
+ * measures the per request overhead of the transformers and checkers defined
+ * in the collection properties: parsing the definitions and resolving the
+ * named singletons on every request, as the metadata handlers used to do,
+ * against walking the lists of the compiled metadata.
+ *
+ * run it with: java -cp target/test-classes:target/classes:&lt;deps&gt;
+ * org.restheart.test.performance.CompiledMetadataBenchmark
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CompiledMetadataBenchmark {
+
+    private static final String COLL_PROPS = "{'_id': 'coll', "
+            + "'rts': ["
+            + "{'name': 'addRequestProperties', 'phase': 'REQUEST', 'scope': 'THIS', 'args': {'log': ['userName', 'remoteIp']}}, "
+            + "{'name': 'stringsToOids', 'phase': 'REQUEST', 'scope': 'THIS', 'args': ['ref']}, "
+            + "{'name': 'filterProperties', 'phase': 'RESPONSE', 'scope': 'CHILDREN', 'args': ['password', 'secret']}, "
+            + "{'name': 'oidsToStrings', 'phase': 'RESPONSE', 'scope': 'CHILDREN', 'args': ['ref']}], "
+            + "'checkers': ["
+            + "{'name': 'checkContentSize', 'args': {'max': 1048576}, 'skipNotSupported': true}, "
+            + "{'name': 'checkContent', 'args': [{'path': '$', 'type': 'object'}, {'path': '$.name', 'type': 'string', 'mandatory': true}], 'skipNotSupported': true}, "
+            + "{'name': 'jsonSchema', 'args': {'schemaId': 'schema'}, 'skipNotSupported': true}]}";
+
+    private BsonDocument collProps;
+    private CompiledMetadata compiled;
+
+    @Setup
+    public void setup() throws Exception {
+        setConfiguration();
+
+        collProps = BsonDocument.parse(COLL_PROPS);
+        compiled = CompiledMetadata.compile(collProps);
+    }
+
+    @Benchmark
+    public void parseOnEveryRequest(Blackhole bh)
+            throws InvalidMetadataException {
+        NamedSingletonsFactory nsf = NamedSingletonsFactory.getInstance();
+
+        for (RepresentationTransformer rt
+                : RepresentationTransformer.getFromJson(collProps)) {
+            bh.consume((Transformer) nsf.get("transformers", rt.getName()));
+            bh.consume(nsf.getArgs("transformers", rt.getName()));
+            bh.consume(rt.getArgs());
+        }
+
+        for (RequestChecker rc : RequestChecker.getFromJson(collProps)) {
+            bh.consume((Checker) nsf.get("checkers", rc.getName()));
+            bh.consume(nsf.getArgs("checkers", rc.getName()));
+            bh.consume(rc.getArgs());
+        }
+    }
+
+    @Benchmark
+    public void compiled(Blackhole bh) throws InvalidMetadataException {
+        for (Binding<RepresentationTransformer, Transformer> brt
+                : compiled.getTransformers()) {
+            bh.consume(brt.getSingleton());
+            bh.consume(brt.getConfArgs());
+            bh.consume(brt.getMetadata().getArgs());
+        }
+
+        for (Binding<RequestChecker, Checker> brc : compiled.getCheckers()) {
+            bh.consume(brc.getSingleton());
+            bh.consume(brc.getConfArgs());
+            bh.consume(brc.getMetadata().getArgs());
+        }
+    }
+
+    @Benchmark
+    public CompiledMetadata compile() {
+        // paid once per cache load
+        return CompiledMetadata.compile(collProps);
+    }
+
+    /**
+     * the named singletons are read from the Bootstrapper configuration
+     */
+    private static void setConfiguration() throws Exception {
+        List<Map<String, Object>> groups = new ArrayList<>();
+
+        groups.add(group("checkers",
+                "org.restheart.metadata.checkers.Checker",
+                "jsonSchema",
+                "org.restheart.metadata.checkers.JsonSchemaChecker",
+                "checkContent",
+                "org.restheart.metadata.checkers.JsonPathConditionsChecker",
+                "checkContentSize",
+                "org.restheart.metadata.checkers.ContentSizeChecker"));
+
+        groups.add(group("transformers",
+                "org.restheart.metadata.transformers.Transformer",
+                "addRequestProperties",
+                "org.restheart.metadata.transformers.RequestPropsInjecterTransformer",
+                "filterProperties",
+                "org.restheart.metadata.transformers.FilterTransformer",
+                "stringsToOids",
+                "org.restheart.metadata.transformers.ValidOidsStringsAsOidsTransformer",
+                "oidsToStrings",
+                "org.restheart.metadata.transformers.OidsAsStringsTransformer"));
+
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Configuration.METADATA_NAMED_SINGLETONS_KEY, groups);
+
+        Field configuration = Bootstrapper.class
+                .getDeclaredField("configuration");
+
+        configuration.setAccessible(true);
+        configuration.set(null, new Configuration(conf, true));
+    }
+
+    private static Map<String, Object> group(
+            String name,
+            String interfaze,
+            String... singletons) {
+        List<Map<String, Object>> _singletons = new ArrayList<>();
+
+        for (int i = 0; i < singletons.length; i += 2) {
+            Map<String, Object> singleton = new HashMap<>();
+            singleton.put(NamedSingletonsFactory.SINGLETON_NAME_KEY,
+                    singletons[i]);
+            singleton.put(NamedSingletonsFactory.SINGLETON_CLASS_KEY,
+                    singletons[i + 1]);
+            _singletons.add(singleton);
+        }
+
+        Map<String, Object> group = new HashMap<>();
+        group.put(NamedSingletonsFactory.GROUP_KEY, name);
+        group.put(NamedSingletonsFactory.INTERFACE_KEY, interfaze);
+        group.put(NamedSingletonsFactory.SINGLETONS_KEY, _singletons);
+
+        return group;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CompiledMetadataBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.test.performance;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.restheart.db.CursorPoolEntryKey;
+import org.restheart.db.CursorPoolIndex;
+
+/**
+ * measures the cost of claiming a cursor from the pool as the pool grows; the
+ * lookup cost should stay flat with the number of pooled cursors.
+ *
+ * run it with: java -cp target/test-classes:target/classes:&lt;deps&gt;
+ * org.restheart.test.performance.CursorPoolIndexBenchmark
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CursorPoolIndexBenchmark {
+
+    private static final int SLICE_WIDTH = 1000;
+    private static final int SLICES = 10;
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int poolSize;
+
+    private CursorPoolIndex index;
+    private CursorPoolEntryKey requested;
+    private int minSkipped;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        MongoCollection<BsonDocument> coll = mock(MongoCollection.class);
+        when(coll.getNamespace()).thenReturn(new MongoNamespace("test.coll"));
+
+        FindIterable<BsonDocument> cursor = mock(FindIterable.class);
+
+        index = new CursorPoolIndex();
+
+        // many filters (i.e. many groups), few slices per filter
+        int groups = Math.max(1, poolSize / SLICES);
+
+        for (int g = 0; g < groups; g++) {
+            BsonDocument filter = new BsonDocument("n", new BsonInt32(g));
+
+            for (int slice = 1; slice <= SLICES; slice++) {
+                index.put(new CursorPoolEntryKey(
+                        coll,
+                        null,
+                        filter,
+                        null,
+                        slice * SLICE_WIDTH,
+                        g * SLICES + slice), cursor);
+            }
+        }
+
+        requested = new CursorPoolEntryKey(
+                coll,
+                null,
+                new BsonDocument("n", new BsonInt32(groups / 2)),
+                null,
+                SLICES / 2 * SLICE_WIDTH + SLICE_WIDTH / 20,
+                -1);
+
+        minSkipped = requested.getSkipped() - requested.getSkipped() / 10;
+    }
+
+    @Benchmark
+    public Object claimAndRelease() {
+        Map.Entry<CursorPoolEntryKey, FindIterable<BsonDocument>> claimed
+                = index.claimFloor(requested, minSkipped);
+
+        if (claimed != null) {
+            // put it back to keep the pool size steady
+            index.put(claimed.getKey(), claimed.getValue());
+        }
+
+        return claimed;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object claimAndReleaseConcurrent() {
+        return claimAndRelease();
+    }
+
+    @Benchmark
+    public int sliceHeight() {
+        return index.count(requested);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CursorPoolIndexBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
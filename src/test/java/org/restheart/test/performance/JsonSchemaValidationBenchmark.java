@@ -0,0 +1,157 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.test.performance;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.bson.BsonDocument;
+import org.everit.json.schema.Schema;
+import org.everit.json.schema.ValidationException;
+import org.everit.json.schema.loader.SchemaLoader;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.restheart.handlers.schema.CompiledJsonSchema;
+
+/**
+ * measures the validation of a document by the jsonSchema checker: the
+ * everit path, that converts the BsonDocument to json text and then to a
+ * JSONObject, against the compiled schema that checks the BsonDocument
+ * directly.
+ *
+ * run it with: java -cp target/test-classes:target/classes:&lt;deps&gt;
+ * org.restheart.test.performance.JsonSchemaValidationBenchmark
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JsonSchemaValidationBenchmark {
+
+    private static final String SCHEMA = "{"
+            + "'type': 'object', "
+            + "'properties': {"
+            + "  'name': {'type': 'string', 'minLength': 1, 'maxLength': 100}, "
+            + "  'email': {'type': 'string', 'pattern': '^[^@]+@[^@]+$'}, "
+            + "  'age': {'type': 'integer', 'minimum': 0, 'maximum': 150}, "
+            + "  'tags': {'type': 'array', 'items': {'type': 'string'}, 'maxItems': 20}, "
+            + "  'status': {'enum': ['active', 'disabled', 'pending']}, "
+            + "  'addresses': {'type': 'array', 'items': {'$ref': '#/definitions/address'}}}, "
+            + "'required': ['name', 'email'], "
+            + "'definitions': {"
+            + "  'address': {'type': 'object', "
+            + "    'properties': {'street': {'type': 'string'}, 'city': {'type': 'string'}, 'zip': {'type': 'string', 'pattern': '^[0-9]{5}$'}}, "
+            + "    'required': ['city'], "
+            + "    'additionalProperties': false}}}";
+
+    private static final String VALID_DOC = "{"
+            + "'name': 'Andrea', 'email': 'andrea@softinstigate.com', 'age': 40, "
+            + "'tags': ['a', 'b', 'c', 'd'], 'status': 'active', "
+            + "'addresses': ["
+            + "{'street': 'Via Roma 1', 'city': 'Rome', 'zip': '00100'}, "
+            + "{'street': 'Via Milano 2', 'city': 'Milan', 'zip': '20100'}]}";
+
+    private static final String INVALID_DOC = "{"
+            + "'name': '', 'email': 'andrea', 'age': -1, "
+            + "'tags': ['a', 1], 'status': 'deleted', "
+            + "'addresses': [{'street': 'Via Roma 1', 'zip': 'x', 'other': 1}]}";
+
+    private Schema everitSchema;
+    private CompiledJsonSchema compiledSchema;
+
+    private BsonDocument validDoc;
+    private BsonDocument invalidDoc;
+
+    @Setup
+    public void setup() {
+        BsonDocument schema = BsonDocument.parse(SCHEMA);
+
+        everitSchema = SchemaLoader.load(new JSONObject(schema.toJson()));
+        compiledSchema = CompiledJsonSchema.compile(schema, url -> null);
+
+        validDoc = BsonDocument.parse(VALID_DOC);
+        invalidDoc = BsonDocument.parse(INVALID_DOC);
+    }
+
+    @Benchmark
+    public boolean everitValid() {
+        return everit(validDoc);
+    }
+
+    @Benchmark
+    public boolean compiledValid() {
+        return compiledSchema.validate(validDoc).isEmpty();
+    }
+
+    @Benchmark
+    public boolean everitInvalid() {
+        return everit(invalidDoc);
+    }
+
+    @Benchmark
+    public boolean compiledInvalid() {
+        return compiledSchema.validate(invalidDoc).isEmpty();
+    }
+
+    @Benchmark
+    public CompiledJsonSchema compile() {
+        // paid once per cache load
+        return CompiledJsonSchema.compile(BsonDocument.parse(SCHEMA),
+                url -> null);
+    }
+
+    /**
+     * as the jsonSchema checker does with the everit schema
+     */
+    private boolean everit(BsonDocument doc) {
+        try {
+            everitSchema.validate(new JSONObject(doc.toJson()));
+            return true;
+        } catch (ValidationException ve) {
+            // the checker adds the messages as warnings
+            List<String> messages = ve.getCausingExceptions().stream()
+                    .map(ValidationException::getMessage)
+                    .collect(Collectors.toList());
+            messages.add(0, ve.getMessage());
+            return messages.isEmpty();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JsonSchemaValidationBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.test.performance;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.bson.BsonArray;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.restheart.utils.JsonStreamSerializer;
+import org.restheart.utils.JsonUtils;
+
+/**
+ * compares throughput and allocation of JsonUtils.toJson() (plus the UTF-8
+ * encoding done by the sender) against JsonStreamSerializer writing into
+ * recycled buffers, as the pooled buffers of the connection are.
+ *
+ * allocation is reported running with the gc profiler, i.e. passing -prof gc
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    @Param({"10", "100", "1000"})
+    public int documents;
+
+    private BsonDocument page;
+
+    private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+
+    @Setup
+    public void setup() {
+        BsonArray embedded = new BsonArray();
+
+        for (int cont = 0; cont < documents; cont++) {
+            embedded.add(new BsonDocument("_id", new BsonObjectId(new ObjectId()))
+                    .append("name", new BsonString("document " + cont))
+                    .append("n", new BsonInt32(cont))
+                    .append("d", new BsonDouble(cont / 3d))
+                    .append("ts", new BsonDateTime(System.currentTimeMillis()))
+                    .append("nested", new BsonDocument("a", new BsonString("àèì"))
+                            .append("b", new BsonArray())));
+        }
+
+        page = new BsonDocument("_embedded",
+                new BsonDocument("rh:doc", embedded))
+                .append("_returned", new BsonInt32(documents));
+    }
+
+    @Benchmark
+    public byte[] toJson() {
+        return JsonUtils.toJson(page).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int streamSerializer() {
+        List<ByteBuffer> buffers = JsonStreamSerializer.write(page, () -> {
+            ByteBuffer b = pool.poll();
+            return b == null ? ByteBuffer.allocateDirect(BUFFER_SIZE) : b;
+        });
+
+        int size = 0;
+
+        for (ByteBuffer b : buffers) {
+            size += b.remaining();
+            b.clear();
+            pool.add(b);
+        }
+
+        return size;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JsonSerializationBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build())
+                .run();
+    }
+}
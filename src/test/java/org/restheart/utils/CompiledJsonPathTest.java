@@ -0,0 +1,76 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.utils;
+
+import java.util.List;
+import java.util.Optional;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonValue;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class CompiledJsonPathTest {
+
+    public CompiledJsonPathTest() {
+    }
+
+    @Test
+    public void testReuse() {
+        CompiledJsonPath path = CompiledJsonPath.compile("$.a.[*].b");
+
+        List<Optional<BsonValue>> props = path.getProps(
+                BsonDocument.parse("{'a': [{'b': 1}, {'b': 2}, {'c': 3}]}"));
+
+        assertEquals(3, props.size());
+        assertEquals(Optional.of(new BsonInt32(1)), props.get(0));
+        assertEquals(Optional.of(new BsonInt32(2)), props.get(1));
+        assertNull(props.get(2));
+
+        // same compiled path, other document
+        assertEquals(Integer.valueOf(1), path.countProps(
+                BsonDocument.parse("{'a': [{'b': null}]}")));
+        assertEquals(Optional.empty(), path.getProps(
+                BsonDocument.parse("{'a': [{'b': null}]}")).get(0));
+        assertNull(path.getProps(BsonDocument.parse("{'x': 1}")));
+    }
+
+    @Test
+    public void testNumericKeysAsArray() {
+        CompiledJsonPath path = CompiledJsonPath.compile("$.a.[*]");
+
+        assertEquals(Integer.valueOf(2), path.countProps(
+                BsonDocument.parse("{'a': {'0': 1, '2': 3}}")));
+        assertNull(path.getProps(BsonDocument.parse("{'a': {'b': 1}}")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongPath() {
+        CompiledJsonPath.compile("a.b");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testArrayWithoutWildcard() {
+        CompiledJsonPath.compile("$.g.h")
+                .getProps(BsonDocument.parse("{'g': [{'h': 1}]}"));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.utils;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class CsvStreamParserTest {
+
+    public CsvStreamParserTest() {
+    }
+
+    @Test
+    public void testSimple() throws IOException {
+        List<List<String>> records = parse("a,b,c\n1,2,3\n", ',');
+
+        assertEquals(2, records.size());
+        assertEquals(Arrays.asList("a", "b", "c"), records.get(0));
+        assertEquals(Arrays.asList("1", "2", "3"), records.get(1));
+    }
+
+    @Test
+    public void testNoFinalLineBreak() throws IOException {
+        List<List<String>> records = parse("a,b\r\n1,", ',');
+
+        assertEquals(2, records.size());
+        assertEquals(Arrays.asList("1", ""), records.get(1));
+    }
+
+    @Test
+    public void testQuoted() throws IOException {
+        List<List<String>> records = parse(
+                "\"a,b\",\"say \"\"hi\"\"\",\"line\r\nbreak\",\"\"\n", ',');
+
+        assertEquals(1, records.size());
+        assertEquals(Arrays.asList("a,b", "say \"hi\"", "line\r\nbreak", ""),
+                records.get(0));
+    }
+
+    @Test
+    public void testQuotedFlagsAndLines() throws IOException {
+        CsvStreamParser parser = parser("a,\"b\"\n\n\"multi\nline\",x\ny,z",
+                ',');
+
+        assertTrue(parser.next());
+        assertFalse(parser.isQuoted(0));
+        assertTrue(parser.isQuoted(1));
+        assertEquals(1, parser.getLine());
+
+        // the blank line is skipped
+        assertTrue(parser.next());
+        assertTrue(parser.isQuoted(0));
+        assertEquals(3, parser.getLine());
+
+        assertTrue(parser.next());
+        assertEquals(5, parser.getLine());
+
+        assertFalse(parser.next());
+        assertFalse(parser.next());
+    }
+
+    @Test
+    public void testSeparator() throws IOException {
+        List<List<String>> records = parse("a;b\t;\"c;d\"\r1;2;3", ';');
+
+        assertEquals(2, records.size());
+        assertEquals(Arrays.asList("a", "b\t", "c;d"), records.get(0));
+        assertEquals(Arrays.asList("1", "2", "3"), records.get(1));
+    }
+
+    @Test
+    public void testByteOrderMark() throws IOException {
+        List<List<String>> records = parse("\uFEFFa,b\n", ',');
+
+        assertEquals(Arrays.asList("a", "b"), records.get(0));
+    }
+
+    @Test
+    public void testSmallBuffer() throws IOException {
+        String csv = "name,desc\n\"x\",\"a \"\"long\"\"\r\nvalue\"\r\ny,z\r\n";
+
+        assertEquals(parse(csv, ','), parse(csv, ',', 1));
+    }
+
+    @Test(expected = CsvStreamParser.CsvParseException.class)
+    public void testMissingClosingQuote() throws IOException {
+        parse("a,\"b\n1,2\n", ',');
+    }
+
+    @Test(expected = CsvStreamParser.CsvParseException.class)
+    public void testMaxFieldLength() throws IOException {
+        new CsvStreamParser(new StringReader("abcdef"), ',', 16, 5).next();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSeparator() {
+        parser("a", '"');
+    }
+
+    private static List<List<String>> parse(String csv, char sep)
+            throws IOException {
+        return parse(csv, sep, 16);
+    }
+
+    private static List<List<String>> parse(
+            String csv,
+            char sep,
+            int bufferSize) throws IOException {
+        CsvStreamParser parser = new CsvStreamParser(
+                new StringReader(csv), sep, bufferSize, 1024);
+
+        List<List<String>> ret = new ArrayList<>();
+
+        while (parser.next()) {
+            ret.add(parser.getFields());
+        }
+
+        return ret;
+    }
+
+    private static CsvStreamParser parser(String csv, char sep) {
+        return new CsvStreamParser(new StringReader(csv), sep, 16, 1024);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonValue;
+import org.bson.json.JsonParseException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class JsonStreamDecoderTest {
+
+    public JsonStreamDecoderTest() {
+    }
+
+    @Test
+    public void testDocument() throws Exception {
+        String json = "{'a': 1, 'b': {'$oid': '5a0b0d0b0c0d0e0f10111213'}}";
+
+        assertEquals(BsonDocument.parse(json), decode(json, 3, null));
+    }
+
+    @Test
+    public void testArray() throws Exception {
+        String json = " [ {'a': 'x,]}'}, {'b': [1, 2]}, 3 ] ";
+
+        BsonArray expected = new BsonArray();
+        expected.add(BsonDocument.parse("{'a': 'x,]}'}"));
+        expected.add(BsonDocument.parse("{'b': [1, 2]}"));
+        expected.add(new BsonInt32(3));
+
+        assertEquals(expected, decode(json, 2, null));
+    }
+
+    @Test
+    public void testArrayElementsConsumer() throws Exception {
+        List<BsonValue> elements = new ArrayList<>();
+
+        BsonValue ret = decode("[{'a': \"\\\"]\"}, {'b': 'àè'}]", 5,
+                elements::add);
+
+        assertEquals(new BsonArray(), ret);
+        assertEquals(2, elements.size());
+        assertEquals(BsonDocument.parse("{'b': 'àè'}"), elements.get(1));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        assertNull(decode("", 10, null));
+        assertEquals(new BsonArray(), decode("[]", 10, null));
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void testUnterminatedArray() throws Exception {
+        decode("[{'a': 1}", 10, null);
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void testTrailingComma() throws Exception {
+        decode("[{'a': 1},]", 10, null);
+    }
+
+    @Test(expected = RequestBodyTooLargeException.class)
+    public void testMaxSize() throws Exception {
+        JsonStreamDecoder decoder = new JsonStreamDecoder(10, null);
+
+        decoder.feed(ByteBuffer.wrap("[1, 2, 3, ".getBytes(StandardCharsets.UTF_8)));
+        decoder.feed(ByteBuffer.wrap("4]".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testRawContent() throws Exception {
+        String json = " [ {'a': 1}, 2 ] ";
+
+        JsonStreamDecoder decoder = new JsonStreamDecoder(0, null)
+                .keepRawContent();
+
+        decoder.feed(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(2, decoder.finish().asArray().size());
+        assertEquals(json, decoder.getRawContent());
+
+        // not kept by default
+        decoder = new JsonStreamDecoder(0, null);
+        decoder.feed(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)));
+
+        assertNull(decoder.getRawContent());
+    }
+
+    private BsonValue decode(
+            String json,
+            int chunkSize,
+            Consumer<BsonValue> consumer)
+            throws Exception {
+        JsonStreamDecoder decoder = new JsonStreamDecoder(0, consumer);
+
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+
+        for (int i = 0; i < bytes.length; i += chunkSize) {
+            decoder.feed(ByteBuffer.wrap(bytes, i,
+                    Math.min(chunkSize, bytes.length - i)));
+        }
+
+        return decoder.finish();
+    }
+}
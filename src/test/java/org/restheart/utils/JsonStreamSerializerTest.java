@@ -0,0 +1,88 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class JsonStreamSerializerTest {
+
+    public JsonStreamSerializerTest() {
+    }
+
+    @Test
+    public void testDocument() {
+        assertSameAsToJson(BsonDocument.parse("{'a': 1, 'b': 'two words', "
+                + "'c': {'$oid': '58fe1e0ff3d41d6bd64e3e6c'}, "
+                + "'d': [1, 2.5, true, null, {'x': 'y'}], "
+                + "'e': {'$date': 1493036559000}, "
+                + "'f': {'$numberLong': '12345678901'}, "
+                + "'g': 'esc \\\" quote \\\\ backslash', "
+                + "'_id': 'moved first'}"));
+    }
+
+    @Test
+    public void testArray() {
+        BsonArray array = new BsonArray();
+        array.add(BsonDocument.parse("{'a': 1}"));
+        array.add(new BsonString("  spaces  "));
+        array.add(new BsonArray());
+
+        assertSameAsToJson(array);
+        assertSameAsToJson(new BsonArray());
+    }
+
+    @Test
+    public void testMultiBytesAndSmallBuffers() {
+        BsonDocument doc = BsonDocument.parse("{'a': 'àèìòù', 'b': [1, 2, 3]}");
+
+        // multi-byte chars span buffers
+        assertEquals("{\"a\":\"àèìòù\",\"b\":[1,2,3]}", toString(
+                JsonStreamSerializer.write(doc, () -> ByteBuffer.allocate(3))));
+    }
+
+    private static void assertSameAsToJson(BsonValue bson) {
+        assertEquals(JsonUtils.toJson(bson), toString(
+                JsonStreamSerializer.write(bson,
+                        () -> ByteBuffer.allocate(16 * 1024))));
+    }
+
+    private static String toString(List<ByteBuffer> buffers) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        buffers.forEach(b -> {
+            byte[] bytes = new byte[b.remaining()];
+            b.get(bytes);
+            out.write(bytes, 0, bytes.length);
+        });
+
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
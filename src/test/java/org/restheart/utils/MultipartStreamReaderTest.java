@@ -0,0 +1,172 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class MultipartStreamReaderTest {
+
+    private static final String BOUNDARY = "----boundary0123";
+
+    public MultipartStreamReaderTest() {
+    }
+
+    @Test
+    public void testGetBoundary() {
+        assertEquals(BOUNDARY, MultipartStreamReader.getBoundary(
+                "multipart/form-data; boundary=" + BOUNDARY));
+        assertEquals(BOUNDARY, MultipartStreamReader.getBoundary(
+                "multipart/form-data; boundary=\"" + BOUNDARY + "\""));
+        assertNull(MultipartStreamReader.getBoundary(
+                "application/x-www-form-urlencoded"));
+    }
+
+    @Test
+    public void testFieldsAndFile() throws Exception {
+        byte[] file = new byte[100000];
+        new Random(7).nextBytes(file);
+
+        // a partial delimiter in the file content
+        byte[] fake = ("\r\n--" + BOUNDARY.substring(0, 8))
+                .getBytes(StandardCharsets.ISO_8859_1);
+        System.arraycopy(fake, 0, file, 5000, fake.length);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        write(body, "preamble\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"metadata\"\r\n"
+                + "\r\n"
+                + "{\"a\": 1}\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; "
+                + "filename=\"x.bin\"\r\n"
+                + "Content-Type: application/octet-stream\r\n"
+                + "\r\n");
+        body.write(file);
+        write(body, "\r\n--" + BOUNDARY + "--\r\n");
+
+        // small buffer to check the delimiter across reads
+        MultipartStreamReader reader = new MultipartStreamReader(
+                new ByteArrayInputStream(body.toByteArray()),
+                BOUNDARY,
+                64);
+
+        assertTrue(reader.next());
+        assertEquals("metadata", reader.getName());
+        assertFalse(reader.isFile());
+        assertEquals("{\"a\": 1}",
+                reader.readString(StandardCharsets.UTF_8, 0));
+
+        assertTrue(reader.next());
+        assertEquals("file", reader.getName());
+        assertEquals("x.bin", reader.getFileName());
+        assertEquals("application/octet-stream", reader.getContentType());
+        assertArrayEquals(file, readAll(reader.getInputStream()));
+
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void testSkipUnreadPart() throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        write(body, "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"a\"\r\n"
+                + "\r\n"
+                + "not read\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"b\"\r\n"
+                + "\r\n"
+                + "b\r\n"
+                + "--" + BOUNDARY + "--");
+
+        MultipartStreamReader reader = new MultipartStreamReader(
+                new ByteArrayInputStream(body.toByteArray()),
+                BOUNDARY,
+                1024);
+
+        assertTrue(reader.next());
+        assertEquals("a", reader.getName());
+        assertTrue(reader.next());
+        assertEquals("b", reader.getName());
+        assertEquals("b", reader.readString(StandardCharsets.UTF_8, 0));
+        assertFalse(reader.next());
+    }
+
+    @Test(expected = RequestBodyTooLargeException.class)
+    public void testFieldTooLarge() throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        write(body, "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"a\"\r\n"
+                + "\r\n"
+                + "0123456789\r\n"
+                + "--" + BOUNDARY + "--");
+
+        MultipartStreamReader reader = new MultipartStreamReader(
+                new ByteArrayInputStream(body.toByteArray()),
+                BOUNDARY,
+                1024);
+
+        assertTrue(reader.next());
+        reader.readString(StandardCharsets.UTF_8, 5);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        write(body, "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; "
+                + "filename=\"x.bin\"\r\n"
+                + "\r\n"
+                + "truncated");
+
+        MultipartStreamReader reader = new MultipartStreamReader(
+                new ByteArrayInputStream(body.toByteArray()),
+                BOUNDARY,
+                1024);
+
+        assertTrue(reader.next());
+        readAll(reader.getInputStream());
+    }
+
+    private static void write(ByteArrayOutputStream out, String s)
+            throws IOException {
+        out.write(s.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] b = new byte[1000];
+        int read;
+
+        while ((read = in.read(b)) >= 0) {
+            out.write(b, 0, read);
+        }
+
+        return out.toByteArray();
+    }
+}
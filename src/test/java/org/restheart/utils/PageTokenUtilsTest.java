@@ -0,0 +1,245 @@
+/*
+ * RESTHeart - the Web API for MongoDB
+ * Copyright (C) SoftInstigate Srl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.restheart.utils;
+
+import org.bson.BsonArray;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.types.ObjectId;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class PageTokenUtilsTest {
+
+    public PageTokenUtilsTest() {
+    }
+
+    @Test
+    public void testKeysetSort() {
+        BsonDocument sort = BsonDocument.parse("{'a': -1}");
+
+        assertEquals(BsonDocument.parse("{'a': -1, '_id': 1}"),
+                PageTokenUtils.getKeysetSort(sort));
+
+        sort = BsonDocument.parse("{'_id': -1}");
+
+        assertEquals(sort, PageTokenUtils.getKeysetSort(sort));
+    }
+
+    @Test
+    public void testEncodeDecode() {
+        BsonDocument sort = BsonDocument.parse("{'a.b': -1, '_id': 1}");
+
+        ObjectId id = new ObjectId();
+
+        BsonDocument last = new BsonDocument("_id", new BsonObjectId(id))
+                .append("a", new BsonDocument("b", new BsonString("x")))
+                .append("c", new BsonInt32(1));
+
+        String token = PageTokenUtils.encode(last, sort);
+
+        BsonDocument values = PageTokenUtils.decode(token, sort);
+
+        assertEquals(new BsonString("x"), values.get("a.b"));
+        assertEquals(new BsonObjectId(id), values.get("_id"));
+        assertFalse(values.containsKey("c"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeWrongSort() {
+        BsonDocument last = BsonDocument.parse("{'_id': 1, 'a': 2}");
+
+        String token = PageTokenUtils.encode(last,
+                BsonDocument.parse("{'a': 1, '_id': 1}"));
+
+        PageTokenUtils.decode(token, BsonDocument.parse("{'_id': 1}"));
+    }
+
+    @Test
+    public void testRangeFilter() {
+        BsonDocument sort = BsonDocument.parse("{'a': 1, '_id': -1}");
+        BsonDocument values = BsonDocument.parse("{'a': 5, '_id': 10}");
+
+        BsonArray or = PageTokenUtils.getRangeFilter(values, sort)
+                .getArray("$or");
+
+        // greater numbers and the types following numbers
+        assertTrue(or.contains(BsonDocument.parse("{'a': {'$gt': 5}}")));
+        assertTrue(or.contains(type("a", "string")));
+        assertTrue(or.contains(type("a", "maxKey")));
+        assertFalse(or.contains(type("a", "number")));
+        assertFalse(or.contains(BsonDocument.parse("{'a': null}")));
+
+        // ties on a, the _id brackets preceding numbers for descending order
+        BsonDocument tie = or.get(or.size() - 1).asDocument();
+
+        assertEquals(new BsonInt32(5), tie.get("a"));
+        assertTrue(tie.getArray("$or")
+                .contains(BsonDocument.parse("{'_id': {'$lt': 10}}")));
+        assertTrue(tie.getArray("$or")
+                .contains(BsonDocument.parse("{'_id': null}")));
+        assertTrue(tie.getArray("$or").contains(type("_id", "minKey")));
+        assertFalse(tie.getArray("$or").contains(type("_id", "string")));
+
+        sort = BsonDocument.parse("{'_id': -1}");
+        values = BsonDocument.parse("{'_id': {'$minKey': 1}}");
+
+        // nothing precedes minKey
+        assertEquals(BsonDocument.parse("{'_id': {'$exists': false}}"),
+                PageTokenUtils.getRangeFilter(values, sort));
+    }
+
+    @Test
+    public void testRangeFilterNullValue() {
+        BsonDocument sort = BsonDocument.parse("{'a': 1, '_id': 1}");
+
+        BsonDocument last = BsonDocument.parse("{'_id': 10, 'a': null}");
+
+        BsonDocument values = PageTokenUtils.decode(
+                PageTokenUtils.encode(last, sort), sort);
+
+        assertTrue(values.get("a").isNull());
+
+        BsonArray or = PageTokenUtils.getRangeFilter(values, sort)
+                .getArray("$or");
+
+        // no {$gt: null}, that would match nothing
+        assertFalse(or.contains(BsonDocument.parse("{'a': {'$gt': null}}")));
+        assertFalse(or.contains(type("a", "minKey")));
+        assertTrue(or.contains(type("a", "number")));
+        assertTrue(or.contains(type("a", "string")));
+
+        // the other null (or missing) a values follow by _id
+        BsonDocument tie = or.get(or.size() - 1).asDocument();
+
+        assertTrue(tie.get("a").isNull());
+        assertTrue(tie.getArray("$or")
+                .contains(BsonDocument.parse("{'_id': {'$gt': 10}}")));
+
+        // descending: only minKey precedes null
+        sort = BsonDocument.parse("{'a': -1, '_id': 1}");
+
+        or = PageTokenUtils.getRangeFilter(values, sort).getArray("$or");
+
+        assertTrue(or.contains(type("a", "minKey")));
+        assertFalse(or.contains(type("a", "number")));
+        assertEquals(tie, or.get(or.size() - 1));
+    }
+
+    @Test
+    public void testRangeFilterMissingValue() {
+        BsonDocument sort = BsonDocument.parse("{'a.b': -1, '_id': 1}");
+
+        BsonDocument last = BsonDocument.parse("{'_id': 10}");
+
+        BsonDocument values = PageTokenUtils.decode(
+                PageTokenUtils.encode(last, sort), sort);
+
+        // missing fields sort as null
+        assertTrue(values.get("a.b").isNull());
+
+        BsonArray or = PageTokenUtils.getRangeFilter(values, sort)
+                .getArray("$or");
+
+        assertEquals(2, or.size());
+        assertTrue(or.contains(type("a.b", "minKey")));
+
+        // {'a.b': null} also matches the documents missing a.b
+        BsonDocument tie = or.get(1).asDocument();
+
+        assertTrue(tie.get("a.b").isNull());
+        assertTrue(tie.getArray("$or")
+                .contains(BsonDocument.parse("{'_id': {'$gt': 10}}")));
+    }
+
+    @Test
+    public void testRangeFilterMixedTypes() {
+        BsonDocument sort = BsonDocument.parse("{'a': 1, '_id': 1}");
+        BsonDocument values = BsonDocument.parse("{'a': 'x', '_id': 10}");
+
+        BsonArray or = PageTokenUtils.getRangeFilter(values, sort)
+                .getArray("$or");
+
+        // numbers sort before strings, objects and dates after
+        assertTrue(or.contains(BsonDocument.parse("{'a': {'$gt': 'x'}}")));
+        assertFalse(or.contains(type("a", "number")));
+        assertFalse(or.contains(BsonDocument.parse("{'a': null}")));
+        assertTrue(or.contains(type("a", "object")));
+        assertTrue(or.contains(type("a", "date")));
+
+        sort = BsonDocument.parse("{'a': -1, '_id': 1}");
+
+        or = PageTokenUtils.getRangeFilter(values, sort).getArray("$or");
+
+        assertTrue(or.contains(BsonDocument.parse("{'a': {'$lt': 'x'}}")));
+        assertTrue(or.contains(type("a", "number")));
+        assertTrue(or.contains(BsonDocument.parse("{'a': null}")));
+        assertFalse(or.contains(type("a", "string")));
+        assertFalse(or.contains(type("a", "date")));
+
+        // the token keeps the type of long and date values
+        ObjectId id = new ObjectId();
+
+        BsonDocument last = new BsonDocument("_id", new BsonObjectId(id))
+                .append("a", new BsonInt64(1))
+                .append("b", new BsonDateTime(1000));
+
+        sort = BsonDocument.parse("{'a': 1, 'b': 1, '_id': 1}");
+
+        values = PageTokenUtils.decode(
+                PageTokenUtils.encode(last, sort), sort);
+
+        assertEquals(new BsonInt64(1), values.get("a"));
+        assertEquals(new BsonDateTime(1000), values.get("b"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEncodeArrayValue() {
+        PageTokenUtils.encode(BsonDocument.parse("{'_id': 1, 'a': [1, 2]}"),
+                BsonDocument.parse("{'a': 1, '_id': 1}"));
+    }
+
+    @Test
+    public void testKeysetProjection() {
+        BsonDocument sort = BsonDocument.parse("{'a': 1, '_id': 1}");
+
+        assertEquals(BsonDocument.parse("{'b': 1, 'a': 1, '_id': 1}"),
+                PageTokenUtils.getKeysetProjection(
+                        BsonDocument.parse("{'b': 1}"), sort));
+
+        // exclusive projections are left untouched
+        assertEquals(BsonDocument.parse("{'b': 0}"),
+                PageTokenUtils.getKeysetProjection(
+                        BsonDocument.parse("{'b': 0}"), sort));
+
+        assertNull(PageTokenUtils.getKeysetProjection(null, sort));
+    }
+
+    private static BsonDocument type(String key, String type) {
+        return new BsonDocument(key,
+                new BsonDocument("$type", new BsonString(type)));
+    }
+}